@@ -1,8 +1,5 @@
 package org.xywenjie.spring.ai.dashscope;
 
-import java.io.InputStream;
-import java.net.URL;
-import java.util.Base64;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -13,6 +10,8 @@ import org.springframework.ai.audio.tts.TextToSpeechPrompt;
 import org.springframework.ai.audio.tts.TextToSpeechResponse;
 import org.springframework.ai.chat.metadata.RateLimit;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.core.retry.RetryTemplate;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
@@ -104,8 +103,17 @@ public class DashScopeAudioSpeechModel implements TextToSpeechModel {
 		}
 		//if(speechResponse.get)
 		RateLimit rateLimit = DashScopeResponseHeaderExtractor.extractAiResponseHeaders(speechEntity);
-		try(InputStream in = new URL(speechResponse.getOutput().getAudio().getUrl()).openStream()){
-			return new TextToSpeechResponse(List.of(new Speech(in.readAllBytes())),new DashScopeAudioSpeechResponseMetadata(rateLimit));
+		try{
+			byte[] audio = DataBufferUtils.join(this.audioApi.downloadAudio(speechResponse.getOutput().getAudio().getUrl()))
+					.map(buffer -> {
+						byte[] bytes = new byte[buffer.readableByteCount()];
+						buffer.read(bytes);
+						DataBufferUtils.release(buffer);
+						return bytes;
+					})
+					.defaultIfEmpty(new byte[0])
+					.block();
+			return new TextToSpeechResponse(List.of(new Speech(audio)),new DashScopeAudioSpeechResponseMetadata(rateLimit));
 		}catch (Exception e) {
 			logger.error(e.getMessage(),e);
 		}
@@ -121,11 +129,13 @@ public class DashScopeAudioSpeechModel implements TextToSpeechModel {
 	public Flux<TextToSpeechResponse> stream(TextToSpeechPrompt prompt) {
 		DashScopeRequest speechRequest = createRequest(prompt);
 
-		Flux<ResponseEntity<DashScopeResponse>> speechEntity = RetryUtils.execute(this.retryTemplate,
-				() -> this.audioApi.stream(speechRequest));
+		Flux<ResponseEntity<DataBuffer>> speechEntity = RetryUtils.execute(this.retryTemplate,
+				() -> this.audioApi.streamAudio(speechRequest));
 		return speechEntity.map(entity -> {
-			String base64Data = entity.getBody().getOutput().getAudio().getData();
-			byte[] audioBytes = Base64.getDecoder().decode(base64Data);
+			DataBuffer audio = entity.getBody();
+			byte[] audioBytes = new byte[audio.readableByteCount()];
+			audio.read(audioBytes);
+			DataBufferUtils.release(audio);
 			return new TextToSpeechResponse(List.of(new Speech(audioBytes)),
 					new DashScopeAudioSpeechResponseMetadata(DashScopeResponseHeaderExtractor.extractAiResponseHeaders(entity)));
 		});
@@ -1,7 +1,10 @@
 package org.xywenjie.spring.ai.dashscope;
 
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -19,6 +22,7 @@ import org.springframework.ai.chat.observation.ChatModelObservationContext;
 import org.springframework.ai.chat.observation.ChatModelObservationConvention;
 import org.springframework.ai.chat.observation.ChatModelObservationDocumentation;
 import org.springframework.ai.chat.observation.DefaultChatModelObservationConvention;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Content;
 import org.springframework.ai.content.Media;
@@ -28,6 +32,9 @@ import org.springframework.ai.retry.RetryUtils;
 import org.springframework.ai.support.UsageCalculator;
 import org.springframework.ai.tool.definition.ToolDefinition;
 import org.springframework.beans.BeanUtils;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
 import org.springframework.core.retry.RetryTemplate;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
@@ -36,15 +43,22 @@ import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeDefinition;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeMedia;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+import org.xywenjie.spring.ai.dashscope.cache.MediaReferenceCache;
+import org.xywenjie.spring.ai.dashscope.metadata.DashScopeResponseHeaderExtractor;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
 
 /**
  * DashScope Chat Model implementation for Alibaba Cloud's DashScope AI service.
@@ -61,6 +75,25 @@ public class DashScopeChatModel implements ChatModel {
 
     private static final ToolCallingManager DEFAULT_TOOL_CALLING_MANAGER = ToolCallingManager.builder().build();
 
+    public static final int DEFAULT_STREAM_PREFETCH = Queues.SMALL_BUFFER_SIZE;
+
+    public static final int DEFAULT_MAX_TOOL_ROUNDS = 100;
+
+    /**
+     * {@link ChatResponseMetadata}中命中上下文缓存的输入Token数
+     */
+    public static final String CACHED_TOKENS_METADATA_KEY = "cached-tokens";
+
+    /**
+     * {@link ChatResponseMetadata}中本次创建显式缓存的输入Token数
+     */
+    public static final String CACHE_CREATION_INPUT_TOKENS_METADATA_KEY = "cache-creation-input-tokens";
+
+    /**
+     * 流式输出时{@link AssistantMessage}元数据中本chunk解析完成的{@link DashScopeJsonEvent}列表
+     */
+    public static final String JSON_EVENTS_METADATA_KEY = "json-events";
+
     private final DashScopeChatOptions defaultOptions;
 
     private final RetryTemplate retryTemplate;
@@ -75,6 +108,44 @@ public class DashScopeChatModel implements ChatModel {
 
     private final ChatModelObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    /**
+     * 流式输出时每次向上游请求的chunk数量，用于控制高频SSE流的背压
+     */
+    private int streamPrefetch = DEFAULT_STREAM_PREFETCH;
+
+    /**
+     * 执行{@link #callAsync(Prompt)}的线程池，阻塞的HTTP请求和重试都在其中运行
+     */
+    private Executor blockingExecutor = BlockingExecutors.defaultExecutor();
+
+    private MediaReferenceCache mediaCache;
+
+    private DashScopeContextCacheMetrics contextCacheMetrics = new DashScopeContextCacheMetrics(Metrics.globalRegistry);
+
+    /**
+     * 一次调用最多执行的工具轮数
+     */
+    private int maxToolRounds = DEFAULT_MAX_TOOL_ROUNDS;
+
+    /**
+     * 工具循环中提示词保留的最近工具轮数，0表示全部保留
+     */
+    private int toolHistoryRounds = 0;
+
+    private DashScopeToolLoopMetrics toolLoopMetrics = new DashScopeToolLoopMetrics(Metrics.globalRegistry);
+
+    private DashScopeStreamMetrics streamMetrics = new DashScopeStreamMetrics(Metrics.globalRegistry);
+
+    /**
+     * 流式输出中是否增量解析JSON并产生{@link DashScopeJsonEvent}
+     */
+    private boolean streamJsonEvents = false;
+
+    /**
+     * 流式输出中允许预执行的幂等工具名称
+     */
+    private Set<String> speculativeToolNames = Set.of();
+
     public DashScopeChatModel(DashScopeApi dashScopeApi,DashScopeChatOptions defaultOptions,ToolCallingManager toolCallingManager,
                               RetryTemplate retryTemplate,ObservationRegistry observationRegistry){
         this(dashScopeApi,defaultOptions,toolCallingManager,retryTemplate,observationRegistry,new DefaultToolExecutionEligibilityPredicate());
@@ -105,12 +176,31 @@ public class DashScopeChatModel implements ChatModel {
     }
 
     public ChatResponse internalCall(Prompt prompt, ChatResponse previousChatResponse) {
+        DashScopeToolLoop toolLoop = newToolLoop(prompt, previousChatResponse);
+        try {
+            while (true) {
+                toolLoop.beginRound();
+                ChatResponse response = callRound(toolLoop.prompt(), toolLoop.previousResponse());
+                if (!this.toolExecutionEligibilityPredicate.isToolExecutionRequired(toolLoop.prompt().getOptions(), response)) {
+                    return response;
+                }
+                ChatResponse directResponse = toolLoop.executeTools(this.toolCallingManager, response);
+                if (directResponse != null) {
+                    return directResponse;
+                }
+            }
+        } finally {
+            toolLoop.complete();
+        }
+    }
+
+    private ChatResponse callRound(Prompt prompt, ChatResponse previousChatResponse) {
         DashScopeRequest request = createRequest(prompt, Boolean.FALSE);
         ChatModelObservationContext observationContext = ChatModelObservationContext.builder()
                 .prompt(prompt)
                 .provider("DashScope")
                 .build();
-        ChatResponse response = ChatModelObservationDocumentation.CHAT_MODEL_OPERATION
+        return ChatModelObservationDocumentation.CHAT_MODEL_OPERATION
                 .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
                         this.observationRegistry)
                 .observe(() -> {
@@ -137,31 +227,19 @@ public class DashScopeChatModel implements ChatModel {
                         return buildGeneration(choice, metadata, request);
                     }).toList();
 
-                    //RateLimit rateLimit = OpenAiResponseHeaderExtractor.extractAiResponseHeaders(completionEntity);
+                    RateLimit rateLimit = DashScopeResponseHeaderExtractor.extractAiResponseHeaders(completionEntity);
 
                     // Current usage
                     DashScopeResponse.Usage usage = chatCompletion.getUsage();
+                    this.contextCacheMetrics.record(request.getModel(), usage);
                     Usage currentChatResponseUsage = usage != null ? getDefaultUsage(usage) : new EmptyUsage();
                     Usage accumulatedUsage = UsageCalculator.getCumulativeUsage(currentChatResponseUsage,
                             previousChatResponse);
                     ChatResponse chatResponse = new ChatResponse(generations,
-                            from(chatCompletion, null, accumulatedUsage));
+                            from(chatCompletion, rateLimit, accumulatedUsage));
                     observationContext.setResponse(chatResponse);
                     return chatResponse;
                 });
-
-        if (this.toolExecutionEligibilityPredicate.isToolExecutionRequired(prompt.getOptions(),response)) {
-            var toolExecutionResult = this.toolCallingManager.executeToolCalls(prompt, response);
-            if (toolExecutionResult.returnDirect()) {
-                return ChatResponse.builder()
-                        .from(response)
-                        .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
-                        .build();
-            } else {
-                return this.internalCall(new Prompt(toolExecutionResult.conversationHistory(),prompt.getOptions()), response);
-            }
-        }
-        return response;
     }
 
     @Override
@@ -171,11 +249,28 @@ public class DashScopeChatModel implements ChatModel {
     }
 
     public Flux<ChatResponse> internalStream(Prompt prompt, ChatResponse previousChatResponse) {
-        return Flux.deferContextual(contentView -> {
+        return Flux.defer(() -> {
+            DashScopeToolLoop toolLoop = newToolLoop(prompt, previousChatResponse);
+            // 每轮结束后根据循环状态重新订阅下一轮，而不是在上一轮的流里嵌套下一轮
+            return Flux.defer(() -> {
+                toolLoop.beginRound();
+                return streamRound(toolLoop);
+            }).repeat(() -> !toolLoop.isFinished()).doFinally(signal -> toolLoop.complete());
+        });
+    }
+
+    private Flux<ChatResponse> streamRound(DashScopeToolLoop toolLoop) {
+        Prompt prompt = toolLoop.prompt();
+        ChatResponse previousChatResponse = toolLoop.previousResponse();
+        Flux<ChatResponse> round = Flux.deferContextual(contentView -> {
             DashScopeRequest request = createRequest(prompt, true);
             request.getParameters().setIncrementalOutput(Boolean.TRUE);
+            DashScopeStreamMetrics.Recorder streamRecorder = this.streamMetrics.start(request.getModel(),
+                    Boolean.TRUE.equals(request.getParameters().getEnableThinking()));
             Flux<DashScopeResponse> completionChunks = this.dashScopeApi.chatCompletionStream(request,
-                    getAdditionalHttpHeaders(prompt));
+                    getAdditionalHttpHeaders(prompt))
+                    .doOnNext(streamRecorder::onChunk)
+                    .doOnComplete(streamRecorder::onComplete);
 
             ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
 
@@ -189,35 +284,30 @@ public class DashScopeChatModel implements ChatModel {
                     this.observationRegistry);
 
             observation.parentObservation(contentView.getOrDefault(ObservationThreadLocalAccessor.KEY,null)).start();
-            Map<Integer,DashScopeResponse.ToolCall> toolCallMap = new HashMap<>();
-            Flux<ChatResponse> chatResponse = completionChunks.switchMap(chatCompletion -> Mono.just(chatCompletion).map(chatCompletion2 -> {
-                //logger.info("Flux响应内容：{}",ModelOptionsUtils.toJsonString(chatCompletion2));
+            DashScopeToolCallAccumulator toolCallAccumulator = new DashScopeToolCallAccumulator(this.streamJsonEvents);
+            DashScopeSpeculativeToolExecution speculation = createSpeculation(prompt);
+            DashScopeJsonStreamParser contentParser = this.streamJsonEvents
+                    ? new DashScopeJsonStreamParser(DashScopeJsonEvent.CONTENT_SOURCE) : null;
+            // 每个chunk同步映射，按到达顺序处理，不会因为下一个chunk到达而取消当前chunk
+            Flux<ChatResponse> chatResponse = completionChunks.limitRate(this.streamPrefetch).map(chatCompletion2 -> {
                 try {
                     String id = chatCompletion2.getRequestId();
                     List<Generation> generations = chatCompletion2.getOutput().getChoices().stream().map(choice -> {
-                    	if(choice.getMessage().getToolCalls() != null) {
-                    		for(DashScopeResponse.ToolCall toolCalll : choice.getMessage().getToolCalls()) {
-                        		toolCallMap.compute(toolCalll.getIndex(), (key,existing) -> {
-                        			if(existing == null) {
-                        				return new DashScopeResponse.ToolCall(toolCalll.getIndex(),toolCalll.getType(),toolCalll.getId(),toolCalll.getFunction());
-                        			}else {
-                                        if(StringUtils.hasText(toolCalll.getFunction().getArguments())){
-                                            existing.getFunction().setArguments(existing.getFunction().getArguments() + toolCalll.getFunction().getArguments());
-                                        }
-                        				return existing;
-                        			}
-                        		});
-                        	}
-                    	}
+                    	toolCallAccumulator.appendAll(choice.getMessage().getToolCalls());
+                        if (speculation != null) {
+                            speculation.submit(toolCallAccumulator.drainCompleted());
+                        }
                         if (choice.getMessage().getRole() != null) {
                             roleMap.putIfAbsent(id, choice.getMessage().getRole());
                         }
                         Map<String, Object> metadata = Map.of(
                                 "id",chatCompletion2.getRequestId(),
                                 "finishReason",choice.getFinishReason() != null ? choice.getFinishReason() : "");
-                        if(choice.getFinishReason().equals("tool_calls")) {
-                        	List<DashScopeResponse.ToolCall> accumulatedToolCalls = toolCallMap.values().stream().toList();
-                        	choice.getMessage().setToolCalls(accumulatedToolCalls);
+                        if (contentParser != null) {
+                            metadata = withJsonEvents(metadata, choice.getMessage(), contentParser, toolCallAccumulator);
+                        }
+                        if("tool_calls".equals(choice.getFinishReason())) {
+                        	choice.getMessage().setToolCalls(toolCallAccumulator.build());
                         	return buildGeneration(choice, metadata, request);
                         }else {
                         	choice.getMessage().setToolCalls(null);
@@ -226,6 +316,9 @@ public class DashScopeChatModel implements ChatModel {
                         
                     }).toList();
                     DashScopeResponse.Usage usage = chatCompletion2.getUsage();
+                    if (isLastChunk(chatCompletion2)) {
+                        this.contextCacheMetrics.record(request.getModel(), usage);
+                    }
                     Usage currentChatResponseUsage = usage != null ? getDefaultUsage(usage) : new EmptyUsage();
                     Usage accumulatedUsage = UsageCalculator.getCumulativeUsage(currentChatResponseUsage,
                             previousChatResponse);
@@ -234,45 +327,157 @@ public class DashScopeChatModel implements ChatModel {
                     logger.error("Error processing chat completion", e);
                     return new ChatResponse(List.of());
                 }
-            })).buffer(2, 1).map(bufferList -> {
+            }).buffer(2, 1).map(bufferList -> {
                 ChatResponse firstResponse = bufferList.get(0);
                 if(bufferList.size() == 2) {
                 	ChatResponse secondResponse = bufferList.get(1);
                 	if(secondResponse != null && secondResponse.getMetadata() != null) {
                 		Usage usage = secondResponse.getMetadata().getUsage();
                 		if(!UsageCalculator.isEmpty(usage)) {
-                			return new ChatResponse(firstResponse.getResults(),from(firstResponse.getMetadata(),usage));
+                			return new ChatResponse(firstResponse.getResults(),from(firstResponse.getMetadata(),secondResponse.getMetadata()));
                 		}
                 	}
                 }
                 return firstResponse;
             });
-            Flux<ChatResponse> flux = chatResponse.flatMap(response -> {
+            Flux<ChatResponse> flux = chatResponse.concatMap(response -> {
                         if (ToolCallingChatOptions.isInternalToolExecutionEnabled(prompt.getOptions())
                                 && response.hasToolCalls()) {
                         	logger.info("查看工具参数:{}",ModelOptionsUtils.toJsonStringPrettyPrinter(response.getResult().getOutput().getToolCalls()));
                         	if(response.hasFinishReasons(Set.of("tool_calls"))) {
                         		//response.get
-                        		return Flux.defer(() -> {
+                        		// 工具执行完后本轮结束，下一轮由internalStream重新订阅
+                        		return Mono.fromCallable(() -> {
                         			logger.info("开始调用函数工具,{}",ModelOptionsUtils.toJsonStringPrettyPrinter(response));
-                                    var toolExecutionResult = this.toolCallingManager.executeToolCalls(prompt, response);
-                                    if (toolExecutionResult.returnDirect()) {
-                                        return Flux.just(ChatResponse.builder().from(response)
-                                                .generations(ToolExecutionResult.buildGenerations(toolExecutionResult)).build());
-                                    } else {
-                                        return this.internalStream(new Prompt(toolExecutionResult.conversationHistory(),prompt.getOptions()), response);
-                                    }
-                                }).subscribeOn(Schedulers.boundedElastic());
+                                    Prompt executionPrompt = speculation != null ? speculation.apply(prompt) : prompt;
+                                    return Optional.ofNullable(toolLoop.executeTools(this.toolCallingManager, executionPrompt, response));
+                                }).flatMapMany(Mono::justOrEmpty).subscribeOn(Schedulers.boundedElastic());
                         	}else {
                         		return Flux.just(response);
                         	}
                         } else {
                             return Flux.just(response);
                         }
-                    }).doOnError(observation::error).doFinally(s -> observation.stop())
+                    }, this.streamPrefetch).doOnError(observation::error).doFinally(s -> {
+                        observation.stop();
+                        if (speculation != null) {
+                            speculation.cancel();
+                        }
+                    })
                     .contextWrite(ctx -> ctx.put(ObservationThreadLocalAccessor.KEY, observation));
             return new MessageAggregator().aggregate(flux, observationContext::setResponse);
         });
+        // 媒体缓存构建请求时要计算摘要并可能阻塞上传，而工具调用后的下一轮可能在Netty事件循环上重新订阅
+        return this.mediaCache != null ? round.subscribeOn(Schedulers.boundedElastic()) : round;
+    }
+
+    /**
+     * 在{@link #setBlockingExecutor(Executor)}指定的线程池中执行{@link #call(Prompt)}
+     * @param prompt 提示词
+     * @return 异步结果
+     */
+    public CompletableFuture<ChatResponse> callAsync(Prompt prompt) {
+        return CompletableFuture.supplyAsync(() -> call(prompt), this.blockingExecutor);
+    }
+
+    /**
+     * 设置异步调用使用的线程池，例如{@link BlockingExecutors#virtualThreadPerTask(String)}
+     * @param blockingExecutor 线程池
+     */
+    public void setBlockingExecutor(Executor blockingExecutor) {
+        Assert.notNull(blockingExecutor, "blockingExecutor must not be null");
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    /**
+     * 设置流式输出的预取数量（背压请求批次大小）
+     * @param streamPrefetch 预取数量，必须大于0
+     */
+    public void setStreamPrefetch(int streamPrefetch) {
+        Assert.isTrue(streamPrefetch > 0, "streamPrefetch must be greater than 0");
+        this.streamPrefetch = streamPrefetch;
+    }
+
+    /**
+     * 设置媒体上传引用缓存，设置后二进制媒体上传一次后以URL引用，不再内联到请求体中
+     * @param mediaCache 媒体缓存，为null时关闭
+     */
+    public void setMediaCache(MediaReferenceCache mediaCache) {
+        this.mediaCache = mediaCache;
+    }
+
+    /**
+     * 设置上下文缓存、工具循环和流式延迟指标的注册表，默认为{@link Metrics#globalRegistry}
+     * @param meterRegistry 指标注册表
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.contextCacheMetrics = new DashScopeContextCacheMetrics(meterRegistry);
+        this.toolLoopMetrics = new DashScopeToolLoopMetrics(meterRegistry);
+        this.streamMetrics = new DashScopeStreamMetrics(meterRegistry);
+    }
+
+    /**
+     * 设置一次调用最多执行的工具轮数，超过时抛出{@link IllegalStateException}
+     * @param maxToolRounds 最大轮数，必须大于0
+     */
+    public void setMaxToolRounds(int maxToolRounds) {
+        Assert.isTrue(maxToolRounds > 0, "maxToolRounds must be greater than 0");
+        this.maxToolRounds = maxToolRounds;
+    }
+
+    /**
+     * 设置工具循环中发给模型的提示词保留最近几轮工具调用和结果，更早的轮次按轮整体丢弃，初始消息始终保留
+     * @param toolHistoryRounds 保留的轮数，0表示全部保留
+     */
+    public void setToolHistoryRounds(int toolHistoryRounds) {
+        Assert.isTrue(toolHistoryRounds >= 0, "toolHistoryRounds must not be negative");
+        this.toolHistoryRounds = toolHistoryRounds;
+    }
+
+    /**
+     * 设置流式输出中允许预执行的工具：参数一到达完整的JSON就开始执行，不等整轮输出结束。
+     * 只应包含幂等的工具，模型最终没有使用或参数不同的预执行结果会被丢弃
+     * @param speculativeToolNames 工具名称，为空时关闭预执行
+     */
+    public void setSpeculativeToolNames(Set<String> speculativeToolNames) {
+        Assert.notNull(speculativeToolNames, "speculativeToolNames must not be null");
+        this.speculativeToolNames = Set.copyOf(speculativeToolNames);
+    }
+
+    /**
+     * 设置是否在流式输出中增量解析正文和工具参数中的JSON，解析完成的字段、数组元素和文档作为
+     * {@link DashScopeJsonEvent}列表放在每个chunk的{@link AssistantMessage}元数据{@link #JSON_EVENTS_METADATA_KEY}中
+     * @param streamJsonEvents 默认为false
+     */
+    public void setStreamJsonEvents(boolean streamJsonEvents) {
+        this.streamJsonEvents = streamJsonEvents;
+    }
+
+    private static Map<String, Object> withJsonEvents(Map<String, Object> metadata, DashScopeResponse.Message message,
+            DashScopeJsonStreamParser contentParser, DashScopeToolCallAccumulator toolCallAccumulator) {
+        List<DashScopeJsonEvent> events = new ArrayList<>(toolCallAccumulator.drainJsonEvents());
+        if (message.getContent() instanceof String content) {
+            events.addAll(contentParser.feed(content));
+        }
+        if (events.isEmpty()) {
+            return metadata;
+        }
+        Map<String, Object> result = new HashMap<>(metadata);
+        result.put(JSON_EVENTS_METADATA_KEY, events);
+        return result;
+    }
+
+    private DashScopeSpeculativeToolExecution createSpeculation(Prompt prompt) {
+        if (this.speculativeToolNames.isEmpty() || !(prompt.getOptions() instanceof DashScopeChatOptions options)
+                || !ToolCallingChatOptions.isInternalToolExecutionEnabled(options)) {
+            return null;
+        }
+        return new DashScopeSpeculativeToolExecution(options, this.speculativeToolNames, this.blockingExecutor);
+    }
+
+    private DashScopeToolLoop newToolLoop(Prompt prompt, ChatResponse previousChatResponse) {
+        return new DashScopeToolLoop(prompt, previousChatResponse, this.maxToolRounds, this.toolHistoryRounds,
+                this.toolLoopMetrics);
     }
 
     private List<?> safeGetSearchResults(DashScopeResponse.Output output){
@@ -316,6 +521,16 @@ public class DashScopeChatModel implements ChatModel {
         if (rateLimit != null) {
             builder.rateLimit(rateLimit);
         }
+        DashScopeResponse.InputTokensDetails details = result.getUsage() != null
+                ? result.getUsage().getInputTokensDetails() : null;
+        if (details != null) {
+            if (details.getCachedTokens() != null) {
+                builder.keyValue(CACHED_TOKENS_METADATA_KEY, details.getCachedTokens());
+            }
+            if (details.getCacheCreationInputTokens() != null) {
+                builder.keyValue(CACHE_CREATION_INPUT_TOKENS_METADATA_KEY, details.getCacheCreationInputTokens());
+            }
+        }
         return builder.build();
     }
     
@@ -325,67 +540,46 @@ public class DashScopeChatModel implements ChatModel {
      *
      * @param chatCompletionMessages the existing chat response metadata
      *                              现有的聊天响应元数据
-     * @param usage the usage statistics
-     *              使用统计信息
+     * @param usageMetadata the metadata carrying usage statistics and cached token counts
+     *              包含使用统计信息和缓存Token数的元数据
      * @return ChatResponseMetadata containing merged metadata
      *         包含合并元数据的ChatResponseMetadata
      */
-    private ChatResponseMetadata from(ChatResponseMetadata chatCompletionMessages,Usage usage) {
+    private ChatResponseMetadata from(ChatResponseMetadata chatCompletionMessages,ChatResponseMetadata usageMetadata) {
     	Assert.notNull(chatCompletionMessages, "DashScope ChatResponseMetadata must not be null");
     	var builder = ChatResponseMetadata.builder().id(chatCompletionMessages.getId() != null ? chatCompletionMessages.getId() : "")
-    			.usage(usage).model(chatCompletionMessages.getModel() != null ? chatCompletionMessages.getModel() : "");
+    			.usage(usageMetadata.getUsage()).model(chatCompletionMessages.getModel() != null ? chatCompletionMessages.getModel() : "");
+    	for (String key : List.of(CACHED_TOKENS_METADATA_KEY, CACHE_CREATION_INPUT_TOKENS_METADATA_KEY)) {
+    		if (usageMetadata.containsKey(key)) {
+    			builder.keyValue(key, usageMetadata.get(key));
+    		}
+    	}
     	if(chatCompletionMessages.getRateLimit() != null) {
     		builder.rateLimit(chatCompletionMessages.getRateLimit());
     	}
     	return builder.build();
     }
 
+    private static boolean isLastChunk(DashScopeResponse chunk) {
+        return chunk.getOutput() != null && chunk.getOutput().getChoices() != null
+                && chunk.getOutput().getChoices().stream().anyMatch(choice -> StringUtils.hasText(choice.getFinishReason())
+                        && !"null".equals(choice.getFinishReason()));
+    }
+
     private DefaultUsage getDefaultUsage(DashScopeResponse.Usage usage) {
         return new DefaultUsage(usage.getInputTokens(), usage.getOutputTokens(), usage.getTotalTokens(),usage);
     }
 
     Prompt buildRequestPrompt(Prompt prompt) {
-        DashScopeChatOptions runtimeOptions = null;
-        if (prompt.getOptions() != null) {
-            if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions) {
-                runtimeOptions = ModelOptionsUtils.copyToTarget(toolCallingChatOptions, ToolCallingChatOptions.class,
-                        DashScopeChatOptions.class);
-            }
-        }
-
-        DashScopeChatOptions requestOptions = ModelOptionsUtils.merge(runtimeOptions, this.defaultOptions,
-                DashScopeChatOptions.class);
-        if (runtimeOptions != null) {
-            requestOptions.setHttpHeaders(
-                    mergeHttpHeader(runtimeOptions.getHttpHeaders(), this.defaultOptions.getHttpHeaders()));
-            requestOptions.setToolNames(ToolCallingChatOptions.mergeToolNames(runtimeOptions.getToolNames(),
-                    this.defaultOptions.getToolNames()));
-            requestOptions.setToolCallbacks(ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.getToolCallbacks(),
-                    this.defaultOptions.getToolCallbacks()));
-            requestOptions.setToolContext(ToolCallingChatOptions.mergeToolContext(runtimeOptions.getToolContext(),
-                    this.defaultOptions.getToolContext()));
-        } else {
-            requestOptions.setHttpHeaders(this.defaultOptions.getHttpHeaders());
-            requestOptions.setInternalToolExecutionEnabled(this.defaultOptions.getInternalToolExecutionEnabled());
-            requestOptions.setToolNames(this.defaultOptions.getToolNames());
-            requestOptions.setToolCallbacks(this.defaultOptions.getToolCallbacks());
-
-        }
+        DashScopeChatOptions runtimeOptions = DashScopeChatOptionsMapper.toDashScopeOptions(prompt.getOptions());
+        DashScopeChatOptions requestOptions = DashScopeChatOptionsMapper.merge(runtimeOptions, this.defaultOptions);
         ToolCallingChatOptions.validateToolCallbacks(requestOptions.getToolCallbacks());
         return new Prompt(prompt.getInstructions(), requestOptions);
     }
 
-    private Map<String, String> mergeHttpHeader(Map<String, String> runtimeHttpHeaders,
-                                                Map<String, String> defaultHttpHeaders) {
-        var mergedHttpHeader = new HashMap<>(defaultHttpHeaders);
-        mergedHttpHeader.putAll(runtimeHttpHeaders);
-        return mergedHttpHeader;
-    }
-
     DashScopeRequest createRequest(Prompt prompt, Boolean stream) {
-        DashScopeRequest request = new DashScopeRequest();
         DashScopeChatOptions requestOptions = (DashScopeChatOptions) prompt.getOptions();
-        request = ModelOptionsUtils.merge(requestOptions, request, DashScopeRequest.class);
+        DashScopeRequest request = DashScopeChatOptionsMapper.toRequest(requestOptions);
         String modelName = requestOptions.getModel();
         if(StringUtils.hasText(modelName) && modelName.toLowerCase().contains("tts")){
             String ttsText = prompt.getInstructions().stream().filter(msg -> msg.getMessageType() == MessageType.USER).findFirst().map(Content::getText).orElseThrow(() -> new IllegalArgumentException("TTS模型必须传入UserMessage类型的纯文本消息"));
@@ -441,47 +635,107 @@ public class DashScopeChatModel implements ChatModel {
 
         List<ToolDefinition> toolDefinitions = this.toolCallingManager.resolveToolDefinitions(requestOptions);
         if (!CollectionUtils.isEmpty(toolDefinitions)) {
-            request = ModelOptionsUtils.merge(
-                    DashScopeChatOptions.builder().tools(this.getFunctionTools(toolDefinitions)).build(), request,
-                    DashScopeRequest.class);
+            request.getParameters().setTools(this.getFunctionTools(toolDefinitions));
+        }
+        if (Boolean.TRUE.equals(requestOptions.getContextCache()) && request.getInput().getMessages() != null) {
+            markCacheable(request.getInput().getMessages());
         }
         return request;
     }
 
     /**
-     * TODO
+     * 在最后一条系统消息上添加显式缓存标记，工具定义和系统消息组成的前缀在后续请求中可以命中缓存
+     */
+    private static void markCacheable(List<DashScopeRequest.Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            DashScopeRequest.Message message = messages.get(i);
+            if (message.getRole() != DashScopeDefinition.Role.SYSTEM) {
+                continue;
+            }
+            if (message.getContent() instanceof String text) {
+                message.setContent(List.of(DashScopeRequest.MediaContent.builder()
+                        .text(text)
+                        .cacheControl(DashScopeRequest.CacheControl.EPHEMERAL)
+                        .build()));
+            } else if (message.getContent() instanceof List<?> contents && !contents.isEmpty()
+                    && contents.get(contents.size() - 1) instanceof DashScopeRequest.MediaContent last) {
+                last.setCacheControl(DashScopeRequest.CacheControl.EPHEMERAL);
+            }
+            return;
+        }
+    }
+
+    /**
+     * 把Media转换为请求中的媒体内容，二进制数据以{@link DashScopeMedia}在序列化时流式编码为base64
      *
      * @param media
      * @return
      */
     private DashScopeRequest.MediaContent mapToMediaContent(Media media) {
         var mimeType = media.getMimeType();
-        if (MimeTypeUtils.parseMimeType("audio/mp3").equals(mimeType)) {
-            return DashScopeRequest.MediaContent.builder().audio(this.fromAudioData(media.getData())).build();
+        String cachedUrl = this.mediaCache != null ? this.mediaCache.resolve(media) : null;
+        DashScopeRequest.MediaContent mediaContent = new DashScopeRequest.MediaContent();
+        if (MimeTypeUtils.parseMimeType("audio/mp3").equals(mimeType)
+                || MimeTypeUtils.parseMimeType("audio/wav").equals(mimeType)) {
+            if (cachedUrl != null) {
+                mediaContent.setAudio(cachedUrl);
+            } else {
+                mediaContent.setAudioMedia(this.fromAudioData(media.getData()));
+            }
+            return mediaContent;
+        }
+        boolean video = "video".equals(mimeType.getType());
+        Object data = media.getData();
+        if (cachedUrl != null || data instanceof String) {
+            String url = cachedUrl != null ? cachedUrl : (String) data;
+            if (video) {
+                mediaContent.setVideo(url);
+            } else {
+                mediaContent.setImage(url);
+            }
+            return mediaContent;
         }
-        if (MimeTypeUtils.parseMimeType("audio/wav").equals(mimeType)) {
-            return DashScopeRequest.MediaContent.builder().audio(this.fromAudioData(media.getData())).build();
+        DashScopeMedia dashScopeMedia = this.fromMediaData(mimeType, data);
+        if (video) {
+            mediaContent.setVideoMedia(dashScopeMedia);
         } else {
-            return DashScopeRequest.MediaContent.builder().image(this.fromMediaData(media.getMimeType(),media.getData())).build();
+            mediaContent.setImageMedia(dashScopeMedia);
         }
+        return mediaContent;
     }
 
-    private String fromAudioData(Object audioData) {
-        if (audioData instanceof byte[] byets) {
-            return Base64.getEncoder().encodeToString(byets);
+    private DashScopeMedia fromAudioData(Object audioData) {
+        InputStreamSource source = toInputStreamSource(audioData);
+        if (source != null) {
+            return DashScopeMedia.base64(source);
         }
         throw new IllegalArgumentException("Unsupported audio data type: " + audioData.getClass().getSimpleName());
     }
 
-    private String fromMediaData(MimeType mineType, Object mediaContentData) {
-        if (mediaContentData instanceof byte[] byes) {
-            return String.format("data:%s;base64,%s", mineType.toString(), Base64.getEncoder().encodeToString(byes));
-        } else if (mediaContentData instanceof String text) {
-            return text;
-        } else {
+    private DashScopeMedia fromMediaData(MimeType mineType, Object mediaContentData) {
+        InputStreamSource source = toInputStreamSource(mediaContentData);
+        if (source != null) {
+            return DashScopeMedia.dataUri(mineType, source);
+        }
+        throw new IllegalArgumentException(
+                "Unsupported media data type: " + mediaContentData.getClass().getSimpleName());
+    }
+
+    /**
+     * 请求在重试和每一轮工具调用时都会重新序列化，只接受可以多次读取的数据
+     */
+    private static InputStreamSource toInputStreamSource(Object data) {
+        if (data instanceof byte[] bytes) {
+            return new ByteArrayResource(bytes);
+        }
+        if (data instanceof InputStream || (data instanceof Resource resource && resource.isOpen())) {
             throw new IllegalArgumentException(
-                    "Unsupported media data type: " + mediaContentData.getClass().getSimpleName());
+                    "Media data " + data.getClass().getSimpleName() + " can only be read once, use byte[] or a Resource instead");
+        }
+        if (data instanceof InputStreamSource source) {
+            return source;
         }
+        return null;
     }
 
     private List<DashScopeRequest.FunctionTool> getFunctionTools(List<ToolDefinition> toolDefinitions) {
@@ -492,6 +746,11 @@ public class DashScopeChatModel implements ChatModel {
         }).toList();
     }
 
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return this.defaultOptions.copy();
+    }
+
     @Override
     public String toString() {
         return "DashScopeChatModel [defaultOptions="+this.defaultOptions+"]";
@@ -515,6 +774,20 @@ public class DashScopeChatModel implements ChatModel {
 
         private ToolExecutionEligibilityPredicate toolExecutionEligibilityPredicate = new DefaultToolExecutionEligibilityPredicate();
 
+        private int streamPrefetch = DEFAULT_STREAM_PREFETCH;
+
+        private MediaReferenceCache mediaCache;
+
+        private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+        private int maxToolRounds = DEFAULT_MAX_TOOL_ROUNDS;
+
+        private int toolHistoryRounds = 0;
+
+        private Set<String> speculativeToolNames = Set.of();
+
+        private boolean streamJsonEvents = false;
+
         public Builder dashScopeApi(DashScopeApi dashScopeApi) {
             this.dashScopeApi = dashScopeApi;
             return this;
@@ -530,14 +803,53 @@ public class DashScopeChatModel implements ChatModel {
             return this;
         }
 
-        public DashScopeChatModel build() {
-            if (this.toolCallingManager != null) {
-                return new DashScopeChatModel(dashScopeApi, defaultOptions, toolCallingManager, retryTemplate,
-                        observationRegistry,this.toolExecutionEligibilityPredicate);
-            }
-            return new DashScopeChatModel(dashScopeApi, defaultOptions, DEFAULT_TOOL_CALLING_MANAGER, retryTemplate,
-                    observationRegistry,this.toolExecutionEligibilityPredicate);
+        public Builder streamPrefetch(int streamPrefetch) {
+            this.streamPrefetch = streamPrefetch;
+            return this;
+        }
+
+        public Builder mediaCache(MediaReferenceCache mediaCache) {
+            this.mediaCache = mediaCache;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public Builder maxToolRounds(int maxToolRounds) {
+            this.maxToolRounds = maxToolRounds;
+            return this;
+        }
 
+        public Builder toolHistoryRounds(int toolHistoryRounds) {
+            this.toolHistoryRounds = toolHistoryRounds;
+            return this;
+        }
+
+        public Builder speculativeToolNames(Set<String> speculativeToolNames) {
+            this.speculativeToolNames = speculativeToolNames;
+            return this;
+        }
+
+        public Builder streamJsonEvents(boolean streamJsonEvents) {
+            this.streamJsonEvents = streamJsonEvents;
+            return this;
+        }
+
+        public DashScopeChatModel build() {
+            DashScopeChatModel chatModel = new DashScopeChatModel(dashScopeApi, defaultOptions,
+                    this.toolCallingManager != null ? this.toolCallingManager : DEFAULT_TOOL_CALLING_MANAGER,
+                    retryTemplate, observationRegistry, this.toolExecutionEligibilityPredicate);
+            chatModel.setStreamPrefetch(this.streamPrefetch);
+            chatModel.setMediaCache(this.mediaCache);
+            chatModel.setMeterRegistry(this.meterRegistry);
+            chatModel.setMaxToolRounds(this.maxToolRounds);
+            chatModel.setToolHistoryRounds(this.toolHistoryRounds);
+            chatModel.setSpeculativeToolNames(this.speculativeToolNames);
+            chatModel.setStreamJsonEvents(this.streamJsonEvents);
+            return chatModel;
         }
     }
 
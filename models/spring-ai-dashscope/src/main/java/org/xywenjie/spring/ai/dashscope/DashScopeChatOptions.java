@@ -34,8 +34,18 @@ public class DashScopeChatOptions implements ToolCallingChatOptions{
 	@JsonIgnore
 	private List<ToolCallback> toolCallbacks = new ArrayList<>();
 
+	@JsonIgnore
+	private Boolean internalToolExecutionEnabled;
+
 	@JsonProperty("search_options")
 	private DashScopeRequest.SearchOptions searchOptions;
+
+	/**
+	 * 是否开启显式上下文缓存，开启后在最后一条系统消息上添加缓存标记，
+	 * 工具定义位于消息之前，会一起进入缓存的前缀
+	 */
+	@JsonProperty("context_cache")
+	private Boolean contextCache;
 	
 	public static Builder builder() {
 		return new Builder();
@@ -88,27 +98,37 @@ public class DashScopeChatOptions implements ToolCallingChatOptions{
 	}
 
 	@Override
+	@JsonIgnore
 	public Double getTemperature() {
-		// TODO Auto-generated method stub
-		return null;
+		return this.parameters.getTemperature();
 	}
 
 	@Override
+	@JsonIgnore
 	public Integer getTopK() {
-		// TODO Auto-generated method stub
-		return null;
+		return this.parameters.getTopK();
 	}
 
 	@Override
+	@JsonIgnore
 	public Double getTopP() {
-		// TODO Auto-generated method stub
-		return null;
+		return this.parameters.getTopP();
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public <T extends ChatOptions> T copy() {
-		// TODO Auto-generated method stub
-		return null;
+		DashScopeChatOptions copy = new DashScopeChatOptions();
+		copy.model = this.model;
+		copy.parameters = this.parameters != null ? this.parameters.copy() : new DashScopeRequest.Parameters();
+		copy.httpHeaders = this.httpHeaders != null ? new HashMap<>(this.httpHeaders) : new HashMap<>();
+		copy.toolNames = this.toolNames != null ? new HashSet<>(this.toolNames) : new HashSet<>();
+		copy.toolContext = this.toolContext != null ? new HashMap<>(this.toolContext) : new HashMap<>();
+		copy.toolCallbacks = this.toolCallbacks != null ? new ArrayList<>(this.toolCallbacks) : new ArrayList<>();
+		copy.internalToolExecutionEnabled = this.internalToolExecutionEnabled;
+		copy.searchOptions = this.searchOptions;
+		copy.contextCache = this.contextCache;
+		return (T) copy;
 	}
 
 
@@ -139,21 +159,29 @@ public class DashScopeChatOptions implements ToolCallingChatOptions{
 
 	@Override
 	public void setToolNames(Set<String> toolNames) {
-		// TODO Auto-generated method stub
-		
+		Assert.notNull(toolNames, "toolNames cannot be null");
+		this.toolNames = toolNames;
 	}
 
     @Override
+    @JsonIgnore
     public Boolean getInternalToolExecutionEnabled() {
-        return null;
+        return this.internalToolExecutionEnabled;
     }
 
 	@Override
 	public void setInternalToolExecutionEnabled(Boolean internalToolExecutionEnabled) {
-		// TODO Auto-generated method stub
-		
+		this.internalToolExecutionEnabled = internalToolExecutionEnabled;
 	}
 	
+	public Boolean getContextCache() {
+		return contextCache;
+	}
+
+	public void setContextCache(Boolean contextCache) {
+		this.contextCache = contextCache;
+	}
+
 	public DashScopeRequest.Parameters getParameters() {
 		return parameters;
 	}
@@ -231,6 +259,26 @@ public class DashScopeChatOptions implements ToolCallingChatOptions{
 			return this;
 		}
 		
+		public Builder toolNames(Set<String> toolNames) {
+			this.options.setToolNames(toolNames);
+			return this;
+		}
+
+		public Builder parallelToolCalls(Boolean parallelToolCalls) {
+			this.options.parameters.setParallelToolCalls(parallelToolCalls);
+			return this;
+		}
+
+		public Builder internalToolExecutionEnabled(Boolean internalToolExecutionEnabled) {
+			this.options.internalToolExecutionEnabled = internalToolExecutionEnabled;
+			return this;
+		}
+
+		public Builder contextCache(Boolean contextCache) {
+			this.options.contextCache = contextCache;
+			return this;
+		}
+
 		public Builder seed(Integer seed) {
 			this.options.parameters.setSeed(seed);
 			return this;
@@ -0,0 +1,106 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+
+/**
+ * 聊天选项与请求之间的映射。
+ * 逐字段复制和覆盖，代替{@code ModelOptionsUtils.copyToTarget/merge}基于JSON往返和反射的实现，
+ * 每次请求只产生必要的对象复制。请求参数按字段合并，运行时选项只覆盖其中不为null的字段。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeChatOptionsMapper {
+
+	private DashScopeChatOptionsMapper() {
+	}
+
+	/**
+	 * 把任意聊天选项转换为DashScope选项的副本
+	 * @param options 运行时选项
+	 * @return 新的DashScope选项，参数为null时返回null
+	 */
+	static DashScopeChatOptions toDashScopeOptions(ChatOptions options) {
+		if (options == null) {
+			return null;
+		}
+		if (options instanceof DashScopeChatOptions dashScopeOptions) {
+			return dashScopeOptions.copy();
+		}
+		DashScopeChatOptions result = new DashScopeChatOptions();
+		result.setModel(options.getModel());
+		result.getParameters().setTemperature(options.getTemperature());
+		result.getParameters().setTopP(options.getTopP());
+		result.getParameters().setTopK(options.getTopK());
+		if (options instanceof ToolCallingChatOptions toolOptions) {
+			if (toolOptions.getToolCallbacks() != null) {
+				result.getToolCallbacks().addAll(toolOptions.getToolCallbacks());
+			}
+			if (toolOptions.getToolNames() != null) {
+				result.getToolNames().addAll(toolOptions.getToolNames());
+			}
+			if (toolOptions.getToolContext() != null) {
+				result.getToolContext().putAll(toolOptions.getToolContext());
+			}
+			result.setInternalToolExecutionEnabled(toolOptions.getInternalToolExecutionEnabled());
+		}
+		return result;
+	}
+
+	/**
+	 * 合并运行时选项和默认选项
+	 * @param runtimeOptions 运行时选项，可以为null
+	 * @param defaultOptions 默认选项
+	 * @return 新的选项对象，不会修改两个参数
+	 */
+	static DashScopeChatOptions merge(DashScopeChatOptions runtimeOptions, DashScopeChatOptions defaultOptions) {
+		DashScopeChatOptions result = defaultOptions.copy();
+		if (runtimeOptions == null) {
+			return result;
+		}
+		if (runtimeOptions.getModel() != null) {
+			result.setModel(runtimeOptions.getModel());
+		}
+		result.getParameters().merge(runtimeOptions.getParameters());
+		if (runtimeOptions.getSearchOptions() != null) {
+			result.setSearchOptions(runtimeOptions.getSearchOptions());
+		}
+		if (runtimeOptions.getContextCache() != null) {
+			result.setContextCache(runtimeOptions.getContextCache());
+		}
+		if (runtimeOptions.getInternalToolExecutionEnabled() != null) {
+			result.setInternalToolExecutionEnabled(runtimeOptions.getInternalToolExecutionEnabled());
+		}
+		Map<String, String> httpHeaders = new HashMap<>(result.getHttpHeaders());
+		if (runtimeOptions.getHttpHeaders() != null) {
+			httpHeaders.putAll(runtimeOptions.getHttpHeaders());
+		}
+		result.setHttpHeaders(httpHeaders);
+		result.setToolNames(ToolCallingChatOptions.mergeToolNames(runtimeOptions.getToolNames(),
+				result.getToolNames()));
+		result.setToolCallbacks(ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.getToolCallbacks(),
+				result.getToolCallbacks()));
+		result.setToolContext(ToolCallingChatOptions.mergeToolContext(runtimeOptions.getToolContext(),
+				result.getToolContext()));
+		return result;
+	}
+
+	/**
+	 * 用选项创建请求，请求持有参数的副本，之后修改请求不会影响选项
+	 * @param options 合并后的选项
+	 * @return 只设置了model和parameters的请求
+	 */
+	static DashScopeRequest toRequest(DashScopeChatOptions options) {
+		DashScopeRequest request = new DashScopeRequest();
+		request.setModel(options.getModel());
+		if (options.getParameters() != null) {
+			request.setParameters(options.getParameters().copy());
+		}
+		return request;
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 按模型统计上下文缓存的输入Token：
+ * <ul>
+ * <li>{@code dashscope.chat.input.tokens}：按cache=hit/creation/miss区分的输入Token数</li>
+ * <li>{@code dashscope.chat.context.cache.hit.ratio}：命中缓存的输入Token占全部输入Token的比例</li>
+ * </ul>
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeContextCacheMetrics {
+
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, ModelTokens> models = new ConcurrentHashMap<>();
+
+	DashScopeContextCacheMetrics(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.meterRegistry = meterRegistry;
+	}
+
+	void record(String model, DashScopeResponse.Usage usage) {
+		if (usage == null || usage.getInputTokens() == null) {
+			return;
+		}
+		int input = usage.getInputTokens();
+		int cached = 0;
+		int creation = 0;
+		DashScopeResponse.InputTokensDetails details = usage.getInputTokensDetails();
+		if (details != null) {
+			cached = details.getCachedTokens() != null ? details.getCachedTokens() : 0;
+			creation = details.getCacheCreationInputTokens() != null ? details.getCacheCreationInputTokens() : 0;
+		}
+		ModelTokens tokens = this.models.computeIfAbsent(model != null ? model : "", this::register);
+		tokens.hit.add(cached);
+		tokens.creation.add(creation);
+		tokens.miss.add(Math.max(0, input - cached - creation));
+	}
+
+	private ModelTokens register(String model) {
+		ModelTokens tokens = new ModelTokens();
+		registerCounter(model, "hit", tokens.hit);
+		registerCounter(model, "creation", tokens.creation);
+		registerCounter(model, "miss", tokens.miss);
+		Gauge.builder("dashscope.chat.context.cache.hit.ratio", tokens, ModelTokens::hitRatio)
+			.tag("model", model)
+			.register(this.meterRegistry);
+		return tokens;
+	}
+
+	private void registerCounter(String model, String cache, LongAdder adder) {
+		FunctionCounter.builder("dashscope.chat.input.tokens", adder, LongAdder::sum)
+			.tag("model", model)
+			.tag("cache", cache)
+			.baseUnit("tokens")
+			.register(this.meterRegistry);
+	}
+
+	private static final class ModelTokens {
+
+		private final LongAdder hit = new LongAdder();
+
+		private final LongAdder creation = new LongAdder();
+
+		private final LongAdder miss = new LongAdder();
+
+		double hitRatio() {
+			long hit = this.hit.sum();
+			long total = hit + this.creation.sum() + this.miss.sum();
+			return total == 0 ? 0.0 : (double) hit / total;
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * 按DashScope文本向量模型的条数和Token上限把输入切分成多个子批次。
+ * Token数按字符数估算：中文约1字符1Token，英文明显更少，因此按字符计数是偏保守的上界。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeEmbeddingBatcher {
+
+	/**
+	 * text-embedding-v3/v4单次请求最多10条
+	 */
+	static final int V3_MAX_BATCH_SIZE = 10;
+
+	/**
+	 * text-embedding-v1/v2单次请求最多25条
+	 */
+	static final int V2_MAX_BATCH_SIZE = 25;
+
+	static final int V3_MAX_TOKENS_PER_TEXT = 8192;
+
+	static final int V2_MAX_TOKENS_PER_TEXT = 2048;
+
+	private DashScopeEmbeddingBatcher() {
+	}
+
+	/**
+	 * 根据模型名称返回单次请求允许的最大条数
+	 */
+	static int defaultMaxBatchSize(String model) {
+		return isLegacyModel(model) ? V2_MAX_BATCH_SIZE : V3_MAX_BATCH_SIZE;
+	}
+
+	/**
+	 * 根据模型名称返回单次请求允许的最大Token数（条数上限乘以单条上限）
+	 */
+	static int defaultMaxBatchTokens(String model) {
+		return isLegacyModel(model) ? V2_MAX_BATCH_SIZE * V2_MAX_TOKENS_PER_TEXT
+				: V3_MAX_BATCH_SIZE * V3_MAX_TOKENS_PER_TEXT;
+	}
+
+	private static boolean isLegacyModel(String model) {
+		return model != null && (model.startsWith("text-embedding-v1") || model.startsWith("text-embedding-v2"));
+	}
+
+	/**
+	 * 按顺序切分输入，每个子批次既不超过条数上限也不超过Token上限。
+	 * 单条超过Token上限的文本单独成为一个批次，由服务端决定截断或报错。
+	 * @param texts 输入文本
+	 * @param maxBatchSize 每批最大条数
+	 * @param maxBatchTokens 每批最大估算Token数
+	 * @return 子批次，offset为该批第一条文本在原始输入中的下标
+	 */
+	static List<Batch> split(List<String> texts, int maxBatchSize, int maxBatchTokens) {
+		Assert.notNull(texts, "texts must not be null");
+		Assert.isTrue(maxBatchSize > 0, "maxBatchSize must be greater than 0");
+		Assert.isTrue(maxBatchTokens > 0, "maxBatchTokens must be greater than 0");
+		List<Batch> batches = new ArrayList<>(texts.size() / maxBatchSize + 1);
+		int start = 0;
+		int tokens = 0;
+		for (int i = 0; i < texts.size(); i++) {
+			int textTokens = estimateTokens(texts.get(i));
+			boolean full = i - start >= maxBatchSize || (i > start && tokens + textTokens > maxBatchTokens);
+			if (full) {
+				batches.add(new Batch(start, texts.subList(start, i)));
+				start = i;
+				tokens = 0;
+			}
+			tokens += textTokens;
+		}
+		if (start < texts.size()) {
+			batches.add(new Batch(start, texts.subList(start, texts.size())));
+		}
+		return batches;
+	}
+
+	static int estimateTokens(String text) {
+		return text != null ? text.length() : 0;
+	}
+
+	record Batch(int offset, List<String> texts) {
+	}
+
+}
@@ -1,6 +1,11 @@
 package org.xywenjie.spring.ai.dashscope;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,13 +26,19 @@ import org.springframework.ai.embedding.observation.EmbeddingModelObservationCon
 import org.springframework.ai.embedding.observation.EmbeddingModelObservationDocumentation;
 import org.springframework.ai.model.ModelOptionsUtils;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.retry.TransientAiException;
 import org.springframework.core.retry.RetryTemplate;
 import org.springframework.util.Assert;
 import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
 
 import io.micrometer.observation.ObservationRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author Huang Wenjie
@@ -37,6 +48,8 @@ public class DashScopeEmbeddingModel extends AbstractEmbeddingModel{
 	private static final Logger logger = LoggerFactory.getLogger(DashScopeEmbeddingModel.class);
 	
 	private static final EmbeddingModelObservationConvention DEFAULT_OBSERVATION_CONVENTION = new DefaultEmbeddingModelObservationConvention();
+
+	public static final int DEFAULT_BATCH_PARALLELISM = 4;
 	
 	private final MetadataMode metadataMode;
 	
@@ -49,6 +62,32 @@ public class DashScopeEmbeddingModel extends AbstractEmbeddingModel{
 	private final DashScopeEmbeddingOptions defaultOptions;
 	
 	private final RetryTemplate retryTemplate;
+
+	/**
+	 * 每批最大条数，为null时按模型取默认值
+	 */
+	private Integer maxBatchSize;
+
+	/**
+	 * 每批最大估算Token数，为null时按模型取默认值
+	 */
+	private Integer maxBatchTokens;
+
+	/**
+	 * 同时发送的子批次数
+	 */
+	private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+
+	/**
+	 * 执行{@link #callAsync(EmbeddingRequest)}的线程池
+	 */
+	private Executor blockingExecutor = BlockingExecutors.defaultExecutor();
+
+	/**
+	 * 并行发送子批次的调度器，与{@link #blockingExecutor}分开：
+	 * callAsync占用的线程会阻塞等待子批次，共用有界线程池时可能互相等待而死锁
+	 */
+	private final Scheduler batchScheduler = Schedulers.boundedElastic();
 	
 	public DashScopeEmbeddingModel(DashScopeApi dashScopeApi) {
 		this(dashScopeApi,MetadataMode.EMBED);
@@ -91,38 +130,77 @@ public class DashScopeEmbeddingModel extends AbstractEmbeddingModel{
 	@Override
 	public EmbeddingResponse call(EmbeddingRequest request) {
 		EmbeddingRequest embeddingRequest = buildEmbeddingRequest(request);
-		DashScopeRequest dashScopeRequest = createRequest(embeddingRequest);
 		var observationContext = EmbeddingModelObservationContext.builder().embeddingRequest(embeddingRequest).provider("DASHSCOPE").build();
-		String model = dashScopeRequest.getModel();
+		DashScopeEmbeddingOptions requestOptions = (DashScopeEmbeddingOptions) embeddingRequest.getOptions();
+		String model = requestOptions.getModel();
+		int maxBatchSize = this.maxBatchSize != null ? this.maxBatchSize : DashScopeEmbeddingBatcher.defaultMaxBatchSize(model);
+		int maxBatchTokens = this.maxBatchTokens != null ? this.maxBatchTokens : DashScopeEmbeddingBatcher.defaultMaxBatchTokens(model);
+		List<DashScopeEmbeddingBatcher.Batch> batches = DashScopeEmbeddingBatcher.split(embeddingRequest.getInstructions(),
+				maxBatchSize, maxBatchTokens);
 		return EmbeddingModelObservationDocumentation.EMBEDDING_MODEL_OPERATION
 				.observation(this.observationConvention,DEFAULT_OBSERVATION_CONVENTION,()-> observationContext,this.observationRegistry)
 				.observe(() -> {
-					DashScopeResponse apiEmbeddingResponse = RetryUtils.execute(this.retryTemplate, 
-							() -> this.dashScopeApi.embeddings(dashScopeRequest).getBody());
-					if(apiEmbeddingResponse == null) {
-						logger.warn("No embeddings returned for request: {}",request);
-						return new EmbeddingResponse(List.of());
+					List<BatchResult> results = batches.size() == 1 ? List.of(callBatch(requestOptions, batches.get(0)))
+							: Flux.fromIterable(batches)
+								.flatMapSequential(batch -> Mono.fromCallable(() -> callBatch(requestOptions, batch))
+										.subscribeOn(this.batchScheduler), this.batchParallelism)
+								.collectList()
+								.block();
+					List<Embedding> embeddings = new ArrayList<>(embeddingRequest.getInstructions().size());
+					int inputTokens = 0;
+					int outputTokens = 0;
+					int totalTokens = 0;
+					boolean hasUsage = false;
+					for (BatchResult result : Objects.requireNonNull(results)) {
+						embeddings.addAll(result.embeddings());
+						DashScopeResponse.Usage usage = result.usage();
+						if (usage != null && usage.getTotalTokens() != null) {
+							// 向量化接口通常只返回total_tokens，此时全部计为输入Token
+							inputTokens += usage.getInputTokens() != null ? usage.getInputTokens() : usage.getTotalTokens();
+							outputTokens += usage.getOutputTokens() != null ? usage.getOutputTokens() : 0;
+							totalTokens += usage.getTotalTokens();
+							hasUsage = true;
+						}
 					}
-					DashScopeResponse.Usage usage = apiEmbeddingResponse.getUsage();
-					Usage embeddingResponseUsage = usage != null ? getDefaultUsage(usage) : new EmptyUsage();
+					Usage embeddingResponseUsage = hasUsage ? new DefaultUsage(inputTokens, outputTokens, totalTokens)
+							: new EmptyUsage();
 					var metadata = new EmbeddingResponseMetadata(model,embeddingResponseUsage);
-					List<Embedding> embeddings = apiEmbeddingResponse.getOutput().getEmbeddings()
-							.stream()
-							.map(e -> new Embedding(e.getEmbedding(), e.getTextIndex()))
-							.toList();
 					EmbeddingResponse embeddingResponse = new EmbeddingResponse(embeddings,metadata);
 					observationContext.setResponse(embeddingResponse);
 					return embeddingResponse;
 				});
 	}
-	
-	private DefaultUsage getDefaultUsage(DashScopeResponse.Usage usage) {
-		return new DefaultUsage(usage.getTotalTokens(), usage.getTotalTokens(),usage.getTotalTokens());
+
+	/**
+	 * 发送一个子批次，返回的textIndex加上子批次在原始输入中的偏移量，并按textIndex排序。
+	 * 响应为空或向量条数与子批次不一致时抛出{@link TransientAiException}，交给RetryTemplate重试，
+	 * 重试耗尽后整个调用失败，不会返回少于输入条数的结果
+	 */
+	private BatchResult callBatch(DashScopeEmbeddingOptions requestOptions, DashScopeEmbeddingBatcher.Batch batch) {
+		DashScopeRequest dashScopeRequest = createRequest(requestOptions, batch.texts());
+		DashScopeResponse apiEmbeddingResponse = RetryUtils.execute(this.retryTemplate, () -> {
+			DashScopeResponse response = this.dashScopeApi.embeddings(dashScopeRequest).getBody();
+			int returned = response == null || response.getOutput() == null || response.getOutput().getEmbeddings() == null
+					? 0 : response.getOutput().getEmbeddings().size();
+			if (returned != batch.texts().size()) {
+				throw new TransientAiException("Expected " + batch.texts().size() + " embeddings for batch at offset "
+						+ batch.offset() + " but got " + returned);
+			}
+			return response;
+		});
+		List<Embedding> embeddings = apiEmbeddingResponse.getOutput().getEmbeddings()
+				.stream()
+				.sorted(Comparator.comparingInt(DashScopeResponse.Embedding::getTextIndex))
+				.map(e -> new Embedding(e.getEmbedding(), batch.offset() + e.getTextIndex()))
+				.toList();
+		return new BatchResult(embeddings, apiEmbeddingResponse.getUsage());
+	}
+
+	private record BatchResult(List<Embedding> embeddings, DashScopeResponse.Usage usage) {
 	}
 	
-	private DashScopeRequest createRequest(EmbeddingRequest request) {
-		DashScopeEmbeddingOptions requestOptions = (DashScopeEmbeddingOptions)request.getOptions();
-		return DashScopeRequest.builder().model(requestOptions.getModel()).texts(request.getInstructions()).duration(requestOptions.getDimensions()).build();
+	private DashScopeRequest createRequest(DashScopeEmbeddingOptions requestOptions, List<String> texts) {
+		return DashScopeRequest.builder().model(requestOptions.getModel()).texts(texts).duration(requestOptions.getDimensions()).build();
 	}
 
 
@@ -143,6 +221,40 @@ public class DashScopeEmbeddingModel extends AbstractEmbeddingModel{
 		return new EmbeddingRequest(embeddingRequest.getInstructions(), requestOptions);
 	}
 	
+	/**
+	 * 设置分批策略
+	 * @param maxBatchSize 每批最大条数，为null时按模型取默认值（v3/v4为10，v1/v2为25）
+	 * @param maxBatchTokens 每批最大估算Token数，为null时按模型取默认值
+	 * @param batchParallelism 同时发送的子批次数
+	 */
+	public void setBatchingPolicy(Integer maxBatchSize, Integer maxBatchTokens, int batchParallelism) {
+		Assert.isTrue(maxBatchSize == null || maxBatchSize > 0, "maxBatchSize must be greater than 0");
+		Assert.isTrue(maxBatchTokens == null || maxBatchTokens > 0, "maxBatchTokens must be greater than 0");
+		Assert.isTrue(batchParallelism > 0, "batchParallelism must be greater than 0");
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchTokens = maxBatchTokens;
+		this.batchParallelism = batchParallelism;
+	}
+
+	/**
+	 * 在{@link #setBlockingExecutor(Executor)}指定的线程池中执行{@link #call(EmbeddingRequest)}
+	 * @param request 向量化请求
+	 * @return 异步结果
+	 */
+	public CompletableFuture<EmbeddingResponse> callAsync(EmbeddingRequest request) {
+		return CompletableFuture.supplyAsync(() -> call(request), this.blockingExecutor);
+	}
+
+	/**
+	 * 设置异步调用使用的线程池，例如{@link BlockingExecutors#virtualThreadPerTask(String)}，
+	 * 子批次仍然在{@link Schedulers#boundedElastic()}上并行发送，线程池可以是有界的
+	 * @param blockingExecutor 线程池
+	 */
+	public void setBlockingExecutor(Executor blockingExecutor) {
+		Assert.notNull(blockingExecutor, "blockingExecutor must not be null");
+		this.blockingExecutor = blockingExecutor;
+	}
+
 	public void setObservationConvention(EmbeddingModelObservationConvention observationConvention) {
 		Assert.notNull(observationConvention, "observationConvention cannot be null");
 		this.observationConvention = observationConvention;
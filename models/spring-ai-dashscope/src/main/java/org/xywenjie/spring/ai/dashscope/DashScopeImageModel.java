@@ -1,5 +1,6 @@
 package org.xywenjie.spring.ai.dashscope;
 
+import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,13 +17,25 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.xywenjie.spring.ai.dashscope.api.DashScopeImageApi;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeTaskTracker;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 public class DashScopeImageModel implements ImageModel {
 
@@ -42,6 +55,27 @@ public class DashScopeImageModel implements ImageModel {
     
     private final ImageModelObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    /**
+     * 所有实例共享的任务轮询调度器，只负责定时，HTTP请求本身是非阻塞的
+     */
+    private static final Scheduler TASK_POLL_SCHEDULER = Schedulers.newSingle("dashscope-image-task-poller", true);
+
+    private Duration pollInitialInterval = Duration.ofSeconds(1);
+
+    private Duration pollMaxInterval = Duration.ofSeconds(15);
+
+    private Duration pollTimeout = Duration.ofMinutes(10);
+
+    /**
+     * 设置后由共享的任务跟踪器合并轮询，不再为每个任务单独轮询
+     */
+    private DashScopeTaskTracker taskTracker;
+
+    /**
+     * 执行{@link #callBlockingAsync(ImagePrompt)}的线程池，提交任务和等待结果都在其中运行
+     */
+    private Executor blockingExecutor = BlockingExecutors.defaultExecutor();
+
     public DashScopeImageModel(DashScopeImageApi dashScopeImageApi){
         this(dashScopeImageApi,DashScopeImageOptions.builder().build(), RetryUtils.DEFAULT_RETRY_TEMPLATE);
     }
@@ -97,6 +131,128 @@ public class DashScopeImageModel implements ImageModel {
         		});
     }
 
+    /**
+     * 异步生成图像。提交任务后不占用调用线程，任务状态由共享的轮询调度器按自适应退避间隔查询，
+     * 因此单个线程即可跟踪大量未完成的任务。
+     * @param request 图像提示
+     * @return 图像响应，超过最长等待时间未完成时以{@link TimeoutException}结束
+     */
+    public Mono<ImageResponse> callAsync(ImagePrompt request) {
+        Assert.notNull(request, "Prompt must not be null");
+        Assert.isTrue(!CollectionUtils.isEmpty(request.getInstructions()), "Prompt messages must not be empty");
+        return Mono.defer(() -> {
+            DashScopeImageOptions imageOptions = toImageOptions(request.getOptions());
+            DashScopeRequest imageRequest = constructImageRequest(request, imageOptions);
+            ImageModelObservationContext observationContext = ImageModelObservationContext.builder()
+                    .imagePrompt(request)
+                    .provider("DashScope")
+                    .build();
+            Observation observation = ImageModelObservationDocumentation.IMAGE_MODEL_OPERATION
+                    .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
+                            this.observationRegistry);
+            observation.start();
+            return this.dashScopeImageApi.submitImageGenTaskAsync(imageRequest)
+                    .flatMap(submitResponse -> {
+                        String taskId = Optional.ofNullable(submitResponse.getBody())
+                                .map(DashScopeResponse::getOutput)
+                                .map(DashScopeResponse.Output::getTaskId)
+                                .orElse(null);
+                        if (taskId == null) {
+                            logger.warn("Submit imageGen error,request:{}", request);
+                            return Mono.just(new ImageResponse(List.of(), toMetadataEmpty()));
+                        }
+                        return pollImageGenTask(taskId);
+                    })
+                    .doOnNext(observationContext::setResponse)
+                    .doOnError(observation::error)
+                    .doFinally(signalType -> observation.stop());
+        });
+    }
+
+    /**
+     * 按指数退避轮询任务状态，直到任务结束或超过最长等待时间
+     */
+    private Mono<ImageResponse> pollImageGenTask(String taskId) {
+        if (this.taskTracker != null) {
+            return Mono.fromFuture(() -> this.taskTracker.track(taskId))
+                    .map(response -> "SUCCEEDED".equals(response.getOutput().getTaskStatus())
+                            ? toImageResponse(response) : new ImageResponse(List.of(), toMetadata(response)));
+        }
+        return Mono.defer(() -> this.dashScopeImageApi.getImageGenTaskResultAsync(taskId))
+                .flatMap(responseEntity -> {
+                    DashScopeResponse response = responseEntity.getBody();
+                    if (response == null || response.getOutput() == null) {
+                        return Mono.error(new TransientAiException("Image generation still pending"));
+                    }
+                    String status = response.getOutput().getTaskStatus();
+                    if ("SUCCEEDED".equals(status)) {
+                        return Mono.just(toImageResponse(response));
+                    }
+                    if ("FAILED".equals(status) || "UNKNOWN".equals(status)) {
+                        return Mono.just(new ImageResponse(List.of(), toMetadata(response)));
+                    }
+                    return Mono.error(new TransientAiException("Image generation still pending"));
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, this.pollInitialInterval)
+                        .maxBackoff(this.pollMaxInterval)
+                        .jitter(0.2)
+                        .filter(DashScopeImageModel::isRetryablePollError)
+                        .scheduler(TASK_POLL_SCHEDULER))
+                .timeout(this.pollTimeout, Mono.error(() -> new TimeoutException(
+                        "Task " + taskId + " did not finish within " + this.pollTimeout)), TASK_POLL_SCHEDULER);
+    }
+
+    private static boolean isRetryablePollError(Throwable throwable) {
+        if (throwable instanceof TransientAiException) {
+            return true;
+        }
+        return throwable instanceof WebClientResponseException responseException
+                && (responseException.getStatusCode().is5xxServerError() || responseException.getStatusCode().value() == 429);
+    }
+
+    /**
+     * 设置异步轮询策略
+     * @param initialInterval 首次轮询间隔
+     * @param maxInterval 退避后的最大轮询间隔
+     * @param timeout 最长等待时间，超过后以{@link TimeoutException}结束
+     */
+    public void setPollingPolicy(Duration initialInterval, Duration maxInterval, Duration timeout) {
+        Assert.notNull(initialInterval, "initialInterval must not be null");
+        Assert.notNull(maxInterval, "maxInterval must not be null");
+        Assert.notNull(timeout, "timeout must not be null");
+        Assert.isTrue(initialInterval.compareTo(maxInterval) <= 0, "initialInterval must not be greater than maxInterval");
+        this.pollInitialInterval = initialInterval;
+        this.pollMaxInterval = maxInterval;
+        this.pollTimeout = timeout;
+    }
+
+    /**
+     * 使用共享的任务跟踪器轮询任务状态，多个实例可以共用同一个跟踪器
+     * @param taskTracker 任务跟踪器，为null时恢复为单任务轮询
+     */
+    public void setTaskTracker(DashScopeTaskTracker taskTracker) {
+        this.taskTracker = taskTracker;
+    }
+
+    /**
+     * 在{@link #setBlockingExecutor(Executor)}指定的线程池中执行{@link #call(ImagePrompt)}，
+     * 与{@link #call(ImagePrompt)}使用相同的重试逻辑。不占用线程的轮询方式见{@link #callAsync(ImagePrompt)}
+     * @param request 图片提示词
+     * @return 异步结果
+     */
+    public CompletableFuture<ImageResponse> callBlockingAsync(ImagePrompt request) {
+        return CompletableFuture.supplyAsync(() -> call(request), this.blockingExecutor);
+    }
+
+    /**
+     * 设置异步调用使用的线程池，例如{@link BlockingExecutors#virtualThreadPerTask(String)}
+     * @param blockingExecutor 线程池
+     */
+    public void setBlockingExecutor(Executor blockingExecutor) {
+        Assert.notNull(blockingExecutor, "blockingExecutor must not be null");
+        this.blockingExecutor = blockingExecutor;
+    }
+
     public String submitImageGenTask(ImagePrompt request) {
         DashScopeImageOptions imageOptions = toImageOptions(request.getOptions());
         logger.debug("Image options:{}",imageOptions);
@@ -144,13 +300,6 @@ public class DashScopeImageModel implements ImageModel {
         return md;
     }
 
-    private ImageResponseMetadata toMetadataTimeout(String taskId){
-        ImageResponseMetadata md = new ImageResponseMetadata();
-        md.put("taskId",taskId);
-        md.put("taskStatus","TIMED_OUT");
-        return md;
-    }
-
     private ImageResponse toImageResponse(DashScopeResponse asyncResponse){
         DashScopeResponse.Output output = asyncResponse.getOutput();
         var results = output.getResults();
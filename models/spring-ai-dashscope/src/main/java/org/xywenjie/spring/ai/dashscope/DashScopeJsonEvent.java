@@ -0,0 +1,41 @@
+package org.xywenjie.spring.ai.dashscope;
+
+/**
+ * 流式输出中JSON值解析完成的事件，由{@link DashScopeJsonStreamParser}产生。
+ * <p>
+ * 对象和数组的值由{@link java.util.Map}和{@link java.util.List}表示，数字为{@link Long}或{@link Double}，
+ * 事件发出后该值不会再被修改。
+ *
+ * @param type 事件类型
+ * @param source 来源，正文为{@link #CONTENT_SOURCE}，工具参数为工具调用id
+ * @param path 值的JSON Pointer（RFC 6901），根值为空字符串
+ * @param value 完整的值
+ * @author Huang Wenjie
+ */
+public record DashScopeJsonEvent(Type type, String source, String path, Object value) {
+
+	/**
+	 * 来源为模型输出的正文
+	 */
+	public static final String CONTENT_SOURCE = "content";
+
+	public enum Type {
+
+		/**
+		 * 对象中的一个字段解析完成
+		 */
+		FIELD_COMPLETED,
+
+		/**
+		 * 数组中的一个元素解析完成
+		 */
+		ELEMENT_COMPLETED,
+
+		/**
+		 * 整个JSON文档解析完成
+		 */
+		DOCUMENT_COMPLETED
+
+	}
+
+}
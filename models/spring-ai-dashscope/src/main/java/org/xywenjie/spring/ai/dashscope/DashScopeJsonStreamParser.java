@@ -0,0 +1,363 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可续接的增量JSON解析器。
+ * <p>
+ * 每次{@link #feed(CharSequence)}只处理新到达的片段，词法和语法状态保存在解析器中，片段可以在任意字符处切分，
+ * 包括字符串、转义序列和数字的中间，已经处理过的字符不会再被扫描。每当一个对象字段、数组元素或整个文档解析完成，
+ * 就返回对应的{@link DashScopeJsonEvent}。
+ * <p>
+ * 输入不是合法JSON时解析器进入失败状态，之后的片段全部忽略，不抛出异常：模型的正文不一定是JSON。
+ * 根值解析完成后的内容（例如JSON之后的说明文字）同样被忽略，{@link #isComplete()}保持为true。
+ * 根值为数字时无法判断是否结束，不产生文档完成事件。
+ * <p>
+ * 非线程安全，每个来源使用独立的实例。
+ *
+ * @author Huang Wenjie
+ */
+public final class DashScopeJsonStreamParser {
+
+	private static final int MAX_DEPTH = 512;
+
+	private enum State {
+
+		VALUE, FIRST_KEY_OR_END, KEY, COLON, COMMA_OR_END, FIRST_VALUE_OR_END, STRING, ESCAPE, UNICODE, LITERAL, DONE, FAILED
+
+	}
+
+	private final String source;
+
+	private final Deque<Frame> frames = new ArrayDeque<>();
+
+	private final StringBuilder token = new StringBuilder();
+
+	private State state = State.VALUE;
+
+	private boolean stringIsKey;
+
+	private int unicodeDigits;
+
+	private int unicodeValue;
+
+	private List<DashScopeJsonEvent> events;
+
+	/**
+	 * @param source 事件来源，参见{@link DashScopeJsonEvent#source()}
+	 */
+	public DashScopeJsonStreamParser(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * 追加一个片段
+	 * @param fragment 新到达的字符
+	 * @return 本片段中完成的值，按完成顺序排列，内层的值在外层之前
+	 */
+	public List<DashScopeJsonEvent> feed(CharSequence fragment) {
+		if (fragment == null || this.state == State.FAILED || this.state == State.DONE) {
+			return List.of();
+		}
+		this.events = null;
+		for (int i = 0; i < fragment.length() && this.state != State.FAILED && this.state != State.DONE; i++) {
+			accept(fragment.charAt(i));
+		}
+		List<DashScopeJsonEvent> completed = this.events;
+		this.events = null;
+		return completed != null ? completed : List.of();
+	}
+
+	/**
+	 * @return 根值已经解析完成
+	 */
+	public boolean isComplete() {
+		return this.state == State.DONE;
+	}
+
+	/**
+	 * @return 输入不是合法的JSON
+	 */
+	public boolean isFailed() {
+		return this.state == State.FAILED;
+	}
+
+	private void accept(char c) {
+		switch (this.state) {
+			case DONE -> {
+				// 根值之后的内容忽略
+			}
+			case STRING -> acceptString(c);
+			case ESCAPE -> acceptEscape(c);
+			case UNICODE -> acceptUnicode(c);
+			case LITERAL -> {
+				if (isLiteralChar(c)) {
+					this.token.append(c);
+				}
+				else {
+					completeLiteral();
+					if (this.state != State.FAILED) {
+						accept(c);
+					}
+				}
+			}
+			default -> {
+				if (!isWhitespace(c)) {
+					acceptStructural(c);
+				}
+			}
+		}
+	}
+
+	private void acceptStructural(char c) {
+		switch (this.state) {
+			case VALUE -> startValue(c);
+			case FIRST_VALUE_OR_END -> {
+				if (c == ']') {
+					closeContainer();
+				}
+				else {
+					startValue(c);
+				}
+			}
+			case FIRST_KEY_OR_END, KEY -> {
+				if (c == '"') {
+					startString(true);
+				}
+				else if (c == '}' && this.state == State.FIRST_KEY_OR_END) {
+					closeContainer();
+				}
+				else {
+					fail();
+				}
+			}
+			case COLON -> {
+				if (c == ':') {
+					this.state = State.VALUE;
+				}
+				else {
+					fail();
+				}
+			}
+			case COMMA_OR_END -> {
+				Frame frame = this.frames.peek();
+				if (c == ',') {
+					this.state = frame.object != null ? State.KEY : State.VALUE;
+				}
+				else if ((c == '}' && frame.object != null) || (c == ']' && frame.array != null)) {
+					closeContainer();
+				}
+				else {
+					fail();
+				}
+			}
+			default -> fail();
+		}
+	}
+
+	private void startValue(char c) {
+		switch (c) {
+			case '{' -> openContainer(true);
+			case '[' -> openContainer(false);
+			case '"' -> startString(false);
+			default -> {
+				if (c == '-' || (c >= '0' && c <= '9') || c == 't' || c == 'f' || c == 'n') {
+					this.token.setLength(0);
+					this.token.append(c);
+					this.state = State.LITERAL;
+				}
+				else {
+					fail();
+				}
+			}
+		}
+	}
+
+	private void openContainer(boolean object) {
+		if (this.frames.size() >= MAX_DEPTH) {
+			fail();
+			return;
+		}
+		String path = childPath();
+		this.frames.push(object ? new Frame(path, new LinkedHashMap<>(), null) : new Frame(path, null, new ArrayList<>()));
+		this.state = object ? State.FIRST_KEY_OR_END : State.FIRST_VALUE_OR_END;
+	}
+
+	private void closeContainer() {
+		Frame frame = this.frames.pop();
+		complete(frame.object != null ? frame.object : frame.array);
+	}
+
+	private void startString(boolean key) {
+		this.token.setLength(0);
+		this.stringIsKey = key;
+		this.state = State.STRING;
+	}
+
+	private void acceptString(char c) {
+		if (c == '"') {
+			String value = this.token.toString();
+			if (this.stringIsKey) {
+				this.frames.peek().key = value;
+				this.state = State.COLON;
+			}
+			else {
+				complete(value);
+			}
+		}
+		else if (c == '\\') {
+			this.state = State.ESCAPE;
+		}
+		else if (c < 0x20) {
+			fail();
+		}
+		else {
+			this.token.append(c);
+		}
+	}
+
+	private void acceptEscape(char c) {
+		this.state = State.STRING;
+		switch (c) {
+			case '"', '\\', '/' -> this.token.append(c);
+			case 'b' -> this.token.append('\b');
+			case 'f' -> this.token.append('\f');
+			case 'n' -> this.token.append('\n');
+			case 'r' -> this.token.append('\r');
+			case 't' -> this.token.append('\t');
+			case 'u' -> {
+				this.unicodeDigits = 0;
+				this.unicodeValue = 0;
+				this.state = State.UNICODE;
+			}
+			default -> fail();
+		}
+	}
+
+	private void acceptUnicode(char c) {
+		int digit = Character.digit(c, 16);
+		if (digit < 0) {
+			fail();
+			return;
+		}
+		this.unicodeValue = (this.unicodeValue << 4) | digit;
+		if (++this.unicodeDigits == 4) {
+			this.token.append((char) this.unicodeValue);
+			this.state = State.STRING;
+		}
+	}
+
+	private void completeLiteral() {
+		String literal = this.token.toString();
+		switch (literal) {
+			case "true" -> complete(Boolean.TRUE);
+			case "false" -> complete(Boolean.FALSE);
+			case "null" -> complete(null);
+			default -> {
+				Number number = parseNumber(literal);
+				if (number != null) {
+					complete(number);
+				}
+				else {
+					fail();
+				}
+			}
+		}
+	}
+
+	private static Number parseNumber(String literal) {
+		try {
+			boolean integral = literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0;
+			if (integral && literal.length() < 19) {
+				return Long.parseLong(literal);
+			}
+			double value = Double.parseDouble(literal);
+			return Double.isFinite(value) ? value : null;
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * 一个值解析完成，写入所在的容器并产生事件
+	 */
+	private void complete(Object value) {
+		Frame parent = this.frames.peek();
+		if (parent == null) {
+			emit(DashScopeJsonEvent.Type.DOCUMENT_COMPLETED, "", value);
+			this.state = State.DONE;
+			return;
+		}
+		String path = childPath();
+		if (parent.object != null) {
+			parent.object.put(parent.key, value);
+			parent.key = null;
+			emit(DashScopeJsonEvent.Type.FIELD_COMPLETED, path, value);
+		}
+		else {
+			parent.array.add(value);
+			emit(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, path, value);
+		}
+		this.state = State.COMMA_OR_END;
+	}
+
+	/**
+	 * 当前正在解析的值的路径
+	 */
+	private String childPath() {
+		Frame parent = this.frames.peek();
+		if (parent == null) {
+			return "";
+		}
+		if (parent.object != null) {
+			return parent.path + '/' + parent.key.replace("~", "~0").replace("/", "~1");
+		}
+		return parent.path + '/' + parent.array.size();
+	}
+
+	private void emit(DashScopeJsonEvent.Type type, String path, Object value) {
+		if (this.events == null) {
+			this.events = new ArrayList<>();
+		}
+		this.events.add(new DashScopeJsonEvent(type, this.source, path, value));
+	}
+
+	private void fail() {
+		this.state = State.FAILED;
+		this.frames.clear();
+		this.token.setLength(0);
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static boolean isLiteralChar(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || c == '-' || c == '+' || c == '.' || c == 'E';
+	}
+
+	private static final class Frame {
+
+		private final String path;
+
+		private final Map<String, Object> object;
+
+		private final List<Object> array;
+
+		private String key;
+
+		private Frame(String path, Map<String, Object> object, List<Object> array) {
+			this.path = path;
+			this.object = object;
+			this.array = array;
+		}
+
+	}
+
+}
@@ -0,0 +1,344 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.observation.DefaultToolCallingObservationConvention;
+import org.springframework.ai.tool.observation.ToolCallingObservationContext;
+import org.springframework.ai.tool.observation.ToolCallingObservationConvention;
+import org.springframework.ai.tool.observation.ToolCallingObservationDocumentation;
+import org.springframework.ai.tool.resolution.DelegatingToolCallbackResolver;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+/**
+ * 并行执行同一轮回复中多个工具调用的{@link ToolCallingManager}。
+ * <p>
+ * qwen在一轮回复中返回多个{@code tool_calls}时（参见{@link DashScopeChatOptions.Builder#parallelToolCalls(Boolean)}），
+ * 默认实现逐个串行执行；这里把每个工具调用提交到执行器并发运行，{@link ToolResponseMessage}中的结果仍按调用顺序排列。
+ * <p>
+ * 每个工具有各自的超时，从提交到执行器开始计时，超时的调用会被中断，并作为{@link ToolExecutionException}
+ * 交给{@link ToolExecutionExceptionProcessor}处理：默认把错误信息作为工具结果返回给模型，由模型决定下一步。
+ * 工具一般是阻塞的HTTP调用，运行在Java 21及以上时推荐使用{@link BlockingExecutors#virtualThreadPerTask(String)}。
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeParallelToolCallingManager implements ToolCallingManager {
+
+	public static final Duration DEFAULT_TOOL_TIMEOUT = Duration.ofSeconds(60);
+
+	private static final ToolCallingObservationConvention DEFAULT_OBSERVATION_CONVENTION = new DefaultToolCallingObservationConvention();
+
+	private final ToolCallbackResolver toolCallbackResolver;
+
+	private final ToolExecutionExceptionProcessor toolExecutionExceptionProcessor;
+
+	private final ObservationRegistry observationRegistry;
+
+	private final Executor executor;
+
+	private final Duration defaultTimeout;
+
+	private final Map<String, Duration> toolTimeouts;
+
+	private ToolCallingObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
+
+	public DashScopeParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+			ToolExecutionExceptionProcessor toolExecutionExceptionProcessor, ObservationRegistry observationRegistry,
+			Executor executor, Duration defaultTimeout, Map<String, Duration> toolTimeouts) {
+		Assert.notNull(toolCallbackResolver, "toolCallbackResolver must not be null");
+		Assert.notNull(toolExecutionExceptionProcessor, "toolExecutionExceptionProcessor must not be null");
+		Assert.notNull(observationRegistry, "observationRegistry must not be null");
+		Assert.notNull(executor, "executor must not be null");
+		Assert.isTrue(defaultTimeout != null && !defaultTimeout.isNegative() && !defaultTimeout.isZero(),
+				"defaultTimeout must be positive");
+		Assert.notNull(toolTimeouts, "toolTimeouts must not be null");
+		this.toolCallbackResolver = toolCallbackResolver;
+		this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+		this.observationRegistry = observationRegistry;
+		this.executor = executor;
+		this.defaultTimeout = defaultTimeout;
+		this.toolTimeouts = Map.copyOf(toolTimeouts);
+	}
+
+	@Override
+	public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+		Assert.notNull(chatOptions, "chatOptions must not be null");
+		List<ToolCallback> toolCallbacks = new ArrayList<>(chatOptions.getToolCallbacks());
+		for (String toolName : chatOptions.getToolNames()) {
+			if (toolCallbacks.stream().anyMatch(tool -> tool.getToolDefinition().name().equals(toolName))) {
+				continue;
+			}
+			ToolCallback toolCallback = this.toolCallbackResolver.resolve(toolName);
+			if (toolCallback == null) {
+				throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+			}
+			toolCallbacks.add(toolCallback);
+		}
+		return toolCallbacks.stream().map(ToolCallback::getToolDefinition).toList();
+	}
+
+	@Override
+	public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+		Assert.notNull(prompt, "prompt must not be null");
+		Assert.notNull(chatResponse, "chatResponse must not be null");
+		AssistantMessage assistantMessage = chatResponse.getResults()
+			.stream()
+			.map(Generation::getOutput)
+			.filter(output -> !CollectionUtils.isEmpty(output.getToolCalls()))
+			.findFirst()
+			.orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+
+		List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+		List<ToolCallback> toolCallbacks = prompt.getOptions() instanceof ToolCallingChatOptions toolOptions
+				? toolOptions.getToolCallbacks() : List.of();
+		ToolContext toolContext = buildToolContext(prompt, assistantMessage);
+		List<PendingToolCall> pending = new ArrayList<>(toolCalls.size());
+		boolean returnDirect = true;
+		for (AssistantMessage.ToolCall toolCall : toolCalls) {
+			ToolCallback toolCallback = resolve(toolCall.name(), toolCallbacks);
+			returnDirect = returnDirect && toolCallback.getToolMetadata().returnDirect();
+			pending.add(new PendingToolCall(toolCall, toolCallback));
+		}
+
+		List<ToolResponseMessage.ToolResponse> responses = invokeAll(pending, toolContext);
+		List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+		conversationHistory.add(assistantMessage);
+		conversationHistory.add(ToolResponseMessage.builder().responses(responses).build());
+		return ToolExecutionResult.builder()
+			.conversationHistory(conversationHistory)
+			.returnDirect(returnDirect)
+			.build();
+	}
+
+	/**
+	 * 并发执行工具调用，按调用顺序等待结果，每个调用的截止时间为提交时刻加上该工具的超时
+	 */
+	private List<ToolResponseMessage.ToolResponse> invokeAll(List<PendingToolCall> pending, ToolContext toolContext) {
+		Observation parent = this.observationRegistry.getCurrentObservation();
+		List<FutureTask<String>> tasks = new ArrayList<>(pending.size());
+		long[] deadlines = new long[pending.size()];
+		try {
+			for (int i = 0; i < pending.size(); i++) {
+				PendingToolCall call = pending.get(i);
+				FutureTask<String> task = new FutureTask<>(() -> invoke(call, toolContext, parent));
+				deadlines[i] = System.nanoTime() + timeoutFor(call.toolName()).toNanos();
+				tasks.add(task);
+				this.executor.execute(task);
+			}
+			List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(pending.size());
+			for (int i = 0; i < pending.size(); i++) {
+				responses.add(pending.get(i).response(await(tasks.get(i), pending.get(i), deadlines[i])));
+			}
+			return responses;
+		}
+		finally {
+			// 出现异常时不再需要剩余的结果
+			tasks.forEach(task -> task.cancel(true));
+		}
+	}
+
+	private String await(FutureTask<String> task, PendingToolCall call, long deadline) {
+		try {
+			return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException | CancellationException ex) {
+			task.cancel(true);
+			// 默认的异常处理器会直接抛出受检异常，这里包装为运行时异常，使超时和工具自身的错误一样返回给模型
+			IllegalStateException timeout = new IllegalStateException(
+					"Tool call '" + call.toolName() + "' timed out after " + timeoutFor(call.toolName()), ex);
+			return this.toolExecutionExceptionProcessor
+				.process(new ToolExecutionException(call.toolCallback().getToolDefinition(), timeout));
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (ex.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw new IllegalStateException("Tool call '" + call.toolName() + "' failed", ex.getCause());
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for tool call '" + call.toolName() + "'", ex);
+		}
+	}
+
+	private String invoke(PendingToolCall call, ToolContext toolContext, Observation parent) {
+		String arguments = StringUtils.hasText(call.toolCall().arguments()) ? call.toolCall().arguments() : "{}";
+		ToolCallback toolCallback = call.toolCallback();
+		ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
+			.toolDefinition(toolCallback.getToolDefinition())
+			.toolMetadata(toolCallback.getToolMetadata())
+			.toolCallArguments(arguments)
+			.build();
+		return ToolCallingObservationDocumentation.TOOL_CALL
+			.observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext,
+					this.observationRegistry)
+			.parentObservation(parent)
+			.observe(() -> {
+				String result;
+				try {
+					result = toolCallback.call(arguments, toolContext);
+				}
+				catch (ToolExecutionException ex) {
+					result = this.toolExecutionExceptionProcessor.process(ex);
+				}
+				observationContext.setToolCallResult(result);
+				return result;
+			});
+	}
+
+	private ToolCallback resolve(String toolName, List<ToolCallback> toolCallbacks) {
+		ToolCallback toolCallback = toolCallbacks.stream()
+			.filter(tool -> toolName.equals(tool.getToolDefinition().name()))
+			.findFirst()
+			.orElseGet(() -> this.toolCallbackResolver.resolve(toolName));
+		if (toolCallback == null) {
+			throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+		}
+		return toolCallback;
+	}
+
+	private Duration timeoutFor(String toolName) {
+		return this.toolTimeouts.getOrDefault(toolName, this.defaultTimeout);
+	}
+
+	/**
+	 * 与默认实现一致：只有设置了工具上下文时才附带调用前的对话历史
+	 */
+	private static ToolContext buildToolContext(Prompt prompt, AssistantMessage assistantMessage) {
+		Map<String, Object> context = Map.of();
+		if (prompt.getOptions() instanceof ToolCallingChatOptions toolOptions
+				&& !CollectionUtils.isEmpty(toolOptions.getToolContext())) {
+			context = new HashMap<>(toolOptions.getToolContext());
+			List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+			history.add(assistantMessage);
+			context.put(ToolContext.TOOL_CALL_HISTORY, history);
+		}
+		return new ToolContext(context);
+	}
+
+	public void setObservationConvention(ToolCallingObservationConvention observationConvention) {
+		Assert.notNull(observationConvention, "observationConvention must not be null");
+		this.observationConvention = observationConvention;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private record PendingToolCall(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback) {
+
+		String toolName() {
+			return this.toolCall.name();
+		}
+
+		ToolResponseMessage.ToolResponse response(String result) {
+			return new ToolResponseMessage.ToolResponse(this.toolCall.id(), this.toolCall.name(),
+					result != null ? result : "");
+		}
+
+	}
+
+	public static final class Builder {
+
+		private ToolCallbackResolver toolCallbackResolver = new DelegatingToolCallbackResolver(List.of());
+
+		private ToolExecutionExceptionProcessor toolExecutionExceptionProcessor = DefaultToolExecutionExceptionProcessor
+			.builder()
+			.build();
+
+		private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+
+		private Executor executor = BlockingExecutors.defaultExecutor();
+
+		private Duration defaultTimeout = DEFAULT_TOOL_TIMEOUT;
+
+		private final Map<String, Duration> toolTimeouts = new HashMap<>();
+
+		private Builder() {
+		}
+
+		public Builder toolCallbackResolver(ToolCallbackResolver toolCallbackResolver) {
+			this.toolCallbackResolver = toolCallbackResolver;
+			return this;
+		}
+
+		public Builder toolExecutionExceptionProcessor(ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
+			this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+			return this;
+		}
+
+		public Builder observationRegistry(ObservationRegistry observationRegistry) {
+			this.observationRegistry = observationRegistry;
+			return this;
+		}
+
+		/**
+		 * @param executor 执行工具调用的线程池，有界线程池的排队时间也计入工具超时
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @param defaultTimeout 未单独设置超时的工具使用的超时，默认60秒
+		 */
+		public Builder defaultTimeout(Duration defaultTimeout) {
+			this.defaultTimeout = defaultTimeout;
+			return this;
+		}
+
+		/**
+		 * @param toolName 工具名称
+		 * @param timeout 该工具的超时
+		 */
+		public Builder toolTimeout(String toolName, Duration timeout) {
+			Assert.hasText(toolName, "toolName must not be empty");
+			Assert.isTrue(timeout != null && !timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+			this.toolTimeouts.put(toolName, timeout);
+			return this;
+		}
+
+		public DashScopeParallelToolCallingManager build() {
+			return new DashScopeParallelToolCallingManager(this.toolCallbackResolver,
+					this.toolExecutionExceptionProcessor, this.observationRegistry, this.executor,
+					this.defaultTimeout, this.toolTimeouts);
+		}
+
+	}
+
+}
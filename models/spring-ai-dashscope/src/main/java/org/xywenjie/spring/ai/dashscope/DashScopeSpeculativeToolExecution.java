@@ -0,0 +1,153 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+/**
+ * 流式输出中一轮工具调用的预执行。
+ * <p>
+ * 某个工具调用的参数已经是完整的JSON时，如果工具在{@link DashScopeChatModel#setSpeculativeToolNames(Set)}中声明为幂等，
+ * 就立即在线程池中执行，和模型后续的输出并行。本轮以{@code tool_calls}结束后，{@link #apply(Prompt)}把提示词中的工具替换为
+ * 先查预执行结果的包装，交给{@link org.springframework.ai.model.tool.ToolCallingManager}照常执行：
+ * 工具名称和参数都与预执行时一致的调用直接等待预执行的结果，其余调用仍然执行原工具。
+ * <p>
+ * 预执行时对话还没有结束，{@link ToolContext}只包含选项中的工具上下文，不包含对话历史。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeSpeculativeToolExecution {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeSpeculativeToolExecution.class);
+
+	private final Map<String, ToolCallback> toolCallbacks;
+
+	private final ToolContext toolContext;
+
+	private final Executor executor;
+
+	private final Map<String, CompletableFuture<String>> results = new ConcurrentHashMap<>();
+
+	/**
+	 * @param options 本轮的选项
+	 * @param toolNames 允许预执行的工具名称
+	 * @param executor 执行工具的线程池
+	 */
+	DashScopeSpeculativeToolExecution(DashScopeChatOptions options, Set<String> toolNames, Executor executor) {
+		this.toolCallbacks = new ConcurrentHashMap<>();
+		for (ToolCallback toolCallback : options.getToolCallbacks()) {
+			String name = toolCallback.getToolDefinition().name();
+			if (toolNames.contains(name)) {
+				this.toolCallbacks.putIfAbsent(name, toolCallback);
+			}
+		}
+		this.toolContext = new ToolContext(new HashMap<>(options.getToolContext()));
+		this.executor = executor;
+	}
+
+	/**
+	 * 提交参数已经完整的工具调用
+	 * @param toolCalls {@link DashScopeToolCallAccumulator#drainCompleted()}的结果
+	 */
+	void submit(List<DashScopeResponse.ToolCall> toolCalls) {
+		for (DashScopeResponse.ToolCall toolCall : toolCalls) {
+			String name = toolCall.getFunction().getName();
+			String arguments = toolCall.getFunction().getArguments();
+			ToolCallback toolCallback = this.toolCallbacks.get(name);
+			if (toolCallback == null) {
+				continue;
+			}
+			this.results.computeIfAbsent(key(name, arguments), key -> {
+				logger.debug("Speculatively executing tool {} for call {}", name, toolCall.getId());
+				return CompletableFuture.supplyAsync(() -> toolCallback.call(arguments, this.toolContext),
+						this.executor);
+			});
+		}
+	}
+
+	/**
+	 * @param prompt 本轮的提示词
+	 * @return 工具替换为先查预执行结果的提示词，没有预执行任何工具时返回原提示词
+	 */
+	Prompt apply(Prompt prompt) {
+		if (this.results.isEmpty() || !(prompt.getOptions() instanceof DashScopeChatOptions options)) {
+			return prompt;
+		}
+		DashScopeChatOptions speculative = options.copy();
+		speculative.setToolCallbacks(options.getToolCallbacks()
+			.stream()
+			.map(toolCallback -> this.toolCallbacks.containsKey(toolCallback.getToolDefinition().name())
+					? (ToolCallback) new SpeculativeToolCallback(toolCallback) : toolCallback)
+			.toList());
+		return new Prompt(prompt.getInstructions(), speculative);
+	}
+
+	/**
+	 * 取消还没有被使用的预执行，例如本轮出错或被取消
+	 */
+	void cancel() {
+		this.results.values().forEach(result -> result.cancel(true));
+	}
+
+	private static String key(String name, String arguments) {
+		return name + '\u0000' + arguments;
+	}
+
+	private final class SpeculativeToolCallback implements ToolCallback {
+
+		private final ToolCallback delegate;
+
+		private SpeculativeToolCallback(ToolCallback delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public ToolDefinition getToolDefinition() {
+			return this.delegate.getToolDefinition();
+		}
+
+		@Override
+		public ToolMetadata getToolMetadata() {
+			return this.delegate.getToolMetadata();
+		}
+
+		@Override
+		public String call(String toolInput) {
+			return call(toolInput, null);
+		}
+
+		@Override
+		public String call(String toolInput, ToolContext toolContext) {
+			CompletableFuture<String> result = DashScopeSpeculativeToolExecution.this.results
+				.remove(key(getToolDefinition().name(), toolInput));
+			if (result == null) {
+				return toolContext != null ? this.delegate.call(toolInput, toolContext) : this.delegate.call(toolInput);
+			}
+			try {
+				return result.join();
+			}
+			catch (CompletionException ex) {
+				if (ex.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				throw ex;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 按模型和是否开启思考（thinking=true/false）统计流式输出的延迟：
+ * <ul>
+ * <li>{@code dashscope.chat.stream.first.token}：从发出请求到收到第一个包含正文、思考过程或工具调用的chunk</li>
+ * <li>{@code dashscope.chat.stream.chunk.gap}：相邻两个chunk之间的间隔</li>
+ * <li>{@code dashscope.chat.stream.tokens.per.second}：第一个Token之后的输出速度，按最后一个chunk的输出Token数计算</li>
+ * <li>{@code dashscope.chat.stream.duration}：从发出请求到流正常结束的总耗时</li>
+ * </ul>
+ * 工具调用循环中每一轮请求单独统计。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeStreamMetrics {
+
+	private final MeterRegistry meterRegistry;
+
+	DashScopeStreamMetrics(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * 开始统计一次流式请求，在发出请求时调用
+	 * @param model 模型名称
+	 * @param thinking 是否开启思考
+	 * @return 本次请求的计时器
+	 */
+	Recorder start(String model, boolean thinking) {
+		return new Recorder(model != null ? model : "", Boolean.toString(thinking));
+	}
+
+	/**
+	 * 一次流式请求的计时状态，指标在创建时解析一次，chunk按顺序到达，非线程安全
+	 */
+	final class Recorder {
+
+		private final Timer firstTokenTimer;
+
+		private final Timer chunkGapTimer;
+
+		private final Timer durationTimer;
+
+		private final DistributionSummary tokensPerSecond;
+
+		private final long start = System.nanoTime();
+
+		private long firstToken;
+
+		private long lastChunk;
+
+		private Integer outputTokens;
+
+		private Recorder(String model, String thinking) {
+			this.firstTokenTimer = timer("dashscope.chat.stream.first.token", model, thinking);
+			this.chunkGapTimer = timer("dashscope.chat.stream.chunk.gap", model, thinking);
+			this.durationTimer = timer("dashscope.chat.stream.duration", model, thinking);
+			this.tokensPerSecond = DistributionSummary.builder("dashscope.chat.stream.tokens.per.second")
+				.tag("model", model)
+				.tag("thinking", thinking)
+				.baseUnit("tokens/s")
+				.register(DashScopeStreamMetrics.this.meterRegistry);
+		}
+
+		void onChunk(DashScopeResponse chunk) {
+			long now = System.nanoTime();
+			if (this.lastChunk != 0) {
+				this.chunkGapTimer.record(now - this.lastChunk, TimeUnit.NANOSECONDS);
+			}
+			this.lastChunk = now;
+			if (this.firstToken == 0 && hasToken(chunk)) {
+				this.firstToken = now;
+				this.firstTokenTimer.record(now - this.start, TimeUnit.NANOSECONDS);
+			}
+			if (chunk.getUsage() != null && chunk.getUsage().getOutputTokens() != null) {
+				this.outputTokens = chunk.getUsage().getOutputTokens();
+			}
+		}
+
+		void onComplete() {
+			long now = System.nanoTime();
+			this.durationTimer.record(now - this.start, TimeUnit.NANOSECONDS);
+			long generation = now - this.firstToken;
+			if (this.firstToken != 0 && this.outputTokens != null && generation > 0) {
+				this.tokensPerSecond.record(this.outputTokens * 1e9 / generation);
+			}
+		}
+
+		private Timer timer(String name, String model, String thinking) {
+			return Timer.builder(name)
+				.tag("model", model)
+				.tag("thinking", thinking)
+				.register(DashScopeStreamMetrics.this.meterRegistry);
+		}
+
+		private static boolean hasToken(DashScopeResponse chunk) {
+			if (chunk.getOutput() == null || chunk.getOutput().getChoices() == null) {
+				return false;
+			}
+			return chunk.getOutput().getChoices().stream().map(DashScopeResponse.Choice::getMessage).anyMatch(message -> {
+				if (message == null) {
+					return false;
+				}
+				Object content = message.getContent();
+				return (content instanceof String text ? StringUtils.hasLength(text) : content != null)
+						|| StringUtils.hasLength(message.getReasoningContent())
+						|| (message.getToolCalls() != null && !message.getToolCalls().isEmpty());
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,244 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.util.StringUtils;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 流式输出中工具调用片段的累加器。
+ * 按工具调用的index把arguments片段追加到各自的可增长字符缓冲区中，
+ * 只有在finish_reason为tool_calls时才通过{@link #build()}转换成字符串，
+ * 避免每个chunk都做一次字符串拼接。
+ * 追加arguments片段时顺带逐字符跟踪JSON的括号深度和字符串状态，参数的最外层对象闭合后即可通过
+ * {@link #drainCompleted()}取出，用于在整轮输出结束前提前执行工具。
+ * 该类不是线程安全的，每次流式订阅应使用独立的实例。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeToolCallAccumulator {
+
+	private static final int INITIAL_ARGUMENTS_CAPACITY = 256;
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final Map<Integer, Entry> entries = new TreeMap<>();
+
+	private final boolean jsonEvents;
+
+	private List<DashScopeJsonEvent> pendingJsonEvents;
+
+	DashScopeToolCallAccumulator() {
+		this(false);
+	}
+
+	/**
+	 * @param jsonEvents 是否用{@link DashScopeJsonStreamParser}增量解析每个工具调用的参数，
+	 * 解析出的事件通过{@link #drainJsonEvents()}取出
+	 */
+	DashScopeToolCallAccumulator(boolean jsonEvents) {
+		this.jsonEvents = jsonEvents;
+	}
+
+	/**
+	 * 追加一个工具调用片段
+	 * @param fragment 流式返回的工具调用片段
+	 */
+	void append(DashScopeResponse.ToolCall fragment) {
+		Integer index = fragment.getIndex() != null ? fragment.getIndex() : 0;
+		Entry entry = this.entries.computeIfAbsent(index, Entry::new);
+		if (entry.id == null && StringUtils.hasText(fragment.getId())) {
+			entry.id = fragment.getId();
+		}
+		if (entry.type == null && StringUtils.hasText(fragment.getType())) {
+			entry.type = fragment.getType();
+		}
+		DashScopeResponse.ChatFunction function = fragment.getFunction();
+		if (function != null) {
+			if (entry.name == null && StringUtils.hasText(function.getName())) {
+				entry.name = function.getName();
+			}
+			if (function.getArguments() != null) {
+				entry.append(function.getArguments());
+				if (this.jsonEvents) {
+					addJsonEvents(entry.parser().feed(function.getArguments()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * 追加一组工具调用片段
+	 * @param fragments 工具调用片段，允许为null
+	 */
+	void appendAll(List<DashScopeResponse.ToolCall> fragments) {
+		if (fragments == null) {
+			return;
+		}
+		for (DashScopeResponse.ToolCall fragment : fragments) {
+			append(fragment);
+		}
+	}
+
+	/**
+	 * 取出自上次调用以来参数已成为完整JSON的工具调用，每个工具调用只返回一次。
+	 * 完整指最外层的JSON对象已经闭合并且能被解析，id和工具名称也已经到达。
+	 * @return 新完成的工具调用，按index排序
+	 */
+	List<DashScopeResponse.ToolCall> drainCompleted() {
+		List<DashScopeResponse.ToolCall> completed = null;
+		for (Entry entry : this.entries.values()) {
+			if (entry.drained || !entry.closed || !StringUtils.hasText(entry.id) || !StringUtils.hasText(entry.name)) {
+				continue;
+			}
+			entry.drained = true;
+			String arguments = entry.arguments.toString();
+			if (!isValidJson(arguments)) {
+				continue;
+			}
+			if (completed == null) {
+				completed = new ArrayList<>();
+			}
+			completed.add(new DashScopeResponse.ToolCall(entry.index, entry.type, entry.id,
+					new DashScopeResponse.ChatFunction(entry.name, arguments)));
+		}
+		return completed != null ? completed : List.of();
+	}
+
+	/**
+	 * 取出自上次调用以来工具参数中解析完成的JSON事件，事件来源为工具调用id
+	 * @return 按到达顺序排列的事件
+	 */
+	List<DashScopeJsonEvent> drainJsonEvents() {
+		List<DashScopeJsonEvent> events = this.pendingJsonEvents;
+		this.pendingJsonEvents = null;
+		return events != null ? events : List.of();
+	}
+
+	private void addJsonEvents(List<DashScopeJsonEvent> events) {
+		if (events.isEmpty()) {
+			return;
+		}
+		if (this.pendingJsonEvents == null) {
+			this.pendingJsonEvents = new ArrayList<>(events);
+		}
+		else {
+			this.pendingJsonEvents.addAll(events);
+		}
+	}
+
+	private static boolean isValidJson(String json) {
+		try {
+			OBJECT_MAPPER.readTree(json);
+			return true;
+		}
+		catch (JsonProcessingException ex) {
+			return false;
+		}
+	}
+
+	boolean isEmpty() {
+		return this.entries.isEmpty();
+	}
+
+	/**
+	 * 按index顺序生成完整的工具调用列表
+	 * @return 合并后的工具调用
+	 */
+	List<DashScopeResponse.ToolCall> build() {
+		List<DashScopeResponse.ToolCall> toolCalls = new ArrayList<>(this.entries.size());
+		for (Entry entry : this.entries.values()) {
+			DashScopeResponse.ChatFunction function = new DashScopeResponse.ChatFunction(entry.name,
+					entry.arguments.toString());
+			toolCalls.add(new DashScopeResponse.ToolCall(entry.index, entry.type, entry.id, function));
+		}
+		return toolCalls;
+	}
+
+	void clear() {
+		this.entries.clear();
+		this.pendingJsonEvents = null;
+	}
+
+	private static final class Entry {
+
+		private final Integer index;
+
+		private final StringBuilder arguments = new StringBuilder(INITIAL_ARGUMENTS_CAPACITY);
+
+		private String id;
+
+		private String type;
+
+		private String name;
+
+		private int depth;
+
+		private boolean inString;
+
+		private boolean escaped;
+
+		/**
+		 * 最外层的JSON值已经闭合
+		 */
+		private boolean closed;
+
+		private boolean drained;
+
+		private DashScopeJsonStreamParser parser;
+
+		private Entry(Integer index) {
+			this.index = index;
+		}
+
+		private DashScopeJsonStreamParser parser() {
+			if (this.parser == null) {
+				this.parser = new DashScopeJsonStreamParser(this.id);
+			}
+			return this.parser;
+		}
+
+		private void append(String fragment) {
+			this.arguments.append(fragment);
+			for (int i = 0; i < fragment.length(); i++) {
+				track(fragment.charAt(i));
+			}
+		}
+
+		private void track(char c) {
+			if (this.inString) {
+				if (this.escaped) {
+					this.escaped = false;
+				}
+				else if (c == '\\') {
+					this.escaped = true;
+				}
+				else if (c == '"') {
+					this.inString = false;
+				}
+				return;
+			}
+			switch (c) {
+				case '"' -> this.inString = true;
+				case '{', '[' -> {
+					this.depth++;
+					// 闭合后又出现新的值，说明参数不是单个JSON值
+					this.closed = false;
+				}
+				case '}', ']' -> {
+					this.depth--;
+					this.closed = this.depth == 0;
+				}
+				default -> {
+				}
+			}
+		}
+	}
+
+}
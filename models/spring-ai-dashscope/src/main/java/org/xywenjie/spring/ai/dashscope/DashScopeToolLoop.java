@@ -0,0 +1,149 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+
+/**
+ * 一次聊天调用的工具调用循环状态。
+ * <p>
+ * 同步调用用while循环、流式调用用{@code repeat}驱动，每轮只持有当前的提示词和上一轮的响应（用于累计Token用量），
+ * 调用栈深度和保留的中间响应都不随轮数增长。超过最大轮数时抛出{@link IllegalStateException}。
+ * <p>
+ * 设置了保留的工具轮数时，提示词由初始消息加上最近几轮的工具调用组成，每轮只追加新的助手消息和工具结果，
+ * 并按轮整体丢弃最早的工具调用，保证每个工具结果之前都有对应的工具调用消息。
+ * <p>
+ * 非线程安全，同一时刻只有一轮在执行。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeToolLoop {
+
+	private final String model;
+
+	private final int maxRounds;
+
+	private final int historyRounds;
+
+	private final DashScopeToolLoopMetrics metrics;
+
+	private final List<Message> initialMessages;
+
+	private final Deque<List<Message>> toolRounds = new ArrayDeque<>();
+
+	private Prompt prompt;
+
+	private ChatResponse previousResponse;
+
+	private int rounds;
+
+	private long roundStart;
+
+	private boolean finished;
+
+	/**
+	 * @param prompt 初始提示词
+	 * @param previousResponse 上一次的响应，没有时为null
+	 * @param maxRounds 最多执行的工具轮数
+	 * @param historyRounds 提示词中保留的最近工具轮数，0表示全部保留
+	 * @param metrics 指标
+	 */
+	DashScopeToolLoop(Prompt prompt, ChatResponse previousResponse, int maxRounds, int historyRounds,
+			DashScopeToolLoopMetrics metrics) {
+		this.model = prompt.getOptions() != null ? prompt.getOptions().getModel() : null;
+		this.prompt = prompt;
+		this.previousResponse = previousResponse;
+		this.maxRounds = maxRounds;
+		this.historyRounds = historyRounds;
+		this.metrics = metrics;
+		this.initialMessages = List.copyOf(prompt.getInstructions());
+	}
+
+	Prompt prompt() {
+		return this.prompt;
+	}
+
+	ChatResponse previousResponse() {
+		return this.previousResponse;
+	}
+
+	boolean isFinished() {
+		return this.finished;
+	}
+
+	/**
+	 * 开始新的一轮，没有执行工具时这一轮就是最后一轮
+	 */
+	void beginRound() {
+		this.finished = true;
+		this.roundStart = System.nanoTime();
+	}
+
+	/**
+	 * 执行响应中的工具调用并准备下一轮的提示词
+	 * @param toolCallingManager 工具执行
+	 * @param response 本轮包含工具调用的响应
+	 * @return 工具要求直接返回结果时为最终响应，否则为null，需要继续下一轮
+	 */
+	ChatResponse executeTools(ToolCallingManager toolCallingManager, ChatResponse response) {
+		return executeTools(toolCallingManager, this.prompt, response);
+	}
+
+	/**
+	 * 用指定的提示词执行工具调用，下一轮的提示词仍然使用当前提示词的选项
+	 * @param toolCallingManager 工具执行
+	 * @param executionPrompt 执行工具时使用的提示词，例如替换了预执行工具的提示词
+	 * @param response 本轮包含工具调用的响应
+	 * @return 工具要求直接返回结果时为最终响应，否则为null，需要继续下一轮
+	 */
+	ChatResponse executeTools(ToolCallingManager toolCallingManager, Prompt executionPrompt, ChatResponse response) {
+		if (this.rounds >= this.maxRounds) {
+			throw new IllegalStateException("Tool calling exceeded the maximum of " + this.maxRounds + " rounds");
+		}
+		this.rounds++;
+		ToolExecutionResult result = toolCallingManager.executeToolCalls(executionPrompt, response);
+		this.metrics.recordRound(this.model, Duration.ofNanos(System.nanoTime() - this.roundStart));
+		if (result.returnDirect()) {
+			return ChatResponse.builder()
+				.from(response)
+				.generations(ToolExecutionResult.buildGenerations(result))
+				.build();
+		}
+		this.prompt = new Prompt(nextMessages(result.conversationHistory()), this.prompt.getOptions());
+		this.previousResponse = response;
+		this.finished = false;
+		return null;
+	}
+
+	/**
+	 * 循环结束时记录执行的轮数
+	 */
+	void complete() {
+		if (this.rounds > 0) {
+			this.metrics.recordRounds(this.model, this.rounds);
+		}
+	}
+
+	private List<Message> nextMessages(List<Message> history) {
+		int previousSize = this.prompt.getInstructions().size();
+		if (this.historyRounds <= 0 || history.size() < previousSize) {
+			return history;
+		}
+		this.toolRounds.addLast(List.copyOf(history.subList(previousSize, history.size())));
+		while (this.toolRounds.size() > this.historyRounds) {
+			this.toolRounds.removeFirst();
+		}
+		List<Message> messages = new ArrayList<>(this.initialMessages);
+		this.toolRounds.forEach(messages::addAll);
+		return messages;
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.time.Duration;
+
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 按模型统计工具调用循环：
+ * <ul>
+ * <li>{@code dashscope.chat.tool.round}：每轮的耗时，包括模型返回工具调用和执行工具</li>
+ * <li>{@code dashscope.chat.tool.rounds}：每次调用执行了多少轮工具</li>
+ * </ul>
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeToolLoopMetrics {
+
+	private final MeterRegistry meterRegistry;
+
+	DashScopeToolLoopMetrics(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.meterRegistry = meterRegistry;
+	}
+
+	void recordRound(String model, Duration duration) {
+		Timer.builder("dashscope.chat.tool.round")
+			.tag("model", model != null ? model : "")
+			.register(this.meterRegistry)
+			.record(duration);
+	}
+
+	void recordRounds(String model, int rounds) {
+		DistributionSummary.builder("dashscope.chat.tool.rounds")
+			.tag("model", model != null ? model : "")
+			.baseUnit("rounds")
+			.register(this.meterRegistry)
+			.record(rounds);
+	}
+
+}
@@ -1,12 +1,11 @@
 package org.xywenjie.spring.ai.dashscope.api;
 
 import java.io.IOException;
-import java.net.http.HttpClient;
-import java.time.Duration;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -21,12 +20,12 @@ import org.springframework.ai.retry.RetryUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.http.client.reactive.JdkClientHttpConnector;
 import org.springframework.util.*;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeMedia;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
 
@@ -42,6 +41,11 @@ public class DashScopeApi {
 
 	private static final Logger log = LoggerFactory.getLogger(DashScopeApi.class);
 
+	/**
+	 * 仅用于日志输出的ObjectMapper，会截断过长的字符串（如base64图片）
+	 */
+	private static final ObjectMapper LOG_OBJECT_MAPPER = createLogObjectMapper();
+
 	public static Builder builder() {
 		return new Builder();
 	}
@@ -62,6 +66,10 @@ public class DashScopeApi {
 
 	private final WebClient webClient;
 
+	private final double bodyLogSampleRate;
+
+	private final DashScopeBulkheads bulkheads;
+
 	/**
 	 * 构造函数，用于初始化DashScopeApi实例。
 	 * 设置API的基本配置，包括基础URL、认证密钥、HTTP头、客户端构建器等。
@@ -77,8 +85,34 @@ public class DashScopeApi {
 	public DashScopeApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, String completionsPath,
 			RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
 			ResponseErrorHandler responseErrorHandler) {
+		this(baseUrl, apiKey, headers, completionsPath, restClientBuilder, webClientBuilder, responseErrorHandler, 0.0);
+	}
+
+	/**
+	 * 构造函数，允许指定请求/响应体日志的采样率。
+	 *
+	 * @param bodyLogSampleRate 请求/响应体日志采样率，取值范围[0,1]，0表示关闭，1表示每次都记录
+	 */
+	public DashScopeApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, String completionsPath,
+			RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
+			ResponseErrorHandler responseErrorHandler, double bodyLogSampleRate) {
+		this(baseUrl, apiKey, headers, completionsPath, restClientBuilder, webClientBuilder, responseErrorHandler,
+				bodyLogSampleRate, null);
+	}
+
+	/**
+	 * 构造函数，允许按模型配置并发隔离舱。
+	 *
+	 * @param bulkheads 按模型划分的并发隔离舱，为null时不限制并发
+	 */
+	public DashScopeApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, String completionsPath,
+			RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
+			ResponseErrorHandler responseErrorHandler, double bodyLogSampleRate, DashScopeBulkheads bulkheads) {
+		Assert.isTrue(bodyLogSampleRate >= 0.0 && bodyLogSampleRate <= 1.0, "bodyLogSampleRate must be between 0 and 1");
 		this.apiKey = apiKey;
 		this.completionsPath = completionsPath;
+		this.bodyLogSampleRate = bodyLogSampleRate;
+		this.bulkheads = bulkheads;
 		Consumer<HttpHeaders> finalHeaders = h -> {
 			if (!(apiKey instanceof NoopApiKey)) {
 				h.setBearerAuth(apiKey.getValue());
@@ -108,18 +142,44 @@ public class DashScopeApi {
 		Assert.notNull(chatRequest, "The request body can not be null.");
 		//Assert.isTrue(!chatRequest.stream(), "Request must set the stream property to false.");
 		Assert.notNull(additionalHttpHeader, "The additional HTTP headers can not be null.");
+		DashScopeBulkhead bulkhead = bulkheadFor(chatRequest);
+		if (bulkhead != null) {
+			return bulkhead.execute(() -> doChatCompletionEntity(chatRequest, additionalHttpHeader));
+		}
+		return doChatCompletionEntity(chatRequest, additionalHttpHeader);
+	}
+
+	private ResponseEntity<DashScopeResponse> doChatCompletionEntity(DashScopeRequest chatRequest,
+			HttpHeaders additionalHttpHeader) {
 		String requestUri = chatRequest.getModel().contains("vl") || chatRequest.getModel().contains("tts") ? this.multimodelPath : this.completionsPath;
-		log.info("提交参数：body:{}", toJsonStringForLog(chatRequest));
-		ResponseEntity<String> stringResponseEntity = this.restClient.post().uri(requestUri).headers(headers -> {
+		boolean logBody = isBodyLogSampled();
+		if (logBody) {
+			log.info("提交参数：body:{}", toJsonStringForLog(chatRequest));
+		}
+		RestClient.ResponseSpec responseSpec = this.restClient.post().uri(requestUri).headers(headers -> {
 					headers.addAll(additionalHttpHeader);
-					//headers.setBearerAuth(apiKey.getValue());
-					//log.info("Header:{}",headers);
 				})
-				.body(chatRequest).retrieve().toEntity(String.class);
+				.body(chatRequest).retrieve();
+		if (!logBody) {
+			// 直接从响应字节流反序列化，避免先读成String再解析一遍
+			return responseSpec.toEntity(DashScopeResponse.class);
+		}
+		ResponseEntity<String> stringResponseEntity = responseSpec.toEntity(String.class);
 		String body = stringResponseEntity.getBody();
 		log.info("Response Body: {}",body);
-		DashScopeResponse dashScopeResponse = ModelOptionsUtils.jsonToObject(body,DashScopeResponse.class);
-		return ResponseEntity.ok(dashScopeResponse);
+		DashScopeResponse dashScopeResponse = body != null ? ModelOptionsUtils.jsonToObject(body,DashScopeResponse.class) : null;
+		return new ResponseEntity<>(dashScopeResponse, stringResponseEntity.getHeaders(), stringResponseEntity.getStatusCode());
+	}
+
+	/**
+	 * 按采样率决定本次调用是否记录请求/响应体。
+	 * @return 是否记录
+	 */
+	private boolean isBodyLogSampled() {
+		if (this.bodyLogSampleRate <= 0.0 || !log.isInfoEnabled()) {
+			return false;
+		}
+		return this.bodyLogSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < this.bodyLogSampleRate;
 	}
 
 	public Flux<DashScopeResponse> chatCompletionStream(DashScopeRequest chatRequest) {
@@ -139,10 +199,17 @@ public class DashScopeApi {
 		//Assert.isTrue(chatRequest.stream(), "Request must set the stream property to true.");
 		additionalHttpHeader.add("X-DashScope-SSE", "enable");
 		String requestUri = chatRequest.getModel().contains("vl") || chatRequest.getModel().contains("tts") ? this.multimodelPath : this.completionsPath;
-		return this.webClient.post().uri(requestUri).headers(headers -> headers.addAll(additionalHttpHeader))
+		Flux<DashScopeResponse> stream = this.webClient.post().uri(requestUri).headers(headers -> headers.addAll(additionalHttpHeader))
 				.body(Mono.just(chatRequest), DashScopeRequest.class).retrieve()
 				.bodyToFlux(DashScopeResponse.class);
 				//.doOnNext(rawJson -> log.info("流返回JSON块：{}",rawJson)).map(rawJson -> ModelOptionsUtils.jsonToObject(rawJson,DashScopeResponse.class));
+		DashScopeBulkhead bulkhead = bulkheadFor(chatRequest);
+		// 流式请求在整个流结束前一直占用许可
+		return bulkhead != null ? bulkhead.executeFlux(() -> stream) : stream;
+	}
+
+	private DashScopeBulkhead bulkheadFor(DashScopeRequest request) {
+		return this.bulkheads != null ? this.bulkheads.forModel(request.getModel()) : null;
 	}
 
 	public enum ChatModel implements ChatModelDescription {
@@ -172,6 +239,14 @@ public class DashScopeApi {
 		
 		Assert.notNull(request.getInput(), "The input can not be null.");
 		
+		DashScopeBulkhead bulkhead = bulkheadFor(request);
+		if (bulkhead != null) {
+			return bulkhead.execute(() -> doEmbeddings(request));
+		}
+		return doEmbeddings(request);
+	}
+
+	private ResponseEntity<DashScopeResponse> doEmbeddings(DashScopeRequest request) {
 		return this.restClient.post()
 				.uri(this.embeddingsPath)
 				.headers(this::addDefaultHeadersIfMissing)
@@ -197,12 +272,22 @@ public class DashScopeApi {
 		
 		private String multimodelPath = "/api/v1/services/aigc/multimodal-generation/generation";
 
-		private RestClient.Builder restClientBuilder = RestClient.builder();
+		private RestClient.Builder restClientBuilder;
 
-		private WebClient.Builder webClientBuilder = WebClient.builder();
+		private WebClient.Builder webClientBuilder;
 
 		private ResponseErrorHandler responseErrorHandler = RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER;
 
+		private double bodyLogSampleRate = 0.0;
+
+		private DashScopeRateLimiter rateLimiter;
+
+		private DashScopeBulkheads bulkheads;
+
+		private DashScopeTransport transport;
+
+		private DashScopeRequestCompressor requestCompressor;
+
 		public Builder baseUrl(String baseUrl) {
 			Assert.hasText(baseUrl, "baseUrl cannot be null or empty");
 			this.baseUrl = baseUrl;
@@ -239,42 +324,104 @@ public class DashScopeApi {
 			return this;
 		}
 
+		/**
+		 * 设置请求/响应体日志的采样率，默认0（不记录）。
+		 * @param bodyLogSampleRate 采样率，取值范围[0,1]
+		 * @return 构建器实例
+		 */
+		public Builder bodyLogSampleRate(double bodyLogSampleRate) {
+			Assert.isTrue(bodyLogSampleRate >= 0.0 && bodyLogSampleRate <= 1.0, "bodyLogSampleRate must be between 0 and 1");
+			this.bodyLogSampleRate = bodyLogSampleRate;
+			return this;
+		}
+
+		/**
+		 * 设置客户端限流器，可以与其它API实例共享
+		 * @param rateLimiter 限流器
+		 * @return 构建器实例
+		 */
+		public Builder rateLimiter(DashScopeRateLimiter rateLimiter) {
+			this.rateLimiter = rateLimiter;
+			return this;
+		}
+
+		/**
+		 * 设置按模型划分的并发隔离舱
+		 * @param bulkheads 并发隔离舱
+		 * @return 构建器实例
+		 */
+		public Builder bulkheads(DashScopeBulkheads bulkheads) {
+			this.bulkheads = bulkheads;
+			return this;
+		}
+
+		/**
+		 * 使用共享的传输层（连接池、超时、HTTP/2），会覆盖RestClient和WebClient构建器上的客户端配置
+		 * @param transport 传输层，可以与其它API实例共享
+		 * @return 构建器实例
+		 */
+		public Builder transport(DashScopeTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * 对较大的请求体（例如内联了base64图片、音频的多模态请求）做gzip压缩
+		 * @param requestCompressor 请求体压缩器，可以与其它API实例共享
+		 * @return 构建器实例
+		 */
+		public Builder requestCompressor(DashScopeRequestCompressor requestCompressor) {
+			this.requestCompressor = requestCompressor;
+			return this;
+		}
+
 		public DashScopeApi build() {
 			Assert.notNull(this.apiKey, "apiKey must be set");
-			HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
-			JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
-			requestFactory.setReadTimeout(Duration.ofSeconds(155));
-			this.restClientBuilder.requestFactory(requestFactory);
+			RestClient.Builder restClientBuilder = DashScopeHttpClients.restClientBuilder(this.restClientBuilder,
+					this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
+			WebClient.Builder webClientBuilder = DashScopeHttpClients.webClientBuilder(this.webClientBuilder,
+					this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
 			return new DashScopeApi(this.baseUrl, this.apiKey, this.headers, this.completionsPath,
-					this.restClientBuilder, this.webClientBuilder, this.responseErrorHandler);
+					restClientBuilder, webClientBuilder, this.responseErrorHandler, this.bodyLogSampleRate, this.bulkheads);
 		}
 	}
 
 	private String toJsonStringForLog(Object obj){
 		try{
-			ObjectMapper objectMapper = new ObjectMapper();
-			SimpleModule simpleModule = new SimpleModule();
-			simpleModule.addSerializer(String.class, new JsonSerializer<String>() {
-				@Override
-				public void serialize(String value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
-					if(value != null){
-						//
-						if(value.startsWith("data:image/") && value.length() > 200){
-							gen.writeString("[DATA IMAGE TRUNCATED:"+value.substring(0,60)+"]");
-							return;
-						}
-						if(value.length() > 500){
-							gen.writeString("[LONG STRING TRUNCATED:"+value.substring(0,100)+"]");
-							return;
-						}
-					}
-					gen.writeString(value);
-				}
-			});
-			objectMapper.registerModule(simpleModule);
-			return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(obj);
+			return LOG_OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(obj);
 		}catch (Exception e){
 			return "[LONG ERROR]"+e.getMessage();
 		}
 	}
+
+	private static ObjectMapper createLogObjectMapper(){
+		ObjectMapper objectMapper = new ObjectMapper();
+		SimpleModule simpleModule = new SimpleModule();
+		simpleModule.addSerializer(String.class, new JsonSerializer<String>() {
+			@Override
+			public void serialize(String value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+				if(value != null){
+					//
+					if(value.startsWith("data:image/") && value.length() > 200){
+						gen.writeString("[DATA IMAGE TRUNCATED:"+value.substring(0,60)+"]");
+						return;
+					}
+					if(value.length() > 500){
+						gen.writeString("[LONG STRING TRUNCATED:"+value.substring(0,100)+"]");
+						return;
+					}
+				}
+				gen.writeString(value);
+			}
+		});
+		// 日志中不读取媒体数据源
+		simpleModule.addSerializer(DashScopeMedia.class, new JsonSerializer<DashScopeMedia>() {
+			@Override
+			public void serialize(DashScopeMedia value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+				gen.writeString("[MEDIA " + (value.getMimeType() != null ? value.getMimeType() : "base64") + "]");
+			}
+		});
+		objectMapper.registerModule(simpleModule);
+		return objectMapper;
+	}
 }
@@ -11,7 +11,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.model.ApiKey;
 import org.springframework.ai.model.NoopApiKey;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
@@ -23,19 +28,29 @@ import org.springframework.web.reactive.socket.client.WebSocketClient;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
 
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.net.URI;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 import java.util.function.Consumer;
 
 /**
  * 阿里云DashScope音频API客户端
  * 支持文本转语音(TTS)功能
+ * <p>
+ * 下载音频使用独立的连接池，不再使用时调用{@link #close()}释放
  * 
  * @author Huang Wenjie(黄文杰)
  */
-public class DashScopeAudioApi {
+public class DashScopeAudioApi implements AutoCloseable {
 	
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -54,13 +69,66 @@ public class DashScopeAudioApi {
 	 */
 	private final WebSocketClient webSocketClient;
 
+	/**
+	 * 下载合成音频用的Web客户端，音频URL是带签名的OSS地址，不附带鉴权请求头
+	 */
+	private final WebClient downloadClient;
+
+	/**
+	 * 下载音频的连接池，每个实例独占
+	 */
+	private final ConnectionProvider downloadConnectionProvider;
+
+	public static final Duration DEFAULT_DOWNLOAD_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	public static final Duration DEFAULT_DOWNLOAD_READ_TIMEOUT = Duration.ofSeconds(60);
+
+	public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 50;
+
+	/**
+	 * 流式音频解码使用的池化缓冲区
+	 */
+	private static final DataBufferFactory AUDIO_BUFFER_FACTORY = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
 	/**
 	 * JSON对象映射器，用于JSON序列化和反序列化
 	 */
 	private final ObjectMapper objectMapper = new ObjectMapper();
 
+	/**
+	 * 按模型划分的并发隔离舱，为null时不限制并发
+	 */
+	private final DashScopeBulkheads bulkheads;
+
 	public DashScopeAudioApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,
 			WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler) {
+		this(baseUrl, apiKey, headers, restClientBuilder, webClientBuilder, responseErrorHandler,
+				DEFAULT_DOWNLOAD_CONNECT_TIMEOUT, DEFAULT_DOWNLOAD_READ_TIMEOUT, DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+	}
+
+	/**
+	 * @param downloadConnectTimeout 下载音频的连接超时
+	 * @param downloadReadTimeout 下载音频的读超时，两次读到数据之间的最长间隔
+	 * @param maxConcurrentDownloads 下载连接池的最大连接数，超出的下载排队等待
+	 */
+	public DashScopeAudioApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,
+			WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler,
+			Duration downloadConnectTimeout, Duration downloadReadTimeout, int maxConcurrentDownloads) {
+		this(baseUrl, apiKey, headers, restClientBuilder, webClientBuilder, responseErrorHandler, downloadConnectTimeout,
+				downloadReadTimeout, maxConcurrentDownloads, null);
+	}
+
+	/**
+	 * @param bulkheads 按模型划分的并发隔离舱，为null时不限制并发
+	 */
+	public DashScopeAudioApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,
+			WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler,
+			Duration downloadConnectTimeout, Duration downloadReadTimeout, int maxConcurrentDownloads,
+			DashScopeBulkheads bulkheads) {
+		Assert.notNull(downloadConnectTimeout, "downloadConnectTimeout must not be null");
+		Assert.notNull(downloadReadTimeout, "downloadReadTimeout must not be null");
+		Assert.isTrue(maxConcurrentDownloads > 0, "maxConcurrentDownloads must be greater than 0");
+		this.bulkheads = bulkheads;
 		Consumer<HttpHeaders> authHeaders = h -> h.addAll(HttpHeaders.readOnlyHttpHeaders(headers));
 
 		this.restClient = restClientBuilder.clone().baseUrl(baseUrl).defaultHeaders(authHeaders)
@@ -78,6 +146,19 @@ public class DashScopeAudioApi {
 				}).build();
 
 		webSocketClient = new ReactorNettyWebSocketClient();
+
+		this.downloadConnectionProvider = ConnectionProvider.builder("dashscope-audio-download")
+				.maxConnections(maxConcurrentDownloads)
+				.pendingAcquireTimeout(downloadReadTimeout)
+				.maxIdleTime(Duration.ofSeconds(30))
+				.build();
+		// responseTimeout只作用于进行中的请求，归还到连接池的空闲连接不受影响
+		HttpClient httpClient = HttpClient.create(this.downloadConnectionProvider)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) downloadConnectTimeout.toMillis())
+				.responseTimeout(downloadReadTimeout);
+		this.downloadClient = WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(httpClient))
+				.build();
 	}
 
 	/**
@@ -95,6 +176,14 @@ public class DashScopeAudioApi {
 	 */
 	public ResponseEntity<DashScopeResponse> createSpeech(DashScopeRequest request) {
 		Assert.isTrue(request.getModel().equals("qwen3-tts-flash"), "Only qwen3-tts-flash supported here");
+		DashScopeBulkhead bulkhead = bulkheadFor(request);
+		if (bulkhead != null) {
+			return bulkhead.execute(() -> doCreateSpeech(request));
+		}
+		return doCreateSpeech(request);
+	}
+
+	private ResponseEntity<DashScopeResponse> doCreateSpeech(DashScopeRequest request) {
 		return this.restClient.post().uri("/api/v1/services/aigc/multimodal-generation/generation").body(request)
 				.retrieve().toEntity(DashScopeResponse.class);
 	}
@@ -106,13 +195,98 @@ public class DashScopeAudioApi {
 	 */
 	public Flux<ResponseEntity<DashScopeResponse>> stream(DashScopeRequest requestBody) {
 		Assert.isTrue(requestBody.getModel().equals("qwen3-tts-flash"), "Only qwen3-tts-flash supported here");
-		return this.webClient.post().uri("/api/v1/services/aigc/multimodal-generation/generation")
+		Flux<ResponseEntity<DashScopeResponse>> stream = this.webClient.post()
+				.uri("/api/v1/services/aigc/multimodal-generation/generation")
 				.body(Mono.just(requestBody), DashScopeRequest.class).accept(MediaType.APPLICATION_JSON)
 				.exchangeToFlux(clientResponse -> {
 					HttpHeaders headers = clientResponse.headers().asHttpHeaders();
 					return clientResponse.bodyToFlux(DashScopeResponse.class)
 							.map(response -> ResponseEntity.ok().headers(headers).body(response));
 				});
+		return withBulkhead(requestBody, stream);
+	}
+
+	/**
+	 * 流式创建语音，只取出音频数据：{@code output.audio.data}从响应体直接解码到池化缓冲区，
+	 * 不生成base64字符串和中间的{@link DashScopeResponse}对象，不含音频的分片被跳过
+	 * @param requestBody 语音请求参数
+	 * @return 音频分片，响应头随每个分片返回；缓冲区来自池化分配器，使用后需要释放
+	 */
+	public Flux<ResponseEntity<DataBuffer>> streamAudio(DashScopeRequest requestBody) {
+		Assert.isTrue(requestBody.getModel().equals("qwen3-tts-flash"), "Only qwen3-tts-flash supported here");
+		Flux<ResponseEntity<DataBuffer>> stream = this.webClient.post()
+				.uri("/api/v1/services/aigc/multimodal-generation/generation")
+				.body(Mono.just(requestBody), DashScopeRequest.class).accept(MediaType.APPLICATION_JSON)
+				.exchangeToFlux(clientResponse -> {
+					if (clientResponse.statusCode().isError()) {
+						return clientResponse.createException().flatMapMany(Flux::error);
+					}
+					HttpHeaders headers = clientResponse.headers().asHttpHeaders();
+					return DashScopeAudioStreamDecoder.decode(clientResponse.bodyToFlux(DataBuffer.class), AUDIO_BUFFER_FACTORY)
+							.map(audio -> ResponseEntity.ok().headers(headers).body(audio));
+				});
+		return withBulkhead(requestBody, stream);
+	}
+
+	/**
+	 * 流式请求在整个流结束前一直占用许可
+	 */
+	private <T> Flux<T> withBulkhead(DashScopeRequest request, Flux<T> stream) {
+		DashScopeBulkhead bulkhead = bulkheadFor(request);
+		return bulkhead != null ? bulkhead.executeFlux(() -> stream) : stream;
+	}
+
+	private DashScopeBulkhead bulkheadFor(DashScopeRequest request) {
+		return this.bulkheads != null ? this.bulkheads.forModel(request.getModel()) : null;
+	}
+
+	/**
+	 * 以流的方式下载合成的音频，数据块来自连接池的池化缓冲区，使用后需要释放
+	 * @param url 语音合成返回的音频地址
+	 * @return 音频数据流
+	 */
+	public Flux<DataBuffer> downloadAudio(String url) {
+		Assert.hasText(url, "url must not be empty");
+		return this.downloadClient.get().uri(URI.create(url)).retrieve().bodyToFlux(DataBuffer.class);
+	}
+
+	/**
+	 * 下载音频并写入调用方提供的通道，写入后释放缓冲区
+	 * @param url 语音合成返回的音频地址
+	 * @param channel 目标通道，由调用方负责关闭
+	 * @return 写入的字节数
+	 */
+	public Mono<Long> downloadAudio(String url, WritableByteChannel channel) {
+		Assert.notNull(channel, "channel must not be null");
+		return DataBufferUtils.write(downloadAudio(url), channel)
+				.map(buffer -> {
+					long size = buffer.readableByteCount();
+					DataBufferUtils.release(buffer);
+					return size;
+				})
+				.reduce(0L, Long::sum);
+	}
+
+	/**
+	 * 下载音频并写入文件，文件已存在时会被覆盖
+	 * @param url 语音合成返回的音频地址
+	 * @param path 目标文件
+	 */
+	public Mono<Void> downloadAudio(String url, Path path) {
+		Assert.notNull(path, "path must not be null");
+		return DataBufferUtils.write(downloadAudio(url), path);
+	}
+
+	public ConnectionProvider getDownloadConnectionProvider() {
+		return this.downloadConnectionProvider;
+	}
+
+	/**
+	 * 关闭下载音频的连接池
+	 */
+	@Override
+	public void close() {
+		this.downloadConnectionProvider.dispose();
 	}
 
 	/**
@@ -138,18 +312,32 @@ public class DashScopeAudioApi {
 		/**
 		 * REST客户端构建器
 		 */
-		private RestClient.Builder restClientBuilder = RestClient.builder();
+		private RestClient.Builder restClientBuilder;
 
 		/**
 		 * Web客户端构建器
 		 */
-		private WebClient.Builder webClientBuilder = WebClient.builder();
+		private WebClient.Builder webClientBuilder;
 
 		/**
 		 * 响应错误处理器
 		 */
 		private ResponseErrorHandler responseErrorHandler = RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER;
 
+		private Duration downloadConnectTimeout = DEFAULT_DOWNLOAD_CONNECT_TIMEOUT;
+
+		private Duration downloadReadTimeout = DEFAULT_DOWNLOAD_READ_TIMEOUT;
+
+		private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+
+		private DashScopeRateLimiter rateLimiter;
+
+		private DashScopeTransport transport;
+
+		private DashScopeRequestCompressor requestCompressor;
+
+		private DashScopeBulkheads bulkheads;
+
 		/**
 		 * 设置API密钥
 		 * @param apiKey API密钥
@@ -161,14 +349,87 @@ public class DashScopeAudioApi {
 			return this;
 		}
 
+		public Builder baseUrl(String baseUrl) {
+			Assert.hasText(baseUrl, "baseUrl cannot be empty");
+			this.baseUrl = baseUrl;
+			return this;
+		}
+
+		/**
+		 * 设置下载音频的连接超时和读超时
+		 * @param connectTimeout 连接超时
+		 * @param readTimeout 读超时
+		 * @return 构建器实例
+		 */
+		public Builder downloadTimeouts(Duration connectTimeout, Duration readTimeout) {
+			this.downloadConnectTimeout = connectTimeout;
+			this.downloadReadTimeout = readTimeout;
+			return this;
+		}
+
+		/**
+		 * 设置同时下载音频的最大连接数
+		 * @param maxConcurrentDownloads 最大连接数
+		 * @return 构建器实例
+		 */
+		public Builder maxConcurrentDownloads(int maxConcurrentDownloads) {
+			this.maxConcurrentDownloads = maxConcurrentDownloads;
+			return this;
+		}
+
+		/**
+		 * 设置客户端限流器，可以与其它API实例共享
+		 * @param rateLimiter 限流器
+		 * @return 构建器实例
+		 */
+		public Builder rateLimiter(DashScopeRateLimiter rateLimiter) {
+			this.rateLimiter = rateLimiter;
+			return this;
+		}
+
+		/**
+		 * 使用共享的传输层调用DashScope接口，音频下载仍使用独立的连接池
+		 * @param transport 传输层，可以与其它API实例共享
+		 * @return 构建器实例
+		 */
+		public Builder transport(DashScopeTransport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		/**
+		 * 对较大的请求体做gzip压缩
+		 * @param requestCompressor 请求体压缩器，可以与其它API实例共享
+		 * @return 构建器实例
+		 */
+		public Builder requestCompressor(DashScopeRequestCompressor requestCompressor) {
+			this.requestCompressor = requestCompressor;
+			return this;
+		}
+
+		/**
+		 * 设置按模型划分的并发隔离舱，可以与其它API实例共享
+		 * @param bulkheads 并发隔离舱
+		 * @return 构建器实例
+		 */
+		public Builder bulkheads(DashScopeBulkheads bulkheads) {
+			this.bulkheads = bulkheads;
+			return this;
+		}
+
 		/**
 		 * 构建DashScopeAudioApi实例
 		 * @return DashScopeAudioApi实例
 		 */
 		public DashScopeAudioApi build() {
 			Assert.notNull(this.apiKey, "apikey must be set");
-			return new DashScopeAudioApi(this.baseUrl, this.apiKey, this.httpHeaders, this.restClientBuilder,
-					this.webClientBuilder, this.responseErrorHandler);
+			RestClient.Builder restClientBuilder = DashScopeHttpClients.restClientBuilder(this.restClientBuilder,
+					this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
+			WebClient.Builder webClientBuilder = DashScopeHttpClients.webClientBuilder(this.webClientBuilder,
+					this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
+			return new DashScopeAudioApi(this.baseUrl, this.apiKey, this.httpHeaders, restClientBuilder,
+					webClientBuilder, this.responseErrorHandler, this.downloadConnectTimeout,
+					this.downloadReadTimeout, this.maxConcurrentDownloads, this.bulkheads);
 		}
 
 	}
@@ -0,0 +1,235 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * 从流式语音合成的响应体中取出 {@code output.audio.data} 并解码为音频字节。
+ * <p>
+ * 响应体直接交给Jackson的非阻塞解析器，base64字符串只存在于解析器内部复用的字符缓冲区中，
+ * 从字符缓冲区逐段解码写入{@code bufferFactory}分配的缓冲区，不会生成base64的String，
+ * 也不会像{@code bodyToFlux(DashScopeResponse.class)}那样先把每个chunk缓存为TokenBuffer。
+ * 其余字段只做词法扫描，不会被读取。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeAudioStreamDecoder {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final int[] BASE64_VALUES = new int[128];
+
+	static {
+		Arrays.fill(BASE64_VALUES, -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64_VALUES[alphabet.charAt(i)] = i;
+		}
+	}
+
+	private final JsonParser parser;
+
+	private final DataBufferFactory bufferFactory;
+
+	private final Base64Writer base64Writer = new Base64Writer();
+
+	private DashScopeAudioStreamDecoder(DataBufferFactory bufferFactory) throws IOException {
+		this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+		this.bufferFactory = bufferFactory;
+	}
+
+	/**
+	 * @param body 响应体，可以包含连续的多个JSON对象
+	 * @param bufferFactory 分配音频缓冲区的工厂，调用方负责释放返回的缓冲区
+	 * @return 每个音频分片一个缓冲区，不含音频的分片被跳过
+	 */
+	static Flux<DataBuffer> decode(Flux<DataBuffer> body, DataBufferFactory bufferFactory) {
+		return Flux.defer(() -> {
+			DashScopeAudioStreamDecoder decoder;
+			try {
+				decoder = new DashScopeAudioStreamDecoder(bufferFactory);
+			}
+			catch (IOException ex) {
+				return Flux.error(ex);
+			}
+			return body.concatMapIterable(decoder::feed)
+				.concatWith(Flux.defer(() -> Flux.fromIterable(decoder.endOfInput())))
+				.doFinally(signal -> decoder.close())
+				.doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+		});
+	}
+
+	private List<DataBuffer> feed(DataBuffer buffer) {
+		List<DataBuffer> audio = null;
+		try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+			while (iterator.hasNext()) {
+				((ByteBufferFeeder) this.parser.getNonBlockingInputFeeder()).feedInput(iterator.next());
+				// 释放输入缓冲区之前必须把已经送入的数据全部解析完
+				audio = drain(audio);
+			}
+		}
+		catch (IOException ex) {
+			throw new DecodingException("Failed to decode audio stream", ex);
+		}
+		finally {
+			DataBufferUtils.release(buffer);
+		}
+		return audio != null ? audio : List.of();
+	}
+
+	private List<DataBuffer> endOfInput() {
+		this.parser.getNonBlockingInputFeeder().endOfInput();
+		try {
+			List<DataBuffer> audio = drain(null);
+			if (this.parser.getParsingContext().inObject() || this.parser.getParsingContext().inArray()) {
+				throw new DecodingException("Audio stream ended inside a JSON value");
+			}
+			return audio != null ? audio : List.of();
+		}
+		catch (IOException ex) {
+			throw new DecodingException("Failed to decode audio stream", ex);
+		}
+	}
+
+	private List<DataBuffer> drain(List<DataBuffer> audio) throws IOException {
+		JsonToken token;
+		while ((token = this.parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+			if (token == JsonToken.VALUE_STRING && isAudioData()) {
+				if (audio == null) {
+					audio = new ArrayList<>(1);
+				}
+				audio.add(decodeBase64());
+			}
+		}
+		return audio;
+	}
+
+	private boolean isAudioData() {
+		JsonStreamContext context = this.parser.getParsingContext();
+		JsonStreamContext parent = context.getParent();
+		return "data".equals(context.getCurrentName()) && parent != null && "audio".equals(parent.getCurrentName());
+	}
+
+	/**
+	 * 解析器把字符缓冲区的各个分段依次写入{@link Base64Writer}，不会合并成一个完整的字符数组
+	 */
+	private DataBuffer decodeBase64() throws IOException {
+		DataBuffer audio = this.bufferFactory.allocateBuffer(this.parser.getTextLength() / 4 * 3 + 3);
+		try {
+			this.base64Writer.start(audio);
+			this.parser.getText(this.base64Writer);
+			this.base64Writer.flush();
+			return audio;
+		}
+		catch (IOException | RuntimeException ex) {
+			DataBufferUtils.release(audio);
+			throw ex;
+		}
+	}
+
+	private void close() {
+		try {
+			this.parser.close();
+		}
+		catch (IOException ex) {
+			// 非阻塞解析器没有底层资源
+		}
+	}
+
+	/**
+	 * 边接收字符边解码base64，结果先写入{@link #decoded}，满了再批量写入目标缓冲区；
+	 * 填充字符'='之后的内容忽略
+	 */
+	private static final class Base64Writer extends Writer {
+
+		private final byte[] decoded = new byte[3 * 1024];
+
+		private DataBuffer target;
+
+		private int bits;
+
+		private int bitCount;
+
+		private int size;
+
+		private boolean padded;
+
+		void start(DataBuffer target) {
+			this.target = target;
+			this.bits = 0;
+			this.bitCount = 0;
+			this.size = 0;
+			this.padded = false;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) {
+			for (int i = offset; i < offset + length && !this.padded; i++) {
+				accept(chars[i]);
+			}
+		}
+
+		@Override
+		public void write(String text, int offset, int length) {
+			for (int i = offset; i < offset + length && !this.padded; i++) {
+				accept(text.charAt(i));
+			}
+		}
+
+		@Override
+		public void write(int c) {
+			if (!this.padded) {
+				accept((char) c);
+			}
+		}
+
+		private void accept(char c) {
+			if (c == '=') {
+				this.padded = true;
+				return;
+			}
+			int value = c < 128 ? BASE64_VALUES[c] : -1;
+			if (value < 0) {
+				throw new DecodingException("Illegal base64 character 0x" + Integer.toHexString(c) + " in audio data");
+			}
+			this.bits = (this.bits << 6) | value;
+			this.bitCount += 6;
+			if (this.bitCount >= 8) {
+				this.bitCount -= 8;
+				this.decoded[this.size++] = (byte) (this.bits >> this.bitCount);
+				this.bits &= (1 << this.bitCount) - 1;
+				if (this.size == this.decoded.length) {
+					flush();
+				}
+			}
+		}
+
+		@Override
+		public void flush() {
+			this.target.write(this.decoded, 0, this.size);
+			this.size = 0;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,252 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 单个模型（或一组模型）的并发隔离舱。
+ * 同时执行的请求数不超过{@code maxConcurrentCalls}，超出的请求进入长度为{@code maxQueueSize}的等待队列，
+ * 队列满时按{@link RejectionPolicy}处理。等待者以{@link CompletableFuture}表示，阻塞调用和响应式调用共用同一个队列。
+ * <p>
+ * 提供以下指标（tag: bulkhead）：
+ * <ul>
+ * <li>{@code dashscope.bulkhead.active}：正在执行的请求数</li>
+ * <li>{@code dashscope.bulkhead.queued}：排队等待的请求数</li>
+ * <li>{@code dashscope.bulkhead.wait}：获得许可前的等待时间</li>
+ * <li>{@code dashscope.bulkhead.rejected}：被拒绝的请求数，按outcome区分（rejected、discarded、bypassed）</li>
+ * </ul>
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeBulkhead {
+
+	public enum RejectionPolicy {
+
+		/**
+		 * 直接拒绝新请求
+		 */
+		ABORT,
+
+		/**
+		 * 不占用许可直接执行新请求
+		 */
+		BYPASS,
+
+		/**
+		 * 拒绝队列中等待最久的请求，让新请求排队
+		 */
+		DISCARD_OLDEST
+
+	}
+
+	private final String name;
+
+	private final int maxConcurrentCalls;
+
+	private final int maxQueueSize;
+
+	private final RejectionPolicy rejectionPolicy;
+
+	private final Deque<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+
+	private int activeCalls;
+
+	private final Timer waitTimer;
+
+	private final Counter rejectedCounter;
+
+	private final Counter discardedCounter;
+
+	private final Counter bypassedCounter;
+
+	public DashScopeBulkhead(String name, int maxConcurrentCalls, int maxQueueSize, RejectionPolicy rejectionPolicy,
+			MeterRegistry meterRegistry) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.isTrue(maxConcurrentCalls > 0, "maxConcurrentCalls must be greater than 0");
+		Assert.isTrue(maxQueueSize >= 0, "maxQueueSize must not be negative");
+		Assert.notNull(rejectionPolicy, "rejectionPolicy must not be null");
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.name = name;
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.maxQueueSize = maxQueueSize;
+		this.rejectionPolicy = rejectionPolicy;
+		Gauge.builder("dashscope.bulkhead.active", this, DashScopeBulkhead::getActiveCalls)
+			.tag("bulkhead", name)
+			.register(meterRegistry);
+		Gauge.builder("dashscope.bulkhead.queued", this, DashScopeBulkhead::getQueuedCalls)
+			.tag("bulkhead", name)
+			.register(meterRegistry);
+		this.waitTimer = Timer.builder("dashscope.bulkhead.wait").tag("bulkhead", name).register(meterRegistry);
+		this.rejectedCounter = rejectionCounter(meterRegistry, "rejected");
+		this.discardedCounter = rejectionCounter(meterRegistry, "discarded");
+		this.bypassedCounter = rejectionCounter(meterRegistry, "bypassed");
+	}
+
+	private Counter rejectionCounter(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("dashscope.bulkhead.rejected")
+			.tag("bulkhead", this.name)
+			.tag("outcome", outcome)
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 申请一个许可
+	 * @return 获得许可时完成的Future，值为true表示占用了许可，false表示按BYPASS策略未占用许可直接执行；
+	 * 被拒绝时以{@link BulkheadFullException}结束。无论结果如何都需要调用{@link #release(CompletableFuture)}
+	 */
+	public CompletableFuture<Boolean> acquire() {
+		CompletableFuture<Boolean> waiter;
+		CompletableFuture<Boolean> discarded = null;
+		synchronized (this) {
+			if (this.activeCalls < this.maxConcurrentCalls) {
+				this.activeCalls++;
+				return CompletableFuture.completedFuture(Boolean.TRUE);
+			}
+			if (this.waiters.size() >= this.maxQueueSize) {
+				switch (this.rejectionPolicy) {
+					case BYPASS -> {
+						this.bypassedCounter.increment();
+						return CompletableFuture.completedFuture(Boolean.FALSE);
+					}
+					case DISCARD_OLDEST -> {
+						discarded = this.waiters.pollFirst();
+						if (discarded == null) {
+							this.rejectedCounter.increment();
+							return CompletableFuture.failedFuture(new BulkheadFullException(this.name));
+						}
+						this.discardedCounter.increment();
+					}
+					default -> {
+						this.rejectedCounter.increment();
+						return CompletableFuture.failedFuture(new BulkheadFullException(this.name));
+					}
+				}
+			}
+			waiter = new CompletableFuture<>();
+			this.waiters.addLast(waiter);
+		}
+		if (discarded != null) {
+			discarded.completeExceptionally(new BulkheadFullException(this.name));
+		}
+		long start = System.nanoTime();
+		waiter.thenRun(() -> this.waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+		return waiter;
+	}
+
+	/**
+	 * 结束一次申请：还在排队时移出队列，已经占用许可则归还，BYPASS或被拒绝时什么都不做
+	 * @param permit {@link #acquire()}返回的Future，每个Future只能调用一次
+	 */
+	public void release(CompletableFuture<Boolean> permit) {
+		if (permit.cancel(false)) {
+			synchronized (this) {
+				this.waiters.remove(permit);
+			}
+		}
+		else if (!permit.isCompletedExceptionally() && permit.join()) {
+			release();
+		}
+	}
+
+	/**
+	 * 归还许可，如果有等待者则直接把许可转交给最早的等待者
+	 */
+	private void release() {
+		CompletableFuture<Boolean> next;
+		do {
+			synchronized (this) {
+				next = this.waiters.pollFirst();
+				if (next == null) {
+					this.activeCalls--;
+					return;
+				}
+			}
+		}
+		// 等待者已取消时许可继续转交给下一个
+		while (!next.complete(Boolean.TRUE));
+	}
+
+	/**
+	 * 在隔离舱内执行阻塞调用
+	 */
+	public <T> T execute(Supplier<T> call) {
+		CompletableFuture<Boolean> permit = acquire();
+		await(permit);
+		try {
+			return call.get();
+		}
+		finally {
+			release(permit);
+		}
+	}
+
+	/**
+	 * 在隔离舱内执行流式调用，流结束、出错或取消时归还许可
+	 */
+	public <T> Flux<T> executeFlux(Supplier<Flux<T>> call) {
+		return Flux.defer(() -> {
+			CompletableFuture<Boolean> permit = acquire();
+			return Mono.fromFuture(permit, true)
+				.flatMapMany(acquired -> call.get())
+				.doFinally(signal -> release(permit));
+		});
+	}
+
+	private void await(CompletableFuture<Boolean> permit) {
+		try {
+			permit.get();
+		}
+		catch (InterruptedException ex) {
+			release(permit);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for bulkhead");
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException(ex.getCause());
+		}
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public synchronized int getActiveCalls() {
+		return this.activeCalls;
+	}
+
+	public synchronized int getQueuedCalls() {
+		return this.waiters.size();
+	}
+
+	/**
+	 * 隔离舱已满时抛出，不会被重试
+	 */
+	public static class BulkheadFullException extends NonTransientAiException {
+
+		private static final long serialVersionUID = 1L;
+
+		public BulkheadFullException(String bulkhead) {
+			super("DashScope bulkhead '" + bulkhead + "' is full");
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.Assert;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeBulkhead.RejectionPolicy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * 按模型名称划分的并发隔离舱集合，一个模型打满不会占用其它模型的并发额度。
+ * <p>
+ * 模型匹配规则按注册顺序依次匹配，以{@code *}结尾的规则按前缀匹配（例如{@code qwen-max*}同时匹配
+ * {@code qwen-max}和{@code qwen-max-latest}，这些模型共享一个隔离舱），{@code *}匹配所有模型。
+ * 没有匹配规则的模型不做并发限制。
+ *
+ * <pre>{@code
+ * DashScopeBulkheads bulkheads = DashScopeBulkheads.builder()
+ *     .bulkhead("qwen-max*", 10, 50, RejectionPolicy.ABORT)
+ *     .bulkhead("qwen-turbo", 100, 200, RejectionPolicy.BYPASS)
+ *     .build();
+ * }</pre>
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeBulkheads {
+
+	private final List<DashScopeBulkhead> bulkheads;
+
+	private final List<String> patterns;
+
+	private final Map<String, Optional<DashScopeBulkhead>> modelCache = new ConcurrentHashMap<>();
+
+	private DashScopeBulkheads(List<String> patterns, List<DashScopeBulkhead> bulkheads) {
+		this.patterns = List.copyOf(patterns);
+		this.bulkheads = List.copyOf(bulkheads);
+	}
+
+	/**
+	 * 查找模型对应的隔离舱
+	 * @param model 模型名称
+	 * @return 没有匹配规则时返回null
+	 */
+	public DashScopeBulkhead forModel(String model) {
+		if (model == null) {
+			return null;
+		}
+		return this.modelCache.computeIfAbsent(model, this::match).orElse(null);
+	}
+
+	private Optional<DashScopeBulkhead> match(String model) {
+		for (int i = 0; i < this.patterns.size(); i++) {
+			String pattern = this.patterns.get(i);
+			boolean matched = pattern.endsWith("*") ? model.startsWith(pattern.substring(0, pattern.length() - 1))
+					: model.equals(pattern);
+			if (matched) {
+				return Optional.of(this.bulkheads.get(i));
+			}
+		}
+		return Optional.empty();
+	}
+
+	public List<DashScopeBulkhead> getBulkheads() {
+		return this.bulkheads;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static class Builder {
+
+		private final List<String> patterns = new ArrayList<>();
+
+		private final List<BulkheadSpec> specs = new ArrayList<>();
+
+		private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+		/**
+		 * 注册一个隔离舱
+		 * @param modelPattern 模型名称，以{@code *}结尾表示前缀匹配
+		 * @param maxConcurrentCalls 最大并发请求数
+		 * @param maxQueueSize 最大排队请求数
+		 * @param rejectionPolicy 队列满时的处理策略
+		 * @return 构建器实例
+		 */
+		public Builder bulkhead(String modelPattern, int maxConcurrentCalls, int maxQueueSize,
+				RejectionPolicy rejectionPolicy) {
+			Assert.hasText(modelPattern, "modelPattern cannot be null or empty");
+			Assert.isTrue(!this.patterns.contains(modelPattern), "Duplicate model pattern: " + modelPattern);
+			this.patterns.add(modelPattern);
+			this.specs.add(new BulkheadSpec(maxConcurrentCalls, maxQueueSize, rejectionPolicy));
+			return this;
+		}
+
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			Assert.notNull(meterRegistry, "meterRegistry cannot be null");
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public DashScopeBulkheads build() {
+			List<DashScopeBulkhead> bulkheads = new ArrayList<>(this.specs.size());
+			for (int i = 0; i < this.specs.size(); i++) {
+				BulkheadSpec spec = this.specs.get(i);
+				bulkheads.add(new DashScopeBulkhead(this.patterns.get(i), spec.maxConcurrentCalls(),
+						spec.maxQueueSize(), spec.rejectionPolicy(), this.meterRegistry));
+			}
+			return new DashScopeBulkheads(this.patterns, bulkheads);
+		}
+
+		private record BulkheadSpec(int maxConcurrentCalls, int maxQueueSize, RejectionPolicy rejectionPolicy) {
+		}
+
+	}
+
+}
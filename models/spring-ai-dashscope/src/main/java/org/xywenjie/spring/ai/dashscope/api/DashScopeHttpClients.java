@@ -0,0 +1,218 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.ai.model.ApiKey;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * 各API构建器共用的HTTP客户端装配：共享传输层、请求体压缩、客户端限流。
+ * <ul>
+ * <li>设置了{@link DashScopeTransport}时，RestClient和WebClient都改用传输层的连接池</li>
+ * <li>没有传输层、也没有传入自己的构建器时，使用所有API实例共享的默认客户端，发送 {@code Accept-Encoding: gzip} 并自动解压响应</li>
+ * <li>传入了自己的构建器时保留其requestFactory、clientConnector（代理、SSL等配置）；
+ * WebClient额外加上 {@code Accept-Encoding: gzip} 和边读边解压的过滤器，RestClient是否接受压缩响应由其requestFactory决定</li>
+ * </ul>
+ * RestClient的请求工厂已知时（传输层或默认客户端），压缩和限流包装在请求工厂上，请求体边序列化边发送；
+ * 调用方自带的requestFactory无法从构建器中取出，只能退回到拦截器，请求体会先缓冲在内存中。
+ *
+ * @author Huang Wenjie
+ */
+final class DashScopeHttpClients {
+
+	private static final String GZIP = "gzip";
+
+	/**
+	 * 没有传输层时RestClient默认使用的请求工厂，所有API实例共用同一个JDK HttpClient
+	 */
+	private static final JdkClientHttpRequestFactory DEFAULT_REQUEST_FACTORY = createDefaultRequestFactory();
+
+	/**
+	 * 没有传输层时WebClient默认使用的连接器，基于Reactor Netty的全局连接池
+	 */
+	private static final ReactorClientHttpConnector DEFAULT_CLIENT_CONNECTOR = new ReactorClientHttpConnector(
+			HttpClient.create().compress(true));
+
+	private static final NettyDataBufferFactory DECOMPRESSED_BUFFER_FACTORY = new NettyDataBufferFactory(
+			ByteBufAllocator.DEFAULT);
+
+	private DashScopeHttpClients() {
+	}
+
+	/**
+	 * @param restClientBuilder 调用方传入的构建器，为null时使用默认客户端
+	 * @param transport 共享传输层，可以为null
+	 * @param requestCompressor 请求体压缩器，可以为null
+	 * @param rateLimiter 限流器，可以为null
+	 * @param apiKey 限流使用的API Key
+	 * @return 新的构建器，不会修改传入的构建器
+	 */
+	static RestClient.Builder restClientBuilder(RestClient.Builder restClientBuilder,
+			DashScopeTransport transport, DashScopeRequestCompressor requestCompressor,
+			DashScopeRateLimiter rateLimiter, ApiKey apiKey) {
+		RestClient.Builder builder = restClientBuilder != null ? restClientBuilder.clone() : RestClient.builder();
+		ClientHttpRequestFactory requestFactory = transport != null ? transport.requestFactory()
+				: restClientBuilder == null ? DEFAULT_REQUEST_FACTORY : null;
+		if (requestFactory != null) {
+			// 限流在内层，压缩被拒绝后的重发同样需要获取许可
+			if (rateLimiter != null) {
+				requestFactory = rateLimiter.requestFactory(requestFactory, apiKey);
+			}
+			if (requestCompressor != null) {
+				requestFactory = requestCompressor.requestFactory(requestFactory);
+			}
+			return builder.requestFactory(requestFactory);
+		}
+		if (requestCompressor != null) {
+			builder.requestInterceptor(requestCompressor.interceptor());
+		}
+		if (rateLimiter != null) {
+			builder.requestInterceptor(rateLimiter.interceptor(apiKey));
+		}
+		return builder;
+	}
+
+	/**
+	 * @param webClientBuilder 调用方传入的构建器，为null时使用默认客户端
+	 * @param transport 共享传输层，可以为null
+	 * @param requestCompressor 请求体压缩器，可以为null
+	 * @param rateLimiter 限流器，可以为null
+	 * @param apiKey 限流使用的API Key
+	 * @return 新的构建器，不会修改传入的构建器
+	 */
+	static WebClient.Builder webClientBuilder(WebClient.Builder webClientBuilder,
+			DashScopeTransport transport, DashScopeRequestCompressor requestCompressor,
+			DashScopeRateLimiter rateLimiter, ApiKey apiKey) {
+		WebClient.Builder builder = webClientBuilder != null ? webClientBuilder.clone() : WebClient.builder();
+		if (requestCompressor != null) {
+			builder.filter(requestCompressor.filter());
+		}
+		if (rateLimiter != null) {
+			builder.filter(rateLimiter.filter(apiKey));
+		}
+		if (transport != null) {
+			transport.apply(builder);
+		}
+		else if (webClientBuilder == null) {
+			builder.clientConnector(DEFAULT_CLIENT_CONNECTOR);
+		}
+		else {
+			builder.filter(acceptGzip());
+		}
+		return builder;
+	}
+
+	private static JdkClientHttpRequestFactory createDefaultRequestFactory() {
+		java.net.http.HttpClient httpClient = java.net.http.HttpClient.newBuilder()
+			.connectTimeout(DashScopeTransport.DEFAULT_CONNECT_TIMEOUT)
+			.build();
+		JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+		requestFactory.setReadTimeout(DashScopeTransport.DEFAULT_READ_TIMEOUT);
+		requestFactory.enableCompression(true);
+		return requestFactory;
+	}
+
+	/**
+	 * 支持流式写出的请求直接交给请求体，否则写入请求的输出流
+	 */
+	static void setBody(ClientHttpRequest request, StreamingHttpOutputMessage.Body body) throws IOException {
+		if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+			streamingRequest.setBody(body);
+		}
+		else {
+			body.writeTo(request.getBody());
+		}
+	}
+
+	/**
+	 * 请求没有指定Accept-Encoding时要求gzip响应，并在收到压缩响应时边读边解压。
+	 * 连接器自己解压过的响应不再带Content-Encoding，不会被重复解压
+	 */
+	static ExchangeFilterFunction acceptGzip() {
+		return (request, next) -> {
+			if (request.headers().containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+				return next.exchange(request);
+			}
+			ClientRequest gzipRequest = ClientRequest.from(request).header(HttpHeaders.ACCEPT_ENCODING, GZIP).build();
+			return next.exchange(gzipRequest).map(response -> isGzip(response) ? response.mutate()
+				.headers(headers -> {
+					headers.remove(HttpHeaders.CONTENT_ENCODING);
+					headers.remove(HttpHeaders.CONTENT_LENGTH);
+				})
+				.body(DashScopeHttpClients::gunzip)
+				.build() : response);
+		};
+	}
+
+	private static boolean isGzip(ClientResponse response) {
+		return GZIP.equalsIgnoreCase(response.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+	}
+
+	static Flux<DataBuffer> gunzip(Flux<DataBuffer> body) {
+		return Flux.defer(() -> {
+			EmbeddedChannel channel = new EmbeddedChannel(new JdkZlibDecoder(ZlibWrapper.GZIP, 0));
+			return body.concatMapIterable(buffer -> {
+				channel.writeInbound(toByteBuf(buffer));
+				return readDecompressed(channel);
+			})
+				.concatWith(Flux.defer(() -> {
+					channel.finish();
+					return Flux.fromIterable(readDecompressed(channel));
+				}))
+				.doFinally(signal -> channel.finishAndReleaseAll())
+				.doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+		});
+	}
+
+	/**
+	 * 把缓冲区的所有权交给解码器，非Netty缓冲区复制后立即释放
+	 */
+	private static ByteBuf toByteBuf(DataBuffer buffer) {
+		if (buffer instanceof NettyDataBuffer nettyDataBuffer) {
+			return nettyDataBuffer.getNativeBuffer();
+		}
+		try {
+			byte[] bytes = new byte[buffer.readableByteCount()];
+			buffer.read(bytes);
+			return Unpooled.wrappedBuffer(bytes);
+		}
+		finally {
+			DataBufferUtils.release(buffer);
+		}
+	}
+
+	private static List<DataBuffer> readDecompressed(EmbeddedChannel channel) {
+		List<DataBuffer> decompressed = new ArrayList<>(1);
+		ByteBuf byteBuf;
+		while ((byteBuf = channel.readInbound()) != null) {
+			decompressed.add(DECOMPRESSED_BUFFER_FACTORY.wrap(byteBuf));
+		}
+		return decompressed;
+	}
+
+}
@@ -17,10 +17,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
 
 import java.util.List;
+import java.util.function.Consumer;
+
+import reactor.core.publisher.Mono;
 
 /**
  * 图像生成API，新的2.6版本用普通DashScopeApi来实现，该类兼容以往的操作。
@@ -36,18 +40,29 @@ public class DashScopeImageApi {
 
     private final RestClient restClient;
 
+    /**
+     * 异步客户端，用于非阻塞地提交任务和轮询任务状态
+     */
+    private final WebClient webClient;
+
     public static Builder builder(){
         return new Builder();
     }
 
     public DashScopeImageApi(String baseUrl, ApiKey apiKey, HttpHeaders headers,
                              RestClient.Builder restClientBuilder, ResponseErrorHandler responseErrorHandler){
+        this(baseUrl, apiKey, headers, restClientBuilder, WebClient.builder(), responseErrorHandler);
+    }
+
+    public DashScopeImageApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,
+                             WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler){
+        Consumer<HttpHeaders> defaultHeaders = h -> {
+            h.setContentType(MediaType.APPLICATION_JSON);
+            h.addAll(HttpHeaders.readOnlyHttpHeaders(headers));
+        };
         this.restClient = restClientBuilder.clone()
                 .baseUrl(baseUrl)
-                .defaultHeaders(h -> {
-                    h.setContentType(MediaType.APPLICATION_JSON);
-                    h.addAll(HttpHeaders.readOnlyHttpHeaders(headers));
-                })
+                .defaultHeaders(defaultHeaders)
                 .defaultStatusHandler(responseErrorHandler)
                 .defaultRequest(requestHeadersSpec -> {
                     if(!(apiKey instanceof NoopApiKey)){
@@ -55,6 +70,15 @@ public class DashScopeImageApi {
                     }
                 })
                 .build();
+        this.webClient = webClientBuilder.clone()
+                .baseUrl(baseUrl)
+                .defaultHeaders(defaultHeaders)
+                .defaultRequest(requestHeadersSpec -> {
+                    if(!(apiKey instanceof NoopApiKey)){
+                        requestHeadersSpec.header(HttpHeaders.AUTHORIZATION,"Bearer "+apiKey.getValue());
+                    }
+                })
+                .build();
     }
     
 
@@ -62,6 +86,15 @@ public class DashScopeImageApi {
         return this.restClient.get().uri("/api/v1/tasks/{taskId}",taskId).retrieve().toEntity(DashScopeResponse.class);
     }
 
+    /**
+     * 非阻塞地查询任务状态
+     * @param taskId 任务ID
+     * @return 任务状态响应
+     */
+    public Mono<ResponseEntity<DashScopeResponse>> getImageGenTaskResultAsync(String taskId){
+        return this.webClient.get().uri("/api/v1/tasks/{taskId}",taskId).retrieve().toEntity(DashScopeResponse.class);
+    }
+
     /**
      * 获取多模态生成结果的同步方法
      * @return 多模态生成的响应结果
@@ -86,6 +119,20 @@ public class DashScopeImageApi {
         		.body(imageRequest).retrieve().toEntity(DashScopeResponse.class);
     }
 
+    /**
+     * 非阻塞地提交图像生成任务，wan2.6-t2i模型走同步的多模态生成接口
+     * @param imageRequest 图像生成请求
+     * @return 提交结果
+     */
+    public Mono<ResponseEntity<DashScopeResponse>> submitImageGenTaskAsync(DashScopeRequest imageRequest) {
+        if(imageRequest.getModel().equals("wan2.6-t2i")) {
+            return this.webClient.post().uri("/api/v1/services/aigc/multimodal-generation/generation")
+                    .bodyValue(imageRequest).retrieve().toEntity(DashScopeResponse.class);
+        }
+        return this.webClient.post().uri("/api/v1/services/aigc/text2image/image-synthesis").header("X-DashScope-Async", "enable")
+                .bodyValue(imageRequest).retrieve().toEntity(DashScopeResponse.class);
+    }
+
     public enum ImageModel{
         WAN2_5_T2I_PREVIEW("wan2.5-t2i-preview"),
         WAN2_2_T2I_FLASH("wan2.2-t2i-flash");
@@ -109,10 +156,36 @@ public class DashScopeImageApi {
 
         private HttpHeaders headers = new HttpHeaders();
 
-        private RestClient.Builder restClientBuilder = RestClient.builder();
+        private RestClient.Builder restClientBuilder;
+
+        private WebClient.Builder webClientBuilder;
 
         private ResponseErrorHandler responseErrorHandler = RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER;
 
+        private DashScopeRateLimiter rateLimiter;
+
+        private DashScopeTransport transport;
+
+        private DashScopeRequestCompressor requestCompressor;
+
+        public Builder baseUrl(String baseUrl){
+            Assert.hasText(baseUrl,"baseUrl cannot be null or empty");
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder restClientBuilder(RestClient.Builder restClientBuilder){
+            Assert.notNull(restClientBuilder,"restClientBuilder cannot be null");
+            this.restClientBuilder = restClientBuilder;
+            return this;
+        }
+
+        public Builder webClientBuilder(WebClient.Builder webClientBuilder){
+            Assert.notNull(webClientBuilder,"webClientBuilder cannot be null");
+            this.webClientBuilder = webClientBuilder;
+            return this;
+        }
+
         public Builder apiKey(ApiKey apiKey){
             Assert.notNull(apiKey,"apiKey cannot be null");
             this.apiKey = apiKey;
@@ -125,9 +198,37 @@ public class DashScopeImageApi {
             return this;
         }
 
+        /**
+         * 设置客户端限流器，可以与其它API实例共享
+         */
+        public Builder rateLimiter(DashScopeRateLimiter rateLimiter){
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * 使用共享的传输层（连接池、超时、HTTP/2），可以与其它API实例共享
+         */
+        public Builder transport(DashScopeTransport transport){
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * 对较大的请求体做gzip压缩，可以与其它API实例共享
+         */
+        public Builder requestCompressor(DashScopeRequestCompressor requestCompressor){
+            this.requestCompressor = requestCompressor;
+            return this;
+        }
+
         public DashScopeImageApi build(){
             Assert.notNull(this.apiKey,"apiKey cannot be null");
-            return new DashScopeImageApi(this.baseUrl,this.apiKey,this.headers,this.restClientBuilder,responseErrorHandler);
+            RestClient.Builder restClientBuilder = DashScopeHttpClients.restClientBuilder(this.restClientBuilder,
+                    this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
+            WebClient.Builder webClientBuilder = DashScopeHttpClients.webClientBuilder(this.webClientBuilder,
+                    this.transport, this.requestCompressor, this.rateLimiter, this.apiKey);
+            return new DashScopeImageApi(this.baseUrl,this.apiKey,this.headers,restClientBuilder,webClientBuilder,responseErrorHandler);
         }
     }
 }
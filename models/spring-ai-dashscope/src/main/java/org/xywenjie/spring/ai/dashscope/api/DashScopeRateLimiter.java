@@ -0,0 +1,301 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.model.ApiKey;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.AbstractClientHttpRequestFactoryWrapper;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.xywenjie.spring.ai.dashscope.metadata.DashScopeResponseHeaderExtractor;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 客户端自适应令牌桶限流器，按API Key分别限速，可以在{@link DashScopeApi}、{@link DashScopeAudioApi}、
+ * {@link DashScopeImageApi}之间共享同一个实例。
+ * <ul>
+ * <li>收到429时速率减半（乘性减），之后每次成功响应按初始速率的5%恢复（加性增）</li>
+ * <li>响应头中带有 {@code x-ratelimit-*} 时，以服务端的每分钟请求上限作为速率上限；
+ * 剩余请求数为0时暂停到服务端给出的重置时间</li>
+ * </ul>
+ * 通过{@link #requestFactory(ClientHttpRequestFactory, ApiKey)}或{@link #interceptor(ApiKey)}接入RestClient，
+ * 通过{@link #filter(ApiKey)}接入WebClient。拦截器会让RestClient把请求体缓冲在内存中，能包装请求工厂时优先使用前者。
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeRateLimiter {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeRateLimiter.class);
+
+	private static final double DECREASE_FACTOR = 0.5;
+
+	private static final double INCREASE_RATIO = 0.05;
+
+	private final double initialPermitsPerSecond;
+
+	private final double minPermitsPerSecond;
+
+	private final double maxPermitsPerSecond;
+
+	private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param permitsPerSecond 每个API Key初始的每秒请求数
+	 */
+	public DashScopeRateLimiter(double permitsPerSecond) {
+		this(permitsPerSecond, permitsPerSecond / 20, permitsPerSecond * 2);
+	}
+
+	/**
+	 * @param initialPermitsPerSecond 每个API Key初始的每秒请求数
+	 * @param minPermitsPerSecond 收到429后速率的下限
+	 * @param maxPermitsPerSecond 自适应提升速率的上限
+	 */
+	public DashScopeRateLimiter(double initialPermitsPerSecond, double minPermitsPerSecond, double maxPermitsPerSecond) {
+		Assert.isTrue(minPermitsPerSecond > 0, "minPermitsPerSecond must be greater than 0");
+		Assert.isTrue(minPermitsPerSecond <= initialPermitsPerSecond && initialPermitsPerSecond <= maxPermitsPerSecond,
+				"permits per second must satisfy min <= initial <= max");
+		this.initialPermitsPerSecond = initialPermitsPerSecond;
+		this.minPermitsPerSecond = minPermitsPerSecond;
+		this.maxPermitsPerSecond = maxPermitsPerSecond;
+	}
+
+	/**
+	 * 预占一个许可
+	 * @param apiKey API Key
+	 * @return 需要等待的纳秒数，0表示可以立即发送
+	 */
+	public long reserve(String apiKey) {
+		return bucket(apiKey).reserve(System.nanoTime());
+	}
+
+	/**
+	 * 阻塞直到获得许可
+	 */
+	public void acquire(String apiKey) {
+		long waitNanos = reserve(apiKey);
+		if (waitNanos > 0) {
+			LockSupport.parkNanos(waitNanos);
+		}
+	}
+
+	/**
+	 * 非阻塞地等待许可
+	 */
+	public Mono<Void> acquireAsync(String apiKey) {
+		return Mono.defer(() -> {
+			long waitNanos = reserve(apiKey);
+			return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.empty();
+		});
+	}
+
+	/**
+	 * 根据响应调整速率
+	 * @param apiKey API Key
+	 * @param statusCode HTTP状态码
+	 * @param headers 响应头
+	 */
+	public void onResponse(String apiKey, int statusCode, HttpHeaders headers) {
+		Bucket bucket = bucket(apiKey);
+		if (statusCode == 429) {
+			bucket.decrease();
+			return;
+		}
+		RateLimit rateLimit = DashScopeResponseHeaderExtractor.extractAiResponseHeaders(headers);
+		bucket.update(rateLimit);
+		if (statusCode < 400) {
+			bucket.increase();
+		}
+	}
+
+	/**
+	 * @return 该API Key当前的每秒请求数
+	 */
+	public double getPermitsPerSecond(String apiKey) {
+		return bucket(apiKey).permitsPerSecond;
+	}
+
+	/**
+	 * 包装RestClient的请求工厂，每次发送前获取许可，请求体照常边写边发送
+	 */
+	public ClientHttpRequestFactory requestFactory(ClientHttpRequestFactory requestFactory, ApiKey apiKey) {
+		Assert.notNull(apiKey, "apiKey must not be null");
+		return new AbstractClientHttpRequestFactoryWrapper(requestFactory) {
+
+			@Override
+			protected ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod, ClientHttpRequestFactory delegate)
+					throws IOException {
+				return new RateLimitedRequest(delegate.createRequest(uri, httpMethod), apiKey);
+			}
+
+		};
+	}
+
+	public ClientHttpRequestInterceptor interceptor(ApiKey apiKey) {
+		Assert.notNull(apiKey, "apiKey must not be null");
+		return (request, body, execution) -> {
+			String key = apiKey.getValue();
+			acquire(key);
+			var response = execution.execute(request, body);
+			onResponse(key, response.getStatusCode().value(), response.getHeaders());
+			return response;
+		};
+	}
+
+	public ExchangeFilterFunction filter(ApiKey apiKey) {
+		Assert.notNull(apiKey, "apiKey must not be null");
+		return (request, next) -> {
+			String key = apiKey.getValue();
+			return acquireAsync(key).then(Mono.defer(() -> next.exchange(request)))
+				.doOnNext(response -> onResponse(key, response.statusCode().value(), response.headers().asHttpHeaders()));
+		};
+	}
+
+	private Bucket bucket(String apiKey) {
+		return this.buckets.computeIfAbsent(apiKey, key -> new Bucket());
+	}
+
+	private final class Bucket {
+
+		private volatile double permitsPerSecond = initialPermitsPerSecond;
+
+		/**
+		 * 服务端响应头给出的速率上限
+		 */
+		private double ceiling = maxPermitsPerSecond;
+
+		private double permits = 1;
+
+		private long lastRefillNanos = System.nanoTime();
+
+		private boolean paused;
+
+		private long pausedUntilNanos;
+
+		private synchronized long reserve(long now) {
+			refill(now);
+			this.permits -= 1;
+			long waitNanos = this.permits >= 0 ? 0 : (long) (-this.permits / this.permitsPerSecond * 1_000_000_000L);
+			if (this.paused) {
+				long pauseNanos = this.pausedUntilNanos - now;
+				if (pauseNanos > 0) {
+					return Math.max(waitNanos, pauseNanos);
+				}
+				this.paused = false;
+			}
+			return waitNanos;
+		}
+
+		private void refill(long now) {
+			double burst = Math.max(1, this.permitsPerSecond);
+			this.permits = Math.min(burst, this.permits + (now - this.lastRefillNanos) / 1e9 * this.permitsPerSecond);
+			this.lastRefillNanos = now;
+		}
+
+		private synchronized void decrease() {
+			refill(System.nanoTime());
+			this.permitsPerSecond = Math.max(minPermitsPerSecond, this.permitsPerSecond * DECREASE_FACTOR);
+			this.permits = Math.min(this.permits, 0);
+			logger.debug("Received 429, lowering rate to {} requests/s", this.permitsPerSecond);
+		}
+
+		private synchronized void increase() {
+			refill(System.nanoTime());
+			this.permitsPerSecond = Math.min(this.ceiling,
+					this.permitsPerSecond + initialPermitsPerSecond * INCREASE_RATIO);
+		}
+
+		private synchronized void update(RateLimit rateLimit) {
+			if (rateLimit.getRequestsLimit() != null && rateLimit.getRequestsLimit() > 0) {
+				this.ceiling = Math.max(minPermitsPerSecond,
+						Math.min(maxPermitsPerSecond, rateLimit.getRequestsLimit() / 60.0));
+				if (this.permitsPerSecond > this.ceiling) {
+					refill(System.nanoTime());
+					this.permitsPerSecond = this.ceiling;
+				}
+			}
+			if (rateLimit.getRequestsRemaining() != null && rateLimit.getRequestsRemaining() <= 0
+					&& rateLimit.getRequestsReset() != null) {
+				this.paused = true;
+				this.pausedUntilNanos = System.nanoTime()
+						+ TimeUnit.MILLISECONDS.toNanos(rateLimit.getRequestsReset().toMillis());
+			}
+		}
+	}
+
+	private final class RateLimitedRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+
+		private final ClientHttpRequest delegate;
+
+		private final ApiKey apiKey;
+
+		RateLimitedRequest(ClientHttpRequest delegate, ApiKey apiKey) {
+			this.delegate = delegate;
+			this.apiKey = apiKey;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return this.delegate.getMethod();
+		}
+
+		@Override
+		public URI getURI() {
+			return this.delegate.getURI();
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return this.delegate.getAttributes();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return this.delegate.getHeaders();
+		}
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			return this.delegate.getBody();
+		}
+
+		@Override
+		public void setBody(Body body) {
+			try {
+				DashScopeHttpClients.setBody(this.delegate, body);
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		@Override
+		public ClientHttpResponse execute() throws IOException {
+			String key = this.apiKey.getValue();
+			acquire(key);
+			ClientHttpResponse response = this.delegate.execute();
+			onResponse(key, response.getStatusCode().value(), response.getHeaders());
+			return response;
+		}
+
+	}
+
+}
@@ -0,0 +1,520 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpRequestFactoryWrapper;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.util.Assert;
+import org.springframework.util.FastByteArrayOutputStream;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 请求体gzip压缩。
+ * <p>
+ * 多模态请求把图片、音频以base64内联在JSON中，请求体往往有数MB，压缩后可以明显减少上传字节数。
+ * 只压缩超过{@code minRequestSize}的请求体，并带上 {@code Content-Encoding: gzip}。
+ * 某个接口不接受压缩请求体（返回415，或返回400而未压缩重发成功）时，自动用原始请求体重发，
+ * 并记住该路径，之后不再压缩。400也可能只是普通的参数错误，因此每个路径只在第一次收到400时用原始请求体探测一次，
+ * 压缩请求成功过的路径不再探测，参数错误不会让上传流量翻倍。
+ * <p>
+ * 通过{@link #requestFactory(ClientHttpRequestFactory)}接入RestClient，通过{@link #filter()}接入WebClient，
+ * 请求体边序列化边压缩，以分块方式发送，不会在内存中保留完整的原始请求体和压缩副本，
+ * {@link org.xywenjie.spring.ai.dashscope.api.dto.DashScopeMedia}从文件边读边编码的请求同样适用。
+ * 是否压缩先用请求体的前{@code minRequestSize}字节探测，因此请求体会被序列化两次（第一次最多{@code minRequestSize}字节）；
+ * 只能写出一次的请求体会先缓冲在内存中。
+ * <p>
+ * {@link #interceptor()}供只能使用拦截器的RestClient（例如调用方自带requestFactory）使用，
+ * RestClient会把整个请求体缓冲在内存中再交给拦截器。实例可以在多个API实例间共享。
+ * 响应体的解压由HTTP客户端负责，见{@link DashScopeTransport.Builder#compress(boolean)}。
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeRequestCompressor {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeRequestCompressor.class);
+
+	public static final int DEFAULT_MIN_REQUEST_SIZE = 8 * 1024;
+
+	private static final String GZIP = "gzip";
+
+	private final int minRequestSize;
+
+	/**
+	 * 不接受压缩请求体的路径
+	 */
+	private final Map<String, Boolean> rejectingPaths = new ConcurrentHashMap<>();
+
+	/**
+	 * 已经确认接受压缩请求体，或已经用400探测过的路径
+	 */
+	private final Set<String> probedPaths = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder originalBytes = new LongAdder();
+
+	private final LongAdder compressedBytes = new LongAdder();
+
+	public DashScopeRequestCompressor() {
+		this(DEFAULT_MIN_REQUEST_SIZE);
+	}
+
+	/**
+	 * @param minRequestSize 请求体达到该字节数才压缩
+	 */
+	public DashScopeRequestCompressor(int minRequestSize) {
+		Assert.isTrue(minRequestSize >= 0, "minRequestSize must not be negative");
+		this.minRequestSize = minRequestSize;
+	}
+
+	/**
+	 * 包装RestClient的请求工厂，边写边压缩请求体
+	 * @param requestFactory 实际发送请求的工厂，需要支持{@link StreamingHttpOutputMessage}才能边写边发送
+	 */
+	public ClientHttpRequestFactory requestFactory(ClientHttpRequestFactory requestFactory) {
+		return new AbstractClientHttpRequestFactoryWrapper(requestFactory) {
+
+			@Override
+			protected org.springframework.http.client.ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod,
+					ClientHttpRequestFactory delegate) {
+				return new CompressingRequest(uri, httpMethod, delegate);
+			}
+
+		};
+	}
+
+	public ClientHttpRequestInterceptor interceptor() {
+		return (request, body, execution) -> {
+			String path = request.getURI().getPath();
+			if (!shouldCompress(path, body.length)) {
+				return execution.execute(request, body);
+			}
+			byte[] compressed = gzip(body);
+			HttpHeaders originalHeaders = new HttpHeaders();
+			originalHeaders.addAll(request.getHeaders());
+			request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+			request.getHeaders().setContentLength(compressed.length);
+			ClientHttpResponse response = execution.execute(request, compressed);
+			HttpStatusCode status = response.getStatusCode();
+			if (!shouldRetryUncompressed(path, status)) {
+				record(body.length, compressed.length);
+				return response;
+			}
+			response.close();
+			request.getHeaders().clear();
+			request.getHeaders().addAll(originalHeaders);
+			ClientHttpResponse retry = execution.execute(request, body);
+			onRejected(path, status, retry.getStatusCode());
+			return retry;
+		};
+	}
+
+	public ExchangeFilterFunction filter() {
+		return (request, next) -> {
+			String path = request.url().getPath();
+			if (this.rejectingPaths.containsKey(path)) {
+				return next.exchange(request);
+			}
+			AtomicBoolean compressed = new AtomicBoolean();
+			ClientRequest compressingRequest = ClientRequest.from(request)
+				.body(compressingInserter(request.body(), path, compressed))
+				.build();
+			return next.exchange(compressingRequest).flatMap(response -> {
+				if (!compressed.get() || !shouldRetryUncompressed(path, response.statusCode())) {
+					return Mono.just(response);
+				}
+				HttpStatusCode status = response.statusCode();
+				return response.releaseBody()
+					.then(next.exchange(request))
+					.doOnNext(retry -> onRejected(path, status, retry.statusCode()));
+			});
+		};
+	}
+
+	private BodyInserter<?, ? super ClientHttpRequest> compressingInserter(
+			BodyInserter<?, ? super ClientHttpRequest> inserter, String path, AtomicBoolean compressed) {
+		int probeSize = Math.max(this.minRequestSize, 1);
+		return (outputMessage, context) -> inserter.insert(new ClientHttpRequestDecorator(outputMessage) {
+
+			@Override
+			public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+				// 第一组凑够probeSize字节，之后每个缓冲区单独一组；第一组不足probeSize时就是完整的请求体
+				long[] probed = new long[1];
+				return Flux.<DataBuffer>from(body).bufferUntil(buffer -> {
+					probed[0] += buffer.readableByteCount();
+					return probed[0] >= probeSize;
+				}).switchOnFirst((signal, groups) -> {
+					Flux<DataBuffer> buffers = groups.flatMapIterable(group -> group);
+					List<DataBuffer> first = signal.get();
+					if (first == null || !shouldCompress(path, readableByteCount(first))) {
+						return super.writeWith(buffers);
+					}
+					compressed.set(true);
+					getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+					getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+					return super.writeWith(gzip(buffers));
+				}).then();
+			}
+
+			private Flux<DataBuffer> gzip(Flux<DataBuffer> buffers) {
+				return Flux.defer(() -> {
+					FastByteArrayOutputStream output = new FastByteArrayOutputStream(8192);
+					CountingOutputStream counter = new CountingOutputStream(output);
+					GZIPOutputStream gzip = gzipOutputStream(counter);
+					long[] original = new long[1];
+					return buffers.concatMap(buffer -> {
+						try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+							original[0] += buffer.readableByteCount();
+							while (iterator.hasNext()) {
+								ByteBuffer byteBuffer = iterator.next();
+								byte[] bytes = new byte[byteBuffer.remaining()];
+								byteBuffer.get(bytes);
+								gzip.write(bytes);
+							}
+						}
+						catch (IOException ex) {
+							return Mono.error(ex);
+						}
+						finally {
+							DataBufferUtils.release(buffer);
+						}
+						return drain(output);
+					}).concatWith(Mono.defer(() -> {
+						try {
+							gzip.finish();
+						}
+						catch (IOException ex) {
+							return Mono.error(ex);
+						}
+						record(original[0], counter.getCount());
+						return drain(output);
+					})).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+				});
+			}
+
+			private Mono<DataBuffer> drain(FastByteArrayOutputStream output) {
+				if (output.size() == 0) {
+					return Mono.empty();
+				}
+				byte[] bytes = output.toByteArray();
+				output.reset();
+				return Mono.just(bufferFactory().wrap(bytes));
+			}
+
+		}, context);
+	}
+
+	private static long readableByteCount(List<DataBuffer> buffers) {
+		long size = 0;
+		for (DataBuffer buffer : buffers) {
+			size += buffer.readableByteCount();
+		}
+		return size;
+	}
+
+	private boolean shouldCompress(String path, long size) {
+		return size >= this.minRequestSize && size > 0 && !this.rejectingPaths.containsKey(path);
+	}
+
+	/**
+	 * 压缩请求的响应是否需要用原始请求体重发
+	 */
+	private boolean shouldRetryUncompressed(String path, HttpStatusCode status) {
+		if (status.value() == 415) {
+			return true;
+		}
+		if (status.value() == 400) {
+			// 每个路径只探测一次，之后的400按普通错误返回
+			return this.probedPaths.add(path);
+		}
+		if (status.is2xxSuccessful()) {
+			this.probedPaths.add(path);
+		}
+		return false;
+	}
+
+	private void onRejected(String path, HttpStatusCode compressedStatus, HttpStatusCode retryStatus) {
+		// 400可能只是参数错误，只有未压缩重发成功时才认定接口不接受压缩
+		if (compressedStatus.value() == 415 || retryStatus.is2xxSuccessful()) {
+			if (this.rejectingPaths.putIfAbsent(path, Boolean.TRUE) == null) {
+				logger.info("{} does not accept gzip request bodies (status {}), sending uncompressed from now on",
+						path, compressedStatus.value());
+			}
+		}
+	}
+
+	private void record(long original, long compressed) {
+		this.originalBytes.add(original);
+		this.compressedBytes.add(compressed);
+	}
+
+	static byte[] gzip(byte[] body) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, body.length / 2));
+		try (GZIPOutputStream gzip = gzipOutputStream(output)) {
+			gzip.write(body);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return output.toByteArray();
+	}
+
+	private static GZIPOutputStream gzipOutputStream(OutputStream output) {
+		try {
+			// base64内联的媒体数据压缩率有限，用最快的压缩级别换取更低的CPU开销
+			return new GZIPOutputStream(output, 8192) {
+				{
+					this.def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * @return 已压缩请求的原始字节数
+	 */
+	public long getOriginalBytes() {
+		return this.originalBytes.sum();
+	}
+
+	/**
+	 * @return 已压缩请求压缩后的字节数
+	 */
+	public long getCompressedBytes() {
+		return this.compressedBytes.sum();
+	}
+
+	/**
+	 * @return 是否已经认定该路径不接受压缩请求体
+	 */
+	public boolean isRejecting(String path) {
+		return this.rejectingPaths.containsKey(path);
+	}
+
+	/**
+	 * 先探测请求体大小，再决定是否边写边压缩，被拒绝时用原始请求体重发
+	 */
+	private final class CompressingRequest extends AbstractClientHttpRequest implements StreamingHttpOutputMessage {
+
+		private final URI uri;
+
+		private final HttpMethod method;
+
+		private final ClientHttpRequestFactory requestFactory;
+
+		private Body body;
+
+		private FastByteArrayOutputStream bufferedBody;
+
+		CompressingRequest(URI uri, HttpMethod method, ClientHttpRequestFactory requestFactory) {
+			this.uri = uri;
+			this.method = method;
+			this.requestFactory = requestFactory;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return this.method;
+		}
+
+		@Override
+		public URI getURI() {
+			return this.uri;
+		}
+
+		@Override
+		public void setBody(Body body) {
+			assertNotExecuted();
+			this.body = body;
+		}
+
+		@Override
+		protected OutputStream getBodyInternal(HttpHeaders headers) {
+			if (this.bufferedBody == null) {
+				this.bufferedBody = new FastByteArrayOutputStream(1024);
+			}
+			return this.bufferedBody;
+		}
+
+		@Override
+		protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+			Body body = this.body;
+			long size = headers.getContentLength();
+			if (body == null || !body.repeatable()) {
+				// 只能写出一次的请求体无法先探测再发送，也无法重发，先缓冲下来
+				FastByteArrayOutputStream buffer = this.bufferedBody != null ? this.bufferedBody
+						: new FastByteArrayOutputStream(1024);
+				if (body != null) {
+					body.writeTo(buffer);
+				}
+				body = new BytesBody(buffer.toByteArrayUnsafe(), buffer.size());
+				size = buffer.size();
+			}
+			String path = this.uri.getPath();
+			boolean compress = size >= 0 ? shouldCompress(path, size)
+					: !isRejecting(path) && reaches(body, Math.max(minRequestSize, 1));
+			if (!compress) {
+				return send(headers, body, null);
+			}
+			long[] counts = new long[2];
+			ClientHttpResponse response = send(headers, body, counts);
+			HttpStatusCode status = response.getStatusCode();
+			if (!shouldRetryUncompressed(path, status)) {
+				record(counts[0], counts[1]);
+				return response;
+			}
+			response.close();
+			ClientHttpResponse retry = send(headers, body, null);
+			onRejected(path, status, retry.getStatusCode());
+			return retry;
+		}
+
+		/**
+		 * @param counts 不为null时压缩发送，写完后依次记录原始字节数和压缩后字节数
+		 */
+		private ClientHttpResponse send(HttpHeaders headers, Body body, long[] counts) throws IOException {
+			org.springframework.http.client.ClientHttpRequest request = this.requestFactory.createRequest(this.uri,
+					this.method);
+			request.getHeaders().putAll(headers);
+			request.getAttributes().putAll(getAttributes());
+			if (counts == null) {
+				DashScopeHttpClients.setBody(request, body);
+				return request.execute();
+			}
+			request.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+			request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+			DashScopeHttpClients.setBody(request, out -> {
+				CountingOutputStream compressedOut = new CountingOutputStream(StreamUtils.nonClosing(out));
+				CountingOutputStream originalOut;
+				try (GZIPOutputStream gzip = gzipOutputStream(compressedOut)) {
+					originalOut = new CountingOutputStream(gzip);
+					body.writeTo(originalOut);
+				}
+				counts[0] = originalOut.getCount();
+				counts[1] = compressedOut.getCount();
+			});
+			return request.execute();
+		}
+
+	}
+
+	/**
+	 * 请求体是否至少有limit字节，写满limit字节后立即停止序列化
+	 */
+	private static boolean reaches(StreamingHttpOutputMessage.Body body, long limit) throws IOException {
+		CountingOutputStream probe = new CountingOutputStream(OutputStream.nullOutputStream()) {
+
+			@Override
+			protected void count(long length) throws IOException {
+				super.count(length);
+				if (getCount() >= limit) {
+					throw new ProbeLimitReached();
+				}
+			}
+
+		};
+		try {
+			body.writeTo(probe);
+			return false;
+		}
+		catch (ProbeLimitReached ex) {
+			return true;
+		}
+	}
+
+	private record BytesBody(byte[] bytes, int length) implements StreamingHttpOutputMessage.Body {
+
+		@Override
+		public void writeTo(OutputStream outputStream) throws IOException {
+			outputStream.write(this.bytes, 0, this.length);
+		}
+
+		@Override
+		public boolean repeatable() {
+			return true;
+		}
+
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			count(1);
+			this.out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count(len);
+			this.out.write(b, off, len);
+		}
+
+		protected void count(long length) throws IOException {
+			this.count += length;
+		}
+
+		long getCount() {
+			return this.count;
+		}
+
+	}
+
+	/**
+	 * 探测到足够字节后中断序列化，不填充堆栈
+	 */
+	private static final class ProbeLimitReached extends IOException {
+
+		ProbeLimitReached() {
+			super("probe limit reached");
+		}
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+
+	}
+
+}
@@ -0,0 +1,333 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * DashScope异步任务（图像、视频生成）状态跟踪器。
+ * 所有待完成的任务登记在同一个注册表中，由一个统一的定时节拍合并轮询
+ * {@code /api/v1/tasks/{taskId}}，每一轮最多并发{@code maxConcurrentRequests}个请求，
+ * 每个任务单独按退避间隔决定是否在本轮被查询。任务结束后完成对应的{@link CompletableFuture}。
+ * 单次查询超过{@code requestTimeout}（默认5秒）按失败处理并退避，挂起的请求最多让下一轮推迟到超时为止，
+ * 期间到来的节拍被丢弃，不会出现重叠的轮询。
+ * <p>
+ * 提供以下指标：
+ * <ul>
+ * <li>{@code dashscope.task.tracker.pending}：待完成任务数（队列深度）</li>
+ * <li>{@code dashscope.task.tracker.completion}：任务从登记到结束的耗时，按status区分</li>
+ * <li>{@code dashscope.task.tracker.polls}：发出的状态查询次数</li>
+ * </ul>
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeTaskTracker implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeTaskTracker.class);
+
+	private static final Set<String> TERMINAL_STATUSES = Set.of("SUCCEEDED", "FAILED", "CANCELED", "UNKNOWN");
+
+	private final String name;
+
+	private final Function<String, Mono<DashScopeResponse>> taskStatusFetcher;
+
+	private final Duration minPollInterval;
+
+	private final Duration maxPollInterval;
+
+	private final Duration taskTimeout;
+
+	private final Duration requestTimeout;
+
+	private final int maxConcurrentRequests;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Counter pollCounter;
+
+	private final Gauge pendingGauge;
+
+	private final Map<String, TrackedTask> pendingTasks = new ConcurrentHashMap<>();
+
+	private final Scheduler scheduler;
+
+	private final Disposable ticker;
+
+	public DashScopeTaskTracker(String name, Function<String, Mono<DashScopeResponse>> taskStatusFetcher,
+			Duration tickInterval, Duration minPollInterval, Duration maxPollInterval, Duration taskTimeout,
+			Duration requestTimeout, int maxConcurrentRequests, MeterRegistry meterRegistry) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(taskStatusFetcher, "taskStatusFetcher must not be null");
+		Assert.notNull(tickInterval, "tickInterval must not be null");
+		Assert.notNull(minPollInterval, "minPollInterval must not be null");
+		Assert.notNull(maxPollInterval, "maxPollInterval must not be null");
+		Assert.notNull(taskTimeout, "taskTimeout must not be null");
+		Assert.notNull(requestTimeout, "requestTimeout must not be null");
+		Assert.isTrue(minPollInterval.compareTo(maxPollInterval) <= 0, "minPollInterval must not be greater than maxPollInterval");
+		Assert.isTrue(maxConcurrentRequests > 0, "maxConcurrentRequests must be greater than 0");
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.name = name;
+		this.taskStatusFetcher = taskStatusFetcher;
+		this.minPollInterval = minPollInterval;
+		this.maxPollInterval = maxPollInterval;
+		this.taskTimeout = taskTimeout;
+		this.requestTimeout = requestTimeout;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.meterRegistry = meterRegistry;
+		this.pollCounter = Counter.builder("dashscope.task.tracker.polls").tag("name", name).register(meterRegistry);
+		this.pendingGauge = Gauge.builder("dashscope.task.tracker.pending", this.pendingTasks, Map::size)
+			.tag("name", name)
+			.register(meterRegistry);
+		this.scheduler = Schedulers.newSingle("dashscope-task-tracker-" + name, true);
+		// 上一轮还没结束时到来的节拍直接丢弃，保证同一时刻只有一轮合并轮询
+		this.ticker = Flux.interval(tickInterval, this.scheduler)
+			.onBackpressureDrop()
+			.concatMap(tick -> pollDueTasks(), 1)
+			.subscribe();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * 登记一个任务，重复登记同一个任务ID会返回同一个Future
+	 * @param taskId 任务ID
+	 * @return 任务结束（SUCCEEDED、FAILED、CANCELED、UNKNOWN）时完成的Future，超时以{@link TimeoutException}结束
+	 */
+	public CompletableFuture<DashScopeResponse> track(String taskId) {
+		Assert.hasText(taskId, "taskId must not be empty");
+		Assert.state(!this.ticker.isDisposed(), "DashScopeTaskTracker has been closed");
+		TrackedTask task = this.pendingTasks.computeIfAbsent(taskId, TrackedTask::new);
+		return task.future;
+	}
+
+	/**
+	 * @return 当前待完成的任务数
+	 */
+	public int getPendingCount() {
+		return this.pendingTasks.size();
+	}
+
+	@Override
+	public void close() {
+		this.ticker.dispose();
+		this.scheduler.dispose();
+		this.meterRegistry.remove(this.pendingGauge);
+		this.pendingTasks.values()
+			.forEach(task -> task.future.completeExceptionally(new IllegalStateException("DashScopeTaskTracker has been closed")));
+	}
+
+	private Mono<Void> pollDueTasks() {
+		long now = System.nanoTime();
+		List<TrackedTask> dueTasks = this.pendingTasks.values().stream().filter(task -> {
+			if (now - task.registeredAt >= this.taskTimeout.toNanos()) {
+				complete(task, null, new TimeoutException("Task " + task.taskId + " did not finish within " + this.taskTimeout));
+				return false;
+			}
+			return task.nextPollAt <= now;
+		}).toList();
+		if (dueTasks.isEmpty()) {
+			return Mono.empty();
+		}
+		return Flux.fromIterable(dueTasks).flatMap(this::poll, this.maxConcurrentRequests).then();
+	}
+
+	private Mono<Void> poll(TrackedTask task) {
+		this.pollCounter.increment();
+		return Mono.defer(() -> this.taskStatusFetcher.apply(task.taskId))
+			.timeout(this.requestTimeout)
+			.doOnNext(response -> onStatus(task, response))
+			.switchIfEmpty(Mono.fromRunnable(() -> {
+				logger.warn("Polling task {} returned no status, will retry", task.taskId);
+				task.backoff();
+			}))
+			.onErrorResume(error -> {
+				onPollError(task, error);
+				return Mono.empty();
+			})
+			.then();
+	}
+
+	private void onStatus(TrackedTask task, DashScopeResponse response) {
+		String status = response.getOutput() != null ? response.getOutput().getTaskStatus() : null;
+		if (status != null && TERMINAL_STATUSES.contains(status)) {
+			complete(task, response, null);
+		}
+		else {
+			task.backoff();
+		}
+	}
+
+	private void onPollError(TrackedTask task, Throwable error) {
+		if (error instanceof WebClientResponseException responseException
+				&& responseException.getStatusCode().is4xxClientError()
+				&& responseException.getStatusCode().value() != 429) {
+			complete(task, null, error);
+			return;
+		}
+		logger.warn("Polling task {} failed, will retry: {}", task.taskId, error.getMessage());
+		task.backoff();
+	}
+
+	private void complete(TrackedTask task, DashScopeResponse response, Throwable error) {
+		if (!this.pendingTasks.remove(task.taskId, task)) {
+			return;
+		}
+		String status = error != null ? (error instanceof TimeoutException ? "TIMED_OUT" : "ERROR")
+				: response.getOutput().getTaskStatus();
+		Timer.builder("dashscope.task.tracker.completion")
+			.tag("name", this.name)
+			.tag("status", status)
+			.register(this.meterRegistry)
+			.record(System.nanoTime() - task.registeredAt, TimeUnit.NANOSECONDS);
+		if (error != null) {
+			task.future.completeExceptionally(error);
+		}
+		else {
+			task.future.complete(response);
+		}
+	}
+
+	private final class TrackedTask {
+
+		private final String taskId;
+
+		private final long registeredAt = System.nanoTime();
+
+		private final CompletableFuture<DashScopeResponse> future = new CompletableFuture<>();
+
+		private volatile long nextPollAt;
+
+		private volatile long currentIntervalNanos = minPollInterval.toNanos();
+
+		private TrackedTask(String taskId) {
+			this.taskId = taskId;
+			this.nextPollAt = this.registeredAt + this.currentIntervalNanos;
+			// 调用方取消Future时把任务移出注册表
+			this.future.whenComplete((response, error) -> pendingTasks.remove(taskId, this));
+		}
+
+		private void backoff() {
+			this.nextPollAt = System.nanoTime() + this.currentIntervalNanos;
+			this.currentIntervalNanos = Math.min(this.currentIntervalNanos * 3 / 2, maxPollInterval.toNanos());
+		}
+	}
+
+	public static final class Builder {
+
+		private String name = "default";
+
+		private Function<String, Mono<DashScopeResponse>> taskStatusFetcher;
+
+		private Duration tickInterval = Duration.ofMillis(500);
+
+		private Duration minPollInterval = Duration.ofSeconds(1);
+
+		private Duration maxPollInterval = Duration.ofSeconds(15);
+
+		private Duration taskTimeout = Duration.ofMinutes(30);
+
+		private Duration requestTimeout = Duration.ofSeconds(5);
+
+		private int maxConcurrentRequests = 16;
+
+		private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Builder taskStatusFetcher(Function<String, Mono<DashScopeResponse>> taskStatusFetcher) {
+			this.taskStatusFetcher = taskStatusFetcher;
+			return this;
+		}
+
+		/**
+		 * 使用图像API查询任务状态
+		 */
+		public Builder imageApi(DashScopeImageApi imageApi) {
+			Assert.notNull(imageApi, "imageApi must not be null");
+			this.taskStatusFetcher = taskId -> imageApi.getImageGenTaskResultAsync(taskId).mapNotNull(HttpEntity::getBody);
+			return this;
+		}
+
+		/**
+		 * 使用视频API查询任务状态
+		 */
+		public Builder videoApi(DashScopeVideoApi videoApi) {
+			Assert.notNull(videoApi, "videoApi must not be null");
+			this.taskStatusFetcher = taskId -> videoApi.getImageGenTaskResultAsync(taskId).mapNotNull(HttpEntity::getBody);
+			return this;
+		}
+
+		public Builder tickInterval(Duration tickInterval) {
+			this.tickInterval = tickInterval;
+			return this;
+		}
+
+		public Builder minPollInterval(Duration minPollInterval) {
+			this.minPollInterval = minPollInterval;
+			return this;
+		}
+
+		public Builder maxPollInterval(Duration maxPollInterval) {
+			this.maxPollInterval = maxPollInterval;
+			return this;
+		}
+
+		public Builder taskTimeout(Duration taskTimeout) {
+			this.taskTimeout = taskTimeout;
+			return this;
+		}
+
+		/**
+		 * 单次状态查询的超时，默认5秒
+		 */
+		public Builder requestTimeout(Duration requestTimeout) {
+			this.requestTimeout = requestTimeout;
+			return this;
+		}
+
+		public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+			this.maxConcurrentRequests = maxConcurrentRequests;
+			return this;
+		}
+
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public DashScopeTaskTracker build() {
+			return new DashScopeTaskTracker(this.name, this.taskStatusFetcher, this.tickInterval, this.minPollInterval,
+					this.maxPollInterval, this.taskTimeout, this.requestTimeout, this.maxConcurrentRequests, this.meterRegistry);
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import java.time.Duration;
+
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * DashScope各API共享的HTTP传输层。
+ * <p>
+ * 基于Reactor Netty的连接池，同一个实例可以同时交给{@link DashScopeApi}、{@link DashScopeAudioApi}、
+ * {@link DashScopeImageApi}、{@link DashScopeVideoApi}的构建器：RestClient通过{@link ReactorClientHttpRequestFactory}、
+ * WebClient通过{@link ReactorClientHttpConnector}使用同一个连接池，阻塞调用和流式调用共享Keep-Alive连接。
+ * <ul>
+ * <li>空闲超过{@code maxIdleTime}或存活超过{@code maxLifeTime}的连接由后台任务按{@code evictionInterval}定期清理</li>
+ * <li>开启{@code http2}后对HTTPS地址协商HTTP/2，多个请求复用同一个连接；服务端不支持时退回HTTP/1.1</li>
+ * <li>开启{@code compress}（默认）后发送 {@code Accept-Encoding: gzip}，并在收到压缩响应（包括SSE流）时边读边解压</li>
+ * <li>开启{@code metrics}后连接池指标（{@code reactor.netty.connection.provider.*}）注册到Micrometer全局注册表，
+ * tag {@code name}为传输层名称</li>
+ * </ul>
+ * 传输层持有连接池，不再使用时调用{@link #close()}释放。
+ *
+ * @author Huang Wenjie
+ */
+public class DashScopeTransport implements AutoCloseable {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+	public static final Duration DEFAULT_PENDING_ACQUIRE_TIMEOUT = Duration.ofSeconds(45);
+
+	public static final Duration DEFAULT_MAX_IDLE_TIME = Duration.ofSeconds(30);
+
+	public static final Duration DEFAULT_MAX_LIFE_TIME = Duration.ofMinutes(5);
+
+	public static final Duration DEFAULT_EVICTION_INTERVAL = Duration.ofSeconds(30);
+
+	public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(155);
+
+	private final String name;
+
+	private final ConnectionProvider connectionProvider;
+
+	private final HttpClient httpClient;
+
+	private final Duration readTimeout;
+
+	private DashScopeTransport(Builder builder) {
+		this.name = builder.name;
+		this.readTimeout = builder.readTimeout;
+		this.connectionProvider = ConnectionProvider.builder(builder.name)
+			.maxConnections(builder.maxConnections)
+			.pendingAcquireTimeout(builder.pendingAcquireTimeout)
+			.maxIdleTime(builder.maxIdleTime)
+			.maxLifeTime(builder.maxLifeTime)
+			.evictInBackground(builder.evictionInterval)
+			.metrics(builder.metrics)
+			.build();
+		HttpClient httpClient = HttpClient.create(this.connectionProvider)
+			.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) builder.connectTimeout.toMillis())
+			.option(ChannelOption.SO_KEEPALIVE, true)
+			.responseTimeout(builder.readTimeout)
+			.compress(builder.compress);
+		if (builder.http2) {
+			httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+		}
+		this.httpClient = httpClient;
+	}
+
+	/**
+	 * 让RestClient使用共享连接池，会覆盖构建器上已有的requestFactory
+	 * @param restClientBuilder RestClient构建器
+	 * @return 同一个构建器
+	 */
+	public RestClient.Builder apply(RestClient.Builder restClientBuilder) {
+		return restClientBuilder.requestFactory(requestFactory());
+	}
+
+	/**
+	 * @return 使用共享连接池的RestClient请求工厂
+	 */
+	ReactorClientHttpRequestFactory requestFactory() {
+		ReactorClientHttpRequestFactory requestFactory = new ReactorClientHttpRequestFactory(this.httpClient);
+		requestFactory.setReadTimeout(this.readTimeout);
+		return requestFactory;
+	}
+
+	/**
+	 * 让WebClient使用共享连接池，会覆盖构建器上已有的clientConnector
+	 * @param webClientBuilder WebClient构建器
+	 * @return 同一个构建器
+	 */
+	public WebClient.Builder apply(WebClient.Builder webClientBuilder) {
+		return webClientBuilder.clientConnector(new ReactorClientHttpConnector(this.httpClient));
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public HttpClient getHttpClient() {
+		return this.httpClient;
+	}
+
+	public ConnectionProvider getConnectionProvider() {
+		return this.connectionProvider;
+	}
+
+	/**
+	 * 关闭连接池
+	 */
+	@Override
+	public void close() {
+		this.connectionProvider.dispose();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static final class Builder {
+
+		private String name = "dashscope";
+
+		private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+		private Duration pendingAcquireTimeout = DEFAULT_PENDING_ACQUIRE_TIMEOUT;
+
+		private Duration maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+
+		private Duration maxLifeTime = DEFAULT_MAX_LIFE_TIME;
+
+		private Duration evictionInterval = DEFAULT_EVICTION_INTERVAL;
+
+		private Duration connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+		private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+
+		private boolean http2 = false;
+
+		private boolean metrics = false;
+
+		private boolean compress = true;
+
+		/**
+		 * 连接池名称，同时作为指标的name标签
+		 */
+		public Builder name(String name) {
+			Assert.hasText(name, "name must not be empty");
+			this.name = name;
+			return this;
+		}
+
+		/**
+		 * 每个目标地址的最大连接数
+		 */
+		public Builder maxConnections(int maxConnections) {
+			Assert.isTrue(maxConnections > 0, "maxConnections must be greater than 0");
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * 连接池耗尽时等待空闲连接的最长时间
+		 */
+		public Builder pendingAcquireTimeout(Duration pendingAcquireTimeout) {
+			Assert.notNull(pendingAcquireTimeout, "pendingAcquireTimeout must not be null");
+			this.pendingAcquireTimeout = pendingAcquireTimeout;
+			return this;
+		}
+
+		/**
+		 * 连接最长空闲时间，应小于服务端的Keep-Alive超时
+		 */
+		public Builder maxIdleTime(Duration maxIdleTime) {
+			Assert.notNull(maxIdleTime, "maxIdleTime must not be null");
+			this.maxIdleTime = maxIdleTime;
+			return this;
+		}
+
+		/**
+		 * 连接最长存活时间，到期后不再复用，便于跟随DNS变化
+		 */
+		public Builder maxLifeTime(Duration maxLifeTime) {
+			Assert.notNull(maxLifeTime, "maxLifeTime must not be null");
+			this.maxLifeTime = maxLifeTime;
+			return this;
+		}
+
+		/**
+		 * 后台清理过期连接的间隔，{@link Duration#ZERO}表示只在获取连接时清理
+		 */
+		public Builder evictionInterval(Duration evictionInterval) {
+			Assert.notNull(evictionInterval, "evictionInterval must not be null");
+			this.evictionInterval = evictionInterval;
+			return this;
+		}
+
+		public Builder connectTimeout(Duration connectTimeout) {
+			Assert.notNull(connectTimeout, "connectTimeout must not be null");
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		/**
+		 * 两次读到数据之间的最长间隔，流式输出时模型思考时间较长需要适当放大
+		 */
+		public Builder readTimeout(Duration readTimeout) {
+			Assert.notNull(readTimeout, "readTimeout must not be null");
+			this.readTimeout = readTimeout;
+			return this;
+		}
+
+		public Builder http2(boolean http2) {
+			this.http2 = http2;
+			return this;
+		}
+
+		public Builder metrics(boolean metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * 是否接受gzip/deflate压缩的响应
+		 */
+		public Builder compress(boolean compress) {
+			this.compress = compress;
+			return this;
+		}
+
+		public DashScopeTransport build() {
+			return new DashScopeTransport(this);
+		}
+
+	}
+
+}
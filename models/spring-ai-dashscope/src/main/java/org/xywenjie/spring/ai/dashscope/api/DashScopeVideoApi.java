@@ -9,12 +9,16 @@ import org.springframework.ai.retry.RetryUtils;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
 import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
 
+import reactor.core.publisher.Mono;
+
 /**
  * @author Huang Wenjie
  */
@@ -22,7 +26,14 @@ public class DashScopeVideoApi {
 
     private final RestClient restClient;
 
+    private final WebClient webClient;
+
     public DashScopeVideoApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,ResponseErrorHandler responseErrorHandler) {
+        this(baseUrl, apiKey, headers, restClientBuilder, WebClient.builder(), responseErrorHandler);
+    }
+
+    public DashScopeVideoApi(String baseUrl, ApiKey apiKey, HttpHeaders headers, RestClient.Builder restClientBuilder,
+                             WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler) {
         Consumer<HttpHeaders> finalHeaders = h -> {
             if(!(apiKey instanceof  NoopApiKey)){
                 h.add(HttpHeaders.AUTHORIZATION,"Bearer "+ apiKey.getValue());
@@ -32,12 +43,22 @@ public class DashScopeVideoApi {
             h.addAll(headers);
         };
         this.restClient = restClientBuilder.baseUrl(baseUrl).defaultHeaders(finalHeaders).defaultStatusHandler(responseErrorHandler).build();
+        this.webClient = webClientBuilder.baseUrl(baseUrl).defaultHeaders(finalHeaders).build();
     }
 
     public HttpEntity<DashScopeResponse> getImageGenTaskResult(String taskId){
         return this.restClient.get().uri("/api/v1/tasks/{task_id}", taskId).retrieve().toEntity(DashScopeResponse.class);
     }
 
+    /**
+     * 非阻塞地查询视频生成任务状态
+     * @param taskId 任务ID
+     * @return 任务状态响应
+     */
+    public Mono<ResponseEntity<DashScopeResponse>> getImageGenTaskResultAsync(String taskId){
+        return this.webClient.get().uri("/api/v1/tasks/{task_id}", taskId).retrieve().toEntity(DashScopeResponse.class);
+    }
+
     public HttpEntity<DashScopeResponse> submitImageGenTask(DashScopeRequest request){
         return this.restClient.post().uri("/api/v1/services/aigc/video-generation/video-synthesis").body(request).retrieve().toEntity(DashScopeResponse.class);
     }
@@ -56,7 +77,13 @@ public class DashScopeVideoApi {
 
         private ResponseErrorHandler responseErrorHandler = RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER;
 
-        private RestClient.Builder restClientBuilder = RestClient.builder();
+        private RestClient.Builder restClientBuilder;
+
+        private WebClient.Builder webClientBuilder;
+
+        private DashScopeTransport transport;
+
+        private DashScopeRequestCompressor requestCompressor;
 
         public Builder baseUrl(String baseUrl){
             Assert.hasText(baseUrl, "baseUrl must not be empty");
@@ -74,11 +101,42 @@ public class DashScopeVideoApi {
             return this;
         }
 
+        public Builder restClientBuilder(RestClient.Builder restClientBuilder){
+            Assert.notNull(restClientBuilder, "restClientBuilder must not be null");
+            this.restClientBuilder = restClientBuilder;
+            return this;
+        }
+
+        public Builder webClientBuilder(WebClient.Builder webClientBuilder){
+            Assert.notNull(webClientBuilder, "webClientBuilder must not be null");
+            this.webClientBuilder = webClientBuilder;
+            return this;
+        }
+
+        /**
+         * 使用共享的传输层（连接池、超时、HTTP/2），可以与其它API实例共享
+         */
+        public Builder transport(DashScopeTransport transport){
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * 对较大的请求体做gzip压缩，可以与其它API实例共享
+         */
+        public Builder requestCompressor(DashScopeRequestCompressor requestCompressor){
+            this.requestCompressor = requestCompressor;
+            return this;
+        }
 
         public DashScopeVideoApi build(){
             Assert.notNull(this.apiKey, "apiKey must not be null");
             Assert.hasText(baseUrl, "baseUrl must not be empty");
-            return new DashScopeVideoApi(this.baseUrl,this.apiKey,this.headers,this.restClientBuilder,this.responseErrorHandler);
+            RestClient.Builder restClientBuilder = DashScopeHttpClients.restClientBuilder(this.restClientBuilder,
+                    this.transport, this.requestCompressor, null, this.apiKey);
+            WebClient.Builder webClientBuilder = DashScopeHttpClients.webClientBuilder(this.webClientBuilder,
+                    this.transport, this.requestCompressor, null, this.apiKey);
+            return new DashScopeVideoApi(this.baseUrl,this.apiKey,this.headers,restClientBuilder,webClientBuilder,this.responseErrorHandler);
         }
     }
 
@@ -0,0 +1,181 @@
+package org.xywenjie.spring.ai.dashscope.api.dto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * 以base64内联到请求体中的媒体数据。
+ * <p>
+ * 序列化时从{@link InputStreamSource}边读边编码，直接写入JSON输出，
+ * 不会在堆上生成完整的base64字符串。带{@code mimeType}时写成
+ * {@code data:<mimeType>;base64,...}（图片、视频），否则写成纯base64（音频）。
+ * <p>
+ * 每次序列化都会重新打开数据源，{@link org.springframework.core.io.InputStreamResource}这类只能读取一次的数据源
+ * 只能用于一次请求，不能重试，{@code DashScopeChatModel}会拒绝这类数据源。
+ *
+ * @author Huang Wenjie
+ */
+public final class DashScopeMedia implements JsonSerializable {
+
+	/**
+	 * 每次读取的字节数，必须是3的倍数，保证分段编码结果可以直接拼接
+	 */
+	private static final int CHUNK_SIZE = 3 * 4096;
+
+	private final MimeType mimeType;
+
+	private final InputStreamSource source;
+
+	private DashScopeMedia(MimeType mimeType, InputStreamSource source) {
+		Assert.notNull(source, "source must not be null");
+		this.mimeType = mimeType;
+		this.source = source;
+	}
+
+	/**
+	 * @return 编码为 {@code data:<mimeType>;base64,...} 的媒体
+	 */
+	public static DashScopeMedia dataUri(MimeType mimeType, InputStreamSource source) {
+		Assert.notNull(mimeType, "mimeType must not be null");
+		return new DashScopeMedia(mimeType, source);
+	}
+
+	public static DashScopeMedia dataUri(MimeType mimeType, byte[] data) {
+		Assert.notNull(data, "data must not be null");
+		return dataUri(mimeType, new ByteArrayResource(data));
+	}
+
+	/**
+	 * @return 编码为纯base64的媒体
+	 */
+	public static DashScopeMedia base64(InputStreamSource source) {
+		return new DashScopeMedia(null, source);
+	}
+
+	public static DashScopeMedia base64(byte[] data) {
+		Assert.notNull(data, "data must not be null");
+		return base64(new ByteArrayResource(data));
+	}
+
+	/**
+	 * @return 媒体类型，纯base64编码时为null
+	 */
+	public MimeType getMimeType() {
+		return this.mimeType;
+	}
+
+	public InputStreamSource getSource() {
+		return this.source;
+	}
+
+	/**
+	 * 打开一个逐段产生编码结果的Reader
+	 */
+	public Reader openReader() throws IOException {
+		String prefix = this.mimeType != null ? "data:" + this.mimeType + ";base64," : "";
+		return new Base64Reader(prefix, this.source.getInputStream());
+	}
+
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		try (Reader reader = openReader()) {
+			gen.writeString(reader, -1);
+		}
+	}
+
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+			throws IOException {
+		serialize(gen, serializers);
+	}
+
+	@Override
+	public String toString() {
+		return "DashScopeMedia [mimeType=" + this.mimeType + ", source=" + this.source + "]";
+	}
+
+	/**
+	 * 先输出前缀，再按{@link #CHUNK_SIZE}读取输入流并编码
+	 */
+	private static final class Base64Reader extends Reader {
+
+		private final InputStream input;
+
+		private final byte[] chunk = new byte[CHUNK_SIZE];
+
+		private final Base64.Encoder encoder = Base64.getEncoder();
+
+		private final byte[] encoded = new byte[CHUNK_SIZE / 3 * 4];
+
+		private int limit;
+
+		private String prefix;
+
+		private int position;
+
+		private boolean eof;
+
+		Base64Reader(String prefix, InputStream input) {
+			this.prefix = prefix;
+			this.input = input;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (!this.prefix.isEmpty()) {
+				int count = Math.min(length, this.prefix.length());
+				this.prefix.getChars(0, count, buffer, offset);
+				this.prefix = this.prefix.substring(count);
+				return count;
+			}
+			if (this.position == this.limit && !fill()) {
+				return -1;
+			}
+			int count = Math.min(length, this.limit - this.position);
+			for (int i = 0; i < count; i++) {
+				buffer[offset + i] = (char) this.encoded[this.position++];
+			}
+			return count;
+		}
+
+		private boolean fill() throws IOException {
+			if (this.eof) {
+				return false;
+			}
+			int filled = this.input.readNBytes(this.chunk, 0, CHUNK_SIZE);
+			if (filled < CHUNK_SIZE) {
+				this.eof = true;
+			}
+			if (filled == 0) {
+				return false;
+			}
+			this.limit = this.encoder.encode(filled == CHUNK_SIZE ? this.chunk : Arrays.copyOf(this.chunk, filled),
+					this.encoded);
+			this.position = 0;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.input.close();
+		}
+
+	}
+
+}
@@ -1,7 +1,12 @@
 package org.xywenjie.spring.ai.dashscope.api.dto;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -455,6 +460,24 @@ public class DashScopeRequest {
         @JsonProperty("cache_control")
         private Object cacheControl;
 
+        /**
+         * 序列化时代替{@link #image}写入image字段，流式编码为base64
+         */
+        @JsonIgnore
+        private DashScopeMedia imageMedia;
+
+        /**
+         * 序列化时代替{@link #video}写入video字段，流式编码为base64
+         */
+        @JsonIgnore
+        private DashScopeMedia videoMedia;
+
+        /**
+         * 序列化时代替{@link #audio}写入audio字段，流式编码为base64
+         */
+        @JsonIgnore
+        private DashScopeMedia audioMedia;
+
         public String getText() {
             return text;
         }
@@ -469,6 +492,16 @@ public class DashScopeRequest {
 
         public void setImage(String image) {
             this.image = image;
+            this.imageMedia = null;
+        }
+
+        public DashScopeMedia getImageMedia() {
+            return imageMedia;
+        }
+
+        public void setImageMedia(DashScopeMedia imageMedia) {
+            this.imageMedia = imageMedia;
+            this.image = null;
         }
 
         public String getVideo() {
@@ -477,6 +510,16 @@ public class DashScopeRequest {
 
         public void setVideo(String video) {
             this.video = video;
+            this.videoMedia = null;
+        }
+
+        public DashScopeMedia getVideoMedia() {
+            return videoMedia;
+        }
+
+        public void setVideoMedia(DashScopeMedia videoMedia) {
+            this.videoMedia = videoMedia;
+            this.video = null;
         }
 
         public Float getFps() {
@@ -517,6 +560,16 @@ public class DashScopeRequest {
 
         public void setAudio(String audio) {
             this.audio = audio;
+            this.audioMedia = null;
+        }
+
+        public DashScopeMedia getAudioMedia() {
+            return audioMedia;
+        }
+
+        public void setAudioMedia(DashScopeMedia audioMedia) {
+            this.audioMedia = audioMedia;
+            this.audio = null;
         }
 
         public Object getCacheControl() {
@@ -527,6 +580,24 @@ public class DashScopeRequest {
             this.cacheControl = cacheControl;
         }
 
+        /**
+         * 把以{@link DashScopeMedia}设置的媒体写入对应的image、video、audio字段
+         */
+        @JsonAnyGetter
+        private Map<String, DashScopeMedia> mediaProperties() {
+            Map<String, DashScopeMedia> properties = new LinkedHashMap<>(4);
+            if (imageMedia != null) {
+                properties.put("image", imageMedia);
+            }
+            if (videoMedia != null) {
+                properties.put("video", videoMedia);
+            }
+            if (audioMedia != null) {
+                properties.put("audio", audioMedia);
+            }
+            return properties;
+        }
+
         public MediaContent() {
         }
 
@@ -547,12 +618,37 @@ public class DashScopeRequest {
             }
 
             public Builder audio(String audio){
-                mediaContent.audio = audio;
+                mediaContent.setAudio(audio);
+                return this;
+            }
+
+            public Builder audio(DashScopeMedia audio){
+                mediaContent.setAudioMedia(audio);
                 return this;
             }
 
             public Builder image(String image){
-                mediaContent.image = image;
+                mediaContent.setImage(image);
+                return this;
+            }
+
+            public Builder image(DashScopeMedia image){
+                mediaContent.setImageMedia(image);
+                return this;
+            }
+
+            public Builder video(String video){
+                mediaContent.setVideo(video);
+                return this;
+            }
+
+            public Builder video(DashScopeMedia video){
+                mediaContent.setVideoMedia(video);
+                return this;
+            }
+
+            public Builder cacheControl(CacheControl cacheControl){
+                mediaContent.cacheControl = cacheControl;
                 return this;
             }
 
@@ -562,6 +658,26 @@ public class DashScopeRequest {
         }
     }
 
+    /**
+     * 显式上下文缓存标记，放在消息内容上时以该位置为终点的前缀会被缓存
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class CacheControl{
+
+        public static final CacheControl EPHEMERAL = new CacheControl("ephemeral");
+
+        @JsonProperty("type")
+        private final String type;
+
+        public CacheControl(String type) {
+            this.type = type;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
     /**
      * Resolution enum for video/image generation
      */
@@ -650,7 +766,7 @@ public class DashScopeRequest {
         private Double temperature;
 
         @JsonProperty("top_p")
-        private Integer topP;
+        private Double topP;
 
         @JsonProperty("top_k")
         private Integer topK;
@@ -661,12 +777,15 @@ public class DashScopeRequest {
         @JsonProperty("thinking_budget")
         private Integer thinkingBudget;
 
-        @JsonProperty("incremental_output ")
+        @JsonProperty("incremental_output")
         private Boolean incrementalOutput;
 
         @JsonProperty("tools")
         private List<FunctionTool> tools;
 
+        @JsonProperty("parallel_tool_calls")
+        private Boolean parallelToolCalls;
+
         @JsonProperty("enable_search")
         private Boolean enableSearch;
 
@@ -811,17 +930,17 @@ public class DashScopeRequest {
 
         /**
          * Get the topP value for this request
-         * @return The topP integer value
+         * @return The topP double value
          */
-        public Integer getTopP() {
+        public Double getTopP() {
             return topP;
         }
 
         /**
          * Set the topP value for this request
-         * @param topP The topP integer value
+         * @param topP The topP double value
          */
-        public void setTopP(Integer topP) {
+        public void setTopP(Double topP) {
             this.topP = topP;
         }
 
@@ -889,6 +1008,18 @@ public class DashScopeRequest {
             this.tools = tools;
         }
 
+        public Boolean getParallelToolCalls() {
+            return parallelToolCalls;
+        }
+
+        /**
+         * 是否允许模型在一轮回复中返回多个工具调用
+         * @param parallelToolCalls 默认为false
+         */
+        public void setParallelToolCalls(Boolean parallelToolCalls) {
+            this.parallelToolCalls = parallelToolCalls;
+        }
+
         public Boolean getEnableSearch() {
             return enableSearch;
         }
@@ -905,6 +1036,86 @@ public class DashScopeRequest {
             this.searchOptions = searchOptions;
         }
 
+        /**
+         * 复制全部参数，工具列表复制为新的列表
+         * @return 新的参数对象
+         */
+        public Parameters copy() {
+            return new Parameters().merge(this);
+        }
+
+        /**
+         * 用另一组参数中不为null的字段覆盖当前参数
+         * @param overrides 优先的参数，为null时不做任何修改
+         * @return 当前参数对象
+         */
+        public Parameters merge(Parameters overrides) {
+            if (overrides == null) {
+                return this;
+            }
+            if (overrides.size != null) {
+                this.size = overrides.size;
+            }
+            if (overrides.n != null) {
+                this.n = overrides.n;
+            }
+            if (overrides.resultFormat != null) {
+                this.resultFormat = overrides.resultFormat;
+            }
+            if (overrides.watermark != null) {
+                this.watermark = overrides.watermark;
+            }
+            if (overrides.seed != null) {
+                this.seed = overrides.seed;
+            }
+            if (overrides.resolution != null) {
+                this.resolution = overrides.resolution;
+            }
+            if (overrides.duration != null) {
+                this.duration = overrides.duration;
+            }
+            if (overrides.promptExtend != null) {
+                this.promptExtend = overrides.promptExtend;
+            }
+            if (overrides.shotType != null) {
+                this.shotType = overrides.shotType;
+            }
+            if (overrides.audio != null) {
+                this.audio = overrides.audio;
+            }
+            if (overrides.temperature != null) {
+                this.temperature = overrides.temperature;
+            }
+            if (overrides.topP != null) {
+                this.topP = overrides.topP;
+            }
+            if (overrides.topK != null) {
+                this.topK = overrides.topK;
+            }
+            if (overrides.enableThinking != null) {
+                this.enableThinking = overrides.enableThinking;
+            }
+            if (overrides.thinkingBudget != null) {
+                this.thinkingBudget = overrides.thinkingBudget;
+            }
+            if (overrides.incrementalOutput != null) {
+                this.incrementalOutput = overrides.incrementalOutput;
+            }
+            if (overrides.tools != null) {
+                this.tools = new ArrayList<>(overrides.tools);
+            }
+            if (overrides.parallelToolCalls != null) {
+                this.parallelToolCalls = overrides.parallelToolCalls;
+            }
+            if (overrides.enableSearch != null) {
+                this.enableSearch = overrides.enableSearch;
+            }
+            if (overrides.searchOptions != null) {
+                this.searchOptions = overrides.searchOptions;
+            }
+            return this;
+        }
+
         public static Builder builder(){
             return new Builder();
         }
@@ -1227,7 +1438,7 @@ public class DashScopeRequest {
              return this;
          }
 
-        public Builder topP(Integer topP) {
+        public Builder topP(Double topP) {
              instance.getParameters().setTopP(topP);
              return this;
          }
@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -492,6 +493,7 @@ public class DashScopeResponse {
 		private String reasoningContent;
 
 		@JsonProperty("toolCalls")
+		@JsonAlias("tool_calls")
 		private List<ToolCall> toolCalls;
 
 		public String getRole() {
@@ -813,6 +815,18 @@ public class DashScopeResponse {
     	
     	@JsonProperty("text_tokens")
     	private Integer textTokens;
+
+    	//命中上下文缓存的Token数
+    	@JsonProperty("cached_tokens")
+    	private Integer cachedTokens;
+
+    	//本次新创建显式缓存的Token数
+    	@JsonProperty("cache_creation_input_tokens")
+    	private Integer cacheCreationInputTokens;
+
+    	//缓存类型，显式缓存为ephemeral
+    	@JsonProperty("cache_type")
+    	private String cacheType;
     	
     	public Integer getTextTokens() {
 			return textTokens;
@@ -821,6 +835,30 @@ public class DashScopeResponse {
     	public void setTextTokens(Integer textTokens) {
 			this.textTokens = textTokens;
 		}
+
+		public Integer getCachedTokens() {
+			return cachedTokens;
+		}
+
+		public void setCachedTokens(Integer cachedTokens) {
+			this.cachedTokens = cachedTokens;
+		}
+
+		public Integer getCacheCreationInputTokens() {
+			return cacheCreationInputTokens;
+		}
+
+		public void setCacheCreationInputTokens(Integer cacheCreationInputTokens) {
+			this.cacheCreationInputTokens = cacheCreationInputTokens;
+		}
+
+		public String getCacheType() {
+			return cacheType;
+		}
+
+		public void setCacheType(String cacheType) {
+			this.cacheType = cacheType;
+		}
     }
     
     @JsonInclude(Include.NON_NULL)
@@ -0,0 +1,593 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.MessageAggregator;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatOptions;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 带响应缓存的{@link ChatModel}装饰器，用于FAQ这类大量重复提问的场景。
+ * <p>
+ * 缓存key为规范化后的提示词的SHA-256摘要，包括模型、请求参数（温度、top_p、思考、联网搜索等）、
+ * 工具定义和全部消息文本。消息文本做NFKC规范化并合并连续空白，只有空白或全半角差异的提问会命中同一个条目。
+ * <p>
+ * 配置{@code embeddingModel}后开启语义匹配：精确匹配未命中时，对最后一条用户消息计算向量，
+ * 在内存近似最近邻索引中查找除最后一条用户消息外其余部分完全相同、且余弦相似度不低于{@code similarityThreshold}的已缓存提问，
+ * 命中时直接返回该提问的响应。
+ * <p>
+ * 以下请求不经过缓存：温度高于{@code maxTemperature}、消息中带有媒体。请求未指定温度时使用被装饰模型默认选项中的温度，
+ * 默认选项也没有时视为{@code defaultTemperature}（DashScope服务端默认{@value #DEFAULT_TEMPERATURE}）。
+ * 返回工具调用或没有文本的响应不会写入缓存；向量维度与已索引的不同时，响应只写入精确匹配的缓存。命中的响应在{@link org.springframework.ai.chat.metadata.ChatResponseMetadata}
+ * 中带有{@value #CACHE_METADATA_KEY}=exact/semantic。
+ * <p>
+ * 条目在{@code ttl}后过期，超过{@code maxEntries}时淘汰最久未使用的条目。提供以下指标：
+ * <ul>
+ * <li>{@code dashscope.chat.cache.requests}：按result=hit/semantic_hit/miss/bypass区分的请求数</li>
+ * <li>{@code dashscope.chat.cache.size}：缓存条目数</li>
+ * </ul>
+ * 指标都带有tag {@code name}，多个实例注册到同一个注册表（默认{@link Metrics#globalRegistry}）时用名称区分。
+ *
+ * @author Huang Wenjie
+ */
+public class CachingChatModel implements ChatModel {
+
+	public static final String CACHE_METADATA_KEY = "response-cache";
+
+	public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	public static final double DEFAULT_SIMILARITY_THRESHOLD = 0.95;
+
+	public static final double DEFAULT_MAX_TEMPERATURE = 0.5;
+
+	/**
+	 * DashScope通义千问模型未指定温度时服务端使用的默认值
+	 */
+	public static final double DEFAULT_TEMPERATURE = 0.7;
+
+	private static final Logger logger = LoggerFactory.getLogger(CachingChatModel.class);
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final int INDEX_TABLES = 10;
+
+	private static final int INDEX_BITS_PER_TABLE = 10;
+
+	private final ChatModel delegate;
+
+	private final EmbeddingModel embeddingModel;
+
+	private final String defaultModel;
+
+	private final double similarityThreshold;
+
+	private final double maxTemperature;
+
+	private final double defaultTemperature;
+
+	private final Duration ttl;
+
+	private final int maxEntries;
+
+	private final Clock clock;
+
+	/**
+	 * 按访问顺序排列，用于LRU淘汰
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+	private final LshVectorIndex<String> index = new LshVectorIndex<>(INDEX_TABLES, INDEX_BITS_PER_TABLE, 42L);
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder semanticHits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder bypasses = new LongAdder();
+
+	private Instant nextSweep;
+
+	public CachingChatModel(String name, ChatModel delegate, EmbeddingModel embeddingModel, String defaultModel,
+			double similarityThreshold, double maxTemperature, double defaultTemperature, Duration ttl, int maxEntries,
+			Clock clock, MeterRegistry meterRegistry) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.hasText(defaultModel, "defaultModel must not be empty");
+		Assert.isTrue(similarityThreshold > 0 && similarityThreshold <= 1, "similarityThreshold must be in (0, 1]");
+		Assert.notNull(ttl, "ttl must not be null");
+		Assert.isTrue(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+		Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		Assert.notNull(clock, "clock must not be null");
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.delegate = delegate;
+		this.embeddingModel = embeddingModel;
+		this.defaultModel = defaultModel;
+		this.similarityThreshold = similarityThreshold;
+		this.maxTemperature = maxTemperature;
+		this.defaultTemperature = defaultTemperature;
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.clock = clock;
+		this.nextSweep = clock.instant().plus(ttl);
+		registerCounter(meterRegistry, name, "hit", this.hits);
+		registerCounter(meterRegistry, name, "semantic_hit", this.semanticHits);
+		registerCounter(meterRegistry, name, "miss", this.misses);
+		registerCounter(meterRegistry, name, "bypass", this.bypasses);
+		Gauge.builder("dashscope.chat.cache.size", this, CachingChatModel::size)
+			.tag("name", name)
+			.register(meterRegistry);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public ChatResponse call(Prompt prompt) {
+		PromptKey key = promptKey(prompt);
+		if (key == null) {
+			this.bypasses.increment();
+			return this.delegate.call(prompt);
+		}
+		Lookup lookup = lookup(key);
+		if (lookup.response() != null) {
+			return lookup.response();
+		}
+		ChatResponse response = this.delegate.call(prompt);
+		put(key, lookup.vector(), response);
+		return response;
+	}
+
+	@Override
+	public Flux<ChatResponse> stream(Prompt prompt) {
+		PromptKey key = promptKey(prompt);
+		if (key == null) {
+			this.bypasses.increment();
+			return this.delegate.stream(prompt);
+		}
+		// 语义匹配需要同步调用向量模型，不在调用方线程上执行
+		Mono<Lookup> lookup = this.embeddingModel != null
+				? Mono.fromCallable(() -> lookup(key)).subscribeOn(Schedulers.boundedElastic())
+				: Mono.fromCallable(() -> lookup(key));
+		return lookup.flatMapMany(result -> {
+			if (result.response() != null) {
+				return Flux.just(result.response());
+			}
+			return new MessageAggregator().aggregate(this.delegate.stream(prompt),
+					response -> put(key, result.vector(), response));
+		});
+	}
+
+	@Override
+	public ChatOptions getDefaultOptions() {
+		return this.delegate.getDefaultOptions();
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getSemanticHitCount() {
+		return this.semanticHits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	public long getBypassCount() {
+		return this.bypasses.sum();
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized void clear() {
+		this.entries.clear();
+		this.index.clear();
+	}
+
+	private Lookup lookup(PromptKey key) {
+		Instant now = this.clock.instant();
+		ChatResponse cached = getExact(key.exact(), now);
+		if (cached != null) {
+			this.hits.increment();
+			return new Lookup(markHit(cached, "exact"), null);
+		}
+		float[] vector = null;
+		if (this.embeddingModel != null && key.question() != null) {
+			vector = this.embeddingModel.embed(key.question());
+			cached = getSimilar(key.context(), vector, now);
+			if (cached != null) {
+				this.semanticHits.increment();
+				return new Lookup(markHit(cached, "semantic"), null);
+			}
+		}
+		this.misses.increment();
+		return new Lookup(null, vector);
+	}
+
+	private synchronized ChatResponse getExact(String exactKey, Instant now) {
+		Entry entry = this.entries.get(exactKey);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.isExpired(now)) {
+			remove(exactKey);
+			return null;
+		}
+		return entry.response();
+	}
+
+	private synchronized ChatResponse getSimilar(String contextKey, float[] vector, Instant now) {
+		String nearest = this.index.nearest(vector, this.similarityThreshold, candidate -> {
+			Entry entry = this.entries.get(candidate);
+			return entry != null && contextKey.equals(entry.contextKey()) && !entry.isExpired(now);
+		});
+		return nearest != null ? this.entries.get(nearest).response() : null;
+	}
+
+	private void put(PromptKey key, float[] vector, ChatResponse response) {
+		if (!isCacheable(response)) {
+			return;
+		}
+		Instant now = this.clock.instant();
+		synchronized (this) {
+			this.entries.put(key.exact(), new Entry(response, key.context(), now.plus(this.ttl)));
+			if (vector != null) {
+				try {
+					this.index.add(key.exact(), vector);
+				}
+				catch (IllegalArgumentException ex) {
+					// 例如向量模型换了维度，响应已经拿到，只放弃语义索引
+					this.index.remove(key.exact());
+					logger.warn("Skipping semantic index for cached response: {}", ex.getMessage());
+				}
+			}
+			if (now.isAfter(this.nextSweep)) {
+				this.nextSweep = now.plus(this.ttl);
+				this.entries.entrySet().removeIf(e -> {
+					if (e.getValue().isExpired(now)) {
+						this.index.remove(e.getKey());
+						return true;
+					}
+					return false;
+				});
+			}
+			Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+			while (this.entries.size() > this.maxEntries && iterator.hasNext()) {
+				String eldest = iterator.next().getKey();
+				iterator.remove();
+				this.index.remove(eldest);
+			}
+		}
+	}
+
+	private void remove(String exactKey) {
+		this.entries.remove(exactKey);
+		this.index.remove(exactKey);
+	}
+
+	private static boolean isCacheable(ChatResponse response) {
+		if (response == null || CollectionUtils.isEmpty(response.getResults()) || response.hasToolCalls()) {
+			return false;
+		}
+		Generation generation = response.getResult();
+		return generation.getOutput() != null && StringUtils.hasText(generation.getOutput().getText());
+	}
+
+	private static ChatResponse markHit(ChatResponse response, String type) {
+		return ChatResponse.builder().from(response).metadata(CACHE_METADATA_KEY, type).build();
+	}
+
+	/**
+	 * @return 提示词的缓存key，不可缓存时返回null
+	 */
+	PromptKey promptKey(Prompt prompt) {
+		ChatOptions options = prompt.getOptions();
+		if (effectiveTemperature(options) > this.maxTemperature) {
+			return null;
+		}
+		List<Message> messages = prompt.getInstructions();
+		if (messages.isEmpty()) {
+			return null;
+		}
+		MessageDigest context = sha256();
+		update(context, options != null && options.getModel() != null ? options.getModel() : this.defaultModel);
+		update(context, optionsFingerprint(options));
+		update(context, toolsFingerprint(options));
+		int last = messages.size() - 1;
+		for (int i = 0; i < last; i++) {
+			if (!appendMessage(context, messages.get(i))) {
+				return null;
+			}
+		}
+		Message lastMessage = messages.get(last);
+		String question = null;
+		MessageDigest exact;
+		try {
+			exact = (MessageDigest) context.clone();
+		}
+		catch (CloneNotSupportedException ex) {
+			throw new IllegalStateException(ex);
+		}
+		if (!appendMessage(exact, lastMessage)) {
+			return null;
+		}
+		if (lastMessage.getMessageType() == MessageType.USER) {
+			question = normalize(lastMessage.getText());
+		}
+		else {
+			// 最后一条不是用户消息时，语义匹配不适用
+			appendMessage(context, lastMessage);
+		}
+		HexFormat hex = HexFormat.of();
+		return new PromptKey(hex.formatHex(exact.digest()), hex.formatHex(context.digest()),
+				StringUtils.hasText(question) ? question : null);
+	}
+
+	private static boolean appendMessage(MessageDigest digest, Message message) {
+		if (message instanceof UserMessage userMessage && !CollectionUtils.isEmpty(userMessage.getMedia())) {
+			return false;
+		}
+		update(digest, message.getMessageType().name());
+		update(digest, normalize(message.getText()));
+		if (message instanceof AssistantMessage assistantMessage) {
+			if (!CollectionUtils.isEmpty(assistantMessage.getMedia())) {
+				return false;
+			}
+			for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+				update(digest, toolCall.id() + "\u0000" + toolCall.name() + "\u0000" + toolCall.arguments());
+			}
+		}
+		else if (message instanceof ToolResponseMessage toolResponseMessage) {
+			for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+				update(digest, response.id() + "\u0000" + response.name() + "\u0000" + response.responseData());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 请求的温度，未指定时依次取被装饰模型默认选项中的温度和{@code defaultTemperature}
+	 */
+	private double effectiveTemperature(ChatOptions options) {
+		Double temperature = temperature(options);
+		if (temperature == null) {
+			temperature = temperature(this.delegate.getDefaultOptions());
+		}
+		return temperature != null ? temperature : this.defaultTemperature;
+	}
+
+	private static Double temperature(ChatOptions options) {
+		if (options instanceof DashScopeChatOptions dashScopeOptions && dashScopeOptions.getParameters() != null) {
+			return dashScopeOptions.getParameters().getTemperature();
+		}
+		return options != null ? options.getTemperature() : null;
+	}
+
+	private static String optionsFingerprint(ChatOptions options) {
+		if (options == null) {
+			return "";
+		}
+		if (options instanceof DashScopeChatOptions dashScopeOptions) {
+			return ModelOptionsUtils.toJsonString(dashScopeOptions.getParameters()) + "\u0000"
+					+ ModelOptionsUtils.toJsonString(dashScopeOptions.getSearchOptions());
+		}
+		return options.getTemperature() + "\u0000" + options.getTopP() + "\u0000" + options.getTopK() + "\u0000"
+				+ options.getMaxTokens() + "\u0000" + options.getStopSequences();
+	}
+
+	private static String toolsFingerprint(ChatOptions options) {
+		if (!(options instanceof ToolCallingChatOptions toolOptions)) {
+			return "";
+		}
+		TreeSet<String> tools = new TreeSet<>();
+		if (toolOptions.getToolNames() != null) {
+			tools.addAll(toolOptions.getToolNames());
+		}
+		if (toolOptions.getToolCallbacks() != null) {
+			for (ToolCallback toolCallback : toolOptions.getToolCallbacks()) {
+				tools.add(toolCallback.getToolDefinition().name() + "\u0000" + toolCallback.getToolDefinition().inputSchema());
+			}
+		}
+		return String.join("\u0001", tools);
+	}
+
+	static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC)).replaceAll(" ").trim();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+
+	private void registerCounter(MeterRegistry meterRegistry, String name, String result, LongAdder adder) {
+		FunctionCounter.builder("dashscope.chat.cache.requests", adder, LongAdder::sum)
+			.tag("name", name)
+			.tag("result", result)
+			.register(meterRegistry);
+	}
+
+	/**
+	 * @param exact 完整提示词的摘要
+	 * @param context 除最后一条用户消息外其余部分的摘要
+	 * @param question 规范化后的最后一条用户消息，不适用语义匹配时为null
+	 */
+	record PromptKey(String exact, String context, String question) {
+	}
+
+	private record Lookup(ChatResponse response, float[] vector) {
+	}
+
+	private record Entry(ChatResponse response, String contextKey, Instant expiresAt) {
+
+		boolean isExpired(Instant now) {
+			return !now.isBefore(this.expiresAt);
+		}
+
+	}
+
+	public static final class Builder {
+
+		private String name = "default";
+
+		private ChatModel delegate;
+
+		private EmbeddingModel embeddingModel;
+
+		private String defaultModel;
+
+		private double similarityThreshold = DEFAULT_SIMILARITY_THRESHOLD;
+
+		private double maxTemperature = DEFAULT_MAX_TEMPERATURE;
+
+		private double defaultTemperature = DEFAULT_TEMPERATURE;
+
+		private Duration ttl = DEFAULT_TTL;
+
+		private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+		private Clock clock = Clock.systemUTC();
+
+		private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+		/**
+		 * 指标tag {@code name}的值
+		 */
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Builder delegate(ChatModel delegate) {
+			this.delegate = delegate;
+			return this;
+		}
+
+		/**
+		 * 用于语义匹配的向量模型，例如{@code DashScopeEmbeddingModel}，为null时只做精确匹配
+		 */
+		public Builder embeddingModel(EmbeddingModel embeddingModel) {
+			this.embeddingModel = embeddingModel;
+			return this;
+		}
+
+		/**
+		 * 请求中没有指定model时用于计算缓存key的模型名称，应与被装饰模型的默认模型一致
+		 */
+		public Builder defaultModel(String defaultModel) {
+			this.defaultModel = defaultModel;
+			return this;
+		}
+
+		/**
+		 * 语义匹配的最低余弦相似度
+		 */
+		public Builder similarityThreshold(double similarityThreshold) {
+			this.similarityThreshold = similarityThreshold;
+			return this;
+		}
+
+		/**
+		 * 温度高于该值的请求不经过缓存
+		 */
+		public Builder maxTemperature(double maxTemperature) {
+			this.maxTemperature = maxTemperature;
+			return this;
+		}
+
+		/**
+		 * 请求和被装饰模型的默认选项都没有指定温度时假定的温度，应与服务端默认值一致
+		 */
+		public Builder defaultTemperature(double defaultTemperature) {
+			this.defaultTemperature = defaultTemperature;
+			return this;
+		}
+
+		public Builder ttl(Duration ttl) {
+			this.ttl = ttl;
+			return this;
+		}
+
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		public Builder clock(Clock clock) {
+			this.clock = clock;
+			return this;
+		}
+
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public CachingChatModel build() {
+			return new CachingChatModel(this.name, this.delegate, this.embeddingModel, this.defaultModel,
+					this.similarityThreshold, this.maxTemperature, this.defaultTemperature, this.ttl, this.maxEntries,
+					this.clock, this.meterRegistry);
+		}
+
+	}
+
+}
@@ -0,0 +1,255 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.ai.chat.metadata.EmptyUsage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * 带内容寻址缓存的{@link EmbeddingModel}装饰器。
+ * 缓存key为(model, dimensions, text)的SHA-256摘要，一次{@link #call(EmbeddingRequest)}中
+ * 命中的文本直接从缓存读取，未命中的文本（同一请求内去重后）合并成一次调用交给被装饰的模型，
+ * 最后按原始下标拼回结果。全部命中时不会调用DashScope。
+ * <p>
+ * 提供以下指标：
+ * <ul>
+ * <li>{@code dashscope.embedding.cache.requests}：按result=hit/miss区分的文本数</li>
+ * <li>{@code dashscope.embedding.cache.size}：缓存条目数</li>
+ * <li>{@code dashscope.embedding.cache.bytes}：缓存向量占用的字节数</li>
+ * </ul>
+ * 指标都带有tag {@code name}，多个实例注册到同一个注册表（默认{@link Metrics#globalRegistry}）时用名称区分。
+ *
+ * @author Huang Wenjie
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+	private final EmbeddingModel delegate;
+
+	private final EmbeddingCacheStore store;
+
+	private final String defaultModel;
+
+	private final Integer defaultDimensions;
+
+	private final MetadataMode metadataMode;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public CachingEmbeddingModel(String name, EmbeddingModel delegate, EmbeddingCacheStore store, String defaultModel,
+			Integer defaultDimensions, MetadataMode metadataMode, MeterRegistry meterRegistry) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(delegate, "delegate must not be null");
+		Assert.notNull(store, "store must not be null");
+		Assert.hasText(defaultModel, "defaultModel must not be empty");
+		Assert.notNull(metadataMode, "metadataMode must not be null");
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.delegate = delegate;
+		this.store = store;
+		this.defaultModel = defaultModel;
+		this.defaultDimensions = defaultDimensions;
+		this.metadataMode = metadataMode;
+		FunctionCounter.builder("dashscope.embedding.cache.requests", this.hits, LongAdder::sum)
+			.tag("name", name)
+			.tag("result", "hit")
+			.register(meterRegistry);
+		FunctionCounter.builder("dashscope.embedding.cache.requests", this.misses, LongAdder::sum)
+			.tag("name", name)
+			.tag("result", "miss")
+			.register(meterRegistry);
+		Gauge.builder("dashscope.embedding.cache.size", store, EmbeddingCacheStore::size)
+			.tag("name", name)
+			.register(meterRegistry);
+		Gauge.builder("dashscope.embedding.cache.bytes", store, EmbeddingCacheStore::sizeInBytes)
+			.tag("name", name)
+			.register(meterRegistry);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public EmbeddingResponse call(EmbeddingRequest request) {
+		List<String> texts = request.getInstructions();
+		EmbeddingOptions options = request.getOptions();
+		String model = options != null && options.getModel() != null ? options.getModel() : this.defaultModel;
+		Integer dimensions = options != null && options.getDimensions() != null ? options.getDimensions()
+				: this.defaultDimensions;
+
+		float[][] vectors = new float[texts.size()][];
+		// 未命中的key -> 在原始请求中的下标，同一文本只请求一次
+		Map<String, List<Integer>> missing = new LinkedHashMap<>();
+		List<String> missingTexts = new ArrayList<>();
+		for (int i = 0; i < texts.size(); i++) {
+			String key = cacheKey(model, dimensions, texts.get(i));
+			float[] cached = this.store.get(key);
+			if (cached != null) {
+				vectors[i] = cached;
+				this.hits.increment();
+				continue;
+			}
+			this.misses.increment();
+			List<Integer> indexes = missing.get(key);
+			if (indexes == null) {
+				indexes = new ArrayList<>(1);
+				missing.put(key, indexes);
+				missingTexts.add(texts.get(i));
+			}
+			indexes.add(i);
+		}
+
+		EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata(model, new EmptyUsage());
+		if (!missingTexts.isEmpty()) {
+			EmbeddingResponse response = this.delegate.call(new EmbeddingRequest(missingTexts, options));
+			List<String> keys = new ArrayList<>(missing.keySet());
+			for (Embedding embedding : response.getResults()) {
+				int missIndex = embedding.getIndex();
+				String key = keys.get(missIndex);
+				this.store.put(key, embedding.getOutput());
+				for (int index : missing.get(key)) {
+					vectors[index] = embedding.getOutput();
+				}
+			}
+			if (response.getMetadata() != null) {
+				metadata = response.getMetadata();
+			}
+		}
+
+		List<Embedding> embeddings = new ArrayList<>(texts.size());
+		for (int i = 0; i < vectors.length; i++) {
+			if (vectors[i] != null) {
+				embeddings.add(new Embedding(vectors[i], i));
+			}
+		}
+		return new EmbeddingResponse(embeddings, metadata);
+	}
+
+	@Override
+	public float[] embed(Document document) {
+		Assert.notNull(document, "Document must not be null");
+		return embed(document.getFormattedContent(this.metadataMode));
+	}
+
+	@Override
+	public int dimensions() {
+		return this.delegate.dimensions();
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	public EmbeddingCacheStore getStore() {
+		return this.store;
+	}
+
+	static String cacheKey(String model, Integer dimensions, String text) {
+		MessageDigest digest = sha256();
+		digest.update(model.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(String.valueOf(dimensions).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(text.getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+
+	public static final class Builder {
+
+		private String name = "default";
+
+		private EmbeddingModel delegate;
+
+		private EmbeddingCacheStore store;
+
+		private String defaultModel;
+
+		private Integer defaultDimensions;
+
+		private MetadataMode metadataMode = MetadataMode.EMBED;
+
+		private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+		/**
+		 * 指标tag {@code name}的值
+		 */
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Builder delegate(EmbeddingModel delegate) {
+			this.delegate = delegate;
+			return this;
+		}
+
+		public Builder store(EmbeddingCacheStore store) {
+			this.store = store;
+			return this;
+		}
+
+		/**
+		 * 请求中没有指定model时用于计算缓存key的模型名称，应与被装饰模型的默认模型一致
+		 */
+		public Builder defaultModel(String defaultModel) {
+			this.defaultModel = defaultModel;
+			return this;
+		}
+
+		public Builder defaultDimensions(Integer defaultDimensions) {
+			this.defaultDimensions = defaultDimensions;
+			return this;
+		}
+
+		public Builder metadataMode(MetadataMode metadataMode) {
+			this.metadataMode = metadataMode;
+			return this;
+		}
+
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public CachingEmbeddingModel build() {
+			return new CachingEmbeddingModel(this.name, this.delegate, this.store, this.defaultModel, this.defaultDimensions,
+					this.metadataMode, this.meterRegistry);
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+/**
+ * 文本向量缓存的存储接口，key为内容寻址的摘要字符串。
+ * 实现类需要保证线程安全。
+ *
+ * @author Huang Wenjie
+ */
+public interface EmbeddingCacheStore {
+
+	/**
+	 * 读取缓存的向量
+	 * @param key 缓存key
+	 * @return 向量的副本，不存在时返回null
+	 */
+	float[] get(String key);
+
+	/**
+	 * 写入向量，超出容量时由实现类决定淘汰哪些条目
+	 * @param key 缓存key
+	 * @param embedding 向量
+	 */
+	void put(String key, float[] embedding);
+
+	/**
+	 * @return 当前缓存的条目数
+	 */
+	long size();
+
+	/**
+	 * @return 当前缓存向量占用的字节数
+	 */
+	long sizeInBytes();
+
+	void clear();
+
+}
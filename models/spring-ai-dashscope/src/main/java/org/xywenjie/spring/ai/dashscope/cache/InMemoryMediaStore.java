@@ -0,0 +1,56 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+
+/**
+ * 把媒体文件保存在进程内的{@link MediaStore}，URL为{@code baseUrl + key}。
+ * 由应用自己的HTTP接口通过{@link #getContent(String)}对外提供文件，也可以在测试中代替真实的对象存储。
+ *
+ * @author Huang Wenjie
+ */
+public class InMemoryMediaStore implements MediaStore {
+
+	private final String baseUrl;
+
+	private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+
+	/**
+	 * @param baseUrl URL前缀，例如 {@code https://example.com/media/}
+	 */
+	public InMemoryMediaStore(String baseUrl) {
+		Assert.hasText(baseUrl, "baseUrl must not be empty");
+		this.baseUrl = baseUrl;
+	}
+
+	@Override
+	public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+		try (InputStream input = data.getInputStream()) {
+			this.contents.put(key, input.readAllBytes());
+		}
+		return this.baseUrl + key;
+	}
+
+	@Override
+	public void delete(String key) {
+		this.contents.remove(key);
+	}
+
+	/**
+	 * @return 已上传的内容，不存在时返回null
+	 */
+	public byte[] getContent(String key) {
+		return this.contents.get(key);
+	}
+
+	public int size() {
+		return this.contents.size();
+	}
+
+}
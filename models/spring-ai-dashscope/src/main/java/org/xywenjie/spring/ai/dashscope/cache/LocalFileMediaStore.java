@@ -0,0 +1,78 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+
+/**
+ * 把媒体文件写入本地目录的{@link MediaStore}，目录需要通过{@code baseUrl}以静态资源的方式对外提供
+ * （例如Nginx或挂载了OSS的目录）。文件名为{@code key}加上媒体子类型作为扩展名。
+ *
+ * @author Huang Wenjie
+ */
+public class LocalFileMediaStore implements MediaStore {
+
+	private final Path directory;
+
+	private final String baseUrl;
+
+	/**
+	 * @param directory 存放文件的目录，不存在时自动创建
+	 * @param baseUrl 该目录对外的URL前缀，例如 {@code https://example.com/media/}
+	 */
+	public LocalFileMediaStore(Path directory, String baseUrl) {
+		Assert.notNull(directory, "directory must not be null");
+		Assert.hasText(baseUrl, "baseUrl must not be empty");
+		try {
+			this.directory = Files.createDirectories(directory);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+	}
+
+	@Override
+	public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+		String fileName = fileName(key, mimeType);
+		Path target = this.directory.resolve(fileName);
+		if (!Files.exists(target)) {
+			// 先写临时文件再改名，避免服务端读到写了一半的文件
+			Path temp = Files.createTempFile(this.directory, key, ".tmp");
+			try (InputStream input = data.getInputStream()) {
+				Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+		return this.baseUrl + fileName;
+	}
+
+	@Override
+	public void delete(String key) {
+		try (var files = Files.newDirectoryStream(this.directory, key + ".*")) {
+			Files.deleteIfExists(this.directory.resolve(key));
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private static String fileName(String key, MimeType mimeType) {
+		String subtype = mimeType.getSubtype().replaceAll("[^A-Za-z0-9]", "");
+		return subtype.isEmpty() ? key : key + "." + subtype;
+	}
+
+}
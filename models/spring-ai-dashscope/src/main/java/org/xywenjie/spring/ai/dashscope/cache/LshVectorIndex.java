@@ -0,0 +1,167 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.springframework.util.Assert;
+
+/**
+ * 基于随机超平面局部敏感哈希（SimHash）的内存近似最近邻索引，用于余弦相似度检索。
+ * <p>
+ * 每个向量在{@code tables}张哈希表中各落入一个桶，桶号为向量与{@code bitsPerTable}个随机超平面点积的符号位。
+ * 查询时只对同桶的候选向量计算精确的余弦相似度，相似度越高的向量落入同一个桶的概率越大。
+ * 超平面在加入第一个向量时按其维度生成，之后所有向量的维度必须一致。
+ * <p>
+ * 非线程安全，由调用方加锁。
+ *
+ * @param <K> 条目key
+ * @author Huang Wenjie
+ */
+final class LshVectorIndex<K> {
+
+	private final int tables;
+
+	private final int bitsPerTable;
+
+	private final long seed;
+
+	private final Map<K, float[]> vectors = new HashMap<>();
+
+	private final List<Map<Integer, Set<K>>> buckets;
+
+	private float[][] hyperplanes;
+
+	LshVectorIndex(int tables, int bitsPerTable, long seed) {
+		Assert.isTrue(tables > 0, "tables must be greater than 0");
+		Assert.isTrue(bitsPerTable > 0 && bitsPerTable <= 31, "bitsPerTable must be between 1 and 31");
+		this.tables = tables;
+		this.bitsPerTable = bitsPerTable;
+		this.seed = seed;
+		this.buckets = new ArrayList<>(tables);
+		for (int t = 0; t < tables; t++) {
+			this.buckets.add(new HashMap<>());
+		}
+	}
+
+	void add(K key, float[] vector) {
+		Assert.notNull(key, "key must not be null");
+		float[] normalized = normalize(vector);
+		if (this.hyperplanes == null) {
+			this.hyperplanes = createHyperplanes(normalized.length);
+		}
+		Assert.isTrue(normalized.length == this.hyperplanes[0].length, "vector dimensions must not change");
+		remove(key);
+		this.vectors.put(key, normalized);
+		for (int t = 0; t < this.tables; t++) {
+			this.buckets.get(t).computeIfAbsent(hash(t, normalized), h -> new LinkedHashSet<>()).add(key);
+		}
+	}
+
+	void remove(K key) {
+		float[] vector = this.vectors.remove(key);
+		if (vector == null) {
+			return;
+		}
+		for (int t = 0; t < this.tables; t++) {
+			int hash = hash(t, vector);
+			Set<K> bucket = this.buckets.get(t).get(hash);
+			if (bucket != null && bucket.remove(key) && bucket.isEmpty()) {
+				this.buckets.get(t).remove(hash);
+			}
+		}
+	}
+
+	/**
+	 * @param query 查询向量
+	 * @param threshold 最低余弦相似度
+	 * @param filter 候选条目过滤条件
+	 * @return 相似度不低于阈值的最相似条目，没有时返回null
+	 */
+	K nearest(float[] query, double threshold, Predicate<K> filter) {
+		if (this.hyperplanes == null || query.length != this.hyperplanes[0].length) {
+			return null;
+		}
+		float[] normalized = normalize(query);
+		Set<K> visited = new HashSet<>();
+		K best = null;
+		double bestSimilarity = threshold;
+		for (int t = 0; t < this.tables; t++) {
+			Set<K> bucket = this.buckets.get(t).get(hash(t, normalized));
+			if (bucket == null) {
+				continue;
+			}
+			for (K candidate : bucket) {
+				if (!visited.add(candidate) || !filter.test(candidate)) {
+					continue;
+				}
+				double similarity = dot(normalized, this.vectors.get(candidate));
+				if (similarity >= bestSimilarity) {
+					bestSimilarity = similarity;
+					best = candidate;
+				}
+			}
+		}
+		return best;
+	}
+
+	int size() {
+		return this.vectors.size();
+	}
+
+	void clear() {
+		this.vectors.clear();
+		for (Map<Integer, Set<K>> table : this.buckets) {
+			table.clear();
+		}
+	}
+
+	private int hash(int table, float[] vector) {
+		int hash = 0;
+		for (int b = 0; b < this.bitsPerTable; b++) {
+			if (dot(this.hyperplanes[table * this.bitsPerTable + b], vector) >= 0) {
+				hash |= 1 << b;
+			}
+		}
+		return hash;
+	}
+
+	private float[][] createHyperplanes(int dimensions) {
+		Random random = new Random(this.seed);
+		float[][] planes = new float[this.tables * this.bitsPerTable][dimensions];
+		for (float[] plane : planes) {
+			for (int i = 0; i < dimensions; i++) {
+				plane[i] = (float) random.nextGaussian();
+			}
+		}
+		return planes;
+	}
+
+	private static float[] normalize(float[] vector) {
+		Assert.isTrue(vector != null && vector.length > 0, "vector must not be empty");
+		double norm = Math.sqrt(dot(vector, vector));
+		float[] normalized = new float[vector.length];
+		if (norm == 0) {
+			return normalized;
+		}
+		for (int i = 0; i < vector.length; i++) {
+			normalized[i] = (float) (vector[i] / norm);
+		}
+		return normalized;
+	}
+
+	private static double dot(float[] a, float[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,379 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 基于内存映射文件的持久化向量缓存，进程重启后可以直接复用已经计算过的向量。
+ * <p>
+ * 数据按段文件（{@code segment-00000.vec}）顺序追加，每个段文件固定大小并整体映射到内存。
+ * 段文件格式（小端序）：
+ * <pre>
+ * 文件头:  magic(int) version(int) sequence(long)
+ * 记录:    marker(int) keyLength(int) dimensions(int) key(UTF-8) vector(float * dimensions)
+ * </pre>
+ * 每条记录写完之后先把下一条记录的marker位置清零，最后才写入本条的marker，
+ * 进程中途退出时未写完的记录和段文件复用前残留的旧记录都不会被识别。
+ * 打开时只扫描记录头建立 key -> 位置 的索引，向量本身留在映射区里，读取时才复制到堆上。
+ * <p>
+ * 段文件数量为{@code maxBytes / segmentBytes}，按环形复用：全部段文件写满后，
+ * 清空{@code sequence}最小（最早写入）的段文件并从头写入（FIFO淘汰）。段文件始终保持映射，
+ * 不会删除仍在映射中的文件，磁盘占用不超过{@code maxBytes}。读取与写入、淘汰之间用读写锁隔离。
+ *
+ * @author Huang Wenjie
+ */
+public class MappedFileEmbeddingCacheStore implements EmbeddingCacheStore, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MappedFileEmbeddingCacheStore.class);
+
+	private static final int FILE_MAGIC = 0x44534556;
+
+	private static final int FILE_VERSION = 2;
+
+	private static final int FILE_HEADER_BYTES = 16;
+
+	private static final int RECORD_MARKER = 0x52454331;
+
+	private static final int RECORD_HEADER_BYTES = 12;
+
+	public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{1,9})\\.vec");
+
+	private final Path directory;
+
+	private final int segmentBytes;
+
+	private final long maxBytes;
+
+	private final int segmentCount;
+
+	/**
+	 * key -> 记录位置，高32位为段编号，低32位为段内偏移
+	 */
+	private final Map<String, Long> index = new ConcurrentHashMap<>();
+
+	private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Segment activeSegment;
+
+	private long nextSequence;
+
+	private volatile long sizeInBytes;
+
+	/**
+	 * @param directory 段文件所在目录，不存在时自动创建
+	 * @param maxBytes 所有段文件的总大小上限
+	 */
+	public MappedFileEmbeddingCacheStore(Path directory, long maxBytes) {
+		this(directory, DEFAULT_SEGMENT_BYTES, maxBytes);
+	}
+
+	public MappedFileEmbeddingCacheStore(Path directory, int segmentBytes, long maxBytes) {
+		Assert.notNull(directory, "directory must not be null");
+		Assert.isTrue(segmentBytes > FILE_HEADER_BYTES + RECORD_HEADER_BYTES, "segmentBytes is too small");
+		Assert.isTrue(maxBytes >= segmentBytes, "maxBytes must not be less than segmentBytes");
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+		this.segmentCount = (int) Math.min(maxBytes / segmentBytes, Integer.MAX_VALUE);
+		try {
+			Files.createDirectories(directory);
+			open();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Failed to open embedding cache at " + directory, ex);
+		}
+	}
+
+	private void open() throws IOException {
+		try (Stream<Path> files = Files.list(this.directory)) {
+			for (Path path : (Iterable<Path>) files::iterator) {
+				Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+				if (!matcher.matches()) {
+					continue;
+				}
+				int id = Integer.parseInt(matcher.group(1));
+				if (id >= this.segmentCount) {
+					// maxBytes调小之后多出的段文件，尚未映射，可以直接删除
+					Files.deleteIfExists(path);
+					continue;
+				}
+				Segment segment = mapSegment(id);
+				this.segments.put(id, segment);
+				this.sizeInBytes += segment.capacity();
+				scan(segment);
+				if (this.activeSegment == null || segment.sequence() > this.activeSegment.sequence()) {
+					this.activeSegment = segment;
+				}
+			}
+		}
+		if (this.activeSegment == null) {
+			rollSegment();
+		}
+		else {
+			this.nextSequence = this.activeSegment.sequence() + 1;
+		}
+	}
+
+	/**
+	 * 只读取记录头建立索引，不复制向量数据
+	 */
+	private void scan(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = FILE_HEADER_BYTES;
+		while (position + RECORD_HEADER_BYTES <= buffer.capacity() && buffer.getInt(position) == RECORD_MARKER) {
+			int keyLength = buffer.getInt(position + 4);
+			int dimensions = buffer.getInt(position + 8);
+			byte[] key = new byte[keyLength];
+			buffer.get(position + RECORD_HEADER_BYTES, key);
+			this.index.put(new String(key, StandardCharsets.UTF_8), location(segment.id, position));
+			position += recordBytes(keyLength, dimensions);
+		}
+		segment.writePosition = position;
+	}
+
+	@Override
+	public float[] get(String key) {
+		this.lock.readLock().lock();
+		try {
+			Long location = this.index.get(key);
+			if (location == null) {
+				return null;
+			}
+			Segment segment = this.segments.get((int) (location >>> 32));
+			if (segment == null) {
+				return null;
+			}
+			int position = (int) location.longValue();
+			ByteBuffer buffer = segment.buffer;
+			int keyLength = buffer.getInt(position + 4);
+			int dimensions = buffer.getInt(position + 8);
+			float[] embedding = new float[dimensions];
+			buffer.slice(position + RECORD_HEADER_BYTES + keyLength, dimensions * Float.BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asFloatBuffer()
+				.get(embedding);
+			return embedding;
+		}
+		finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(String key, float[] embedding) {
+		Assert.notNull(key, "key must not be null");
+		Assert.notNull(embedding, "embedding must not be null");
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int recordBytes = recordBytes(keyBytes.length, embedding.length);
+		if (FILE_HEADER_BYTES + recordBytes > this.segmentBytes) {
+			logger.warn("Embedding with {} dimensions does not fit in a segment of {} bytes", embedding.length, this.segmentBytes);
+			return;
+		}
+		this.lock.writeLock().lock();
+		try {
+			if (this.index.containsKey(key)) {
+				return;
+			}
+			try {
+				if (this.activeSegment.writePosition + recordBytes > this.activeSegment.capacity()) {
+					rollSegment();
+				}
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Failed to create embedding cache segment in " + this.directory, ex);
+			}
+			Segment segment = this.activeSegment;
+			ByteBuffer buffer = segment.buffer;
+			int position = segment.writePosition;
+			buffer.putInt(position + 4, keyBytes.length);
+			buffer.putInt(position + 8, embedding.length);
+			buffer.put(position + RECORD_HEADER_BYTES, keyBytes);
+			buffer.slice(position + RECORD_HEADER_BYTES + keyBytes.length, embedding.length * Float.BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.asFloatBuffer()
+				.put(embedding);
+			terminate(segment, position + recordBytes);
+			buffer.putInt(position, RECORD_MARKER);
+			segment.writePosition = position + recordBytes;
+			this.index.put(key, location(segment.id, position));
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 段文件未全部创建时创建下一个，否则复用最早写入的段文件
+	 */
+	private void rollSegment() throws IOException {
+		Segment segment;
+		if (this.segments.size() < this.segmentCount) {
+			int id = 0;
+			while (this.segments.containsKey(id)) {
+				id++;
+			}
+			segment = mapSegment(id);
+			this.segments.put(id, segment);
+			this.sizeInBytes += segment.capacity();
+		}
+		else {
+			segment = this.segments.values()
+				.stream()
+				.min((a, b) -> Long.compare(a.sequence(), b.sequence()))
+				.orElseThrow();
+			int id = segment.id;
+			this.index.values().removeIf(location -> (int) (location >>> 32) == id);
+		}
+		reset(segment, this.nextSequence++);
+		this.activeSegment = segment;
+	}
+
+	/**
+	 * 清空段文件：写入新的sequence并从文件头之后重新写入，旧记录不再可见
+	 */
+	private static void reset(Segment segment, long sequence) {
+		terminate(segment, FILE_HEADER_BYTES);
+		segment.buffer.putLong(8, sequence);
+		segment.writePosition = FILE_HEADER_BYTES;
+	}
+
+	/**
+	 * 把position处的marker清零，扫描到这里时停止
+	 */
+	private static void terminate(Segment segment, int position) {
+		if (position + Integer.BYTES <= segment.capacity()) {
+			segment.buffer.putInt(position, 0);
+		}
+	}
+
+	private Segment mapSegment(int id) throws IOException {
+		Path path = segmentPath(id);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			boolean existing = channel.size() > 0;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), this.segmentBytes));
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			Segment segment = new Segment(id, buffer);
+			if (existing && buffer.getInt(0) != FILE_MAGIC) {
+				throw new IOException("Not an embedding cache segment: " + path);
+			}
+			if (!existing || buffer.getInt(4) != FILE_VERSION) {
+				if (existing) {
+					logger.info("Discarding embedding cache segment {} written by format version {}", path, buffer.getInt(4));
+				}
+				buffer.putInt(0, FILE_MAGIC);
+				buffer.putInt(4, FILE_VERSION);
+				reset(segment, -1);
+			}
+			return segment;
+		}
+	}
+
+	private Path segmentPath(int id) {
+		return this.directory.resolve(String.format("segment-%05d.vec", id));
+	}
+
+	private static int recordBytes(int keyLength, int dimensions) {
+		return RECORD_HEADER_BYTES + keyLength + dimensions * Float.BYTES;
+	}
+
+	private static long location(int segmentId, int position) {
+		return ((long) segmentId << 32) | (position & 0xFFFFFFFFL);
+	}
+
+	@Override
+	public long size() {
+		return this.index.size();
+	}
+
+	/**
+	 * @return 已创建的段文件总大小
+	 */
+	@Override
+	public long sizeInBytes() {
+		return this.sizeInBytes;
+	}
+
+	/**
+	 * 清空所有段文件，段文件本身保留，之后从头复用
+	 */
+	@Override
+	public void clear() {
+		this.lock.writeLock().lock();
+		try {
+			this.index.clear();
+			for (Segment segment : this.segments.values()) {
+				reset(segment, -1);
+			}
+			reset(this.activeSegment, this.nextSequence++);
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 把映射区中的修改刷到磁盘
+	 */
+	public void flush() {
+		this.lock.writeLock().lock();
+		try {
+			this.segments.values().forEach(segment -> segment.buffer.force());
+		}
+		finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	private static final class Segment {
+
+		private final int id;
+
+		private final MappedByteBuffer buffer;
+
+		private int writePosition;
+
+		private Segment(int id, MappedByteBuffer buffer) {
+			this.id = id;
+			this.buffer = buffer;
+		}
+
+		private int capacity() {
+			return this.buffer.capacity();
+		}
+
+		private long sequence() {
+			return this.buffer.getLong(8);
+		}
+	}
+
+}
@@ -0,0 +1,460 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.content.Media;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * 多模态请求中媒体文件的上传引用缓存。
+ * <p>
+ * 以(mimeType, 媒体内容)的SHA-256摘要为key，同一份媒体只上传一次到{@link MediaStore}，
+ * 之后的请求直接引用返回的URL，不再把媒体以base64内联到请求体中。并发请求同一份媒体时只有一个线程上传，
+ * 其他线程等待同一个结果。
+ * <p>
+ * 条目在{@code ttl}后过期，过期后下一次访问重新上传，过期条目按{@code ttl}的四分之一为间隔批量清理，
+ * 并调用{@link MediaStore#delete(String)}。{@code ttl}应小于存储端URL的有效期。
+ * 条目数超过{@code maxEntries}时优先淘汰最早过期的条目。
+ * <p>
+ * 只缓存可以多次读取的数据（{@code byte[]}、非{@link Resource#isOpen()}的{@link Resource}），
+ * URL字符串和一次性的输入流不经过缓存。上传失败时返回null，由调用方退回内联方式。
+ * <p>
+ * 上传在{@code uploadExecutor}中执行，调用方最多等待{@code uploadTimeout}：超时后本次请求退回内联方式，
+ * 上传在后台继续，完成后之后的请求可以直接引用。
+ * <p>
+ * 提供以下指标：
+ * <ul>
+ * <li>{@code dashscope.media.cache.requests}：按result=hit/miss区分的媒体数</li>
+ * <li>{@code dashscope.media.cache.hit.ratio}：累计命中率</li>
+ * <li>{@code dashscope.media.cache.size}：缓存条目数</li>
+ * <li>{@code dashscope.media.cache.evictions}：过期或超出容量被淘汰的条目数</li>
+ * <li>{@code dashscope.media.cache.uploaded.bytes}：上传的字节数</li>
+ * <li>{@code dashscope.media.cache.upload.timeouts}：等待上传超时、退回内联方式的次数</li>
+ * </ul>
+ * 指标都带有tag {@code name}，多个实例注册到同一个注册表（默认{@link Metrics#globalRegistry}）时用名称区分。
+ *
+ * @author Huang Wenjie
+ */
+public class MediaReferenceCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(MediaReferenceCache.class);
+
+	public static final Duration DEFAULT_TTL = Duration.ofHours(24);
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	public static final Duration DEFAULT_UPLOAD_TIMEOUT = Duration.ofSeconds(5);
+
+	private final MediaStore store;
+
+	private final Duration ttl;
+
+	private final int maxEntries;
+
+	private final Duration uploadTimeout;
+
+	private final Executor uploadExecutor;
+
+	private final Clock clock;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder uploadedBytes = new LongAdder();
+
+	private final LongAdder uploadTimeouts = new LongAdder();
+
+	private volatile Instant nextSweep;
+
+	public MediaReferenceCache(String name, MediaStore store, Duration ttl, int maxEntries, Duration uploadTimeout,
+			Executor uploadExecutor, Clock clock, MeterRegistry meterRegistry) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(store, "store must not be null");
+		Assert.notNull(ttl, "ttl must not be null");
+		Assert.isTrue(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+		Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+		Assert.notNull(uploadTimeout, "uploadTimeout must not be null");
+		Assert.isTrue(!uploadTimeout.isNegative(), "uploadTimeout must not be negative");
+		Assert.notNull(uploadExecutor, "uploadExecutor must not be null");
+		Assert.notNull(clock, "clock must not be null");
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		this.store = store;
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		this.uploadTimeout = uploadTimeout;
+		this.uploadExecutor = uploadExecutor;
+		this.clock = clock;
+		this.nextSweep = clock.instant().plus(sweepInterval());
+		FunctionCounter.builder("dashscope.media.cache.requests", this.hits, LongAdder::sum)
+			.tag("name", name)
+			.tag("result", "hit")
+			.register(meterRegistry);
+		FunctionCounter.builder("dashscope.media.cache.requests", this.misses, LongAdder::sum)
+			.tag("name", name)
+			.tag("result", "miss")
+			.register(meterRegistry);
+		FunctionCounter.builder("dashscope.media.cache.evictions", this.evictions, LongAdder::sum)
+			.tag("name", name)
+			.register(meterRegistry);
+		FunctionCounter.builder("dashscope.media.cache.uploaded.bytes", this.uploadedBytes, LongAdder::sum)
+			.tag("name", name)
+			.register(meterRegistry);
+		FunctionCounter.builder("dashscope.media.cache.upload.timeouts", this.uploadTimeouts, LongAdder::sum)
+			.tag("name", name)
+			.register(meterRegistry);
+		Gauge.builder("dashscope.media.cache.size", this.entries, Map::size)
+			.tag("name", name)
+			.register(meterRegistry);
+		Gauge.builder("dashscope.media.cache.hit.ratio", this, MediaReferenceCache::getHitRate)
+			.tag("name", name)
+			.register(meterRegistry);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return 媒体的URL；媒体本身就是URL、不能多次读取、上传失败或超时时返回null
+	 */
+	public String resolve(Media media) {
+		Assert.notNull(media, "media must not be null");
+		return resolve(media.getMimeType(), media.getData());
+	}
+
+	/**
+	 * @param mimeType 媒体类型
+	 * @param data {@code byte[]}或{@link Resource}
+	 * @return 媒体的URL；不能多次读取、上传失败或超时时返回null
+	 */
+	public String resolve(MimeType mimeType, Object data) {
+		Assert.notNull(mimeType, "mimeType must not be null");
+		InputStreamSource source = toReusableSource(data);
+		if (source == null) {
+			return null;
+		}
+		Instant now = this.clock.instant();
+		if (now.isAfter(this.nextSweep)) {
+			this.nextSweep = now.plus(sweepInterval());
+			evictExpired();
+		}
+		String key;
+		try {
+			key = cacheKey(mimeType, source);
+		}
+		catch (IOException ex) {
+			logger.warn("Failed to read media for caching, sending it inline", ex);
+			return null;
+		}
+		Entry created = new Entry(new CompletableFuture<>(), now.plus(this.ttl));
+		boolean[] replacedExpired = new boolean[1];
+		Entry entry = this.entries.compute(key, (k, existing) -> {
+			if (existing != null && !existing.isExpired(now)) {
+				return existing;
+			}
+			replacedExpired[0] = existing != null;
+			return created;
+		});
+		if (entry != created) {
+			this.hits.increment();
+			return await(key, entry);
+		}
+		this.misses.increment();
+		if (replacedExpired[0]) {
+			// 过期条目被新上传替换，存储端的同名文件会被覆盖，不需要删除
+			this.evictions.increment();
+		}
+		try {
+			this.uploadExecutor.execute(() -> upload(key, mimeType, source, created));
+		}
+		catch (RejectedExecutionException ex) {
+			uploadFailed(key, created, ex);
+		}
+		return await(key, created);
+	}
+
+	/**
+	 * 删除全部已过期的条目
+	 */
+	public void evictExpired() {
+		Instant now = this.clock.instant();
+		this.entries.forEach((key, entry) -> {
+			if (entry.isExpired(now)) {
+				evict(key, entry);
+			}
+		});
+	}
+
+	public void clear() {
+		this.entries.forEach(this::evict);
+	}
+
+	public long size() {
+		return this.entries.size();
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return 累计命中率，没有请求时为0
+	 */
+	public double getHitRate() {
+		long hits = this.hits.sum();
+		long total = hits + this.misses.sum();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	public long getUploadedBytes() {
+		return this.uploadedBytes.sum();
+	}
+
+	public MediaStore getStore() {
+		return this.store;
+	}
+
+	private void upload(String key, MimeType mimeType, InputStreamSource source, Entry entry) {
+		try {
+			String url = this.store.upload(key, mimeType, source);
+			this.uploadedBytes.add(contentLength(source));
+			entry.url().complete(url);
+		}
+		catch (IOException | RuntimeException ex) {
+			uploadFailed(key, entry, ex);
+			return;
+		}
+		if (this.entries.size() > this.maxEntries) {
+			evictOverflow();
+		}
+	}
+
+	private void uploadFailed(String key, Entry entry, Exception ex) {
+		this.entries.remove(key, entry);
+		entry.url().completeExceptionally(ex);
+		logger.warn("Failed to upload media {}, sending it inline", key, ex);
+	}
+
+	/**
+	 * 最多等待{@code uploadTimeout}，上传失败（已从缓存中移除）或超时（继续在后台上传）时返回null
+	 */
+	private String await(String key, Entry entry) {
+		try {
+			return entry.url().get(this.uploadTimeout.toNanos(), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException ex) {
+			this.uploadTimeouts.increment();
+			logger.debug("Upload of media {} did not finish within {}, sending it inline", key, this.uploadTimeout);
+			return null;
+		}
+		catch (ExecutionException ex) {
+			logger.debug("Upload of media {} failed", key, ex.getCause());
+			return null;
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private void evictOverflow() {
+		int overflow = this.entries.size() - this.maxEntries;
+		if (overflow <= 0) {
+			return;
+		}
+		this.entries.entrySet()
+			.stream()
+			.filter(e -> e.getValue().url().isDone())
+			.sorted(Comparator.comparing(e -> e.getValue().expiresAt()))
+			.limit(overflow)
+			.toList()
+			.forEach(e -> evict(e.getKey(), e.getValue()));
+	}
+
+	private void evict(String key, Entry entry) {
+		if (!this.entries.remove(key, entry)) {
+			return;
+		}
+		this.evictions.increment();
+		if (this.entries.containsKey(key)) {
+			// 同一份媒体已经重新上传
+			return;
+		}
+		try {
+			this.store.delete(key);
+		}
+		catch (RuntimeException ex) {
+			logger.warn("Failed to delete expired media {}", key, ex);
+		}
+	}
+
+	private Duration sweepInterval() {
+		return this.ttl.dividedBy(4);
+	}
+
+	private static InputStreamSource toReusableSource(Object data) {
+		if (data instanceof byte[] bytes) {
+			return new ByteArrayResource(bytes);
+		}
+		if (data instanceof Resource resource && !resource.isOpen()) {
+			return resource;
+		}
+		return null;
+	}
+
+	private static long contentLength(InputStreamSource source) throws IOException {
+		return source instanceof Resource resource ? resource.contentLength() : 0;
+	}
+
+	static String cacheKey(MimeType mimeType, InputStreamSource source) throws IOException {
+		MessageDigest digest = sha256();
+		digest.update(mimeType.toString().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		if (source instanceof ByteArrayResource byteArray) {
+			digest.update(byteArray.getByteArray());
+		}
+		else {
+			byte[] buffer = new byte[8192];
+			try (InputStream input = source.getInputStream()) {
+				for (int read; (read = input.read(buffer)) != -1;) {
+					digest.update(buffer, 0, read);
+				}
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available", ex);
+		}
+	}
+
+	private record Entry(CompletableFuture<String> url, Instant expiresAt) {
+
+		boolean isExpired(Instant now) {
+			return !now.isBefore(this.expiresAt);
+		}
+
+	}
+
+	public static final class Builder {
+
+		private String name = "default";
+
+		private MediaStore store;
+
+		private Duration ttl = DEFAULT_TTL;
+
+		private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+		private Duration uploadTimeout = DEFAULT_UPLOAD_TIMEOUT;
+
+		private Executor uploadExecutor = BlockingExecutors.defaultExecutor();
+
+		private Clock clock = Clock.systemUTC();
+
+		private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+		/**
+		 * 指标tag {@code name}的值
+		 */
+		public Builder name(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Builder store(MediaStore store) {
+			this.store = store;
+			return this;
+		}
+
+		/**
+		 * 上传后URL的复用时间，应小于存储端URL的有效期
+		 */
+		public Builder ttl(Duration ttl) {
+			this.ttl = ttl;
+			return this;
+		}
+
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+			return this;
+		}
+
+		/**
+		 * 请求等待上传完成的最长时间，超时后本次请求退回内联方式
+		 */
+		public Builder uploadTimeout(Duration uploadTimeout) {
+			this.uploadTimeout = uploadTimeout;
+			return this;
+		}
+
+		/**
+		 * 执行上传的线程池，默认{@link BlockingExecutors#defaultExecutor()}
+		 */
+		public Builder uploadExecutor(Executor uploadExecutor) {
+			this.uploadExecutor = uploadExecutor;
+			return this;
+		}
+
+		public Builder clock(Clock clock) {
+			this.clock = clock;
+			return this;
+		}
+
+		public Builder meterRegistry(MeterRegistry meterRegistry) {
+			this.meterRegistry = meterRegistry;
+			return this;
+		}
+
+		public MediaReferenceCache build() {
+			return new MediaReferenceCache(this.name, this.store, this.ttl, this.maxEntries, this.uploadTimeout,
+					this.uploadExecutor, this.clock, this.meterRegistry);
+		}
+
+	}
+
+}
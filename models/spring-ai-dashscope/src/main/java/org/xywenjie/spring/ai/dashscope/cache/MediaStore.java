@@ -0,0 +1,34 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.io.IOException;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.MimeType;
+
+/**
+ * 媒体文件的上传目标，返回的URL需要能被DashScope服务端访问，例如本地静态资源目录或OSS兼容的对象存储。
+ * 实现类需要保证线程安全。
+ *
+ * @author Huang Wenjie
+ * @see MediaReferenceCache
+ */
+public interface MediaStore {
+
+	/**
+	 * 上传媒体文件
+	 * @param key 内容寻址的摘要字符串，同一key的内容相同
+	 * @param mimeType 媒体类型
+	 * @param data 媒体数据，可以多次打开
+	 * @return 可以放入请求中的媒体URL
+	 * @throws IOException 上传失败
+	 */
+	String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException;
+
+	/**
+	 * 缓存条目过期后删除已上传的文件，默认不做任何事情（例如对象存储自带生命周期规则时）
+	 * @param key 上传时的key
+	 */
+	default void delete(String key) {
+	}
+
+}
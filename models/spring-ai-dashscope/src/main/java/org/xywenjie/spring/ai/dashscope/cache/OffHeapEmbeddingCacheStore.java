@@ -0,0 +1,193 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * 把向量存放在堆外直接内存中的缓存，按占用字节数做LRU淘汰。
+ * <p>
+ * 堆外内存是一块按固定大小槽位划分的区域，向量按维度占用一个或多个槽位，堆上只保留key和槽位编号。
+ * 区域按块（每块最多64MB）在需要时分配，总量不超过{@code maxBytes}，分配后不再释放；
+ * 淘汰的条目把槽位放回空闲列表供之后的向量复用，不会为每个向量单独申请直接内存，也不依赖Cleaner回收。
+ * 读写都在锁内复制向量，槽位被复用时不会读到其他向量的数据。
+ *
+ * @author Huang Wenjie
+ */
+public class OffHeapEmbeddingCacheStore implements EmbeddingCacheStore {
+
+	/**
+	 * 默认每个槽位的float个数，1024维向量占4个槽位，浪费不超过一个槽位
+	 */
+	public static final int DEFAULT_SLOT_SIZE = 256;
+
+	private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+
+	private final long maxBytes;
+
+	private final int slotSize;
+
+	private final int slotsPerChunk;
+
+	private final int maxSlots;
+
+	private final List<FloatBuffer> chunks = new ArrayList<>();
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+	/**
+	 * 已经从区域中划出的槽位数，编号小于该值的槽位要么被条目占用，要么在空闲列表中
+	 */
+	private int allocatedSlots;
+
+	private int[] freeSlots = new int[64];
+
+	private int freeCount;
+
+	private long usedSlots;
+
+	/**
+	 * @param maxBytes 向量最多占用的堆外字节数
+	 */
+	public OffHeapEmbeddingCacheStore(long maxBytes) {
+		this(maxBytes, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * @param maxBytes 向量最多占用的堆外字节数
+	 * @param slotSize 每个槽位的float个数，接近常用向量维度的约数时浪费最少
+	 */
+	public OffHeapEmbeddingCacheStore(long maxBytes, int slotSize) {
+		Assert.isTrue(maxBytes > 0, "maxBytes must be greater than 0");
+		Assert.isTrue(slotSize > 0, "slotSize must be greater than 0");
+		long slotBytes = (long) slotSize * Float.BYTES;
+		Assert.isTrue(maxBytes >= slotBytes, "maxBytes must hold at least one slot");
+		this.maxBytes = maxBytes;
+		this.slotSize = slotSize;
+		this.slotsPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / slotBytes);
+		this.maxSlots = (int) Math.min(maxBytes / slotBytes, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public synchronized float[] get(String key) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		float[] embedding = new float[entry.length];
+		for (int i = 0, offset = 0; i < entry.slots.length; i++, offset += this.slotSize) {
+			int length = Math.min(this.slotSize, entry.length - offset);
+			chunk(entry.slots[i]).get(position(entry.slots[i]), embedding, offset, length);
+		}
+		return embedding;
+	}
+
+	@Override
+	public synchronized void put(String key, float[] embedding) {
+		Assert.notNull(key, "key must not be null");
+		Assert.notNull(embedding, "embedding must not be null");
+		int slotCount = (embedding.length + this.slotSize - 1) / this.slotSize;
+		if (slotCount > this.maxSlots) {
+			return;
+		}
+		Entry previous = this.entries.remove(key);
+		if (previous != null) {
+			release(previous);
+		}
+		Iterator<Entry> eldest = this.entries.values().iterator();
+		while (this.freeCount + (this.maxSlots - this.allocatedSlots) < slotCount && eldest.hasNext()) {
+			release(eldest.next());
+			eldest.remove();
+		}
+		int[] slots = new int[slotCount];
+		for (int i = 0, offset = 0; i < slotCount; i++, offset += this.slotSize) {
+			slots[i] = acquireSlot();
+			int length = Math.min(this.slotSize, embedding.length - offset);
+			chunk(slots[i]).put(position(slots[i]), embedding, offset, length);
+		}
+		this.usedSlots += slotCount;
+		this.entries.put(key, new Entry(slots, embedding.length));
+	}
+
+	@Override
+	public synchronized long size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return 条目占用的槽位字节数，包括最后一个槽位中未使用的部分
+	 */
+	@Override
+	public synchronized long sizeInBytes() {
+		return this.usedSlots * this.slotSize * Float.BYTES;
+	}
+
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * @return 已经分配的堆外字节数，只增不减，最多为{@code maxBytes}按槽位向下取整
+	 */
+	public synchronized long getAllocatedBytes() {
+		long bytes = 0;
+		for (FloatBuffer chunk : this.chunks) {
+			bytes += (long) chunk.capacity() * Float.BYTES;
+		}
+		return bytes;
+	}
+
+	/**
+	 * 清空条目，已分配的区域保留，全部槽位放回空闲列表
+	 */
+	@Override
+	public synchronized void clear() {
+		for (Entry entry : this.entries.values()) {
+			release(entry);
+		}
+		this.entries.clear();
+	}
+
+	private int acquireSlot() {
+		if (this.freeCount > 0) {
+			return this.freeSlots[--this.freeCount];
+		}
+		int slot = this.allocatedSlots++;
+		if (slot % this.slotsPerChunk == 0) {
+			int slots = Math.min(this.slotsPerChunk, this.maxSlots - slot);
+			this.chunks.add(ByteBuffer.allocateDirect(slots * this.slotSize * Float.BYTES)
+				.order(ByteOrder.nativeOrder())
+				.asFloatBuffer());
+		}
+		return slot;
+	}
+
+	private void release(Entry entry) {
+		if (this.freeCount + entry.slots.length > this.freeSlots.length) {
+			this.freeSlots = Arrays.copyOf(this.freeSlots,
+					Math.max(this.freeSlots.length * 2, this.freeCount + entry.slots.length));
+		}
+		System.arraycopy(entry.slots, 0, this.freeSlots, this.freeCount, entry.slots.length);
+		this.freeCount += entry.slots.length;
+		this.usedSlots -= entry.slots.length;
+	}
+
+	private FloatBuffer chunk(int slot) {
+		return this.chunks.get(slot / this.slotsPerChunk);
+	}
+
+	private int position(int slot) {
+		return (slot % this.slotsPerChunk) * this.slotSize;
+	}
+
+	private record Entry(int[] slots, int length) {
+	}
+
+}
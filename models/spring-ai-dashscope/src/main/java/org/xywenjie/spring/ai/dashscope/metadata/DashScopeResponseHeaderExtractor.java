@@ -1,16 +1,104 @@
 package org.xywenjie.spring.ai.dashscope.metadata;
 
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 
+/**
+ * 从响应头中解析限流信息。
+ * DashScope（兼容模式）返回 {@code x-ratelimit-*} 响应头，没有这些响应头时返回空的{@link DashScopeRateLimit}。
+ */
 public final class DashScopeResponseHeaderExtractor {
-	
+
 	private static final Logger logger = LoggerFactory.getLogger(DashScopeResponseHeaderExtractor.class);
-	
+
+	public static final String REQUESTS_LIMIT_HEADER = "x-ratelimit-limit-requests";
+
+	public static final String REQUESTS_REMAINING_HEADER = "x-ratelimit-remaining-requests";
+
+	public static final String REQUESTS_RESET_HEADER = "x-ratelimit-reset-requests";
+
+	public static final String TOKENS_LIMIT_HEADER = "x-ratelimit-limit-tokens";
+
+	public static final String TOKENS_REMAINING_HEADER = "x-ratelimit-remaining-tokens";
+
+	public static final String TOKENS_RESET_HEADER = "x-ratelimit-reset-tokens";
+
+	/**
+	 * 形如 1h2m3s、6m0s、59.5s、20ms 的时长
+	 */
+	private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+	private DashScopeResponseHeaderExtractor() {
+	}
+
 	public static RateLimit extractAiResponseHeaders(ResponseEntity<?> response) {
-		return new DashScopeRateLimit();
+		if (response == null) {
+			return new DashScopeRateLimit();
+		}
+		return extractAiResponseHeaders(response.getHeaders());
+	}
+
+	public static RateLimit extractAiResponseHeaders(HttpHeaders headers) {
+		if (headers == null || (!headers.containsHeader(REQUESTS_LIMIT_HEADER) && !headers.containsHeader(TOKENS_LIMIT_HEADER))) {
+			return new DashScopeRateLimit();
+		}
+		return new QwenRateLimit(parseLong(headers, REQUESTS_LIMIT_HEADER), parseLong(headers, REQUESTS_REMAINING_HEADER),
+				parseDuration(headers, REQUESTS_RESET_HEADER), parseLong(headers, TOKENS_LIMIT_HEADER),
+				parseLong(headers, TOKENS_REMAINING_HEADER), parseDuration(headers, TOKENS_RESET_HEADER));
+	}
+
+	private static Long parseLong(HttpHeaders headers, String name) {
+		String value = headers.getFirst(name);
+		if (!StringUtils.hasText(value)) {
+			return null;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException ex) {
+			logger.debug("Ignoring invalid {} header: {}", name, value);
+			return null;
+		}
+	}
+
+	private static Duration parseDuration(HttpHeaders headers, String name) {
+		String value = headers.getFirst(name);
+		if (!StringUtils.hasText(value)) {
+			return null;
+		}
+		return parseDuration(value.trim());
+	}
+
+	static Duration parseDuration(String value) {
+		if (value.chars().allMatch(Character::isDigit)) {
+			return Duration.ofSeconds(Long.parseLong(value));
+		}
+		Matcher matcher = DURATION_PART.matcher(value);
+		double millis = 0;
+		int end = 0;
+		while (matcher.find() && matcher.start() == end) {
+			double amount = Double.parseDouble(matcher.group(1));
+			millis += switch (matcher.group(2)) {
+				case "h" -> amount * 3_600_000;
+				case "m" -> amount * 60_000;
+				case "s" -> amount * 1_000;
+				default -> amount;
+			};
+			end = matcher.end();
+		}
+		if (end != value.length() || end == 0) {
+			logger.debug("Ignoring invalid rate limit reset value: {}", value);
+			return null;
+		}
+		return Duration.ofMillis(Math.round(millis));
 	}
 
 }
@@ -0,0 +1,109 @@
+package org.xywenjie.spring.ai.audio.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.audio.tts.TextToSpeechPrompt;
+import org.springframework.ai.model.SimpleApiKey;
+import org.xywenjie.spring.ai.dashscope.DashScopeAudioSpeechModel;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeAudioApi;
+
+/**
+ * 使用本地模拟服务验证合成音频的下载
+ */
+public class DashScopeAudioApiDownloadTests {
+
+	private static final byte[] AUDIO = new byte[256 * 1024];
+
+	static {
+		for (int i = 0; i < AUDIO.length; i++) {
+			AUDIO[i] = (byte) i;
+		}
+	}
+
+	private final List<String> downloadAuthorizations = new CopyOnWriteArrayList<>();
+
+	private MockDashScopeServer server;
+
+	private DashScopeAudioApi audioApi;
+
+	private String audioUrl;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.builder().context("/audio.wav", exchange -> {
+			this.downloadAuthorizations.add(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+			MockDashScopeServer.respond(exchange, 200, "audio/wav", AUDIO);
+		}).context("/api", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondJson(exchange,
+					"{\"output\":{\"audio\":{\"url\":\"" + this.audioUrl + "\"},\"finish_reason\":\"stop\"}}");
+		}).start();
+		this.audioUrl = this.server.baseUrl() + "/audio.wav?Signature=abc";
+		this.audioApi = DashScopeAudioApi.builder()
+			.baseUrl(this.server.baseUrl())
+			.apiKey(new SimpleApiKey("test-key"))
+			.downloadTimeouts(Duration.ofSeconds(5), Duration.ofSeconds(5))
+			.maxConcurrentDownloads(2)
+			.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.audioApi.close();
+		this.server.close();
+	}
+
+	@Test
+	void callDownloadsAudioWithoutAuthorizationHeader() {
+		DashScopeAudioSpeechModel speechModel = new DashScopeAudioSpeechModel(this.audioApi);
+
+		byte[] audio = speechModel.call(new TextToSpeechPrompt("你好")).getResult().getOutput();
+
+		assertThat(audio).isEqualTo(AUDIO);
+		assertThat(this.downloadAuthorizations).containsExactly("null");
+	}
+
+	@Test
+	void downloadToChannel() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Long written = this.audioApi.downloadAudio(this.audioUrl, Channels.newChannel(out)).block(Duration.ofSeconds(10));
+
+		assertThat(written).isEqualTo(AUDIO.length);
+		assertThat(out.toByteArray()).isEqualTo(AUDIO);
+	}
+
+	@Test
+	void downloadToFile(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("audio.wav");
+
+		this.audioApi.downloadAudio(this.audioUrl, file).block(Duration.ofSeconds(10));
+
+		assertThat(Files.readAllBytes(file)).isEqualTo(AUDIO);
+	}
+
+	@Test
+	void closeDisposesDownloadPool() {
+		this.audioApi.downloadAudio(this.audioUrl, Channels.newChannel(new ByteArrayOutputStream()))
+			.block(Duration.ofSeconds(10));
+
+		this.audioApi.close();
+
+		assertThat(this.audioApi.getDownloadConnectionProvider().isDisposed()).isTrue();
+	}
+
+}
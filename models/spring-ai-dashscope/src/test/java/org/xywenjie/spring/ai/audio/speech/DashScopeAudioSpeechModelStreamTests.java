@@ -0,0 +1,54 @@
+package org.xywenjie.spring.ai.audio.speech;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.audio.tts.TextToSpeechPrompt;
+import org.springframework.ai.audio.tts.TextToSpeechResponse;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.xywenjie.spring.ai.dashscope.DashScopeAudioSpeechModel;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeAudioApi;
+
+/**
+ * 验证流式语音合成的base64音频直接解码为字节
+ */
+public class DashScopeAudioSpeechModelStreamTests {
+
+	@Test
+	void audioChunksAreDecodedToBytes() {
+		byte[] first = { 1, 2, 3, 4, 5 };
+		byte[] second = { 6, 7, 8 };
+		try (MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondJson(exchange,
+					chunk(first) + chunk(second) + "{\"output\":{\"audio\":{\"id\":\"audio\"},\"finish_reason\":\"stop\"}}");
+		})) {
+			DashScopeAudioApi audioApi = new DashScopeAudioApi(server.baseUrl(), new SimpleApiKey("test-key"),
+					new HttpHeaders(), RestClient.builder(), WebClient.builder(),
+					RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+			DashScopeAudioSpeechModel speechModel = new DashScopeAudioSpeechModel(audioApi);
+
+			List<TextToSpeechResponse> responses = speechModel.stream(new TextToSpeechPrompt("你好"))
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+			// 结束分片不含音频，不再产生空的Speech
+			assertThat(responses).extracting(response -> response.getResult().getOutput())
+				.containsExactly(first, second);
+		}
+	}
+
+	private static String chunk(byte[] audio) {
+		return "{\"output\":{\"audio\":{\"data\":\"" + Base64.getEncoder().encodeToString(audio) + "\"}}}";
+	}
+
+}
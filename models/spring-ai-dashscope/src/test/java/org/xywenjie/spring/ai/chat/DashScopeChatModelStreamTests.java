@@ -0,0 +1,104 @@
+package org.xywenjie.spring.ai.chat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatOptions;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+/**
+ * 使用本地模拟SSE服务验证高频流式输出不会丢失chunk
+ */
+public class DashScopeChatModelStreamTests {
+
+	private static final int CHUNK_COUNT = 10_000;
+
+	private static final int CHUNKS_PER_SECOND = 10_000;
+
+	private MockDashScopeServer server;
+
+	private DashScopeChatModel chatModel;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			try (OutputStream out = MockDashScopeServer.openEventStream(exchange)) {
+				writeEvents(out);
+			}
+		});
+		DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(this.server.baseUrl())
+				.apiKey("test-key")
+				.build();
+		this.chatModel = DashScopeChatModel.builder()
+				.dashScopeApi(dashScopeApi)
+				.defaultOptions(DashScopeChatOptions.builder().model("qwen-plus").build())
+				.streamPrefetch(32)
+				.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	void noChunkIsLostUnderHighRate() {
+		List<ChatResponse> responses = this.chatModel.stream(new Prompt("hello"))
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+		assertThat(responses).hasSize(CHUNK_COUNT);
+		StringBuilder text = new StringBuilder();
+		responses.forEach(response -> text.append(response.getResult().getOutput().getText()));
+		assertThat(text.toString()).isEqualTo(expectedText());
+		assertThat(responses.get(CHUNK_COUNT - 1).getResult().getMetadata().getFinishReason()).isEqualTo("stop");
+	}
+
+	private static void writeEvents(OutputStream out) throws IOException {
+		long intervalNanos = 1_000_000_000L / CHUNKS_PER_SECOND;
+		long start = System.nanoTime();
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			String finishReason = i == CHUNK_COUNT - 1 ? "stop" : "null";
+			String event = "id:" + i + "\nevent:result\ndata:{\"output\":{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\""
+					+ token(i) + "\"},\"finish_reason\":\"" + finishReason + "\"}]},\"usage\":{\"input_tokens\":1,\"output_tokens\":"
+					+ (i + 1) + ",\"total_tokens\":" + (i + 2) + "},\"request_id\":\"stress\"}\n\n";
+			out.write(event.getBytes(StandardCharsets.UTF_8));
+			if (i % 100 == 99) {
+				out.flush();
+				long wait = start + (i + 1) * intervalNanos - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}
+		out.flush();
+	}
+
+	private static String token(int i) {
+		return "t" + i + " ";
+	}
+
+	private static String expectedText() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			builder.append(token(i));
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class DashScopeBlockingExecutorTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeBlockingExecutorTests.class);
+
+	private static final byte[] EMBEDDING_RESPONSE = ("{\"output\":{\"embeddings\":[{\"text_index\":0,\"embedding\":[1.0]}]},"
+			+ "\"usage\":{\"total_tokens\":1},\"request_id\":\"async\"}").getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void callAsyncRunsOnConfiguredExecutor() throws Exception {
+		ScheduledExecutorService responder = Executors.newScheduledThreadPool(2);
+		MockDashScopeServer server = startServer(responder, 20);
+		ExecutorService executor = BlockingExecutors.platform("embedding-async-");
+		try {
+			DashScopeEmbeddingModel embeddingModel = embeddingModel(server);
+			embeddingModel.setBlockingExecutor(executor);
+			Set<String> threads = ConcurrentHashMap.newKeySet();
+			List<CompletableFuture<EmbeddingResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				futures.add(embeddingModel.callAsync(new EmbeddingRequest(List.of("text-" + i), null))
+					.whenComplete((response, ex) -> threads.add(Thread.currentThread().getName())));
+			}
+
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+			assertThat(futures).allSatisfy(future -> assertThat(future.join().getResults()).hasSize(1));
+			assertThat(threads).allSatisfy(name -> assertThat(name).startsWith("embedding-async-"));
+		}
+		finally {
+			executor.shutdownNow();
+			server.close();
+			responder.shutdownNow();
+		}
+	}
+
+	@Test
+	void subBatchesDoNotWaitOnABoundedExecutor() throws Exception {
+		ScheduledExecutorService responder = Executors.newScheduledThreadPool(2);
+		MockDashScopeServer server = startServer(responder, 20);
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		try {
+			DashScopeEmbeddingModel embeddingModel = embeddingModel(server);
+			embeddingModel.setBatchingPolicy(1, null, 4);
+			embeddingModel.setBlockingExecutor(executor);
+
+			// 唯一的线程被callAsync占用并等待3个子批次，子批次不能排在同一个线程池里
+			EmbeddingResponse response = embeddingModel.callAsync(new EmbeddingRequest(List.of("a", "b", "c"), null))
+				.get(10, TimeUnit.SECONDS);
+
+			assertThat(response.getResults()).hasSize(3);
+		}
+		finally {
+			executor.shutdownNow();
+			server.close();
+			responder.shutdownNow();
+		}
+	}
+
+	/**
+	 * 5000个并发请求（服务端延迟200ms）下对比平台线程池与虚拟线程，
+	 * 需要Java 21以上，设置环境变量 DASHSCOPE_BENCHMARK=true 时运行
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void benchmarkPlatformVersusVirtualThreads() throws Exception {
+		Assumptions.assumeTrue(BlockingExecutors.isVirtualThreadSupported(), "Virtual threads require Java 21");
+		int concurrency = 5000;
+		ScheduledExecutorService responder = Executors.newScheduledThreadPool(4);
+		MockDashScopeServer server = startServer(responder, 200);
+		try {
+			DashScopeEmbeddingModel embeddingModel = embeddingModel(server);
+			ExecutorService platform = Executors.newFixedThreadPool(200);
+			ExecutorService virtual = BlockingExecutors.virtualThreadPerTask("embedding-vt-");
+			try {
+				// 预热连接和JIT
+				run(embeddingModel, virtual, 500);
+				long platformNanos = run(embeddingModel, platform, concurrency);
+				long virtualNanos = run(embeddingModel, virtual, concurrency);
+				logger.info("{} requests: platform(200 threads) {} ms, virtual threads {} ms", concurrency,
+						TimeUnit.NANOSECONDS.toMillis(platformNanos), TimeUnit.NANOSECONDS.toMillis(virtualNanos));
+				assertThat(virtualNanos).isLessThan(platformNanos);
+			}
+			finally {
+				platform.shutdownNow();
+				virtual.shutdownNow();
+			}
+		}
+		finally {
+			server.close();
+			responder.shutdownNow();
+		}
+	}
+
+	private static long run(DashScopeEmbeddingModel embeddingModel, ExecutorService executor, int requests) {
+		embeddingModel.setBlockingExecutor(executor);
+		long start = System.nanoTime();
+		List<CompletableFuture<EmbeddingResponse>> futures = new ArrayList<>(requests);
+		for (int i = 0; i < requests; i++) {
+			futures.add(embeddingModel.callAsync(new EmbeddingRequest(List.of("text-" + i), null)));
+		}
+		CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+		return System.nanoTime() - start;
+	}
+
+	private static DashScopeEmbeddingModel embeddingModel(MockDashScopeServer server) {
+		DashScopeApi dashScopeApi = DashScopeApi.builder()
+			.baseUrl(server.baseUrl())
+			.apiKey("test-key")
+			.build();
+		return new DashScopeEmbeddingModel(dashScopeApi, MetadataMode.EMBED);
+	}
+
+	/**
+	 * 响应延迟由定时线程完成，服务端不会因为等待而占用线程
+	 */
+	private static MockDashScopeServer startServer(ScheduledExecutorService responder, long delayMillis) {
+		return MockDashScopeServer.builder()
+			.backlog(10_000)
+			.executor(Executors.newFixedThreadPool(4))
+			.context("/", exchange -> {
+				exchange.getRequestBody().readAllBytes();
+				responder.schedule(() -> respond(exchange), delayMillis, TimeUnit.MILLISECONDS);
+			})
+			.start();
+	}
+
+	private static void respond(HttpExchange exchange) {
+		try {
+			MockDashScopeServer.respond(exchange, 200, "application/json", EMBEDDING_RESPONSE);
+		}
+		catch (IOException ex) {
+			exchange.close();
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+
+public class DashScopeChatOptionsMapperTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeChatOptionsMapperTests.class);
+
+	private final DashScopeChatModel chatModel = DashScopeChatModel.builder()
+		.dashScopeApi(DashScopeApi.builder().apiKey("test-key").build())
+		.defaultOptions(DashScopeChatOptions.builder()
+			.model("qwen-plus")
+			.enableThinking()
+			.thinkingBudget(512)
+			.seed(7)
+			.toolCallbacks(weatherTool())
+			.build())
+		.build();
+
+	@Test
+	void runtimeParametersOverrideOnlyTheirOwnFields() {
+		DashScopeChatOptions runtime = DashScopeChatOptions.builder().model("qwen-max").seed(42).build();
+		runtime.getParameters().setTemperature(0.2);
+
+		DashScopeRequest request = createRequest(runtime);
+
+		assertThat(request.getModel()).isEqualTo("qwen-max");
+		assertThat(request.getParameters().getSeed()).isEqualTo(42);
+		assertThat(request.getParameters().getTemperature()).isEqualTo(0.2);
+		assertThat(request.getParameters().getEnableThinking()).isTrue();
+		assertThat(request.getParameters().getThinkingBudget()).isEqualTo(512);
+	}
+
+	@Test
+	void toolDefinitionsDoNotReplaceOtherParameters() {
+		DashScopeRequest request = createRequest(null);
+
+		assertThat(request.getParameters().getTools()).extracting(tool -> tool.getFunction().getName())
+			.containsExactly("weather");
+		assertThat(request.getParameters().getEnableThinking()).isTrue();
+		assertThat(request.getParameters().getSeed()).isEqualTo(7);
+	}
+
+	@Test
+	void portableToolCallingOptionsAreMapped() {
+		ToolCallingChatOptions runtime = ToolCallingChatOptions.builder()
+			.model("qwen-turbo")
+			.temperature(0.1)
+			.topP(0.8)
+			.topK(20)
+			.toolContext(Map.of("tenant", "a"))
+			.internalToolExecutionEnabled(false)
+			.build();
+
+		DashScopeChatOptions merged = (DashScopeChatOptions) this.chatModel.buildRequestPrompt(new Prompt("hi", runtime))
+			.getOptions();
+
+		assertThat(merged.getModel()).isEqualTo("qwen-turbo");
+		assertThat(merged.getParameters().getTemperature()).isEqualTo(0.1);
+		assertThat(merged.getParameters().getTopP()).isEqualTo(0.8);
+		assertThat(merged.getParameters().getTopK()).isEqualTo(20);
+		assertThat(merged.getTemperature()).isEqualTo(0.1);
+		assertThat(merged.getTopP()).isEqualTo(0.8);
+		assertThat(merged.getTopK()).isEqualTo(20);
+		assertThat(merged.getParameters().getSeed()).isEqualTo(7);
+		assertThat(merged.getToolContext()).containsEntry("tenant", "a");
+		assertThat(merged.getInternalToolExecutionEnabled()).isFalse();
+		assertThat(merged.getToolCallbacks()).hasSize(1);
+	}
+
+	@Test
+	void requestsDoNotShareStateWithOptions() {
+		DashScopeChatOptions options = DashScopeChatOptions.builder().model("qwen-plus").seed(1).build();
+		DashScopeChatOptions copy = options.copy();
+		copy.getParameters().setSeed(2);
+		copy.getToolContext().put("k", "v");
+
+		DashScopeRequest request = DashScopeChatOptionsMapper.toRequest(options);
+		request.getParameters().setIncrementalOutput(true);
+
+		assertThat(options.getParameters().getSeed()).isEqualTo(1);
+		assertThat(options.getToolContext()).isEmpty();
+		assertThat(options.getParameters().getIncrementalOutput()).isNull();
+	}
+
+	/**
+	 * 对比逐字段映射与原先ModelOptionsUtils基于JSON往返的合并方式构建请求的耗时，
+	 * 设置环境变量 DASHSCOPE_BENCHMARK=true 时运行
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void benchmarkRequestBuilding() {
+		DashScopeChatOptions runtime = DashScopeChatOptions.builder().model("qwen-max").seed(42).build();
+		Prompt prompt = new Prompt(List.of(new SystemMessage("你是客服"), new UserMessage("如何退货？")), runtime);
+		DashScopeChatOptions defaults = (DashScopeChatOptions) this.chatModel.getDefaultOptions();
+		int iterations = 20_000;
+		for (int i = 0; i < iterations; i++) {
+			reflectiveBuild(prompt, defaults);
+			this.chatModel.createRequest(this.chatModel.buildRequestPrompt(prompt), false);
+		}
+
+		long reflective = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			reflectiveBuild(prompt, defaults);
+		}
+		reflective = System.nanoTime() - reflective;
+		long mapped = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			this.chatModel.createRequest(this.chatModel.buildRequestPrompt(prompt), false);
+		}
+		mapped = System.nanoTime() - mapped;
+
+		logger.info("request building: ModelOptionsUtils {} us/request, mapper {} us/request",
+				String.format("%.1f", reflective / 1e3 / iterations), String.format("%.1f", mapped / 1e3 / iterations));
+		assertThat(mapped).isLessThan(reflective);
+	}
+
+	/**
+	 * 原先的实现：copyToTarget + 三次merge，不含消息映射
+	 */
+	private static DashScopeRequest reflectiveBuild(Prompt prompt, DashScopeChatOptions defaults) {
+		DashScopeChatOptions runtime = ModelOptionsUtils.copyToTarget((ToolCallingChatOptions) prompt.getOptions(),
+				ToolCallingChatOptions.class, DashScopeChatOptions.class);
+		DashScopeChatOptions merged = ModelOptionsUtils.merge(runtime, defaults, DashScopeChatOptions.class);
+		DashScopeRequest request = ModelOptionsUtils.merge(merged, new DashScopeRequest(), DashScopeRequest.class);
+		return ModelOptionsUtils.merge(DashScopeChatOptions.builder().tools(List.of()).build(), request,
+				DashScopeRequest.class);
+	}
+
+	private DashScopeRequest createRequest(DashScopeChatOptions runtime) {
+		Prompt prompt = this.chatModel.buildRequestPrompt(new Prompt("hi", runtime));
+		return this.chatModel.createRequest(prompt, false);
+	}
+
+	private static FunctionToolCallback<Map<String, String>, String> weatherTool() {
+		return FunctionToolCallback.<Map<String, String>, String>builder("weather", input -> "sunny")
+			.description("查询天气")
+			.inputType(Map.class)
+			.build();
+	}
+
+}
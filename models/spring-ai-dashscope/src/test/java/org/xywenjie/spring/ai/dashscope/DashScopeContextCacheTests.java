@@ -0,0 +1,105 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DashScopeContextCacheTests {
+
+	private static final String USAGE = "\"usage\":{\"input_tokens\":1000,\"output_tokens\":2,\"total_tokens\":1002,"
+			+ "\"input_tokens_details\":{\"cached_tokens\":800,\"cache_creation_input_tokens\":0,\"cache_type\":\"ephemeral\"}}";
+
+	private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private MockDashScopeServer server;
+
+	private DashScopeChatModel chatModel;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			this.bodies.add(MockDashScopeServer.readBody(exchange));
+			if (MockDashScopeServer.isSse(exchange)) {
+				MockDashScopeServer.respondSse(exchange, chunk("o", "null"), chunk("k", "stop"));
+			}
+			else {
+				MockDashScopeServer.respondJson(exchange, chunk("ok", "stop"));
+			}
+		});
+		this.chatModel = DashScopeChatModel.builder()
+			.dashScopeApi(DashScopeApi.builder()
+				.baseUrl(this.server.baseUrl())
+				.apiKey("test-key")
+				.build())
+			.defaultOptions(DashScopeChatOptions.builder().model("qwen-plus").contextCache(true).build())
+			.meterRegistry(this.meterRegistry)
+			.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	void systemPromptIsMarkedAndCachedTokensAreReported() throws IOException {
+		ChatResponse response = this.chatModel
+			.call(new Prompt(List.of(new SystemMessage("很长的系统提示词"), new UserMessage("你好"))));
+
+		JsonNode messages = new ObjectMapper().readTree(this.bodies.get(0)).at("/input/messages");
+		assertThat(messages.at("/0/content/0/text").asText()).isEqualTo("很长的系统提示词");
+		assertThat(messages.at("/0/content/0/cache_control/type").asText()).isEqualTo("ephemeral");
+		assertThat(messages.at("/1/content").asText()).isEqualTo("你好");
+		assertThat((Integer) response.getMetadata().get(DashScopeChatModel.CACHED_TOKENS_METADATA_KEY)).isEqualTo(800);
+		assertThat(this.meterRegistry.get("dashscope.chat.context.cache.hit.ratio").tag("model", "qwen-plus").gauge().value())
+			.isEqualTo(0.8);
+	}
+
+	@Test
+	void streamRecordsCachedTokensOnce() {
+		List<ChatResponse> responses = this.chatModel
+			.stream(new Prompt(List.of(new SystemMessage("很长的系统提示词"), new UserMessage("你好"))))
+			.collectList()
+			.block(Duration.ofSeconds(10));
+
+		assertThat(responses).isNotEmpty();
+		assertThat((Integer) responses.get(0).getMetadata().get(DashScopeChatModel.CACHED_TOKENS_METADATA_KEY))
+			.isEqualTo(800);
+		assertThat(this.meterRegistry.get("dashscope.chat.input.tokens")
+			.tag("model", "qwen-plus")
+			.tag("cache", "hit")
+			.functionCounter()
+			.count()).isEqualTo(800);
+		assertThat(this.meterRegistry.get("dashscope.chat.input.tokens")
+			.tag("model", "qwen-plus")
+			.tag("cache", "miss")
+			.functionCounter()
+			.count()).isEqualTo(200);
+	}
+
+	private static String chunk(String content, String finishReason) {
+		return "{\"output\":{\"choices\":[{\"finish_reason\":\"" + finishReason
+				+ "\",\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"}}]}," + USAGE
+				+ ",\"request_id\":\"cache\"}";
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.RetryUtils;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DashScopeEmbeddingBatcherTests {
+
+	@Test
+	void splitRespectsItemAndTokenLimits() {
+		List<String> texts = List.of("aaaa", "bb", "cccccc", "d", "eeeeeeeeeeee", "f", "g");
+
+		List<DashScopeEmbeddingBatcher.Batch> batches = DashScopeEmbeddingBatcher.split(texts, 3, 8);
+
+		assertThat(batches).extracting(DashScopeEmbeddingBatcher.Batch::offset).containsExactly(0, 2, 4, 5);
+		assertThat(batches).extracting(DashScopeEmbeddingBatcher.Batch::texts)
+			.containsExactly(List.of("aaaa", "bb"), List.of("cccccc", "d"), List.of("eeeeeeeeeeee"), List.of("f", "g"));
+	}
+
+	@Test
+	void defaultLimitsFollowModel() {
+		assertThat(DashScopeEmbeddingBatcher.defaultMaxBatchSize("text-embedding-v4")).isEqualTo(10);
+		assertThat(DashScopeEmbeddingBatcher.defaultMaxBatchSize("text-embedding-v2")).isEqualTo(25);
+	}
+
+	@Test
+	void concurrentBatchesAreReassembledInOrder() {
+		ObjectMapper objectMapper = new ObjectMapper();
+		AtomicInteger requests = new AtomicInteger();
+		MockDashScopeServer.Builder builder = MockDashScopeServer.builder().executor(Executors.newFixedThreadPool(8));
+		try (MockDashScopeServer server = builder.context("/", exchange -> {
+			requests.incrementAndGet();
+			JsonNode texts = objectMapper.readTree(exchange.getRequestBody()).path("input").path("texts");
+			// 打乱返回顺序并随机延迟，模拟并发子批次乱序完成
+			List<Integer> order = new ArrayList<>(IntStream.range(0, texts.size()).boxed().toList());
+			Collections.shuffle(order);
+			StringBuilder body = new StringBuilder("{\"output\":{\"embeddings\":[");
+			for (int i = 0; i < order.size(); i++) {
+				int index = order.get(i);
+				body.append(i == 0 ? "" : ",")
+					.append("{\"text_index\":").append(index)
+					.append(",\"embedding\":[").append(texts.get(index).asText().substring(4)).append("]}");
+			}
+			body.append("]},\"usage\":{\"total_tokens\":").append(texts.size()).append("},\"request_id\":\"batch\"}");
+			try {
+				Thread.sleep(ThreadLocalRandom.current().nextInt(20));
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			MockDashScopeServer.respondJson(exchange, body.toString());
+		}).start()) {
+			DashScopeApi dashScopeApi = DashScopeApi.builder().baseUrl(server.baseUrl()).apiKey("test-key").build();
+			DashScopeEmbeddingModel embeddingModel = new DashScopeEmbeddingModel(dashScopeApi, MetadataMode.EMBED);
+			embeddingModel.setBatchingPolicy(null, null, 8);
+			List<String> texts = IntStream.range(0, 1000).mapToObj(i -> "doc-" + i).toList();
+
+			EmbeddingResponse response = embeddingModel.call(new EmbeddingRequest(texts, null));
+
+			assertThat(requests.get()).isEqualTo(100);
+			assertThat(response.getResults()).hasSize(1000);
+			for (int i = 0; i < 1000; i++) {
+				Embedding embedding = response.getResults().get(i);
+				assertThat(embedding.getIndex()).isEqualTo(i);
+				assertThat(embedding.getOutput()).containsExactly((float) i);
+			}
+			assertThat(response.getMetadata().getUsage().getTotalTokens()).isEqualTo(1000);
+			assertThat(response.getMetadata().getUsage().getPromptTokens()).isEqualTo(1000);
+			assertThat(response.getMetadata().getUsage().getCompletionTokens()).isZero();
+		}
+	}
+
+	@Test
+	void missingEmbeddingsAreRetried() {
+		AtomicInteger requests = new AtomicInteger();
+		// 第一次返回空的output，第二次才返回完整结果
+		try (MockDashScopeServer server = startServer(() -> requests.incrementAndGet() == 1 ? "{\"output\":{},\"request_id\":\"empty\"}"
+				: "{\"output\":{\"embeddings\":[{\"text_index\":0,\"embedding\":[1.0]},{\"text_index\":1,\"embedding\":[2.0]}]},"
+						+ "\"usage\":{\"total_tokens\":2},\"request_id\":\"full\"}")) {
+			EmbeddingResponse response = embeddingModel(server).call(new EmbeddingRequest(List.of("a", "b"), null));
+
+			assertThat(requests.get()).isEqualTo(2);
+			assertThat(response.getResults()).extracting(Embedding::getOutput)
+				.containsExactly(new float[] { 1.0f }, new float[] { 2.0f });
+		}
+	}
+
+	@Test
+	void shortBatchFailsInsteadOfReturningFewerEmbeddings() {
+		try (MockDashScopeServer server = startServer(() -> "{\"output\":{\"embeddings\":[{\"text_index\":0,\"embedding\":[1.0]}]},"
+				+ "\"usage\":{\"total_tokens\":2},\"request_id\":\"short\"}")) {
+			DashScopeEmbeddingModel embeddingModel = embeddingModel(server);
+
+			assertThatThrownBy(() -> embeddingModel.call(new EmbeddingRequest(List.of("a", "b"), null)))
+				.hasMessageContaining("Expected 2 embeddings");
+		}
+	}
+
+	private static MockDashScopeServer startServer(Supplier<String> responder) {
+		return MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondJson(exchange, responder.get());
+		});
+	}
+
+	private static DashScopeEmbeddingModel embeddingModel(MockDashScopeServer server) {
+		DashScopeApi dashScopeApi = DashScopeApi.builder().baseUrl(server.baseUrl()).apiKey("test-key").build();
+		return new DashScopeEmbeddingModel(dashScopeApi, MetadataMode.EMBED,
+				DashScopeEmbeddingOptions.builder().model(DashScopeApi.DEFAULT_EMBEDDING_MODEL).build(),
+				RetryUtils.SHORT_RETRY_TEMPLATE);
+	}
+
+}
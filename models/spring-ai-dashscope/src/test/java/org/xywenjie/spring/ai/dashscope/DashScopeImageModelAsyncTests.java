@@ -0,0 +1,108 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeImageApi;
+
+public class DashScopeImageModelAsyncTests {
+
+	private static final String SUBMITTED = "{\"output\":{\"task_id\":\"image-task\",\"task_status\":\"PENDING\"},\"request_id\":\"submit\"}";
+
+	private static final String RUNNING = "{\"output\":{\"task_id\":\"image-task\",\"task_status\":\"RUNNING\"},\"request_id\":\"poll\"}";
+
+	private static final String SUCCEEDED = "{\"output\":{\"task_id\":\"image-task\",\"task_status\":\"SUCCEEDED\",\"results\":[{\"url\":\"https://example.com/cat.png\"}]},\"usage\":{\"image_count\":1},\"request_id\":\"poll\"}";
+
+	private final List<Long> pollTimes = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger submits = new AtomicInteger();
+
+	private MockDashScopeServer server;
+
+	@AfterEach
+	void tearDown() {
+		if (this.server != null) {
+			this.server.close();
+		}
+	}
+
+	@Test
+	void taskIsSubmittedPolledAndSucceeds() {
+		DashScopeImageModel imageModel = imageModel(2);
+		imageModel.setPollingPolicy(Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofSeconds(10));
+
+		ImageResponse response = imageModel.callAsync(new ImagePrompt("一只猫")).block(Duration.ofSeconds(10));
+
+		assertThat(this.submits).hasValue(1);
+		assertThat(this.pollTimes).hasSize(3);
+		assertThat(response.getResult().getOutput().getUrl()).isEqualTo("https://example.com/cat.png");
+		assertThat(response.getMetadata().get("taskStatus").toString()).isEqualTo("SUCCEEDED");
+	}
+
+	/**
+	 * 默认策略为1s起步、最大15s，这里按1/20缩放为50ms到750ms
+	 */
+	@Test
+	void pollIntervalBacksOffUpToTheMaximum() {
+		DashScopeImageModel imageModel = imageModel(7);
+		imageModel.setPollingPolicy(Duration.ofMillis(50), Duration.ofMillis(750), Duration.ofSeconds(30));
+
+		imageModel.callAsync(new ImagePrompt("一只猫")).block(Duration.ofSeconds(30));
+
+		List<Long> gaps = new ArrayList<>();
+		for (int i = 1; i < this.pollTimes.size(); i++) {
+			gaps.add(Duration.ofNanos(this.pollTimes.get(i) - this.pollTimes.get(i - 1)).toMillis());
+		}
+		assertThat(gaps).hasSize(7);
+		// 退避间隔依次约为50、100、200、400、750、750、750ms，抖动不超过20%且不超过最大间隔
+		assertThat(gaps.get(0)).isBetween(40L, 300L);
+		assertThat(gaps.get(3)).isGreaterThan(gaps.get(0));
+		assertThat(gaps.subList(4, 7)).allSatisfy(gap -> assertThat(gap).isBetween(600L, 1200L));
+	}
+
+	@Test
+	void missedDeadlineFailsWithTimeoutException() {
+		DashScopeImageModel imageModel = imageModel(Integer.MAX_VALUE);
+		imageModel.setPollingPolicy(Duration.ofMillis(10), Duration.ofMillis(20), Duration.ofMillis(300));
+
+		assertThat(imageModel.callAsync(new ImagePrompt("一只猫")).toFuture()).failsWithin(Duration.ofSeconds(10))
+			.withThrowableOfType(ExecutionException.class)
+			.withCauseInstanceOf(TimeoutException.class)
+			.withMessageContaining("image-task");
+		assertThat(this.pollTimes).hasSizeGreaterThan(1);
+	}
+
+	/**
+	 * @param runningPolls 返回SUCCEEDED之前返回RUNNING的次数
+	 */
+	private DashScopeImageModel imageModel(int runningPolls) {
+		this.server = MockDashScopeServer.builder()
+			.context("/api/v1/services/aigc/text2image/image-synthesis", exchange -> {
+				exchange.getRequestBody().readAllBytes();
+				this.submits.incrementAndGet();
+				MockDashScopeServer.respondJson(exchange, SUBMITTED);
+			})
+			.context("/api/v1/tasks/image-task", exchange -> {
+				this.pollTimes.add(System.nanoTime());
+				MockDashScopeServer.respondJson(exchange, this.pollTimes.size() > runningPolls ? SUCCEEDED : RUNNING);
+			})
+			.start();
+		DashScopeImageApi imageApi = DashScopeImageApi.builder()
+			.baseUrl(this.server.baseUrl())
+			.apiKey("test-key")
+			.build();
+		return new DashScopeImageModel(imageApi);
+	}
+
+}
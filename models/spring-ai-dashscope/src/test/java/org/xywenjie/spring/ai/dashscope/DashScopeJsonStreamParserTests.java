@@ -0,0 +1,105 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+public class DashScopeJsonStreamParserTests {
+
+	private static final String DOCUMENT = "{\"title\":\"天气\\n\\\"预报\\\" \\u4e2d\",\"days\":[{\"day\":1,\"temp\":-3.5},"
+			+ "{\"day\":2,\"temp\":1e2}],\"a/b~c\":[true,false,null,[]],\"empty\":{}}";
+
+	@Test
+	void eventsAreEmittedInnermostFirstWithJsonPointerPaths() {
+		List<DashScopeJsonEvent> events = new DashScopeJsonStreamParser("content").feed(DOCUMENT);
+
+		assertThat(events).extracting(DashScopeJsonEvent::type, DashScopeJsonEvent::path)
+			.containsExactly(tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/title"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/days/0/day"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/days/0/temp"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/days/0"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/days/1/day"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/days/1/temp"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/days/1"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/days"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/a~1b~0c/0"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/a~1b~0c/1"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/a~1b~0c/2"),
+					tuple(DashScopeJsonEvent.Type.ELEMENT_COMPLETED, "/a~1b~0c/3"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/a~1b~0c"),
+					tuple(DashScopeJsonEvent.Type.FIELD_COMPLETED, "/empty"),
+					tuple(DashScopeJsonEvent.Type.DOCUMENT_COMPLETED, ""));
+		assertThat(events.get(0).value()).isEqualTo("天气\n\"预报\" 中");
+		assertThat(events.get(2).value()).isEqualTo(-3.5);
+		assertThat(events.get(3).value()).isEqualTo(Map.of("day", 1L, "temp", -3.5));
+		assertThat(events.get(events.size() - 1).value()).isEqualTo(Map.of("title", "天气\n\"预报\" 中", "days",
+				List.of(Map.of("day", 1L, "temp", -3.5), Map.of("day", 2L, "temp", 100.0)), "a/b~c",
+				Arrays.asList(true, false, null, List.of()), "empty", Map.of()));
+	}
+
+	@Test
+	void fragmentsCanBeSplitAnywhere() {
+		List<DashScopeJsonEvent> expected = new DashScopeJsonStreamParser("content").feed(DOCUMENT);
+		Random random = new Random(7);
+		for (int run = 0; run < 200; run++) {
+			DashScopeJsonStreamParser parser = new DashScopeJsonStreamParser("content");
+			List<DashScopeJsonEvent> events = new ArrayList<>();
+			int start = 0;
+			while (start < DOCUMENT.length()) {
+				int end = Math.min(DOCUMENT.length(), start + 1 + random.nextInt(6));
+				events.addAll(parser.feed(DOCUMENT.substring(start, end)));
+				start = end;
+			}
+			assertThat(events).isEqualTo(expected);
+			assertThat(parser.isComplete()).isTrue();
+		}
+	}
+
+	@Test
+	void nonJsonContentFailsQuietly() {
+		DashScopeJsonStreamParser parser = new DashScopeJsonStreamParser("content");
+
+		assertThat(parser.feed("```json\n{\"a\":1}")).isEmpty();
+		assertThat(parser.feed("}")).isEmpty();
+		assertThat(parser.isFailed()).isTrue();
+		assertThat(new DashScopeJsonStreamParser("content").feed("{\"a\":1,}")).hasSize(1);
+	}
+
+	@Test
+	void contentAfterTheRootValueIsIgnored() {
+		DashScopeJsonStreamParser parser = new DashScopeJsonStreamParser("content");
+
+		assertThat(parser.feed("{\"a\":1}\n以上是")).extracting(DashScopeJsonEvent::type)
+			.containsExactly(DashScopeJsonEvent.Type.FIELD_COMPLETED, DashScopeJsonEvent.Type.DOCUMENT_COMPLETED);
+		assertThat(parser.feed("结果。")).isEmpty();
+		assertThat(parser.isComplete()).isTrue();
+		assertThat(parser.isFailed()).isFalse();
+
+		DashScopeJsonStreamParser literal = new DashScopeJsonStreamParser("content");
+		assertThat(literal.feed("true}")).hasSize(1);
+		assertThat(literal.isComplete()).isTrue();
+	}
+
+	@Test
+	void toolArgumentEventsAreTaggedWithToolCallId() {
+		DashScopeToolCallAccumulator accumulator = new DashScopeToolCallAccumulator(true);
+		accumulator.append(new DashScopeResponse.ToolCall(0, "function", "call_1",
+				new DashScopeResponse.ChatFunction("search", "{\"query\":\"杭")));
+		assertThat(accumulator.drainJsonEvents()).isEmpty();
+		accumulator.append(new DashScopeResponse.ToolCall(0, null, "", new DashScopeResponse.ChatFunction(null, "州\",")));
+
+		assertThat(accumulator.drainJsonEvents()).extracting(DashScopeJsonEvent::source, DashScopeJsonEvent::path,
+				DashScopeJsonEvent::value)
+			.containsExactly(tuple("call_1", "/query", "杭州"));
+		assertThat(accumulator.drainJsonEvents()).isEmpty();
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
+
+public class DashScopeParallelToolCallingManagerTests {
+
+	private final ExecutorService executor = BlockingExecutors.platform("tool-test-");
+
+	@AfterEach
+	void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	void toolCallsRunConcurrentlyAndKeepCallOrder() {
+		DashScopeParallelToolCallingManager manager = DashScopeParallelToolCallingManager.builder()
+			.executor(this.executor)
+			.build();
+		Prompt prompt = prompt(sleepingTool("a", 300), sleepingTool("b", 200), sleepingTool("c", 100));
+
+		long start = System.nanoTime();
+		ToolExecutionResult result = manager.executeToolCalls(prompt, toolCalls("a", "b", "c"));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertThat(elapsed).isLessThan(550);
+		assertThat(toolResponses(result))
+			.extracting(ToolResponseMessage.ToolResponse::id, ToolResponseMessage.ToolResponse::responseData)
+			.containsExactly(tuple("call-a", "\"a done\""), tuple("call-b", "\"b done\""), tuple("call-c", "\"c done\""));
+		List<Message> history = result.conversationHistory();
+		assertThat(history.get(history.size() - 2)).isInstanceOf(AssistantMessage.class);
+		assertThat(result.returnDirect()).isFalse();
+	}
+
+	@Test
+	void slowToolTimesOutWithoutFailingOthers() throws InterruptedException {
+		CountDownLatch interrupted = new CountDownLatch(1);
+		ToolCallback hanging = FunctionToolCallback.<Map<String, Object>, String>builder("hanging", input -> {
+			try {
+				Thread.sleep(10_000);
+				return "never";
+			}
+			catch (InterruptedException ex) {
+				interrupted.countDown();
+				throw new IllegalStateException(ex);
+			}
+		}).description("hanging").inputType(Map.class).build();
+		DashScopeParallelToolCallingManager manager = DashScopeParallelToolCallingManager.builder()
+			.executor(this.executor)
+			.toolTimeout("hanging", Duration.ofMillis(100))
+			.build();
+
+		ToolExecutionResult result = manager.executeToolCalls(prompt(hanging, sleepingTool("fast", 10)),
+				toolCalls("hanging", "fast"));
+
+		assertThat(toolResponses(result)).extracting(ToolResponseMessage.ToolResponse::responseData)
+			.containsExactly("Tool call 'hanging' timed out after PT0.1S", "\"fast done\"");
+		assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private static List<ToolResponseMessage.ToolResponse> toolResponses(ToolExecutionResult result) {
+		List<Message> history = result.conversationHistory();
+		return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+	}
+
+	private static Prompt prompt(ToolCallback... toolCallbacks) {
+		return new Prompt("查询", DashScopeChatOptions.builder().model("qwen-plus").toolCallbacks(toolCallbacks).build());
+	}
+
+	private static ChatResponse toolCalls(String... names) {
+		List<AssistantMessage.ToolCall> toolCalls = Arrays.stream(names)
+			.map(name -> new AssistantMessage.ToolCall("call-" + name, "function", name, "{}"))
+			.toList();
+		return new ChatResponse(List.of(new Generation(AssistantMessage.builder().toolCalls(toolCalls).build())));
+	}
+
+	private static ToolCallback sleepingTool(String name, long millis) {
+		return FunctionToolCallback.<Map<String, Object>, String>builder(name, input -> {
+			try {
+				Thread.sleep(millis);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return name + " done";
+		}).description(name).inputType(Map.class).build();
+	}
+
+}
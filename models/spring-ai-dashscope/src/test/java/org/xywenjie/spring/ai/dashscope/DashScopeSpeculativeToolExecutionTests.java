@@ -0,0 +1,139 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+public class DashScopeSpeculativeToolExecutionTests {
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger toolInvocations = new AtomicInteger();
+
+	private final AtomicLong toolStarted = new AtomicLong();
+
+	private final AtomicLong lastChunkSent = new AtomicLong();
+
+	private final CountDownLatch toolStartedLatch = new CountDownLatch(1);
+
+	/**
+	 * 发送第一个chunk后，模型继续生成的最长时间，工具开始执行后立即结束本轮
+	 */
+	private volatile long generationMillis;
+
+	private MockDashScopeServer server;
+
+	private DashScopeChatModel.Builder builder;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			try (OutputStream out = MockDashScopeServer.openEventStream(exchange)) {
+				if (this.requests.incrementAndGet() == 1) {
+					// 参数在第一个chunk中已经完整，之后模型还要生成一段时间才结束本轮
+					write(out, chunk("null", "[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\","
+							+ "\"function\":{\"name\":\"weather\",\"arguments\":\"{\\\"city\\\":\\\"杭州\\\"}\"}}]"));
+					await(this.toolStartedLatch, this.generationMillis);
+					this.lastChunkSent.set(System.nanoTime());
+					write(out, chunk("tool_calls", "[]"));
+				}
+				else {
+					write(out, "{\"output\":{\"choices\":[{\"finish_reason\":\"stop\",\"message\":{\"role\":\"assistant\","
+							+ "\"content\":\"晴\"}}]},\"request_id\":\"r2\"}");
+				}
+			}
+		});
+		FunctionToolCallback<Map<String, Object>, String> weather = FunctionToolCallback
+			.<Map<String, Object>, String>builder("weather", input -> {
+				this.toolStarted.compareAndSet(0, System.nanoTime());
+				this.toolStartedLatch.countDown();
+				this.toolInvocations.incrementAndGet();
+				return "sunny " + input.get("city");
+			})
+			.description("查询天气")
+			.inputType(Map.class)
+			.build();
+		this.builder = DashScopeChatModel.builder()
+			.dashScopeApi(DashScopeApi.builder()
+				.baseUrl(this.server.baseUrl())
+				.apiKey("test-key")
+				.build())
+			.defaultOptions(DashScopeChatOptions.builder().model("qwen-plus").toolCallbacks(weather).build());
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	void idempotentToolStartsBeforeTheRoundEnds() {
+		this.generationMillis = 5000;
+		DashScopeChatModel chatModel = this.builder.speculativeToolNames(Set.of("weather")).build();
+
+		String text = stream(chatModel);
+
+		assertThat(text).endsWith("晴");
+		assertThat(this.toolInvocations).hasValue(1);
+		assertThat(this.toolStarted.get()).isLessThan(this.lastChunkSent.get());
+	}
+
+	@Test
+	void toolsWaitForTheRoundToEndByDefault() {
+		this.generationMillis = 300;
+		DashScopeChatModel chatModel = this.builder.build();
+
+		String text = stream(chatModel);
+
+		assertThat(text).endsWith("晴");
+		assertThat(this.toolInvocations).hasValue(1);
+		assertThat(this.toolStarted.get()).isGreaterThan(this.lastChunkSent.get());
+	}
+
+	private static String stream(DashScopeChatModel chatModel) {
+		List<ChatResponse> responses = chatModel.stream(new Prompt("杭州天气")).collectList().block(Duration.ofSeconds(10));
+		return responses.stream()
+			.map(response -> response.getResult().getOutput().getText())
+			.reduce("", String::concat);
+	}
+
+	private static String chunk(String finishReason, String toolCalls) {
+		return "{\"output\":{\"choices\":[{\"finish_reason\":\"" + finishReason
+				+ "\",\"message\":{\"role\":\"assistant\",\"content\":\"\",\"tool_calls\":" + toolCalls
+				+ "}}]},\"request_id\":\"r1\"}";
+	}
+
+	private static void write(OutputStream out, String chunk) throws IOException {
+		out.write(("data:" + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	private static void await(CountDownLatch latch, long millis) {
+		try {
+			latch.await(millis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
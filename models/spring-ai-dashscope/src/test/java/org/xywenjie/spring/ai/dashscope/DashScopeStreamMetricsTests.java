@@ -0,0 +1,123 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DashScopeStreamMetricsTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private MockDashScopeServer server;
+
+	private DashScopeChatModel chatModel;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			try (OutputStream out = MockDashScopeServer.openEventStream(exchange)) {
+				// 第一个chunk只有角色，不算作第一个Token
+				write(out, chunk("", "null", ""));
+				sleep(200);
+				write(out, chunk("你", "null", ""));
+				sleep(100);
+				write(out, chunk("好", "stop", ",\"usage\":{\"input_tokens\":5,\"output_tokens\":20,\"total_tokens\":25}"));
+			}
+		});
+		// 预热一次，避免首次解析响应的类加载把chunk之间的间隔压缩掉
+		chatModel(new SimpleMeterRegistry()).stream(new Prompt("预热")).blockLast(Duration.ofSeconds(10));
+		this.chatModel = chatModel(this.meterRegistry);
+	}
+
+	private DashScopeChatModel chatModel(SimpleMeterRegistry registry) {
+		return DashScopeChatModel.builder()
+			.dashScopeApi(DashScopeApi.builder()
+				.baseUrl(this.server.baseUrl())
+				.apiKey("test-key")
+				.build())
+			.defaultOptions(DashScopeChatOptions.builder().model("qwen-plus").build())
+			.meterRegistry(registry)
+			.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	void streamLatencyIsRecordedPerModelAndThinking() {
+		List<ChatResponse> responses = this.chatModel.stream(new Prompt("你好")).collectList().block(Duration.ofSeconds(10));
+
+		assertThat(responses).isNotEmpty();
+		Timer firstToken = timer("dashscope.chat.stream.first.token", "false");
+		assertThat(firstToken.count()).isEqualTo(1);
+		assertThat(firstToken.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(150);
+		Timer gap = timer("dashscope.chat.stream.chunk.gap", "false");
+		assertThat(gap.count()).isEqualTo(2);
+		assertThat(gap.max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(150);
+		Timer duration = timer("dashscope.chat.stream.duration", "false");
+		assertThat(duration.count()).isEqualTo(1);
+		assertThat(duration.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(250);
+		DistributionSummary tokensPerSecond = this.meterRegistry.get("dashscope.chat.stream.tokens.per.second")
+			.tag("model", "qwen-plus")
+			.tag("thinking", "false")
+			.summary();
+		assertThat(tokensPerSecond.count()).isEqualTo(1);
+		// 20个Token在第一个Token之后约100ms内生成，客户端收到chunk的时间有抖动
+		assertThat(tokensPerSecond.max()).isGreaterThan(0).isLessThan(400);
+	}
+
+	@Test
+	void thinkingRequestsAreTaggedSeparately() {
+		this.chatModel
+			.stream(new Prompt("你好", DashScopeChatOptions.builder().model("qwen-plus").enableThinking().build()))
+			.blockLast(Duration.ofSeconds(10));
+
+		assertThat(timer("dashscope.chat.stream.first.token", "true").count()).isEqualTo(1);
+		assertThat(this.meterRegistry.find("dashscope.chat.stream.first.token").tag("thinking", "false").timer())
+			.isNull();
+	}
+
+	private Timer timer(String name, String thinking) {
+		return this.meterRegistry.get(name).tag("model", "qwen-plus").tag("thinking", thinking).timer();
+	}
+
+	private static String chunk(String content, String finishReason, String usage) {
+		return "{\"output\":{\"choices\":[{\"finish_reason\":\"" + finishReason
+				+ "\",\"message\":{\"role\":\"assistant\",\"content\":\"" + content + "\"}}]}" + usage
+				+ ",\"request_id\":\"stream\"}";
+	}
+
+	private static void write(OutputStream out, String chunk) throws IOException {
+		out.write(("data:" + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
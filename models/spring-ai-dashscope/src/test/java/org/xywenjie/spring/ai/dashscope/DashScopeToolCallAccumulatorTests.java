@@ -0,0 +1,163 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+public class DashScopeToolCallAccumulatorTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeToolCallAccumulatorTests.class);
+
+	private static final int CHUNK_COUNT = 2000;
+
+	@Test
+	void replayRecordedStream() {
+		String weatherArguments = arguments("Hangzhou", 1000);
+		String timeArguments = arguments("Beijing", 1000);
+		List<DashScopeResponse.ToolCall> chunks = new ArrayList<>();
+		chunks.addAll(split(0, "call_weather", "getWeather", weatherArguments, CHUNK_COUNT / 2));
+		chunks.addAll(split(1, "call_time", "getTime", timeArguments, CHUNK_COUNT / 2));
+		assertThat(chunks).hasSize(CHUNK_COUNT);
+
+		DashScopeToolCallAccumulator accumulator = new DashScopeToolCallAccumulator();
+		for (DashScopeResponse.ToolCall chunk : chunks) {
+			accumulator.appendAll(List.of(chunk));
+		}
+
+		List<DashScopeResponse.ToolCall> toolCalls = accumulator.build();
+		assertThat(toolCalls).hasSize(2);
+		assertThat(toolCalls.get(0).getId()).isEqualTo("call_weather");
+		assertThat(toolCalls.get(0).getType()).isEqualTo("function");
+		assertThat(toolCalls.get(0).getFunction().getName()).isEqualTo("getWeather");
+		assertThat(toolCalls.get(0).getFunction().getArguments()).isEqualTo(weatherArguments);
+		assertThat(toolCalls.get(1).getId()).isEqualTo("call_time");
+		assertThat(toolCalls.get(1).getFunction().getName()).isEqualTo("getTime");
+		assertThat(toolCalls.get(1).getFunction().getArguments()).isEqualTo(timeArguments);
+	}
+
+	@Test
+	void interleavedFragmentsAreOrderedByIndex() {
+		DashScopeToolCallAccumulator accumulator = new DashScopeToolCallAccumulator();
+		accumulator.append(new DashScopeResponse.ToolCall(1, "function", "b", new DashScopeResponse.ChatFunction("second", "{\"a\"")));
+		accumulator.append(new DashScopeResponse.ToolCall(0, "function", "a", new DashScopeResponse.ChatFunction("first", "{")));
+		accumulator.append(new DashScopeResponse.ToolCall(1, null, "", new DashScopeResponse.ChatFunction(null, ":1}")));
+		accumulator.append(new DashScopeResponse.ToolCall(0, null, "", new DashScopeResponse.ChatFunction("", "}")));
+
+		List<DashScopeResponse.ToolCall> toolCalls = accumulator.build();
+		assertThat(toolCalls).extracting(DashScopeResponse.ToolCall::getId).containsExactly("a", "b");
+		assertThat(toolCalls.get(0).getFunction().getArguments()).isEqualTo("{}");
+		assertThat(toolCalls.get(1).getFunction().getArguments()).isEqualTo("{\"a\":1}");
+	}
+
+	@Test
+	void argumentsAreDrainedOnceWhenJsonIsComplete() {
+		DashScopeToolCallAccumulator accumulator = new DashScopeToolCallAccumulator();
+		accumulator.append(new DashScopeResponse.ToolCall(0, "function", "a", new DashScopeResponse.ChatFunction("search", "{\"q\":\"}{\\\"")));
+		assertThat(accumulator.drainCompleted()).isEmpty();
+		accumulator.append(new DashScopeResponse.ToolCall(1, "function", "b", new DashScopeResponse.ChatFunction("time", "{}")));
+		accumulator.append(new DashScopeResponse.ToolCall(0, null, "", new DashScopeResponse.ChatFunction(null, "\",\"n\":[1,2]")));
+		assertThat(accumulator.drainCompleted()).extracting(DashScopeResponse.ToolCall::getId).containsExactly("b");
+
+		accumulator.append(new DashScopeResponse.ToolCall(0, null, "", new DashScopeResponse.ChatFunction(null, "}")));
+		List<DashScopeResponse.ToolCall> completed = accumulator.drainCompleted();
+		assertThat(completed).extracting(DashScopeResponse.ToolCall::getId).containsExactly("a");
+		assertThat(completed.get(0).getFunction().getArguments()).isEqualTo("{\"q\":\"}{\\\"\",\"n\":[1,2]}");
+		assertThat(accumulator.drainCompleted()).isEmpty();
+	}
+
+	/**
+	 * 对比原来{@code toolCallMap.compute}加String拼接的合并方式和{@link DashScopeToolCallAccumulator}的耗时与堆分配
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void mergeCostComparedToStringConcatenation() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		for (int chunkCount : new int[] { 500, 2000, 8000 }) {
+			String arguments = arguments("Hangzhou", chunkCount);
+			List<DashScopeResponse.ToolCall> chunks = split(0, "call_weather", "getWeather", arguments, chunkCount);
+			int iterations = 50;
+			long[] nanos = new long[2];
+			long[] bytes = new long[2];
+			// 前几轮用于预热
+			for (int round = 0; round < 5; round++) {
+				long startTime = System.nanoTime();
+				long start = threads.getCurrentThreadAllocatedBytes();
+				for (int i = 0; i < iterations; i++) {
+					assertThat(concatenate(chunks).get(0).getFunction().getArguments()).hasSize(arguments.length());
+				}
+				long middleTime = System.nanoTime();
+				long middle = threads.getCurrentThreadAllocatedBytes();
+				for (int i = 0; i < iterations; i++) {
+					DashScopeToolCallAccumulator accumulator = new DashScopeToolCallAccumulator();
+					for (DashScopeResponse.ToolCall chunk : chunks) {
+						accumulator.appendAll(List.of(chunk));
+					}
+					assertThat(accumulator.build().get(0).getFunction().getArguments()).hasSize(arguments.length());
+				}
+				long endTime = System.nanoTime();
+				long end = threads.getCurrentThreadAllocatedBytes();
+				nanos[0] = (middleTime - startTime) / iterations;
+				nanos[1] = (endTime - middleTime) / iterations;
+				bytes[0] = (middle - start) / iterations;
+				bytes[1] = (end - middle) / iterations;
+			}
+			logger.info("{} chunks, {} chars: compute + concat {} us {} B, accumulator {} us {} B", chunkCount,
+					arguments.length(), nanos[0] / 1000, bytes[0], nanos[1] / 1000, bytes[1]);
+			assertThat(bytes[1]).isLessThan(bytes[0]);
+		}
+	}
+
+	/**
+	 * 原来的合并方式，首个分片的function复制一份，避免多轮重放时改写录制的分片
+	 */
+	private static List<DashScopeResponse.ToolCall> concatenate(List<DashScopeResponse.ToolCall> chunks) {
+		Map<Integer, DashScopeResponse.ToolCall> toolCallMap = new HashMap<>();
+		for (DashScopeResponse.ToolCall toolCall : chunks) {
+			toolCallMap.compute(toolCall.getIndex(), (key, existing) -> {
+				if (existing == null) {
+					var function = new DashScopeResponse.ChatFunction(toolCall.getFunction().getName(),
+							toolCall.getFunction().getArguments());
+					return new DashScopeResponse.ToolCall(toolCall.getIndex(), toolCall.getType(), toolCall.getId(), function);
+				}
+				if (StringUtils.hasText(toolCall.getFunction().getArguments())) {
+					existing.getFunction().setArguments(existing.getFunction().getArguments() + toolCall.getFunction().getArguments());
+				}
+				return existing;
+			});
+		}
+		return toolCallMap.values().stream().toList();
+	}
+
+	private static String arguments(String city, int days) {
+		StringBuilder builder = new StringBuilder("{\"city\":\"").append(city).append("\",\"days\":[");
+		for (int i = 0; i < days; i++) {
+			builder.append(i == 0 ? "" : ",").append(i);
+		}
+		return builder.append("]}").toString();
+	}
+
+	private static List<DashScopeResponse.ToolCall> split(int index, String id, String name, String arguments, int parts) {
+		List<DashScopeResponse.ToolCall> chunks = new ArrayList<>(parts);
+		int step = (int) Math.ceil((double) arguments.length() / parts);
+		for (int i = 0; i < parts; i++) {
+			int start = Math.min(i * step, arguments.length());
+			int end = Math.min(start + step, arguments.length());
+			boolean first = i == 0;
+			var function = new DashScopeResponse.ChatFunction(first ? name : null, arguments.substring(start, end));
+			chunks.add(new DashScopeResponse.ToolCall(index, first ? "function" : null, first ? id : "", function));
+		}
+		return chunks;
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class DashScopeToolLoopTests {
+
+	private static final int ROUNDS = 60;
+
+	private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+	private final List<Integer> stackDepths = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private volatile int toolRounds = ROUNDS;
+
+	private MockDashScopeServer server;
+
+	private DashScopeChatModel.Builder builder;
+
+	@BeforeEach
+	void setUp() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			this.bodies.add(MockDashScopeServer.readBody(exchange));
+			int request = this.requests.incrementAndGet();
+			MockDashScopeServer.respondChunk(exchange, request <= this.toolRounds ? toolCallChunk(request) : textChunk("done"));
+		});
+		FunctionToolCallback<Map<String, Object>, String> counter = FunctionToolCallback
+			.<Map<String, Object>, String>builder("counter", input -> {
+				this.stackDepths.add(Thread.currentThread().getStackTrace().length);
+				return "ok";
+			})
+			.description("计数")
+			.inputType(Map.class)
+			.build();
+		this.builder = DashScopeChatModel.builder()
+			.dashScopeApi(DashScopeApi.builder()
+				.baseUrl(this.server.baseUrl())
+				.apiKey("test-key")
+				.build())
+			.defaultOptions(DashScopeChatOptions.builder().model("qwen-plus").toolCallbacks(counter).build())
+			.meterRegistry(this.meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	void callRunsManyRoundsInConstantStackDepthWithTrimmedHistory() throws IOException {
+		DashScopeChatModel chatModel = this.builder.toolHistoryRounds(2).build();
+
+		ChatResponse response = chatModel.call(new Prompt("开始"));
+
+		assertThat(response.getResult().getOutput().getText()).isEqualTo("done");
+		assertThat(this.stackDepths).hasSize(ROUNDS).allMatch(depth -> depth.equals(this.stackDepths.get(0)));
+		// 初始的用户消息加上最近两轮的工具调用和工具结果
+		assertThat(new ObjectMapper().readTree(this.bodies.get(ROUNDS)).at("/input/messages").size()).isEqualTo(5);
+		assertThat(this.meterRegistry.get("dashscope.chat.tool.round").tag("model", "qwen-plus").timer().count())
+			.isEqualTo(ROUNDS);
+		assertThat(this.meterRegistry.get("dashscope.chat.tool.rounds").summary().totalAmount()).isEqualTo(ROUNDS);
+	}
+
+	@Test
+	void streamRunsManyRoundsInConstantStackDepth() {
+		DashScopeChatModel chatModel = this.builder.build();
+
+		List<ChatResponse> responses = chatModel.stream(new Prompt("开始")).collectList().block(Duration.ofSeconds(30));
+
+		assertThat(responses).isNotEmpty();
+		assertThat(responses.get(responses.size() - 1).getResult().getOutput().getText()).isEqualTo("done");
+		assertThat(this.stackDepths).hasSize(ROUNDS).allMatch(depth -> depth.equals(this.stackDepths.get(0)));
+		assertThat(this.bodies).hasSize(ROUNDS + 1);
+		assertThat(this.meterRegistry.get("dashscope.chat.tool.round").timer().count()).isEqualTo(ROUNDS);
+	}
+
+	@Test
+	void exceedingMaxToolRoundsFails() {
+		this.toolRounds = Integer.MAX_VALUE;
+		DashScopeChatModel chatModel = this.builder.maxToolRounds(3).build();
+
+		assertThatIllegalStateException().isThrownBy(() -> chatModel.call(new Prompt("开始")))
+			.withMessageContaining("maximum of 3 rounds");
+		assertThat(this.bodies).hasSize(4);
+	}
+
+	private static String toolCallChunk(int round) {
+		return "{\"output\":{\"choices\":[{\"finish_reason\":\"tool_calls\",\"message\":{\"role\":\"assistant\","
+				+ "\"content\":\"\",\"tool_calls\":[{\"index\":0,\"id\":\"call_" + round
+				+ "\",\"type\":\"function\",\"function\":{\"name\":\"counter\",\"arguments\":\"{}\"}}]}}]},"
+				+ "\"usage\":{\"input_tokens\":10,\"output_tokens\":1,\"total_tokens\":11},\"request_id\":\"r" + round
+				+ "\"}";
+	}
+
+	private static String textChunk(String content) {
+		return "{\"output\":{\"choices\":[{\"finish_reason\":\"stop\",\"message\":{\"role\":\"assistant\","
+				+ "\"content\":\"" + content + "\"}}]},"
+				+ "\"usage\":{\"input_tokens\":10,\"output_tokens\":1,\"total_tokens\":11},\"request_id\":\"done\"}";
+	}
+
+}
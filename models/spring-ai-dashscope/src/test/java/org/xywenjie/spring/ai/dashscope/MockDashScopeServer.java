@@ -0,0 +1,159 @@
+package org.xywenjie.spring.ai.dashscope;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 测试用的本地DashScope服务端，基于JDK自带的{@link HttpServer}，监听localhost上的随机端口。
+ * <p>
+ * 处理器中用{@link #respondJson}、{@link #respondSse}、{@link #respondChunk}返回DashScope风格的JSON或SSE响应，
+ * 需要在chunk之间等待时用{@link #openEventStream}边写边发送。
+ */
+public final class MockDashScopeServer implements AutoCloseable {
+
+	private final HttpServer server;
+
+	private MockDashScopeServer(HttpServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * 所有路径都交给同一个处理器
+	 */
+	public static MockDashScopeServer start(HttpHandler handler) {
+		return builder().context("/", handler).start();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return 形如 {@code http://localhost:port} 的地址
+	 */
+	public String baseUrl() {
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+	}
+
+	/**
+	 * 请求头 {@code X-DashScope-SSE: enable} 表示流式调用
+	 */
+	public static boolean isSse(HttpExchange exchange) {
+		return "enable".equals(exchange.getRequestHeaders().getFirst("X-DashScope-SSE"));
+	}
+
+	public static String readBody(HttpExchange exchange) throws IOException {
+		return new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	public static void respondJson(HttpExchange exchange, String body) throws IOException {
+		respond(exchange, 200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 每个数据作为一个 {@code data:} 事件一次性返回
+	 */
+	public static void respondSse(HttpExchange exchange, String... data) throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (String item : data) {
+			body.append("data:").append(item).append("\n\n");
+		}
+		respond(exchange, 200, "text/event-stream", body.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 流式调用时把响应作为一个SSE事件返回，否则作为JSON返回
+	 */
+	public static void respondChunk(HttpExchange exchange, String chunk) throws IOException {
+		if (isSse(exchange)) {
+			respondSse(exchange, chunk);
+		}
+		else {
+			respondJson(exchange, chunk);
+		}
+	}
+
+	/**
+	 * @param body 响应体，为null时没有响应体
+	 */
+	public static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		if (contentType != null) {
+			exchange.getResponseHeaders().add("Content-Type", contentType);
+		}
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * 以分块编码开始SSE响应，调用方写完后关闭返回的输出流
+	 */
+	public static OutputStream openEventStream(HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+		exchange.sendResponseHeaders(200, 0);
+		return exchange.getResponseBody();
+	}
+
+	public static final class Builder {
+
+		private final Map<String, HttpHandler> contexts = new LinkedHashMap<>();
+
+		private Executor executor;
+
+		private int backlog;
+
+		public Builder context(String path, HttpHandler handler) {
+			this.contexts.put(path, handler);
+			return this;
+		}
+
+		/**
+		 * 处理请求的线程池，默认由单个线程依次处理
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public Builder backlog(int backlog) {
+			this.backlog = backlog;
+			return this;
+		}
+
+		public MockDashScopeServer start() {
+			try {
+				HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), this.backlog);
+				this.contexts.forEach(server::createContext);
+				server.setExecutor(this.executor);
+				server.start();
+				return new MockDashScopeServer(server);
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+	}
+
+}
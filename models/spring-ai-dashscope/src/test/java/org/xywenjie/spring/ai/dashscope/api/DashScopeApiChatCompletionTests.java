@@ -0,0 +1,117 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+public class DashScopeApiChatCompletionTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeApiChatCompletionTests.class);
+
+	private static final DashScopeRequest REQUEST = DashScopeRequest.builder().model("qwen-plus").prompt("你好").build();
+
+	private final AtomicReference<byte[]> responseBody = new AtomicReference<>();
+
+	private MockDashScopeServer server;
+
+	@AfterEach
+	void tearDown() {
+		if (this.server != null) {
+			this.server.close();
+		}
+	}
+
+	@Test
+	void responseIsDecodedAndHeadersAreKeptWithAndWithoutBodyLogging() {
+		startServer();
+		this.responseBody.set(response("ok").getBytes(StandardCharsets.UTF_8));
+
+		for (double sampleRate : new double[] { 0.0, 1.0 }) {
+			ResponseEntity<DashScopeResponse> entity = chatApi(sampleRate).chatCompletionEntity(REQUEST);
+
+			assertThat(entity.getBody().getOutput().getText()).isEqualTo("ok");
+			assertThat(entity.getBody().getRequestId()).isEqualTo("chat");
+			assertThat(entity.getHeaders().getFirst("X-Request-Id")).isEqualTo("chat");
+		}
+	}
+
+	/**
+	 * 对比每次调用在调用线程上的堆分配：原来先把响应读成String再解析（即现在采样记录响应体时走的路径），
+	 * 现在直接从响应字节流反序列化。采样路径的日志事件没有appender消费，只保留序列化和解析的开销
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void allocationPerCall() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		startServer();
+		ch.qos.logback.classic.Logger apiLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(DashScopeApi.class);
+		ch.qos.logback.classic.Level level = apiLogger.getLevel();
+		boolean additive = apiLogger.isAdditive();
+		apiLogger.setLevel(ch.qos.logback.classic.Level.INFO);
+		apiLogger.setAdditive(false);
+		try {
+			DashScopeApi buffered = chatApi(1.0);
+			DashScopeApi streamed = chatApi(0.0);
+			int calls = 20;
+			for (int size : new int[] { 1024, 16 * 1024, 256 * 1024, 1024 * 1024 }) {
+				this.responseBody.set(response("字".repeat(size / 3)).getBytes(StandardCharsets.UTF_8));
+				long[] bytes = new long[2];
+				// 前几轮用于预热
+				for (int round = 0; round < 5; round++) {
+					long start = threads.getCurrentThreadAllocatedBytes();
+					for (int i = 0; i < calls; i++) {
+						buffered.chatCompletionEntity(REQUEST);
+					}
+					long middle = threads.getCurrentThreadAllocatedBytes();
+					for (int i = 0; i < calls; i++) {
+						streamed.chatCompletionEntity(REQUEST);
+					}
+					long end = threads.getCurrentThreadAllocatedBytes();
+					bytes[0] = (middle - start) / calls;
+					bytes[1] = (end - middle) / calls;
+				}
+				logger.info("response {} KB: String + jsonToObject {} B/call, toEntity {} B/call", size / 1024, bytes[0],
+						bytes[1]);
+				assertThat(bytes[1]).isLessThan(bytes[0]);
+			}
+		}
+		finally {
+			apiLogger.setLevel(level);
+			apiLogger.setAdditive(additive);
+		}
+	}
+
+	private void startServer() {
+		this.server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			exchange.getResponseHeaders().add("X-Request-Id", "chat");
+			MockDashScopeServer.respond(exchange, 200, "application/json", this.responseBody.get());
+		});
+	}
+
+	private DashScopeApi chatApi(double bodyLogSampleRate) {
+		return DashScopeApi.builder()
+			.baseUrl(this.server.baseUrl())
+			.apiKey("test-key")
+			.bodyLogSampleRate(bodyLogSampleRate)
+			.build();
+	}
+
+	private static String response(String text) {
+		return "{\"output\":{\"text\":\"" + text + "\",\"finish_reason\":\"stop\"},"
+				+ "\"usage\":{\"input_tokens\":1,\"output_tokens\":1,\"total_tokens\":2},\"request_id\":\"chat\"}";
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+public class DashScopeAudioStreamDecoderTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeAudioStreamDecoderTests.class);
+
+	private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+	@Test
+	void audioIsDecodedAcrossBufferBoundaries() {
+		Random random = new Random(3);
+		List<byte[]> audio = new ArrayList<>();
+		StringBuilder body = new StringBuilder();
+		for (int size : new int[] { 1, 2, 3, 4, 3071, 3072, 3073, 20_000 }) {
+			byte[] chunk = new byte[size];
+			random.nextBytes(chunk);
+			audio.add(chunk);
+			body.append(chunk(chunk));
+		}
+		// 其他对象中的data字段和结束分片都不是音频
+		body.append("{\"output\":{\"data\":\"AAAA\",\"audio\":{\"id\":\"audio\",\"expires_at\":1},\"finish_reason\":\"stop\"}}");
+
+		List<byte[]> decoded = decode(split(body.toString().getBytes(StandardCharsets.UTF_8), 7), this.bufferFactory);
+
+		assertThat(decoded).containsExactlyElementsOf(audio);
+	}
+
+	@Test
+	void illegalBase64FailsTheStream() {
+		Flux<DataBuffer> body = Flux.just(this.bufferFactory
+			.wrap("{\"output\":{\"audio\":{\"data\":\"AA*A\"}}}".getBytes(StandardCharsets.UTF_8)));
+
+		assertThatThrownBy(() -> DashScopeAudioStreamDecoder.decode(body, this.bufferFactory).blockLast(Duration.ofSeconds(5)))
+			.isInstanceOf(DecodingException.class)
+			.hasMessageContaining("Illegal base64 character");
+	}
+
+	@Test
+	void truncatedStreamFails() {
+		Flux<DataBuffer> body = Flux.just(this.bufferFactory
+			.wrap("{\"output\":{\"audio\":{\"id\":\"a\"".getBytes(StandardCharsets.UTF_8)));
+
+		assertThatThrownBy(() -> DashScopeAudioStreamDecoder.decode(body, this.bufferFactory).blockLast(Duration.ofSeconds(5)))
+			.isInstanceOf(DecodingException.class);
+	}
+
+	/**
+	 * 对比每个音频分片的堆分配：原来由Jackson把响应流逐个反序列化为{@link DashScopeResponse}再base64解码字符串，
+	 * 现在直接解码到池化缓冲区再复制为Speech需要的byte[]
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void allocationPerAudioChunk() throws IOException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		ObjectReader responseReader = new ObjectMapper().readerFor(DashScopeResponse.class);
+		DataBufferFactory pooled = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+		int chunks = 200;
+		for (int audioSize : new int[] { 4 * 1024, 16 * 1024, 64 * 1024 }) {
+			byte[] audio = new byte[audioSize];
+			new Random(5).nextBytes(audio);
+			byte[] body = chunk(audio).repeat(chunks).getBytes(StandardCharsets.UTF_8);
+			List<byte[]> slices = split(body, 8 * 1024);
+			long[] bytes = new long[2];
+			for (int round = 0; round < 5; round++) {
+				long start = threads.getCurrentThreadAllocatedBytes();
+				long total = 0;
+				try (MappingIterator<DashScopeResponse> responses = responseReader
+					.readValues(new SequenceInputStream(Collections.enumeration(slices.stream()
+						.map(slice -> (InputStream) new ByteArrayInputStream(slice))
+						.toList())))) {
+					while (responses.hasNext()) {
+						Base64.getDecoder().decode(responses.next().getOutput().getAudio().getData());
+						total++;
+					}
+				}
+				long middle = threads.getCurrentThreadAllocatedBytes();
+				long streamed = DashScopeAudioStreamDecoder.decode(wrap(slices), pooled).map(buffer -> {
+					byte[] copy = new byte[buffer.readableByteCount()];
+					buffer.read(copy);
+					DataBufferUtils.release(buffer);
+					return copy;
+				}).count().block();
+				long end = threads.getCurrentThreadAllocatedBytes();
+				assertThat(total).isEqualTo(chunks);
+				assertThat(streamed).isEqualTo(chunks);
+				// 前几轮用于预热
+				bytes[0] = (middle - start) / chunks;
+				bytes[1] = (end - middle) / chunks;
+			}
+			logger.info("audio {} KB per chunk: readValues + Base64 {} B/chunk, streaming decoder {} B/chunk",
+					audioSize / 1024, bytes[0], bytes[1]);
+			assertThat(bytes[1]).isLessThan(bytes[0]);
+		}
+	}
+
+	private static String chunk(byte[] audio) {
+		return "{\"output\":{\"audio\":{\"data\":\"" + Base64.getEncoder().encodeToString(audio)
+				+ "\",\"id\":\"audio\"},\"finish_reason\":\"null\"},\"request_id\":\"tts\"}";
+	}
+
+	private static List<byte[]> split(byte[] body, int size) {
+		List<byte[]> slices = new ArrayList<>();
+		for (int i = 0; i < body.length; i += size) {
+			slices.add(Arrays.copyOfRange(body, i, Math.min(body.length, i + size)));
+		}
+		return slices;
+	}
+
+	private static Flux<DataBuffer> wrap(List<byte[]> slices) {
+		return Flux.fromIterable(slices).map(DefaultDataBufferFactory.sharedInstance::wrap);
+	}
+
+	private static List<byte[]> decode(List<byte[]> slices, DataBufferFactory bufferFactory) {
+		return DashScopeAudioStreamDecoder.decode(wrap(slices), bufferFactory).map(buffer -> {
+			byte[] bytes = new byte[buffer.readableByteCount()];
+			buffer.read(bytes);
+			DataBufferUtils.release(buffer);
+			return bytes;
+		}).collectList().block(Duration.ofSeconds(5));
+	}
+
+}
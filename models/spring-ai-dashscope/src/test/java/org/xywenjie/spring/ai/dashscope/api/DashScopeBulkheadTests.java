@@ -0,0 +1,199 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeBulkhead.BulkheadFullException;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeBulkhead.RejectionPolicy;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+public class DashScopeBulkheadTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void queuedCallRunsWhenPermitIsReleased() throws Exception {
+		DashScopeBulkhead bulkhead = new DashScopeBulkhead("qwen-max", 1, 1, RejectionPolicy.ABORT, this.meterRegistry);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> first = executor.submit(() -> bulkhead.execute(() -> {
+				running.countDown();
+				await(finish);
+				return "first";
+			}));
+			assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<String> second = executor.submit(() -> bulkhead.execute(() -> "second"));
+			waitUntilQueued(bulkhead, 1);
+
+			assertThatThrownBy(() -> bulkhead.execute(() -> "third")).isInstanceOf(BulkheadFullException.class);
+
+			finish.countDown();
+			assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("first");
+			assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+			assertThat(bulkhead.getActiveCalls()).isZero();
+			assertThat(this.meterRegistry.get("dashscope.bulkhead.rejected").tag("outcome", "rejected").counter().count())
+				.isEqualTo(1);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void discardOldestRejectsLongestWaiter() {
+		DashScopeBulkhead bulkhead = new DashScopeBulkhead("qwen-plus", 1, 1, RejectionPolicy.DISCARD_OLDEST,
+				this.meterRegistry);
+		CompletableFuture<Boolean> active = bulkhead.acquire();
+		CompletableFuture<Boolean> oldest = bulkhead.acquire();
+		CompletableFuture<Boolean> newest = bulkhead.acquire();
+
+		assertThat(oldest).isCompletedExceptionally();
+		assertThat(newest).isNotDone();
+
+		bulkhead.release(active);
+		assertThat(newest).isCompletedWithValue(true);
+		bulkhead.release(newest);
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	@Test
+	void bypassRunsWithoutPermit() {
+		DashScopeBulkhead bulkhead = new DashScopeBulkhead("qwen-turbo", 1, 0, RejectionPolicy.BYPASS,
+				this.meterRegistry);
+		CompletableFuture<Boolean> active = bulkhead.acquire();
+
+		assertThat(bulkhead.execute(() -> "bypassed")).isEqualTo("bypassed");
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(1);
+
+		bulkhead.release(active);
+		assertThat(bulkhead.getActiveCalls()).isZero();
+	}
+
+	@Test
+	void streamHoldsPermitUntilCancelled() {
+		DashScopeBulkhead bulkhead = new DashScopeBulkhead("qwen-max", 1, 1, RejectionPolicy.ABORT, this.meterRegistry);
+		Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+		Disposable first = bulkhead.executeFlux(sink::asFlux).subscribe();
+		Disposable queued = bulkhead.executeFlux(() -> Flux.just("queued")).subscribe();
+
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(1);
+		assertThat(bulkhead.getQueuedCalls()).isEqualTo(1);
+
+		// 排队中的流取消后不再占用队列
+		queued.dispose();
+		assertThat(bulkhead.getQueuedCalls()).isZero();
+
+		first.dispose();
+		assertThat(bulkhead.getActiveCalls()).isZero();
+		assertThat(bulkhead.executeFlux(() -> Flux.just("next")).collectList().block(Duration.ofSeconds(5)))
+			.containsExactly("next");
+	}
+
+	@Test
+	void saturatedModelDoesNotBlockOtherModels() {
+		DashScopeBulkheads bulkheads = DashScopeBulkheads.builder()
+			.bulkhead("qwen-max*", 1, 0, RejectionPolicy.ABORT)
+			.bulkhead("qwen-turbo", 1, 0, RejectionPolicy.ABORT)
+			.meterRegistry(this.meterRegistry)
+			.build();
+		DashScopeBulkhead max = bulkheads.forModel("qwen-max");
+
+		assertThat(bulkheads.forModel("qwen-max-latest")).isSameAs(max);
+		assertThat(bulkheads.forModel("qwen-plus")).isNull();
+
+		CompletableFuture<Boolean> permit = max.acquire();
+		assertThatThrownBy(() -> max.execute(() -> "max")).isInstanceOf(BulkheadFullException.class);
+		assertThat(bulkheads.forModel("qwen-turbo").execute(() -> "turbo")).isEqualTo("turbo");
+		max.release(permit);
+	}
+
+	@Test
+	void audioCallsHoldTheModelBulkhead() throws InterruptedException {
+		CountDownLatch respond = new CountDownLatch(1);
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			await(respond);
+			MockDashScopeServer.respondJson(exchange, "{\"output\":{\"audio\":{\"data\":\"AQID\"}}}");
+		});
+		DashScopeBulkheads bulkheads = DashScopeBulkheads.builder()
+			.bulkhead("qwen3-tts-flash", 1, 0, RejectionPolicy.ABORT)
+			.meterRegistry(this.meterRegistry)
+			.build();
+		try (DashScopeAudioApi audioApi = DashScopeAudioApi.builder()
+			.baseUrl(server.baseUrl())
+			.apiKey(new SimpleApiKey("test-key"))
+			.bulkheads(bulkheads)
+			.build()) {
+			DashScopeRequest request = DashScopeRequest.builder().model("qwen3-tts-flash").build();
+			CompletableFuture<List<byte[]>> stream = audioApi.streamAudio(request).map(entity -> {
+				DataBuffer buffer = entity.getBody();
+				byte[] bytes = new byte[buffer.readableByteCount()];
+				buffer.read(bytes);
+				DataBufferUtils.release(buffer);
+				return bytes;
+			}).collectList().toFuture();
+
+			assertThat(bulkheads.forModel("qwen3-tts-flash").getActiveCalls()).isEqualTo(1);
+			assertThatThrownBy(() -> audioApi.createSpeech(request)).isInstanceOf(BulkheadFullException.class);
+			assertThatThrownBy(() -> audioApi.stream(request).blockLast(Duration.ofSeconds(5)))
+				.isInstanceOf(BulkheadFullException.class);
+
+			respond.countDown();
+			assertThat(stream).succeedsWithin(Duration.ofSeconds(10))
+				.satisfies(chunks -> assertThat(chunks).singleElement().isEqualTo(new byte[] { 1, 2, 3 }));
+			// 许可在doFinally中释放，可能晚于下游收到完成信号
+			waitUntilActive(bulkheads.forModel("qwen3-tts-flash"), 0);
+			assertThat(audioApi.createSpeech(request).getStatusCode().is2xxSuccessful()).isTrue();
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	private static void waitUntilQueued(DashScopeBulkhead bulkhead, int queued) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (bulkhead.getQueuedCalls() < queued && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(bulkhead.getQueuedCalls()).isEqualTo(queued);
+	}
+
+	private static void waitUntilActive(DashScopeBulkhead bulkhead, int active) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (bulkhead.getActiveCalls() != active && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(bulkhead.getActiveCalls()).isEqualTo(active);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.http.HttpHeaders;
+import org.xywenjie.spring.ai.dashscope.metadata.DashScopeResponseHeaderExtractor;
+import org.xywenjie.spring.ai.dashscope.metadata.QwenRateLimit;
+
+public class DashScopeRateLimiterTests {
+
+	@Test
+	void rateLimitHeadersAreParsed() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("x-ratelimit-limit-requests", "600");
+		headers.add("x-ratelimit-remaining-requests", "599");
+		headers.add("x-ratelimit-reset-requests", "100ms");
+		headers.add("x-ratelimit-limit-tokens", "1000000");
+		headers.add("x-ratelimit-remaining-tokens", "998000");
+		headers.add("x-ratelimit-reset-tokens", "1m30.5s");
+
+		RateLimit rateLimit = DashScopeResponseHeaderExtractor.extractAiResponseHeaders(headers);
+
+		assertThat(rateLimit).isInstanceOf(QwenRateLimit.class);
+		assertThat(rateLimit.getRequestsLimit()).isEqualTo(600L);
+		assertThat(rateLimit.getRequestsRemaining()).isEqualTo(599L);
+		assertThat(rateLimit.getRequestsReset()).isEqualTo(Duration.ofMillis(100));
+		assertThat(rateLimit.getTokensLimit()).isEqualTo(1_000_000L);
+		assertThat(rateLimit.getTokensRemaining()).isEqualTo(998_000L);
+		assertThat(rateLimit.getTokensReset()).isEqualTo(Duration.ofMillis(90_500));
+	}
+
+	@Test
+	void missingHeadersReturnEmptyRateLimit() {
+		RateLimit rateLimit = DashScopeResponseHeaderExtractor.extractAiResponseHeaders(new HttpHeaders());
+
+		assertThat(rateLimit.getRequestsLimit()).isNull();
+	}
+
+	@Test
+	void requestsArePacedPerApiKey() {
+		DashScopeRateLimiter rateLimiter = new DashScopeRateLimiter(10);
+
+		assertThat(rateLimiter.reserve("a")).isZero();
+		long secondWait = rateLimiter.reserve("a");
+		assertThat(secondWait).isBetween(TimeUnit.MILLISECONDS.toNanos(90), TimeUnit.MILLISECONDS.toNanos(110));
+		assertThat(rateLimiter.reserve("b")).isZero();
+	}
+
+	@Test
+	void throttlingHalvesRateAndSuccessRecovers() {
+		DashScopeRateLimiter rateLimiter = new DashScopeRateLimiter(10);
+
+		rateLimiter.onResponse("a", 429, new HttpHeaders());
+		assertThat(rateLimiter.getPermitsPerSecond("a")).isEqualTo(5.0);
+
+		rateLimiter.onResponse("a", 200, new HttpHeaders());
+		assertThat(rateLimiter.getPermitsPerSecond("a")).isEqualTo(5.5);
+	}
+
+	@Test
+	void serverLimitCapsRateAndExhaustionPauses() {
+		DashScopeRateLimiter rateLimiter = new DashScopeRateLimiter(10);
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("x-ratelimit-limit-requests", "300");
+		headers.add("x-ratelimit-remaining-requests", "0");
+		headers.add("x-ratelimit-reset-requests", "2s");
+
+		rateLimiter.onResponse("a", 200, headers);
+
+		assertThat(rateLimiter.getPermitsPerSecond("a")).isEqualTo(5.0);
+		assertThat(rateLimiter.reserve("a")).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(1900));
+	}
+
+}
@@ -0,0 +1,308 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.MimeTypeUtils;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeMedia;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeDefinition;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+public class DashScopeRequestCompressorTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(DashScopeRequestCompressorTests.class);
+
+	private static final String CHAT_RESPONSE = "{\"output\":{\"text\":\"ok\"},\"request_id\":\"gzip\"}";
+
+	@Test
+	void largeBodiesAreGzippedForBlockingAndStreamingCalls() {
+		List<String> encodings = new CopyOnWriteArrayList<>();
+		List<String> bodies = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = startServer(encodings, bodies, false);
+		DashScopeRequestCompressor compressor = new DashScopeRequestCompressor(1024);
+		try {
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.requestCompressor(compressor)
+				.build();
+			DashScopeRequest request = chatRequest("x".repeat(10_000));
+
+			assertThat(dashScopeApi.chatCompletionEntity(request).getBody().getOutput().getText()).isEqualTo("ok");
+			List<DashScopeResponse> chunks = dashScopeApi.chatCompletionStream(request)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+			dashScopeApi.chatCompletionEntity(chatRequest("small"));
+
+			assertThat(chunks).hasSize(1);
+			assertThat(encodings).containsExactly("gzip", "gzip", null);
+			assertThat(bodies.get(0)).contains("x".repeat(10_000));
+			assertThat(bodies.get(1)).isEqualTo(bodies.get(0));
+			assertThat(compressor.getCompressedBytes()).isLessThan(compressor.getOriginalBytes() / 10);
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * 内联媒体从文件边读边编码，压缩后以分块方式发送，不带Content-Length
+	 */
+	@Test
+	void streamedMediaIsCompressedWithoutBufferingTheBody(@TempDir Path tempDir) throws IOException {
+		byte[] image = new byte[300 * 1024];
+		new Random(42).nextBytes(image);
+		Path file = Files.write(tempDir.resolve("image.png"), image);
+		List<String> requests = new CopyOnWriteArrayList<>();
+		List<String> bodies = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			requests.add(exchange.getRequestHeaders().getFirst("Content-Encoding") + " "
+					+ exchange.getRequestHeaders().getFirst("Content-Length"));
+			bodies.add(new String(new GZIPInputStream(exchange.getRequestBody()).readAllBytes(), StandardCharsets.UTF_8));
+			MockDashScopeServer.respondJson(exchange, CHAT_RESPONSE);
+		});
+		DashScopeRequestCompressor compressor = new DashScopeRequestCompressor(1024);
+		DashScopeRateLimiter rateLimiter = new DashScopeRateLimiter(100);
+		try {
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.requestCompressor(compressor)
+				.rateLimiter(rateLimiter)
+				.build();
+			DashScopeRequest request = DashScopeRequest.builder()
+				.model("qwen-vl-max")
+				.messages(List.of(DashScopeRequest.Message.builder()
+					.role(DashScopeDefinition.Role.USER)
+					.content(List.of(DashScopeRequest.MediaContent.builder()
+						.image(DashScopeMedia.dataUri(MimeTypeUtils.IMAGE_PNG, new FileSystemResource(file)))
+						.build()))
+					.build()))
+				.build();
+
+			assertThat(dashScopeApi.chatCompletionEntity(request).getBody().getOutput().getText()).isEqualTo("ok");
+
+			assertThat(requests).containsExactly("gzip null");
+			assertThat(bodies.get(0)).contains(Base64.getEncoder().encodeToString(image));
+			assertThat(compressor.getOriginalBytes()).isEqualTo(bodies.get(0).length());
+			assertThat(compressor.getCompressedBytes()).isPositive();
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	@Test
+	void rejectedCompressionFallsBackToPlainBody() {
+		List<String> encodings = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = startServer(encodings, new CopyOnWriteArrayList<>(), true);
+		DashScopeRequestCompressor compressor = new DashScopeRequestCompressor(1024);
+		try {
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.requestCompressor(compressor)
+				.build();
+			DashScopeRequest request = chatRequest("x".repeat(10_000));
+
+			assertThat(dashScopeApi.chatCompletionEntity(request).getBody().getOutput().getText()).isEqualTo("ok");
+			assertThat(dashScopeApi.chatCompletionStream(request).collectList().block(Duration.ofSeconds(10)))
+				.hasSize(1);
+
+			// 第一次被拒绝后重发，之后同一路径不再压缩
+			assertThat(encodings).containsExactly("gzip", null, null);
+			assertThat(compressor.isRejecting("/api/v1/services/aigc/text-generation/generation")).isTrue();
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	@Test
+	void parameterErrorsAreProbedUncompressedOnlyOnce() {
+		List<String> encodings = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			encodings.add(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respond(exchange, 400, null, null);
+		});
+		DashScopeRequestCompressor compressor = new DashScopeRequestCompressor(1024);
+		try {
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.requestCompressor(compressor)
+				.build();
+			DashScopeRequest request = chatRequest("x".repeat(10_000));
+
+			assertThatThrownBy(() -> dashScopeApi.chatCompletionEntity(request)).isInstanceOf(RuntimeException.class);
+			assertThatThrownBy(() -> dashScopeApi.chatCompletionEntity(request)).isInstanceOf(RuntimeException.class);
+
+			// 只有第一次400用原始请求体重发，之后的参数错误不再重复上传
+			assertThat(encodings).containsExactly("gzip", null, "gzip");
+			assertThat(compressor.isRejecting("/api/v1/services/aigc/text-generation/generation")).isFalse();
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	@Test
+	void defaultClientsAcceptCompressedResponses() {
+		List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			acceptEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondJson(exchange,
+					"{\"output\":{\"task_id\":\"t1\",\"task_status\":\"PENDING\"},\"request_id\":\"r\"}");
+		});
+		try {
+			String baseUrl = server.baseUrl();
+			DashScopeImageApi imageApi = DashScopeImageApi.builder().baseUrl(baseUrl).apiKey("test-key").build();
+			DashScopeVideoApi videoApi = DashScopeVideoApi.builder().baseUrl(baseUrl).apiKey("test-key").build();
+
+			imageApi.getImageGenTaskResult("t1");
+			imageApi.getImageGenTaskResultAsync("t1").block(Duration.ofSeconds(10));
+			videoApi.getImageGenTaskResult("t1");
+			videoApi.getImageGenTaskResultAsync("t1").block(Duration.ofSeconds(10));
+
+			assertThat(acceptEncodings).hasSize(4).allMatch(value -> value.contains("gzip"));
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * 4张内联base64图片的多模态请求，对比压缩前后的上传字节数和本地回环延迟，
+	 * 设置环境变量 DASHSCOPE_BENCHMARK=true 时运行
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void benchmarkMultiImagePrompt() throws IOException {
+		MockDashScopeServer server = startServer(new CopyOnWriteArrayList<>(), new CopyOnWriteArrayList<>(), false);
+		try {
+			String baseUrl = server.baseUrl();
+			DashScopeRequestCompressor compressor = new DashScopeRequestCompressor();
+			DashScopeApi plain = DashScopeApi.builder().baseUrl(baseUrl).apiKey("test-key").build();
+			DashScopeApi compressed = DashScopeApi.builder()
+				.baseUrl(baseUrl)
+				.apiKey("test-key")
+				.requestCompressor(compressor)
+				.build();
+			DashScopeRequest request = multiImageRequest(4);
+			int iterations = 50;
+			for (int i = 0; i < 10; i++) {
+				plain.chatCompletionEntity(request);
+				compressed.chatCompletionEntity(request);
+			}
+			long originalBefore = compressor.getOriginalBytes();
+			long compressedBefore = compressor.getCompressedBytes();
+
+			long plainNanos = time(plain, request, iterations);
+			long compressedNanos = time(compressed, request, iterations);
+
+			long original = (compressor.getOriginalBytes() - originalBefore) / iterations;
+			long gzipped = (compressor.getCompressedBytes() - compressedBefore) / iterations;
+			logger.info("multi-image request: {} bytes -> {} bytes ({}% saved); loopback latency {} ms -> {} ms", original,
+					gzipped, String.format("%.1f", 100.0 * (original - gzipped) / original),
+					String.format("%.2f", plainNanos / 1e6 / iterations),
+					String.format("%.2f", compressedNanos / 1e6 / iterations));
+			assertThat(gzipped).isLessThan(original);
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	private static long time(DashScopeApi dashScopeApi, DashScopeRequest request, int iterations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			dashScopeApi.chatCompletionEntity(request);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static DashScopeRequest chatRequest(String text) {
+		return DashScopeRequest.builder()
+			.model("qwen-plus")
+			.messages(List.of(DashScopeRequest.Message.builder()
+				.role(DashScopeDefinition.Role.USER)
+				.content(text)
+				.build()))
+			.build();
+	}
+
+	private static DashScopeRequest multiImageRequest(int images) throws IOException {
+		Random random = new Random(42);
+		List<DashScopeRequest.MediaContent> contents = new ArrayList<>();
+		contents.add(new DashScopeRequest.MediaContent("这几张图有什么区别？"));
+		for (int n = 0; n < images; n++) {
+			BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+			for (int y = 0; y < 512; y++) {
+				for (int x = 0; x < 512; x++) {
+					int noise = random.nextInt(32);
+					image.setRGB(x, y, ((x / 2 + noise) << 16) | ((y / 2 + noise) << 8) | ((n * 60 + noise) & 0xff));
+				}
+			}
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(image, "png", png);
+			contents.add(DashScopeRequest.MediaContent.builder()
+				.image("data:image/png;base64," + Base64.getEncoder().encodeToString(png.toByteArray()))
+				.build());
+		}
+		return DashScopeRequest.builder()
+			.model("qwen-vl-max")
+			.messages(List.of(DashScopeRequest.Message.builder()
+				.role(DashScopeDefinition.Role.USER)
+				.content(contents)
+				.build()))
+			.build();
+	}
+
+	/**
+	 * @param rejectGzip 为true时对压缩请求返回415
+	 */
+	private static MockDashScopeServer startServer(List<String> encodings, List<String> bodies, boolean rejectGzip) {
+		return MockDashScopeServer.start(exchange -> {
+			String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+			encodings.add(encoding);
+			InputStream input = exchange.getRequestBody();
+			if (rejectGzip && "gzip".equals(encoding)) {
+				input.readAllBytes();
+				MockDashScopeServer.respond(exchange, 415, null, null);
+				return;
+			}
+			byte[] body = ("gzip".equals(encoding) ? new GZIPInputStream(input) : input).readAllBytes();
+			bodies.add(new String(body, StandardCharsets.UTF_8));
+			MockDashScopeServer.respondChunk(exchange, CHAT_RESPONSE);
+		});
+	}
+
+}
@@ -0,0 +1,176 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+public class DashScopeTaskTrackerTests {
+
+	private static final int TASK_COUNT = 200;
+
+	private static final int MAX_CONCURRENT_REQUESTS = 8;
+
+	@Test
+	void manyTasksAreCompletedWithBoundedConcurrency() throws Exception {
+		Map<String, AtomicInteger> pollsPerTask = new ConcurrentHashMap<>();
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+		try (DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+				.name("test")
+				.taskStatusFetcher(taskId -> Mono.defer(() -> {
+					maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+					int polls = pollsPerTask.computeIfAbsent(taskId, id -> new AtomicInteger()).incrementAndGet();
+					return Mono.just(response(polls >= 3 ? "SUCCEEDED" : "RUNNING"))
+						.delayElement(Duration.ofMillis(5))
+						.doOnTerminate(inFlight::decrementAndGet);
+				}))
+				.tickInterval(Duration.ofMillis(10))
+				.minPollInterval(Duration.ofMillis(10))
+				.maxPollInterval(Duration.ofMillis(50))
+				.maxConcurrentRequests(MAX_CONCURRENT_REQUESTS)
+				.meterRegistry(meterRegistry)
+				.build()) {
+			List<CompletableFuture<DashScopeResponse>> futures = new ArrayList<>();
+			for (int i = 0; i < TASK_COUNT; i++) {
+				futures.add(tracker.track("task-" + i));
+			}
+			assertThat(tracker.track("task-0")).isSameAs(futures.get(0));
+
+			CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+			assertThat(futures).allSatisfy(future -> assertThat(future.join().getOutput().getTaskStatus()).isEqualTo("SUCCEEDED"));
+			assertThat(pollsPerTask.values()).allSatisfy(polls -> assertThat(polls.get()).isEqualTo(3));
+			assertThat(maxInFlight.get()).isLessThanOrEqualTo(MAX_CONCURRENT_REQUESTS);
+			assertThat(tracker.getPendingCount()).isZero();
+			assertThat(meterRegistry.get("dashscope.task.tracker.completion").tag("status", "SUCCEEDED").timer().count())
+				.isEqualTo(TASK_COUNT);
+		}
+	}
+
+	@Test
+	void taskIsTimedOut() {
+		try (DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+				.taskStatusFetcher(taskId -> Mono.just(response("RUNNING")))
+				.tickInterval(Duration.ofMillis(10))
+				.minPollInterval(Duration.ofMillis(10))
+				.maxPollInterval(Duration.ofMillis(10))
+				.taskTimeout(Duration.ofMillis(100))
+				.meterRegistry(new SimpleMeterRegistry())
+				.build()) {
+			CompletableFuture<DashScopeResponse> future = tracker.track("slow-task");
+
+			assertThat(future).failsWithin(Duration.ofSeconds(5))
+				.withThrowableOfType(java.util.concurrent.ExecutionException.class)
+				.withCauseInstanceOf(java.util.concurrent.TimeoutException.class);
+			assertThat(tracker.getPendingCount()).isZero();
+		}
+	}
+
+	@Test
+	void hungRequestTimesOutWithoutBlockingLaterTicks() {
+		try (DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+				.taskStatusFetcher(taskId -> taskId.equals("hung-task") ? Mono.never() : Mono.just(response("SUCCEEDED")))
+				.tickInterval(Duration.ofMillis(20))
+				.minPollInterval(Duration.ofMillis(10))
+				.maxPollInterval(Duration.ofMillis(10))
+				.requestTimeout(Duration.ofMillis(50))
+				.taskTimeout(Duration.ofMillis(300))
+				.meterRegistry(new SimpleMeterRegistry())
+				.build()) {
+			CompletableFuture<DashScopeResponse> hung = tracker.track("hung-task");
+			// 挂起的请求已经进入轮询之后再登记新任务
+			CompletableFuture<DashScopeResponse> fast = CompletableFuture
+				.supplyAsync(() -> tracker.track("fast-task"), CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS))
+				.thenCompose(future -> future);
+
+			assertThat(fast).succeedsWithin(Duration.ofSeconds(5))
+				.satisfies(response -> assertThat(response.getOutput().getTaskStatus()).isEqualTo("SUCCEEDED"));
+			assertThat(hung).failsWithin(Duration.ofSeconds(5))
+				.withThrowableOfType(java.util.concurrent.ExecutionException.class)
+				.withCauseInstanceOf(java.util.concurrent.TimeoutException.class);
+		}
+	}
+
+	@Test
+	void slowPollsLongerThanTheTickDoNotOverlap() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+		try (DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+				.taskStatusFetcher(taskId -> Mono.defer(() -> {
+					maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+					return Mono.just(response("SUCCEEDED"))
+						.delayElement(Duration.ofMillis(100))
+						.doOnTerminate(inFlight::decrementAndGet);
+				}))
+				.tickInterval(Duration.ofMillis(10))
+				.minPollInterval(Duration.ofMillis(10))
+				.maxPollInterval(Duration.ofMillis(10))
+				.maxConcurrentRequests(1)
+				.meterRegistry(new SimpleMeterRegistry())
+				.build()) {
+			List<CompletableFuture<DashScopeResponse>> futures = List.of(tracker.track("a"), tracker.track("b"));
+
+			// 默认5秒的请求超时远大于节拍间隔，慢请求不会超时，也不会与下一轮重叠
+			assertThat(CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))).succeedsWithin(Duration.ofSeconds(5));
+			assertThat(maxInFlight).hasValue(1);
+		}
+	}
+
+	@Test
+	void emptyStatusIsBackedOff() throws Exception {
+		AtomicInteger polls = new AtomicInteger();
+		try (DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+				.taskStatusFetcher(taskId -> Mono.fromRunnable(polls::incrementAndGet))
+				.tickInterval(Duration.ofMillis(10))
+				.minPollInterval(Duration.ofMillis(20))
+				.maxPollInterval(Duration.ofSeconds(1))
+				.meterRegistry(new SimpleMeterRegistry())
+				.build()) {
+			tracker.track("empty-task");
+			Thread.sleep(500);
+
+			// 不退避时每个节拍都会查询，约50次；退避后间隔从20ms按1.5倍增长
+			assertThat(polls.get()).isBetween(1, 15);
+			assertThat(tracker.getPendingCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void closeRemovesPendingGauge() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		DashScopeTaskTracker tracker = DashScopeTaskTracker.builder()
+			.name("closing")
+			.taskStatusFetcher(taskId -> Mono.just(response("RUNNING")))
+			.meterRegistry(meterRegistry)
+			.build();
+		assertThat(meterRegistry.find("dashscope.task.tracker.pending").tag("name", "closing").gauge()).isNotNull();
+
+		tracker.close();
+
+		assertThat(meterRegistry.find("dashscope.task.tracker.pending").tag("name", "closing").gauge()).isNull();
+	}
+
+	private static DashScopeResponse response(String status) {
+		DashScopeResponse.Output output = new DashScopeResponse.Output();
+		output.setTaskStatus(status);
+		DashScopeResponse response = new DashScopeResponse();
+		response.setOutput(output);
+		return response;
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.xywenjie.spring.ai.dashscope.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeRequest;
+import org.xywenjie.spring.ai.dashscope.api.dto.DashScopeResponse;
+
+import io.micrometer.core.instrument.Metrics;
+
+public class DashScopeTransportTests {
+
+	@Test
+	void blockingAndStreamingCallsShareOnePool() {
+		Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondChunk(exchange, MockDashScopeServer.isSse(exchange)
+					? "{\"output\":{\"text\":\"hi\"},\"request_id\":\"stream\"}"
+					: "{\"output\":{\"embeddings\":[{\"text_index\":0,\"embedding\":[1.0]}]},\"request_id\":\"embed\"}");
+		});
+		DashScopeTransport transport = DashScopeTransport.builder()
+			.name("dashscope-transport-test")
+			.maxConnections(1)
+			.metrics(true)
+			.build();
+		try {
+			String baseUrl = server.baseUrl();
+			DashScopeApi first = DashScopeApi.builder().baseUrl(baseUrl).apiKey("a").transport(transport).build();
+			DashScopeApi second = DashScopeApi.builder().baseUrl(baseUrl).apiKey("b").transport(transport).build();
+			DashScopeRequest embeddingRequest = DashScopeRequest.builder()
+				.model("text-embedding-v4")
+				.texts(List.of("text"))
+				.build();
+
+			for (int i = 0; i < 3; i++) {
+				assertThat(first.embeddings(embeddingRequest).getBody().getOutput().getEmbeddings()).hasSize(1);
+				assertThat(second.embeddings(embeddingRequest).getBody().getOutput().getEmbeddings()).hasSize(1);
+			}
+			List<DashScopeResponse> chunks = second
+				.chatCompletionStream(DashScopeRequest.builder().model("qwen-plus").build())
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+			assertThat(chunks).hasSize(1);
+			// 同一个Keep-Alive连接上完成全部请求
+			assertThat(clientPorts).hasSize(1);
+			assertThat(Metrics.globalRegistry.find("reactor.netty.connection.provider.total.connections")
+				.tag("name", "dashscope-transport-test")
+				.gauge()).isNotNull();
+		}
+		finally {
+			transport.close();
+			server.close();
+		}
+	}
+
+	@Test
+	void userSuppliedClientsAreKeptAndGzipResponsesAreDecoded() {
+		List<String> acceptEncodings = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			acceptEncodings.add(String.valueOf(acceptEncoding));
+			boolean sse = MockDashScopeServer.isSse(exchange);
+			if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+				MockDashScopeServer.respondChunk(exchange, "{\"output\":{\"text\":\"hi\"},\"request_id\":\"chat\"}");
+				return;
+			}
+			exchange.getResponseHeaders().add("Content-Type", sse ? "text/event-stream" : "application/json");
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+				out.write((sse ? "data:{\"output\":{\"text\":\"hi\"},\"request_id\":\"stream\"}\n\n"
+						: "{\"output\":{\"text\":\"hi\"},\"request_id\":\"chat\"}").getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		try {
+			AtomicInteger restRequests = new AtomicInteger();
+			AtomicInteger webRequests = new AtomicInteger();
+			SimpleClientHttpRequestFactory simpleFactory = new SimpleClientHttpRequestFactory();
+			JdkClientHttpConnector jdkConnector = new JdkClientHttpConnector();
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.restClientBuilder(RestClient.builder().requestFactory((uri, method) -> {
+					restRequests.incrementAndGet();
+					return simpleFactory.createRequest(uri, method);
+				}))
+				.webClientBuilder(WebClient.builder().clientConnector((method, uri, callback) -> {
+					webRequests.incrementAndGet();
+					return jdkConnector.connect(method, uri, callback);
+				}))
+				.build();
+			DashScopeRequest request = DashScopeRequest.builder().model("qwen-plus").build();
+
+			assertThat(dashScopeApi.chatCompletionEntity(request).getBody().getOutput().getText()).isEqualTo("hi");
+			List<DashScopeResponse> chunks = dashScopeApi.chatCompletionStream(request)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+			assertThat(restRequests).hasValue(1);
+			assertThat(webRequests).hasValue(1);
+			assertThat(chunks).singleElement().satisfies(chunk -> assertThat(chunk.getOutput().getText()).isEqualTo("hi"));
+			// 自带的RestClient不额外要求压缩，WebClient由过滤器要求gzip并解压
+			assertThat(acceptEncodings).containsExactly("null", "gzip");
+		}
+		finally {
+			server.close();
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.xywenjie.spring.ai.dashscope.api.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.content.Media;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DashScopeMediaTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void encodingMatchesWholeArrayEncodingAcrossChunkBoundaries() throws IOException {
+		Random random = new Random(7);
+		for (int size : new int[] { 0, 1, 2, 3, 4, 12287, 12288, 12289, 100_000 }) {
+			byte[] data = new byte[size];
+			random.nextBytes(data);
+			String expected = Base64.getEncoder().encodeToString(data);
+
+			assertThat(this.objectMapper.writeValueAsString(DashScopeMedia.base64(data)))
+				.isEqualTo("\"" + expected + "\"");
+			assertThat(this.objectMapper.writeValueAsString(DashScopeMedia.dataUri(MimeTypeUtils.IMAGE_PNG, data)))
+				.isEqualTo("\"data:image/png;base64," + expected + "\"");
+		}
+	}
+
+	@Test
+	void resourceIsStreamedIntoRequestBody(@TempDir Path tempDir) throws IOException {
+		byte[] video = new byte[3 * 1024 * 1024 + 1];
+		new Random(11).nextBytes(video);
+		Path file = Files.write(tempDir.resolve("clip.mp4"), video);
+		List<String> bodies = new CopyOnWriteArrayList<>();
+		MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			bodies.add(MockDashScopeServer.readBody(exchange));
+			MockDashScopeServer.respondJson(exchange, "{\"output\":{\"text\":\"ok\"},\"request_id\":\"media\"}");
+		});
+		try {
+			DashScopeApi dashScopeApi = DashScopeApi.builder()
+				.baseUrl(server.baseUrl())
+				.apiKey("test-key")
+				.build();
+			DashScopeRequest request = DashScopeRequest.builder()
+				.model("qwen-vl-max")
+				.messages(List.of(DashScopeRequest.Message.builder()
+					.role(DashScopeDefinition.Role.USER)
+					.content(List.of(new DashScopeRequest.MediaContent("视频里有什么？"),
+							DashScopeRequest.MediaContent.builder()
+								.video(DashScopeMedia.dataUri(MimeType.valueOf("video/mp4"), new FileSystemResource(file)))
+								.build()))
+					.build()))
+				.build();
+
+			// 同一个请求发送两次，每次都重新读取文件
+			dashScopeApi.chatCompletionEntity(request);
+			dashScopeApi.chatCompletionEntity(request);
+
+			assertThat(bodies).hasSize(2);
+			for (String body : bodies) {
+				JsonNode content = this.objectMapper.readTree(body).at("/input/messages/0/content/1/video");
+				assertThat(content.asText()).startsWith("data:video/mp4;base64,");
+				assertThat(Base64.getDecoder().decode(content.asText().substring("data:video/mp4;base64,".length())))
+					.isEqualTo(video);
+			}
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	@Test
+	void mediaContentKeepsStringAccessorsAndWritesMediaIntoTheSameField() throws IOException {
+		byte[] image = "png".getBytes(StandardCharsets.UTF_8);
+		DashScopeRequest.MediaContent inline = DashScopeRequest.MediaContent.builder()
+			.image(DashScopeMedia.dataUri(MimeTypeUtils.IMAGE_PNG, image))
+			.build();
+		DashScopeRequest.MediaContent url = DashScopeRequest.MediaContent.builder().image("https://example.com/a.png").build();
+
+		assertThat(inline.getImage()).isNull();
+		assertThat(inline.getImageMedia()).isNotNull();
+		assertThat(this.objectMapper.writeValueAsString(inline))
+			.isEqualTo("{\"image\":\"data:image/png;base64," + Base64.getEncoder().encodeToString(image) + "\"}");
+		assertThat(url.getImage()).isEqualTo("https://example.com/a.png");
+		assertThat(this.objectMapper.writeValueAsString(url)).isEqualTo("{\"image\":\"https://example.com/a.png\"}");
+
+		// 后设置的值覆盖先设置的值，不会写出重复的字段
+		inline.setImage("https://example.com/b.png");
+		assertThat(inline.getImageMedia()).isNull();
+		assertThat(this.objectMapper.writeValueAsString(inline)).isEqualTo("{\"image\":\"https://example.com/b.png\"}");
+	}
+
+	@Test
+	void singleUseStreamsAreRejected() {
+		DashScopeChatModel chatModel = DashScopeChatModel.builder()
+			.dashScopeApi(DashScopeApi.builder().baseUrl("http://localhost:1").apiKey("test-key").build())
+			.build();
+		Prompt prompt = new Prompt(UserMessage.builder()
+			.text("图里是什么？")
+			.media(Media.builder()
+				.mimeType(MimeTypeUtils.IMAGE_PNG)
+				.data(new ByteArrayInputStream("png".getBytes(StandardCharsets.UTF_8)))
+				.build())
+			.build());
+
+		assertThatThrownBy(() -> chatModel.call(prompt)).isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("can only be read once");
+	}
+
+}
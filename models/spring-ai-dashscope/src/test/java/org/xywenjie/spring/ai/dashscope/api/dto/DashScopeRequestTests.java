@@ -0,0 +1,24 @@
+package org.xywenjie.spring.ai.dashscope.api.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DashScopeRequestTests {
+
+	@Test
+	void incrementalOutputIsSerializedUnderItsDocumentedName() throws Exception {
+		DashScopeRequest request = new DashScopeRequest();
+		request.getParameters().setIncrementalOutput(Boolean.TRUE);
+
+		JsonNode parameters = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(request))
+			.get("parameters");
+
+		assertThat(parameters.get("incremental_output").asBoolean()).isTrue();
+		assertThat(parameters.has("incremental_output ")).isFalse();
+	}
+
+}
@@ -0,0 +1,273 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.model.tool.DefaultToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatOptions;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+public class CachingChatModelTests {
+
+	private final RecordingChatModel delegate = new RecordingChatModel();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void normalizedPromptsHitExactCache() {
+		CachingChatModel cachingModel = builder().build();
+
+		cachingModel.call(new Prompt("如何  退货？"));
+		ChatResponse cached = cachingModel.call(new Prompt(" 如何 退货？ "));
+		cachingModel.call(new Prompt("如何退货？", DashScopeChatOptions.builder().model("qwen-max").build()));
+
+		assertThat(this.delegate.prompts).containsExactly("如何  退货？", "如何退货？");
+		assertThat(cached.getResult().getOutput().getText()).isEqualTo("answer-1");
+		assertThat(cached.getMetadata().<String>get(CachingChatModel.CACHE_METADATA_KEY)).isEqualTo("exact");
+		assertThat(this.meterRegistry.get("dashscope.chat.cache.requests")
+			.tag("name", "test")
+			.tag("result", "hit")
+			.functionCounter()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void missingTemperatureFallsBackToTheDelegateDefault() {
+		CachingChatModel cachingModel = builder().build();
+
+		// 被装饰模型默认选项没有温度时按DashScope的默认温度0.7处理，不经过缓存
+		this.delegate.defaultOptions = ChatOptions.builder().build();
+		cachingModel.call(new Prompt("讲个笑话"));
+		cachingModel.call(new Prompt("讲个笑话"));
+		assertThat(cachingModel.getBypassCount()).isEqualTo(2);
+
+		this.delegate.defaultOptions = ChatOptions.builder().temperature(0.2).build();
+		cachingModel.call(new Prompt("讲个笑话"));
+		cachingModel.call(new Prompt("讲个笑话"));
+		assertThat(cachingModel.getHitCount()).isEqualTo(1);
+		assertThat(this.delegate.prompts).hasSize(3);
+	}
+
+	@Test
+	void dimensionChangeKeepsTheResponse() {
+		float[][] vectors = { { 1f, 0f, 0f }, { 1f, 0f } };
+		int[] calls = new int[1];
+		EmbeddingModel embeddingModel = new FixedEmbeddingModel() {
+
+			@Override
+			public float[] embed(String text) {
+				return vectors[calls[0]++];
+			}
+
+		};
+		CachingChatModel cachingModel = builder().embeddingModel(embeddingModel).build();
+
+		cachingModel.call(new Prompt("怎么退货"));
+		ChatResponse response = cachingModel.call(new Prompt("运费多少"));
+
+		assertThat(response.getResult().getOutput().getText()).isEqualTo("answer-2");
+		ChatResponse cached = cachingModel.call(new Prompt("运费多少"));
+		assertThat(cached.getMetadata().<String>get(CachingChatModel.CACHE_METADATA_KEY)).isEqualTo("exact");
+		assertThat(this.delegate.prompts).containsExactly("怎么退货", "运费多少");
+	}
+
+	@Test
+	void similarQuestionsHitSemanticCacheWithinSameContext() {
+		CachingChatModel cachingModel = builder().embeddingModel(new FixedEmbeddingModel()).build();
+		SystemMessage system = new SystemMessage("你是客服");
+
+		cachingModel.call(new Prompt(List.of(system, new UserMessage("怎么退货"))));
+		ChatResponse similar = cachingModel.call(new Prompt(List.of(system, new UserMessage("如何退货"))));
+		cachingModel.call(new Prompt(List.of(system, new UserMessage("运费多少"))));
+		cachingModel.call(new Prompt(List.of(new SystemMessage("你是导购"), new UserMessage("如何退货"))));
+
+		assertThat(similar.getMetadata().<String>get(CachingChatModel.CACHE_METADATA_KEY)).isEqualTo("semantic");
+		assertThat(this.delegate.prompts).containsExactly("怎么退货", "运费多少", "如何退货");
+		assertThat(cachingModel.getSemanticHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	void highTemperatureBypassesCache() {
+		CachingChatModel cachingModel = builder().build();
+		DashScopeChatOptions hot = DashScopeChatOptions.builder().model("qwen-plus").build();
+		hot.getParameters().setTemperature(1.2);
+
+		cachingModel.call(new Prompt("讲个笑话", hot));
+		cachingModel.call(new Prompt("讲个笑话", hot));
+
+		assertThat(this.delegate.prompts).hasSize(2);
+		assertThat(cachingModel.getBypassCount()).isEqualTo(2);
+		assertThat(cachingModel.size()).isZero();
+	}
+
+	@Test
+	void entriesExpireAndAreBoundedBySize() {
+		MutableClock clock = new MutableClock();
+		CachingChatModel cachingModel = builder().ttl(Duration.ofMinutes(10)).maxEntries(2).clock(clock).build();
+
+		cachingModel.call(new Prompt("a"));
+		cachingModel.call(new Prompt("b"));
+		cachingModel.call(new Prompt("a"));
+		cachingModel.call(new Prompt("c"));
+		assertThat(cachingModel.size()).isEqualTo(2);
+		// b最久未使用，已被淘汰
+		cachingModel.call(new Prompt("b"));
+		assertThat(this.delegate.prompts).containsExactly("a", "b", "c", "b");
+
+		clock.advance(Duration.ofMinutes(11));
+		cachingModel.call(new Prompt("b"));
+		assertThat(this.delegate.prompts).containsExactly("a", "b", "c", "b", "b");
+	}
+
+	@Test
+	void streamedResponsesAreAggregatedIntoCache() {
+		CachingChatModel cachingModel = builder().build();
+
+		List<ChatResponse> first = cachingModel.stream(new Prompt("你好")).collectList().block(Duration.ofSeconds(5));
+		List<ChatResponse> second = cachingModel.stream(new Prompt("你好")).collectList().block(Duration.ofSeconds(5));
+
+		assertThat(first).hasSize(2);
+		assertThat(second).hasSize(1);
+		assertThat(second.get(0).getResult().getOutput().getText()).isEqualTo("hello world");
+		assertThat(this.delegate.prompts).containsExactly("你好");
+	}
+
+	@Test
+	void missingToolListsDoNotBreakTheCacheKey() {
+		CachingChatModel cachingModel = builder().build();
+		DefaultToolCallingChatOptions options = new DefaultToolCallingChatOptions() {
+
+			@Override
+			public List<ToolCallback> getToolCallbacks() {
+				return null;
+			}
+
+			@Override
+			public Set<String> getToolNames() {
+				return null;
+			}
+
+		};
+		options.setModel("qwen-plus");
+
+		cachingModel.call(new Prompt("你好", options));
+		cachingModel.call(new Prompt("你好", options));
+
+		assertThat(this.delegate.prompts).containsExactly("你好");
+	}
+
+	private CachingChatModel.Builder builder() {
+		return CachingChatModel.builder()
+			.delegate(this.delegate)
+			.name("test")
+			.defaultModel("qwen-plus")
+			.meterRegistry(this.meterRegistry);
+	}
+
+	private static class RecordingChatModel implements ChatModel {
+
+		private final List<String> prompts = new ArrayList<>();
+
+		private ChatOptions defaultOptions = ChatOptions.builder().temperature(0.0).build();
+
+		@Override
+		public ChatResponse call(Prompt prompt) {
+			this.prompts.add(prompt.getUserMessage().getText());
+			return response("answer-" + this.prompts.size());
+		}
+
+		@Override
+		public Flux<ChatResponse> stream(Prompt prompt) {
+			this.prompts.add(prompt.getUserMessage().getText());
+			return Flux.just(response("hello "), response("world"));
+		}
+
+		@Override
+		public ChatOptions getDefaultOptions() {
+			return this.defaultOptions;
+		}
+
+		private static ChatResponse response(String text) {
+			return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+		}
+
+	}
+
+	/**
+	 * “怎么退货”和“如何退货”的向量几乎相同，“运费多少”与它们正交
+	 */
+	private static class FixedEmbeddingModel implements EmbeddingModel {
+
+		private static final Map<String, float[]> VECTORS = Map.of(
+				"怎么退货", new float[] { 1f, 0.02f, 0f },
+				"如何退货", new float[] { 1f, 0f, 0.02f },
+				"运费多少", new float[] { 0f, 1f, 0f });
+
+		@Override
+		public EmbeddingResponse call(EmbeddingRequest request) {
+			List<Embedding> embeddings = new ArrayList<>();
+			for (int i = 0; i < request.getInstructions().size(); i++) {
+				embeddings.add(new Embedding(VECTORS.get(request.getInstructions().get(i)), i));
+			}
+			return new EmbeddingResponse(embeddings);
+		}
+
+		@Override
+		public float[] embed(Document document) {
+			return VECTORS.get(document.getText());
+		}
+
+	}
+
+	private static class MutableClock extends Clock {
+
+		private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+		void advance(Duration duration) {
+			this.now = this.now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return this.now;
+		}
+
+	}
+
+}
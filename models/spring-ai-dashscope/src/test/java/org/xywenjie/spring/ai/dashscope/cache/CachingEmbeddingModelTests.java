@@ -0,0 +1,147 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.xywenjie.spring.ai.dashscope.DashScopeEmbeddingOptions;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CachingEmbeddingModelTests {
+
+	private final RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CachingEmbeddingModel cachingModel = CachingEmbeddingModel.builder()
+		.name("test")
+		.delegate(this.delegate)
+		.store(new OffHeapEmbeddingCacheStore(1024 * 1024))
+		.defaultModel("text-embedding-v4")
+		.meterRegistry(this.meterRegistry)
+		.build();
+
+	@Test
+	void hitsAndMissesAreMergedInOneCall() {
+		this.cachingModel.call(new EmbeddingRequest(List.of("a", "b"), null));
+
+		EmbeddingResponse response = this.cachingModel.call(new EmbeddingRequest(List.of("b", "c", "a", "c"), null));
+
+		assertThat(this.delegate.requests).containsExactly(List.of("a", "b"), List.of("c"));
+		assertThat(response.getResults()).extracting(Embedding::getIndex).containsExactly(0, 1, 2, 3);
+		assertThat(response.getResults()).extracting(Embedding::getOutput)
+			.containsExactly(vector("b"), vector("c"), vector("a"), vector("c"));
+		assertThat(this.cachingModel.getHitCount()).isEqualTo(2);
+		assertThat(this.cachingModel.getMissCount()).isEqualTo(4);
+		assertThat(this.meterRegistry.get("dashscope.embedding.cache.requests")
+			.tag("name", "test")
+			.tag("result", "hit")
+			.functionCounter()
+			.count()).isEqualTo(2);
+	}
+
+	@Test
+	void fullHitDoesNotCallDelegate() {
+		this.cachingModel.embed(new Document("hello"));
+		this.cachingModel.embed(new Document("hello"));
+		this.cachingModel.embed(List.of("hello", "hello"));
+		this.cachingModel.embed(List.of("hello", "hello"));
+
+		assertThat(this.delegate.requests).hasSize(2);
+		assertThat(this.delegate.requests.get(1)).containsExactly("hello");
+	}
+
+	@Test
+	void keyIncludesModelAndDimensions() {
+		this.cachingModel.call(new EmbeddingRequest(List.of("a"), null));
+		this.cachingModel.call(new EmbeddingRequest(List.of("a"), DashScopeEmbeddingOptions.builder().dimensions(512).build()));
+		this.cachingModel.call(new EmbeddingRequest(List.of("a"), DashScopeEmbeddingOptions.builder().model("text-embedding-v3").build()));
+
+		assertThat(this.delegate.requests).hasSize(3);
+	}
+
+	@Test
+	void offHeapStoreEvictsLeastRecentlyUsedByBytes() {
+		OffHeapEmbeddingCacheStore store = new OffHeapEmbeddingCacheStore(3 * 4 * Float.BYTES, 4);
+		store.put("a", new float[4]);
+		store.put("b", new float[4]);
+		store.put("c", new float[4]);
+		store.get("a");
+		store.put("d", new float[4]);
+
+		assertThat(store.get("b")).isNull();
+		assertThat(store.get("a")).hasSize(4);
+		assertThat(store.size()).isEqualTo(3);
+		assertThat(store.sizeInBytes()).isEqualTo(3 * 4 * Float.BYTES);
+	}
+
+	@Test
+	void offHeapStoreReusesEvictedSlots() {
+		// 6个槽位，每个4个float
+		OffHeapEmbeddingCacheStore store = new OffHeapEmbeddingCacheStore(6 * 4 * Float.BYTES, 4);
+		store.put("a", sequence(10, 1));
+		store.put("b", sequence(4, 100));
+		store.put("c", sequence(6, 200));
+
+		// a占3个槽位，b和c共占3个，放入需要2个槽位的d时淘汰最久未使用的a
+		store.get("b");
+		store.put("d", sequence(5, 300));
+
+		assertThat(store.get("a")).isNull();
+		assertThat(store.get("b")).containsExactly(sequence(4, 100));
+		assertThat(store.get("c")).containsExactly(sequence(6, 200));
+		assertThat(store.get("d")).containsExactly(sequence(5, 300));
+		assertThat(store.sizeInBytes()).isEqualTo(5 * 4 * Float.BYTES);
+		assertThat(store.getAllocatedBytes()).isEqualTo(6 * 4 * Float.BYTES);
+
+		store.clear();
+		store.put("e", sequence(24, 400));
+
+		assertThat(store.get("e")).containsExactly(sequence(24, 400));
+		assertThat(store.getAllocatedBytes()).isEqualTo(6 * 4 * Float.BYTES);
+		store.put("too-large", new float[25]);
+		assertThat(store.get("too-large")).isNull();
+	}
+
+	private static float[] sequence(int length, int start) {
+		float[] vector = new float[length];
+		for (int i = 0; i < length; i++) {
+			vector[i] = start + i;
+		}
+		return vector;
+	}
+
+	private static float[] vector(String text) {
+		return new float[] { text.charAt(0), text.length() };
+	}
+
+	private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+		private final List<List<String>> requests = new ArrayList<>();
+
+		@Override
+		public EmbeddingResponse call(EmbeddingRequest request) {
+			this.requests.add(request.getInstructions());
+			List<Embedding> embeddings = new ArrayList<>();
+			for (int i = 0; i < request.getInstructions().size(); i++) {
+				embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+			}
+			return new EmbeddingResponse(embeddings);
+		}
+
+		@Override
+		public float[] embed(Document document) {
+			return embed(document.getText());
+		}
+
+	}
+
+}
@@ -0,0 +1,207 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MappedFileEmbeddingCacheStoreTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(MappedFileEmbeddingCacheStoreTests.class);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void vectorsSurviveReopen() {
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 4096, 1024 * 1024)) {
+			for (int i = 0; i < 100; i++) {
+				store.put("key-" + i, vector(i, 16));
+			}
+		}
+
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 4096, 1024 * 1024)) {
+			assertThat(store.size()).isEqualTo(100);
+			for (int i = 0; i < 100; i++) {
+				assertThat(store.get("key-" + i)).containsExactly(vector(i, 16));
+			}
+			store.put("key-100", vector(100, 16));
+			assertThat(store.get("key-100")).containsExactly(vector(100, 16));
+		}
+	}
+
+	@Test
+	void oldestSegmentIsEvictedWhenFull() {
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 1024, 3 * 1024)) {
+			// 每条记录 12 + 6 + 64 = 82 字节，每个段可以放12条
+			for (int i = 0; i < 48; i++) {
+				store.put(String.format("key-%02d", i), vector(i, 16));
+			}
+
+			assertThat(store.sizeInBytes()).isLessThanOrEqualTo(3 * 1024);
+			assertThat(store.get("key-00")).isNull();
+			assertThat(store.get("key-47")).containsExactly(vector(47, 16));
+		}
+	}
+
+	@Test
+	void segmentsAreRecycledAsARing() throws Exception {
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 1024, 3 * 1024)) {
+			for (int i = 0; i < 100; i++) {
+				store.put(String.format("key-%02d", i), vector(i, 16));
+			}
+		}
+		Files.writeString(this.directory.resolve("segment-backup.vec"), "not a segment");
+
+		// 复用的段文件中残留的旧记录不会在重新打开时被识别
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 1024, 3 * 1024)) {
+			assertThat(segmentFiles()).hasSize(3);
+			assertThat(store.sizeInBytes()).isEqualTo(3 * 1024);
+			assertThat(store.get("key-50")).isNull();
+			assertThat(store.get("key-99")).containsExactly(vector(99, 16));
+			assertThat(store.size()).isBetween(25L, 36L);
+			for (int i = 0; i < 100; i++) {
+				float[] cached = store.get(String.format("key-%02d", i));
+				assertThat(cached == null || Arrays.equals(cached, vector(i, 16))).isTrue();
+			}
+
+			store.clear();
+			store.put("after-clear", vector(1, 16));
+
+			assertThat(store.size()).isEqualTo(1);
+			assertThat(segmentFiles()).hasSize(3);
+		}
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 1024, 3 * 1024)) {
+			assertThat(store.size()).isEqualTo(1);
+			assertThat(store.get("after-clear")).containsExactly(vector(1, 16));
+		}
+	}
+
+	@Test
+	void readsAreConsistentWhileSegmentsAreRecycled() throws Exception {
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, 1024, 2 * 1024)) {
+			AtomicBoolean writing = new AtomicBoolean(true);
+			AtomicInteger mismatches = new AtomicInteger();
+			ExecutorService readers = Executors.newFixedThreadPool(4);
+			for (int r = 0; r < 4; r++) {
+				readers.execute(() -> {
+					while (writing.get()) {
+						int i = ThreadLocalRandom.current().nextInt(5000);
+						float[] cached = store.get("key-" + i);
+						if (cached != null && !Arrays.equals(cached, vector(i, 16))) {
+							mismatches.incrementAndGet();
+						}
+					}
+				});
+			}
+			for (int i = 0; i < 5000; i++) {
+				store.put("key-" + i, vector(i, 16));
+			}
+			writing.set(false);
+			readers.shutdown();
+			assertThat(readers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+			assertThat(mismatches).hasValue(0);
+			assertThat(segmentFiles()).hasSize(2);
+		}
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(this.directory)) {
+			return files.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.vec")).toList();
+		}
+	}
+
+	/**
+	 * 1M条256维向量的冷启动（重新计算并写入）与热启动（重新打开已有文件）耗时对比，
+	 * 需要约1.1GB磁盘空间，设置 DASHSCOPE_BENCHMARK=true 后运行
+	 */
+	@Test
+	@EnabledIfEnvironmentVariable(named = "DASHSCOPE_BENCHMARK", matches = "true")
+	void coldStartVersusWarmStart() {
+		int count = 1_000_000;
+		int dimensions = 256;
+		long maxBytes = 2L * 1024 * 1024 * 1024;
+		List<String> texts = IntStream.range(0, count).mapToObj(i -> "chunk-" + i).toList();
+
+		long coldStart = System.nanoTime();
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, maxBytes)) {
+			CachingEmbeddingModel model = cachingModel(store, dimensions);
+			for (int i = 0; i < count; i += 1000) {
+				model.call(new EmbeddingRequest(texts.subList(i, i + 1000), null));
+			}
+		}
+		long coldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - coldStart);
+
+		long warmStart = System.nanoTime();
+		try (MappedFileEmbeddingCacheStore store = new MappedFileEmbeddingCacheStore(this.directory, maxBytes)) {
+			long openMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmStart);
+			CachingEmbeddingModel model = cachingModel(store, dimensions);
+			for (int i = 0; i < count; i += 1000) {
+				model.call(new EmbeddingRequest(texts.subList(i, i + 1000), null));
+			}
+			long warmMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmStart);
+			logger.info("cold start: {} ms, warm start: {} ms (open/index: {} ms)", coldMillis, warmMillis, openMillis);
+			assertThat(model.getMissCount()).isZero();
+		}
+	}
+
+	private static CachingEmbeddingModel cachingModel(EmbeddingCacheStore store, int dimensions) {
+		return CachingEmbeddingModel.builder()
+			.delegate(new FixedEmbeddingModel(dimensions))
+			.store(store)
+			.defaultModel("text-embedding-v4")
+			.meterRegistry(new SimpleMeterRegistry())
+			.build();
+	}
+
+	private static float[] vector(int seed, int dimensions) {
+		float[] vector = new float[dimensions];
+		for (int i = 0; i < dimensions; i++) {
+			vector[i] = seed + i / 100f;
+		}
+		return vector;
+	}
+
+	private record FixedEmbeddingModel(int dimensions) implements EmbeddingModel {
+
+		@Override
+		public EmbeddingResponse call(EmbeddingRequest request) {
+			List<String> texts = request.getInstructions();
+			return new EmbeddingResponse(IntStream.range(0, texts.size())
+				.mapToObj(i -> new Embedding(vector(texts.get(i).hashCode(), this.dimensions), i))
+				.toList());
+		}
+
+		@Override
+		public float[] embed(Document document) {
+			return embed(document.getText());
+		}
+
+	}
+
+}
@@ -0,0 +1,295 @@
+package org.xywenjie.spring.ai.dashscope.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.content.Media;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
+import org.xywenjie.spring.ai.dashscope.MockDashScopeServer;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MediaReferenceCacheTests {
+
+	private static final byte[] IMAGE = "png-bytes".getBytes(StandardCharsets.UTF_8);
+
+	private static final String RESPONSE = "{\"output\":{\"choices\":[{\"finish_reason\":\"stop\",\"message\":{\"role\":\"assistant\",\"content\":\"ok\"}}]},\"request_id\":\"media\"}";
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void sameMediaIsUploadedOnce() {
+		CountingStore store = new CountingStore();
+		MediaReferenceCache cache = MediaReferenceCache.builder()
+			.name("test")
+			.store(store)
+			.meterRegistry(this.meterRegistry)
+			.build();
+
+		String first = cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE);
+		String second = cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE.clone());
+		String otherType = cache.resolve(MimeTypeUtils.IMAGE_JPEG, IMAGE);
+
+		assertThat(second).isEqualTo(first);
+		assertThat(otherType).isNotEqualTo(first);
+		assertThat(store.uploads).hasValue(2);
+		assertThat(cache.getHitRate()).isEqualTo(1.0 / 3);
+		assertThat(cache.getUploadedBytes()).isEqualTo(2L * IMAGE.length);
+		assertThat(this.meterRegistry.get("dashscope.media.cache.requests")
+			.tag("name", "test")
+			.tag("result", "hit")
+			.functionCounter()
+			.count()).isEqualTo(1);
+		assertThat(this.meterRegistry.get("dashscope.media.cache.hit.ratio").tag("name", "test").gauge().value())
+			.isEqualTo(1.0 / 3);
+		// URL字符串不经过缓存
+		assertThat(cache.resolve(MimeTypeUtils.IMAGE_PNG, "https://example.com/a.png")).isNull();
+	}
+
+	@Test
+	void expiredEntriesAreUploadedAgainAndDeletedFromStore() {
+		MutableClock clock = new MutableClock();
+		CountingStore store = new CountingStore();
+		MediaReferenceCache cache = MediaReferenceCache.builder()
+			.store(store)
+			.ttl(Duration.ofHours(1))
+			.clock(clock)
+			.meterRegistry(this.meterRegistry)
+			.build();
+
+		cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE);
+		cache.resolve(MimeTypeUtils.IMAGE_JPEG, IMAGE);
+		clock.advance(Duration.ofMinutes(59));
+		cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE);
+		assertThat(store.uploads).hasValue(2);
+
+		clock.advance(Duration.ofMinutes(2));
+		cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE);
+		assertThat(store.uploads).hasValue(3);
+
+		// 过期后被重新上传替换的条目也计入淘汰数
+		assertThat(this.meterRegistry.get("dashscope.media.cache.evictions").functionCounter().count()).isEqualTo(1);
+
+		cache.evictExpired();
+		assertThat(cache.size()).isEqualTo(1);
+		assertThat(store.deleted).hasSize(1);
+		assertThat(this.meterRegistry.get("dashscope.media.cache.evictions").functionCounter().count()).isEqualTo(2);
+	}
+
+	@Test
+	void concurrentRequestsShareOneUpload() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountingStore store = new CountingStore() {
+			@Override
+			public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				return super.upload(key, mimeType, data);
+			}
+		};
+		MediaReferenceCache cache = MediaReferenceCache.builder().store(store).meterRegistry(this.meterRegistry).build();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE)));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			Set<String> urls = ConcurrentHashMap.newKeySet();
+			for (Future<String> future : futures) {
+				urls.add(future.get(5, TimeUnit.SECONDS));
+			}
+
+			assertThat(urls).hasSize(1);
+			assertThat(store.uploads).hasValue(1);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void slowUploadsFallBackToInlineAndFinishInTheBackground() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch uploaded = new CountDownLatch(1);
+		CountingStore store = new CountingStore() {
+			@Override
+			public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+				String url = super.upload(key, mimeType, data);
+				uploaded.countDown();
+				return url;
+			}
+		};
+		MediaReferenceCache cache = MediaReferenceCache.builder()
+			.store(store)
+			.uploadTimeout(Duration.ofMillis(50))
+			.meterRegistry(this.meterRegistry)
+			.build();
+
+		assertThat(cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE)).isNull();
+		assertThat(this.meterRegistry.get("dashscope.media.cache.upload.timeouts").functionCounter().count())
+			.isEqualTo(1);
+
+		release.countDown();
+		assertThat(uploaded.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(cache.resolve(MimeTypeUtils.IMAGE_PNG, IMAGE)).startsWith("https://media.example.com/");
+		assertThat(store.uploads).hasValue(1);
+	}
+
+	@Test
+	void chatModelReferencesUploadedMedia() {
+		List<String> bodies = new CopyOnWriteArrayList<>();
+		try (MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			bodies.add(MockDashScopeServer.readBody(exchange));
+			MockDashScopeServer.respondJson(exchange, RESPONSE);
+		})) {
+			InMemoryMediaStore store = new InMemoryMediaStore("https://media.example.com/");
+			MediaReferenceCache cache = MediaReferenceCache.builder().store(store).meterRegistry(this.meterRegistry).build();
+			DashScopeChatModel chatModel = DashScopeChatModel.builder()
+				.dashScopeApi(DashScopeApi.builder()
+					.baseUrl(server.baseUrl())
+					.apiKey("test-key")
+					.build())
+				.mediaCache(cache)
+				.build();
+			byte[] image = new byte[64 * 1024];
+			Prompt prompt = new Prompt(UserMessage.builder()
+				.text("图里是什么？")
+				.media(Media.builder().mimeType(MimeTypeUtils.IMAGE_PNG).data(image).build())
+				.build());
+
+			chatModel.call(prompt);
+			chatModel.call(prompt);
+
+			assertThat(bodies).hasSize(2);
+			assertThat(bodies).allSatisfy(body -> assertThat(body).contains("\"image\":\"https://media.example.com/")
+				.doesNotContain("base64"));
+			assertThat(store.size()).isEqualTo(1);
+			assertThat(cache.getHitCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void streamingResolvesMediaOffTheCallingThread() {
+		try (MockDashScopeServer server = MockDashScopeServer.start(exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			MockDashScopeServer.respondSse(exchange, RESPONSE);
+		})) {
+			List<String> uploadThreads = new CopyOnWriteArrayList<>();
+			CountingStore store = new CountingStore() {
+				@Override
+				public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+					uploadThreads.add(Thread.currentThread().getName());
+					return super.upload(key, mimeType, data);
+				}
+			};
+			// 在解析媒体的线程上直接上传，以便检查解析所在的线程
+			MediaReferenceCache cache = MediaReferenceCache.builder()
+				.store(store)
+				.uploadExecutor(Runnable::run)
+				.meterRegistry(this.meterRegistry)
+				.build();
+			DashScopeChatModel chatModel = DashScopeChatModel.builder()
+				.dashScopeApi(DashScopeApi.builder()
+					.baseUrl(server.baseUrl())
+					.apiKey("test-key")
+					.build())
+				.mediaCache(cache)
+				.build();
+			Prompt prompt = new Prompt(UserMessage.builder()
+				.text("图里是什么？")
+				.media(Media.builder().mimeType(MimeTypeUtils.IMAGE_PNG).data(IMAGE).build())
+				.build());
+
+			chatModel.stream(prompt).blockLast(Duration.ofSeconds(10));
+
+			assertThat(uploadThreads).singleElement().asString().startsWith("boundedElastic");
+		}
+	}
+
+	private static class CountingStore extends InMemoryMediaStore {
+
+		final AtomicInteger uploads = new AtomicInteger();
+
+		final List<String> deleted = new CopyOnWriteArrayList<>();
+
+		CountingStore() {
+			super("https://media.example.com/");
+		}
+
+		@Override
+		public String upload(String key, MimeType mimeType, InputStreamSource data) throws IOException {
+			this.uploads.incrementAndGet();
+			return super.upload(key, mimeType, data);
+		}
+
+		@Override
+		public void delete(String key) {
+			this.deleted.add(key);
+			super.delete(key);
+		}
+
+	}
+
+	private static class MutableClock extends Clock {
+
+		private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+		void advance(Duration duration) {
+			this.now = this.now.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return this.now;
+		}
+
+	}
+
+}
@@ -10,12 +10,15 @@ import org.springframework.util.Assert;
 import org.springframework.util.DigestUtils;
 import org.springframework.web.client.RestClient;
 import org.xywenjie.spring.ai.model.AppKeySecret;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class MoyinAudioApi {
 	
@@ -24,9 +27,20 @@ public class MoyinAudioApi {
 	private final RestClient restClient;
 
 	private final ApiKey apiKey;
+
+	private final Executor blockingExecutor;
 	
 	public MoyinAudioApi(String baseUrl,ApiKey apiKey,RestClient.Builder restClientBuilder) {
+		this(baseUrl, apiKey, restClientBuilder, BlockingExecutors.defaultExecutor());
+	}
+
+	/**
+	 * @param blockingExecutor 执行{@link #createSpeechAsync(SpeechRequest)}的线程池
+	 */
+	public MoyinAudioApi(String baseUrl,ApiKey apiKey,RestClient.Builder restClientBuilder,Executor blockingExecutor) {
+		Assert.notNull(blockingExecutor, "blockingExecutor must not be null");
 		this.apiKey = apiKey;
+		this.blockingExecutor = blockingExecutor;
 		this.restClient = restClientBuilder
 				.baseUrl(baseUrl)
 				.defaultHeaders(header -> 
@@ -64,6 +78,13 @@ public class MoyinAudioApi {
 		
 		return response;
 	}
+
+	/**
+	 * 在构建时指定的线程池中执行{@link #createSpeech(SpeechRequest)}
+	 */
+	public CompletableFuture<ResponseEntity<byte[]>> createSpeechAsync(SpeechRequest request) {
+		return CompletableFuture.supplyAsync(() -> createSpeech(request), this.blockingExecutor);
+	}
 	
 	@JsonInclude(Include.NON_NULL)
 	public record SpeechRequest(
@@ -233,6 +254,8 @@ public class MoyinAudioApi {
 
 		private RestClient.Builder restClientBuilder = RestClient.builder();
 
+		private Executor blockingExecutor = BlockingExecutors.defaultExecutor();
+
 		public Builder apiKey(ApiKey apiKey) {
 			this.apiKey = apiKey;
 			return this;
@@ -243,9 +266,17 @@ public class MoyinAudioApi {
 			return this;
 		}
 
+		/**
+		 * 设置异步调用使用的线程池，例如{@link BlockingExecutors#virtualThreadPerTask(String)}
+		 */
+		public Builder blockingExecutor(Executor blockingExecutor) {
+			this.blockingExecutor = blockingExecutor;
+			return this;
+		}
+
 		public MoyinAudioApi build() {
 			Assert.notNull(this.apiKey, "apiKey must not be null");
-			return new MoyinAudioApi(this.baseUrl,this.apiKey, this.restClientBuilder);
+			return new MoyinAudioApi(this.baseUrl,this.apiKey, this.restClientBuilder, this.blockingExecutor);
 		}
 	}
 
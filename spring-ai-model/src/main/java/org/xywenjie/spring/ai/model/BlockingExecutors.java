@@ -0,0 +1,139 @@
+package org.xywenjie.spring.ai.model;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 运行阻塞HTTP调用（以及重试循环）的线程池。
+ * <p>
+ * 项目以Java 17编译，虚拟线程通过反射创建：运行在Java 21及以上时{@link #virtualThreadPerTask(String)}
+ * 为每个任务创建一个虚拟线程，低版本JDK上退回到有上限的平台线程池。
+ *
+ * @author Huang Wenjie
+ */
+public final class BlockingExecutors {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlockingExecutors.class);
+
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+	/**
+	 * 平台线程池默认的最大线程数
+	 */
+	public static final int DEFAULT_MAX_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+	/**
+	 * 平台线程池默认的等待队列长度，队列满后由提交任务的线程自己执行
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private static volatile ExecutorService defaultExecutor;
+
+	private BlockingExecutors() {
+	}
+
+	/**
+	 * @return 当前JDK是否支持虚拟线程
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * 创建每个任务一个虚拟线程的执行器，不支持虚拟线程时退回到{@link #platform(String)}
+	 * @param namePrefix 线程名前缀
+	 */
+	public static ExecutorService virtualThreadPerTask(String namePrefix) {
+		if (OF_VIRTUAL == null) {
+			logger.warn("Virtual threads require Java 21 or later, falling back to platform threads");
+			return platform(namePrefix);
+		}
+		ExecutorService executor = createVirtualThreadPerTask(namePrefix);
+		return executor != null ? executor : platform(namePrefix);
+	}
+
+	/**
+	 * 创建有上限的平台线程池，最多{@link #DEFAULT_MAX_THREADS}个线程
+	 * @param namePrefix 线程名前缀
+	 */
+	public static ExecutorService platform(String namePrefix) {
+		return platform(namePrefix, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * 创建有上限的平台线程池，线程为守护线程，空闲60秒后回收。
+	 * 线程全忙时任务进入等待队列，队列也满时由提交任务的线程自己执行，不会无限创建线程
+	 * @param namePrefix 线程名前缀
+	 * @param maxThreads 最大线程数
+	 * @param queueCapacity 等待队列长度
+	 */
+	public static ExecutorService platform(String namePrefix, int maxThreads, int queueCapacity) {
+		AtomicLong counter = new AtomicLong();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, namePrefix + counter.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * 未指定执行器时异步调用使用的共享执行器：支持虚拟线程时每个任务一个虚拟线程，
+	 * 否则是{@link #platform(String)}创建的有上限的平台线程池
+	 */
+	public static ExecutorService defaultExecutor() {
+		ExecutorService executor = defaultExecutor;
+		if (executor == null) {
+			synchronized (BlockingExecutors.class) {
+				executor = defaultExecutor;
+				if (executor == null) {
+					executor = createVirtualThreadPerTask("spring-ai-blocking-vt-");
+					if (executor == null) {
+						executor = platform("spring-ai-blocking-");
+					}
+					defaultExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	private static ExecutorService createVirtualThreadPerTask(String namePrefix) {
+		if (OF_VIRTUAL == null) {
+			return null;
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+				.invoke(null, threadFactory);
+		}
+		catch (ReflectiveOperationException ex) {
+			logger.warn("Failed to create virtual thread executor, falling back to platform threads", ex);
+			return null;
+		}
+	}
+
+	private static Method findMethod(Class<?> type, String name) {
+		try {
+			return type.getMethod(name);
+		}
+		catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+}
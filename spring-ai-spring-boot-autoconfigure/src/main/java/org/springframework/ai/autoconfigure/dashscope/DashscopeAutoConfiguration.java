@@ -1,74 +1,131 @@
 package org.springframework.ai.autoconfigure.dashscope;
 
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.boot.autoconfigure.web.client.RestClientAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
-import org.springframework.retry.support.RetryTemplate;
+import org.springframework.core.retry.RetryTemplate;
 import org.springframework.util.Assert;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
 import org.xywenjie.spring.ai.dashscope.DashScopeEmbeddingModel;
 import org.xywenjie.spring.ai.dashscope.DashScopeImageModel;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeApi;
 import org.xywenjie.spring.ai.dashscope.api.DashScopeImageApi;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeTransport;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
 
-import java.util.List;
+import io.micrometer.observation.ObservationRegistry;
 
-@AutoConfiguration(after = {RestClientAutoConfiguration.class})
+import java.util.concurrent.ExecutorService;
+
+@AutoConfiguration(afterName = "org.springframework.boot.restclient.autoconfigure.RestClientAutoConfiguration")
+@ConditionalOnClass(DashScopeApi.class)
 @EnableConfigurationProperties({DashscopeProperties.class, QWenImageProperties.class,DashscopeConnectionProperties.class,DashscopeEmbeddingProperties.class})
 public class DashscopeAutoConfiguration {
 
+    public static final String BLOCKING_EXECUTOR_BEAN_NAME = "dashScopeBlockingExecutor";
+
+    /**
+     * spring.ai.dashscope.virtual-threads=true 时，模型的异步调用在虚拟线程中执行阻塞的HTTP请求和重试
+     */
+    @Bean(name = BLOCKING_EXECUTOR_BEAN_NAME, destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(name = BLOCKING_EXECUTOR_BEAN_NAME)
+    @ConditionalOnProperty(prefix = DashscopeConnectionProperties.CONFIG_PREFIX, name = "virtual-threads", havingValue = "true")
+    public ExecutorService dashScopeBlockingExecutor(){
+        return BlockingExecutors.virtualThreadPerTask("dashscope-vt-");
+    }
+
+    /**
+     * 各DashScope API共享的连接池
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = DashscopeConnectionProperties.CONFIG_PREFIX, name = "transport.enabled", havingValue = "true", matchIfMissing = true)
+    public DashScopeTransport dashScopeTransport(DashscopeConnectionProperties commonProperties){
+        DashscopeConnectionProperties.Transport transport = commonProperties.getTransport();
+        return DashScopeTransport.builder()
+                .maxConnections(transport.getMaxConnections())
+                .pendingAcquireTimeout(transport.getPendingAcquireTimeout())
+                .maxIdleTime(transport.getMaxIdleTime())
+                .maxLifeTime(transport.getMaxLifeTime())
+                .evictionInterval(transport.getEvictionInterval())
+                .connectTimeout(transport.getConnectTimeout())
+                .readTimeout(transport.getReadTimeout())
+                .http2(transport.isHttp2())
+                .metrics(transport.isMetrics())
+                .compress(transport.isCompress())
+                .build();
+    }
+
     @Bean
     @ConditionalOnMissingBean
     @ConditionalOnProperty(prefix = DashscopeProperties.CONFIG_PREFIX,name="enabled",havingValue = "true",matchIfMissing = true)
-    public DashScopeChatModel dashScopeChatModel(DashscopeConnectionProperties commonProperties, DashscopeProperties dashscopeProperties, List<FunctionCallback> toolFunctionCallback,
-                                            FunctionCallbackContext functionCallbackContext, RetryTemplate retryTemplate){
-        var dashsCopeService = qWenDashScopeService(dashscopeProperties.getApikey(),commonProperties.getApikey());
-        if(!CollectionUtils.isEmpty(toolFunctionCallback)){
-            dashscopeProperties.getOptions().getFunctionCallbacks().addAll(toolFunctionCallback);
-        }
-        return new DashScopeChatModel(dashsCopeService,dashscopeProperties.getOptions(),functionCallbackContext,retryTemplate);
+    public DashScopeChatModel dashScopeChatModel(DashscopeConnectionProperties commonProperties, DashscopeProperties dashscopeProperties,
+                                            ObjectProvider<ToolCallingManager> toolCallingManager, ObjectProvider<RetryTemplate> retryTemplate,
+                                            ObjectProvider<ObservationRegistry> observationRegistry,
+                                            @Qualifier(BLOCKING_EXECUTOR_BEAN_NAME) ObjectProvider<ExecutorService> blockingExecutor,
+                                            ObjectProvider<DashScopeTransport> transport){
+        var dashsCopeService = dashScopeApi(dashscopeProperties.getApikey(),commonProperties.getApikey(),transport);
+        // 工具回调由ToolCallingManager从选项和Spring容器中解析
+        var chatModel = new DashScopeChatModel(dashsCopeService,dashscopeProperties.getOptions(),
+                toolCallingManager.getIfUnique(() -> ToolCallingManager.builder().build()),
+                retryTemplate.getIfUnique(() -> RetryUtils.DEFAULT_RETRY_TEMPLATE),
+                observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP));
+        blockingExecutor.ifAvailable(chatModel::setBlockingExecutor);
+        return chatModel;
     }
 
     @Bean
     @ConditionalOnMissingBean
     @ConditionalOnProperty(prefix = DashscopeEmbeddingProperties.CONFIG_PREFIX,name = "enabled",havingValue = "true",
             matchIfMissing = true)
-    public DashScopeEmbeddingModel dashScopeEmbeddingClient(DashscopeConnectionProperties commonProperties, DashscopeProperties dashscopeProperties){
-        var dashsCopeService = qWenDashScopeService(dashscopeProperties.getApikey(),commonProperties.getApikey());
-        //return new DashScopeEmbeddingModel(dashsCopeService);
-        return null;
+    public DashScopeEmbeddingModel dashScopeEmbeddingClient(DashscopeConnectionProperties commonProperties, DashscopeProperties dashscopeProperties,
+                                                            @Qualifier(BLOCKING_EXECUTOR_BEAN_NAME) ObjectProvider<ExecutorService> blockingExecutor,
+                                                            ObjectProvider<DashScopeTransport> transport){
+        var dashsCopeService = dashScopeApi(dashscopeProperties.getApikey(),commonProperties.getApikey(),transport);
+        var embeddingModel = new DashScopeEmbeddingModel(dashsCopeService);
+        blockingExecutor.ifAvailable(embeddingModel::setBlockingExecutor);
+        return embeddingModel;
     }
 
+    /**
+     * 创建DashScopeApi，存在共享传输层时使用共享的连接池
+     */
+    private static DashScopeApi dashScopeApi(String apikey, String commonApiKey, ObjectProvider<DashScopeTransport> transport){
+        var apiBuilder = DashScopeApi.builder().apiKey(resolveApiKey(apikey,commonApiKey));
+        transport.ifAvailable(apiBuilder::transport);
+        return apiBuilder.build();
+    }
 
-    // private QWenDashScopeService qWenDashScopeService(String apikey, String commonApiKey){
-    //     String resolvedApiKey = StringUtils.hasText(apikey) ? apikey : commonApiKey;
-    //     Assert.hasText(resolvedApiKey,"Dashscope阿里云的AccessToken不存在");
-    //     return new QWenDashScopeService(resolvedApiKey);
-    // }
+    private static String resolveApiKey(String apikey, String commonApiKey){
+        String resolvedApiKey = StringUtils.hasText(apikey) ? apikey : commonApiKey;
+        Assert.hasText(resolvedApiKey,"Dashscope阿里云的AccessToken不存在");
+        return resolvedApiKey;
+    }
 
     @Bean
     @ConditionalOnMissingBean
     @ConditionalOnProperty(prefix = QWenImageProperties.CONFIG_PREFIX,name = "enabled",havingValue = "true",
                         matchIfMissing = true)
-    public DashScopeImageModel qWenImageClient(DashscopeConnectionProperties commonProperties,QWenImageProperties qWenImageProperties){
+    public DashScopeImageModel qWenImageClient(DashscopeConnectionProperties commonProperties,QWenImageProperties qWenImageProperties,
+                                               @Qualifier(BLOCKING_EXECUTOR_BEAN_NAME) ObjectProvider<ExecutorService> blockingExecutor,
+                                               ObjectProvider<DashScopeTransport> transport){
         //var dashsCopeService = dashsCopeService(qWenImageProperties.getApikey(),commonProperties.getApikey());
         //return new QWenImageModel(dashsCopeService);
-        return new DashScopeImageModel(DashScopeImageApi.builder().build());
+        var imageApiBuilder = DashScopeImageApi.builder()
+                .apiKey(resolveApiKey(qWenImageProperties.getApikey(),commonProperties.getApikey()));
+        transport.ifAvailable(imageApiBuilder::transport);
+        var imageModel = new DashScopeImageModel(imageApiBuilder.build());
+        blockingExecutor.ifAvailable(imageModel::setBlockingExecutor);
+        return imageModel;
     }
 
     //TODO 未来1.0添加声音模型
-
-    // @Bean
-    // @ConditionalOnMissingBean
-    // public FunctionCallbackContext springAiFunctionManager(ApplicationContext context){
-    //     FunctionCallbackContext manager = new FunctionCallbackContext();
-    //     manager.setApplicationContext(context);
-    //     return manager;
-    // }
 }
@@ -1,9 +1,157 @@
 package org.springframework.ai.autoconfigure.dashscope;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeTransport;
 
 @ConfigurationProperties(DashscopeConnectionProperties.CONFIG_PREFIX)
 public class DashscopeConnectionProperties extends DashscopeParentProperties{
 
     public static final String CONFIG_PREFIX = "spring.ai.dashscope";
+
+    /**
+     * 是否在虚拟线程中执行阻塞调用（需要Java 21及以上，低版本退回到平台线程）
+     */
+    private boolean virtualThreads = false;
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * 各DashScope API共享的连接池配置
+     */
+    private Transport transport = new Transport();
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public static class Transport {
+
+        /**
+         * 是否启用共享连接池，关闭时各API使用各自默认的HTTP客户端
+         */
+        private boolean enabled = true;
+
+        private int maxConnections = DashScopeTransport.DEFAULT_MAX_CONNECTIONS;
+
+        private Duration pendingAcquireTimeout = DashScopeTransport.DEFAULT_PENDING_ACQUIRE_TIMEOUT;
+
+        private Duration maxIdleTime = DashScopeTransport.DEFAULT_MAX_IDLE_TIME;
+
+        private Duration maxLifeTime = DashScopeTransport.DEFAULT_MAX_LIFE_TIME;
+
+        private Duration evictionInterval = DashScopeTransport.DEFAULT_EVICTION_INTERVAL;
+
+        private Duration connectTimeout = DashScopeTransport.DEFAULT_CONNECT_TIMEOUT;
+
+        private Duration readTimeout = DashScopeTransport.DEFAULT_READ_TIMEOUT;
+
+        private boolean http2 = false;
+
+        private boolean metrics = true;
+
+        /**
+         * 是否接受gzip/deflate压缩的响应
+         */
+        private boolean compress = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public Duration getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Duration getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public boolean isHttp2() {
+            return http2;
+        }
+
+        public void setHttp2(boolean http2) {
+            this.http2 = http2;
+        }
+
+        public boolean isMetrics() {
+            return metrics;
+        }
+
+        public void setMetrics(boolean metrics) {
+            this.metrics = metrics;
+        }
+
+        public boolean isCompress() {
+            return compress;
+        }
+
+        public void setCompress(boolean compress) {
+            this.compress = compress;
+        }
+    }
 }
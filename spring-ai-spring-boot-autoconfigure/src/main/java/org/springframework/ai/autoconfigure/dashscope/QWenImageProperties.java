@@ -1,6 +1,6 @@
 package org.springframework.ai.autoconfigure.dashscope;
 
-import org.springframework.ai.dashscope.qwen.QWenImageOptions;
+import org.xywenjie.spring.ai.dashscope.DashScopeImageOptions;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
@@ -12,13 +12,13 @@ public class QWenImageProperties extends DashscopeParentProperties{
     private boolean enabled = true;
 
     @NestedConfigurationProperty
-    private QWenImageOptions options;
+    private DashScopeImageOptions options;
 
-    public QWenImageOptions getOptions() {
+    public DashScopeImageOptions getOptions() {
         return options;
     }
 
-    public void setOptions(QWenImageOptions options) {
+    public void setOptions(DashScopeImageOptions options) {
         this.options = options;
     }
 
@@ -0,0 +1,42 @@
+package org.springframework.ai.autoconfigure.moyin;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.ai.autoconfigure.dashscope.DashscopeAutoConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.xywenjie.spring.ai.moyin.MoyinAudioSpeechModel;
+import org.xywenjie.spring.ai.moyin.api.MoyinAudioApi;
+
+/**
+ * 配置了 spring.ai.moyin.app-key 时创建魔音工坊语音合成模型，
+ * 开启 spring.ai.dashscope.virtual-threads 时与DashScope模型共用同一个阻塞调用线程池
+ * @author 黄文杰
+ */
+@AutoConfiguration(after = DashscopeAutoConfiguration.class)
+@ConditionalOnClass(MoyinAudioApi.class)
+@ConditionalOnProperty(prefix = MoyinProperties.CONFIG_PREFIX, name = "app-key")
+@EnableConfigurationProperties(MoyinProperties.class)
+public class MoyinAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MoyinAudioApi moyinAudioApi(MoyinProperties properties,
+                                       @Qualifier(DashscopeAutoConfiguration.BLOCKING_EXECUTOR_BEAN_NAME) ObjectProvider<ExecutorService> blockingExecutor){
+        var apiBuilder = MoyinAudioApi.builder().apiKey(properties.getAppKey(), properties.getSecret());
+        blockingExecutor.ifAvailable(apiBuilder::blockingExecutor);
+        return apiBuilder.build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MoyinAudioSpeechModel moyinAudioSpeechModel(MoyinAudioApi moyinAudioApi){
+        return new MoyinAudioSpeechModel(moyinAudioApi);
+    }
+}
@@ -0,0 +1,33 @@
+package org.springframework.ai.autoconfigure.moyin;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 魔音工坊语音合成属性
+ * @author 黄文杰
+ */
+@ConfigurationProperties(MoyinProperties.CONFIG_PREFIX)
+public class MoyinProperties {
+
+    public static final String CONFIG_PREFIX = "spring.ai.moyin";
+
+    private String appKey;
+
+    private String secret;
+
+    public String getAppKey() {
+        return appKey;
+    }
+
+    public void setAppKey(String appKey) {
+        this.appKey = appKey;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+}
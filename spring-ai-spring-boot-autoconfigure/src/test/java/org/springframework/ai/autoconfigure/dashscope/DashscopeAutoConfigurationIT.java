@@ -4,22 +4,21 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
-import org.springframework.ai.autoconfigure.retry.SpringAiRetryAutoConfiguration;
 
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.dashscope.qwen.QWenChatModel;
-import org.springframework.ai.dashscope.qwen.QWenEmbeddingModel;
-import org.springframework.ai.dashscope.qwen.QWenImageModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeEmbeddingModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeImageModel;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.image.ImagePrompt;
 import org.springframework.ai.image.ImageResponse;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
-import org.springframework.boot.autoconfigure.web.client.RestClientAutoConfiguration;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import reactor.core.publisher.Flux;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -32,12 +31,12 @@ public class DashscopeAutoConfigurationIT {
 
     private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
             .withPropertyValues("spring.ai.dashscope.apikey="+System.getenv("DASHSCOPE_API_KEY"))
-            .withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class, RestClientAutoConfiguration.class, DashscopeAutoConfiguration.class));
+            .withConfiguration(AutoConfigurations.of(DashscopeAutoConfiguration.class));
 
     @Test
     void generate(){
         contextRunner.run(context -> {
-            QWenChatModel chatClient = context.getBean(QWenChatModel.class);
+            DashScopeChatModel chatClient = context.getBean(DashScopeChatModel.class);
             String response = chatClient.call("Hello");
             assertThat(response).isNotEmpty();
             logger.info("Response:"+response);
@@ -57,9 +56,9 @@ public class DashscopeAutoConfigurationIT {
     @Test
     void generateStreaming(){
         contextRunner.run(context -> {
-            QWenChatModel chatClient = context.getBean(QWenChatModel.class);
+            DashScopeChatModel chatClient = context.getBean(DashScopeChatModel.class);
             Flux<ChatResponse> responseFlux = chatClient.stream(new Prompt(new UserMessage("Hello")));
-            String response = responseFlux.collectList().block().stream().map(chatResponse -> chatResponse.getResults().get(0).getOutput().getContent()).collect(Collectors.joining());
+            String response = responseFlux.collectList().block().stream().map(chatResponse -> chatResponse.getResults().get(0).getOutput().getText()).collect(Collectors.joining());
 
             assertThat(response).isNotEmpty();
             logger.info("Resource:"+response);
@@ -69,7 +68,7 @@ public class DashscopeAutoConfigurationIT {
     @Test
     void embedding(){
         contextRunner.run(context -> {
-            QWenEmbeddingModel embeddingClient = context.getBean(QWenEmbeddingModel.class);
+            DashScopeEmbeddingModel embeddingClient = context.getBean(DashScopeEmbeddingModel.class);
             EmbeddingResponse embeddingResponse = embeddingClient.embedForResponse(List.of("Hello Word","World is big and salvation is near"));
             assertThat(embeddingResponse.getResults()).hasSize(2);
             assertThat(embeddingResponse.getResults().get(0).getOutput()).isNotEmpty();
@@ -77,14 +76,14 @@ public class DashscopeAutoConfigurationIT {
             assertThat(embeddingResponse.getResults().get(1).getOutput()).isNotEmpty();
             assertThat(embeddingResponse.getResults().get(1).getIndex()).isEqualTo(1);
 
-            logger.info(embeddingResponse.getResult().getOutput());
+            logger.info(Arrays.toString(embeddingResponse.getResult().getOutput()));
         });
     }
 
     @Test
     void generateImage(){
         contextRunner.withPropertyValues("spring.ai.dashscope.qwen.image.options.size=1024*1024").run(context -> {
-            QWenImageModel imageClient = context.getBean(QWenImageModel.class);
+            DashScopeImageModel imageClient = context.getBean(DashScopeImageModel.class);
             ImageResponse imageResponse = imageClient.call(new ImagePrompt("forest"));
             assertThat(imageResponse.getResults()).hasSize(1);
             assertThat(imageResponse.getResult().getOutput().getUrl()).isNotEmpty();
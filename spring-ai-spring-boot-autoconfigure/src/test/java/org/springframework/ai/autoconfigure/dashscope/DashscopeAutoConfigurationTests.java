@@ -0,0 +1,61 @@
+package org.springframework.ai.autoconfigure.dashscope;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.autoconfigure.moyin.MoyinAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.xywenjie.spring.ai.dashscope.DashScopeChatModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeEmbeddingModel;
+import org.xywenjie.spring.ai.dashscope.DashScopeImageModel;
+import org.xywenjie.spring.ai.dashscope.api.DashScopeTransport;
+import org.xywenjie.spring.ai.model.BlockingExecutors;
+import org.xywenjie.spring.ai.moyin.MoyinAudioSpeechModel;
+import org.xywenjie.spring.ai.moyin.api.MoyinAudioApi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DashscopeAutoConfigurationTests {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withPropertyValues("spring.ai.dashscope.apikey=test")
+            .withConfiguration(AutoConfigurations.of(DashscopeAutoConfiguration.class, MoyinAutoConfiguration.class));
+
+    @Test
+    void modelsShareTheTransportAndUseTheDefaultExecutor(){
+        contextRunner.run(context -> {
+            assertThat(context).hasSingleBean(DashScopeChatModel.class)
+                    .hasSingleBean(DashScopeEmbeddingModel.class)
+                    .hasSingleBean(DashScopeImageModel.class)
+                    .hasSingleBean(DashScopeTransport.class)
+                    .doesNotHaveBean(DashscopeAutoConfiguration.BLOCKING_EXECUTOR_BEAN_NAME)
+                    .doesNotHaveBean(MoyinAudioApi.class);
+            assertThat(ReflectionTestUtils.getField(context.getBean(DashScopeChatModel.class), "blockingExecutor"))
+                    .isSameAs(BlockingExecutors.defaultExecutor());
+        });
+    }
+
+    @Test
+    void virtualThreadExecutorIsPassedToEveryModel(){
+        contextRunner.withPropertyValues("spring.ai.dashscope.virtual-threads=true",
+                        "spring.ai.moyin.app-key=app", "spring.ai.moyin.secret=secret")
+                .run(context -> {
+                    Object executor = context.getBean(DashscopeAutoConfiguration.BLOCKING_EXECUTOR_BEAN_NAME);
+                    assertThat(ReflectionTestUtils.getField(context.getBean(DashScopeChatModel.class), "blockingExecutor"))
+                            .isSameAs(executor);
+                    assertThat(ReflectionTestUtils.getField(context.getBean(DashScopeEmbeddingModel.class), "blockingExecutor"))
+                            .isSameAs(executor);
+                    assertThat(ReflectionTestUtils.getField(context.getBean(DashScopeImageModel.class), "blockingExecutor"))
+                            .isSameAs(executor);
+                    assertThat(ReflectionTestUtils.getField(context.getBean(MoyinAudioApi.class), "blockingExecutor"))
+                            .isSameAs(executor);
+                    assertThat(context).hasSingleBean(MoyinAudioSpeechModel.class);
+                });
+    }
+
+    @Test
+    void chatModelCanBeDisabled(){
+        contextRunner.withPropertyValues("spring.ai.dashscope.qwen.chat.enabled=false")
+                .run(context -> assertThat(context).doesNotHaveBean(DashScopeChatModel.class));
+    }
+}